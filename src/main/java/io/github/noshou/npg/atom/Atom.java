@@ -118,8 +118,8 @@ public class Atom implements Comparable<Atom> {
      * @param the converted (x, y, z) position in fractional space relative to the crystal
      */
     @Contract(mutates = "this")
-    private void setFractional(@NotNull Triad<String> cartesian) {
-        this.cartesian = cartesian;
+    private void setFractional(@NotNull Triad<String> fractional) {
+        this.fractional = fractional;
     }
 
 
@@ -298,6 +298,6 @@ public class Atom implements Comparable<Atom> {
             int idx, @NotNull Triad<String> cartesian, @NotNull Triad<String> fractional) {
         this.setIndex(idx);
         this.setCartesian(cartesian);
-        this.setFracCoords(fractional);
+        this.setFractional(fractional);
     }
 }
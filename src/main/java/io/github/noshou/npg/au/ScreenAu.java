@@ -0,0 +1,130 @@
+package io.github.noshou.npg.au;
+
+import io.github.noshou.npg.atom.Atom;
+import io.github.noshou.npg.lattice.LatticeType;
+import io.github.noshou.npg.npreader.SaxsDataReader;
+import io.github.noshou.npg.npsaxs.SaxsData;
+import io.github.noshou.npg.npsaxs.SaxsScreen;
+import io.github.noshou.npg.nputil.FormatExecTime;
+import io.github.noshou.npg.npwriter.SaxsProfileWriter;
+import io.github.noshou.npg.npwriter.SaxsScreenWriter;
+import io.github.noshou.npg.shapes.archimedean.Cuboctahedron;
+import io.github.noshou.npg.shapes.ellipsoid.Sphere;
+import io.github.noshou.npg.shapes.platonic.Cube;
+import io.github.noshou.npg.shapes.platonic.Octahedron;
+import io.github.noshou.npg.shapes.prisms.PrismOctagonal;
+import io.github.noshou.tuple.*;
+import org.jetbrains.annotations.*;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Screens gold (Au) FCC nanoparticles of several shapes and sizes against the measured SAXS profile.
+ * <p>
+ * Replaces building and fitting every candidate in its own folder: all candidates are built in memory in
+ * parallel, their Debye profiles are fitted to {@code saxs_data/Aunps saxs intensity file.csv} with a linear
+ * scale and offset, and the candidates are written to a ranked χ² table. The best candidates' fits are also
+ * written as {@code .dat} files in the layout of the externally fitted ones.
+ */
+public class ScreenAu {
+
+    /**
+     * Returns a default FCC basis for gold (Au) containing four atoms
+     * located at the standard fractional positions within the FCC unit cell.
+     * @return a non-null {@link Polyad} containing the FCC atomic basis for gold
+     */
+    @Contract(" -> new")
+    private static @NotNull Polyad<Atom> getBasis() {
+        Atom _1 = new Atom(
+                "Au",
+                "1.44",
+                new Triad<>("0", "0", "0"),
+                0,
+                100
+        );
+        Atom _2 = new Atom(
+                "Au",
+                "1.44",
+                new Triad<>("0.5", "0.5", "0"),
+                0,
+                100
+        );
+        Atom _3 = new Atom(
+                "Au",
+                "1.44",
+                new Triad<>("0.5", "0", "0.5"),
+                0,
+                100
+        );
+        Atom _4 = new Atom(
+                "Au",
+                "1.44",
+                new Triad<>("0", "0.5", "0.5"),
+                0,
+                100
+        );
+        Atom[] atoms = new Atom[]{_1, _2, _3, _4};
+        return new Polyad<>(atoms);
+    }
+
+    /**
+     * The main entry point for screening gold nanoparticles against SAXS data.
+     * @param args optional data file (default: the bundled CSV) and output stem (default: {@code ScreenAu})
+     * @throws IOException if the data cannot be read or the results cannot be written
+     */
+    public static void main(String @NotNull [] args) throws IOException {
+        long start_time = System.nanoTime();
+
+        // Configuration parameters
+        Path data_file = Path.of(args.length > 0
+                ? args[0]
+                : "src/main/java/io/github/noshou/npg/au/saxs_data/Aunps saxs intensity file.csv");
+        String output = args.length > 1 ? args[1] : "ScreenAu";
+        String[] radii = {"3.5", "5", "7", "7.5", "10"}; // in nanometers
+        String units = "nm";
+        LatticeType lattice_type = LatticeType.FCC;
+        int precision = 500;
+        Polyad<Atom> atoms = getBasis();
+        String lattice_constant = "4.33"; // Ångstroms
+        int best = 5; // fits written as .dat files
+
+        SaxsData data = SaxsDataReader.read(data_file);
+        System.out.println("\nData points:  \t" + data.size() + " (λ = " + data.parameter("Lam") + " Å)");
+
+        // The shape's file name is unused: candidates are built in memory only
+        List<SaxsScreen.Result> results = new SaxsScreen(data)
+                .addSizes("SphereAu", r -> new Sphere(
+                        r, units, lattice_type, precision, atoms, lattice_constant, "SphereAu", "SphereAu", "SphereAu"
+                ), radii)
+                .addSizes("CubeAu", r -> new Cube(
+                        r, units, lattice_type, precision, atoms, lattice_constant, "CubeAu", "CubeAu", "CubeAu"
+                ), radii)
+                .addSizes("OctahedronAu", r -> new Octahedron(
+                        r, units, lattice_type, precision, atoms, lattice_constant,
+                        "OctahedronAu", "OctahedronAu", "OctahedronAu"
+                ), radii)
+                .addSizes("CuboctahedronAu", r -> new Cuboctahedron(
+                        r, units, lattice_type, precision, atoms, lattice_constant,
+                        "CuboctahedronAu", "CuboctahedronAu", "CuboctahedronAu"
+                ), radii)
+                .addSizes("OctagonalPrismAu", r -> new PrismOctagonal(
+                        r, units, lattice_type, precision, atoms, lattice_constant,
+                        "OctagonalPrismAu", "OctagonalPrismAu", "OctagonalPrismAu"
+                ), radii)
+                .run();
+
+        SaxsScreenWriter.write(output, results);
+        for (int k = 0; k < Math.min(best, results.size()); k++) {
+            SaxsScreen.Result r = results.get(k);
+            SaxsProfileWriter.write(r.getLabel() + "_" + output, r.getFit());
+            System.out.printf("%d. %-24s Chi^2 = %.4f%n", k + 1, r.getLabel(), r.getFit().getChiSquared());
+        }
+
+        System.out.println(
+                "\nExec time:   \t" + FormatExecTime.formatDuration(
+                        (System.nanoTime() - start_time)
+                ) + "\n"
+        );
+    }
+}
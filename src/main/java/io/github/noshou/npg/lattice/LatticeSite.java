@@ -0,0 +1,137 @@
+package io.github.noshou.npg.lattice;
+
+import org.apfloat.Apfloat;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Utility class for packing lattice sites into primitive {@code long} keys.
+ * <p> {@link FccCoordinates} walks a grid of pseudo-fractional coordinates with a step of 0.5,
+ * so every emitted site is an integer multiple of half a lattice constant. This class stores the
+ * three half-step indices {@code (i, j, k)} (i.e. {@code 2 * x_frac}) in a single {@code long},
+ * using {@value #BITS} bits per axis with an offset of {@value #OFFSET}, which is enough for
+ * particles far beyond a micrometre in diameter.
+ * <p> Packed sites allow downstream stages (sorting, analysis, scattering) to work on primitive
+ * arrays instead of boxed {@code Triad<Apfloat>} instances.
+ */
+public final class LatticeSite {
+
+    /** Number of bits used per axis. */
+    public static final int BITS = 21;
+
+    /** Offset added to each signed half-step index so that it is stored as an unsigned value. */
+    public static final int OFFSET = 1 << (BITS - 1);
+
+    /** Mask selecting one axis of a packed site. */
+    private static final long MASK = (1L << BITS) - 1;
+
+    private LatticeSite() {
+        throw new AssertionError("Utility class should not be instantiated!");
+    }
+
+    /**
+     * Packs three signed half-step indices into a single key.
+     * @param i half-step index along x
+     * @param j half-step index along y
+     * @param k half-step index along z
+     * @return the packed site
+     * @throws IllegalArgumentException if any index is out of the representable range
+     */
+    @Contract(pure = true)
+    public static long pack(int i, int j, int k) {
+        if (
+                    i < -OFFSET || i >= OFFSET
+                ||  j < -OFFSET || j >= OFFSET
+                ||  k < -OFFSET || k >= OFFSET
+        ) {
+            throw new IllegalArgumentException("Half-step index out of range: (" + i + ", " + j + ", " + k + ")");
+        }
+        return ((long) (i + OFFSET))
+                | ((long) (j + OFFSET) << BITS)
+                | ((long) (k + OFFSET) << (2 * BITS));
+    }
+
+    /**
+     * Packs a pseudo-fractional coordinate triple produced by {@link FccCoordinates}.
+     * @param x_frac pseudo-fractional x coordinate (multiple of 0.5), must not be null
+     * @param y_frac pseudo-fractional y coordinate (multiple of 0.5), must not be null
+     * @param z_frac pseudo-fractional z coordinate (multiple of 0.5), must not be null
+     * @return the packed site
+     */
+    @Contract(pure = true)
+    public static long pack(@NotNull Apfloat x_frac, @NotNull Apfloat y_frac, @NotNull Apfloat z_frac) {
+        return pack(halfSteps(x_frac), halfSteps(y_frac), halfSteps(z_frac));
+    }
+
+    /**
+     * Converts a pseudo-fractional coordinate into its half-step index.
+     * @param frac pseudo-fractional coordinate (multiple of 0.5), must not be null
+     * @return {@code 2 * frac} as an integer
+     */
+    @Contract(pure = true)
+    public static int halfSteps(@NotNull Apfloat frac) {
+        return frac.multiply(new Apfloat(2)).intValue();
+    }
+
+    /** @return half-step index along x of a packed site */
+    @Contract(pure = true)
+    public static int i(long site) {
+        return (int) (site & MASK) - OFFSET;
+    }
+
+    /** @return half-step index along y of a packed site */
+    @Contract(pure = true)
+    public static int j(long site) {
+        return (int) ((site >>> BITS) & MASK) - OFFSET;
+    }
+
+    /** @return half-step index along z of a packed site */
+    @Contract(pure = true)
+    public static int k(long site) {
+        return (int) ((site >>> (2 * BITS)) & MASK) - OFFSET;
+    }
+
+    /**
+     * Returns the squared distance of a packed site from the origin in units of (a/2)².
+     * @param site the packed site
+     * @return i² + j² + k² (exact)
+     */
+    @Contract(pure = true)
+    public static long radiusSquared(long site) {
+        long i = i(site);
+        long j = j(site);
+        long k = k(site);
+        return i * i + j * j + k * k;
+    }
+
+    /**
+     * Returns the position of the FCC basis atom occupying a half-step site, matching
+     * the ordering used by {@link FccUnitCell}: 0 → (0, 0, 0), 1 → (½, ½, 0),
+     * 2 → (½, 0, ½), 3 → (0, ½, ½).
+     * @param site the packed site
+     * @return the basis index, or -1 if the site is not an FCC lattice point
+     */
+    @Contract(pure = true)
+    public static int fccBasisIndex(long site) {
+        int pi = i(site) & 1;
+        int pj = j(site) & 1;
+        int pk = k(site) & 1;
+        if (pi == 0 && pj == 0 && pk == 0) return 0;
+        if (pi == 1 && pj == 1 && pk == 0) return 1;
+        if (pi == 1 && pj == 0 && pk == 1) return 2;
+        if (pi == 0 && pj == 1 && pk == 1) return 3;
+        return -1;
+    }
+
+    /**
+     * Recreates the pseudo-fractional coordinate of one axis of a packed site.
+     * <p> Like the coordinates emitted by {@link FccCoordinates}, the result has infinite precision,
+     * so that it can be passed straight to {@link UnitCell#getLatticePoint(Apfloat, Apfloat, Apfloat)}.
+     * @param half_steps the half-step index
+     * @return {@code half_steps / 2} as an exact Apfloat
+     */
+    @Contract(pure = true)
+    public static @NotNull Apfloat toFractional(int half_steps) {
+        return new Apfloat(half_steps).multiply(new Apfloat("0.5", Apfloat.INFINITE));
+    }
+}
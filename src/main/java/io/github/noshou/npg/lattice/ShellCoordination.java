@@ -0,0 +1,174 @@
+package io.github.noshou.npg.lattice;
+
+import io.github.noshou.npg.nputil.Workers;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Average coordination numbers of the first neighbour shells of an FCC particle, as used in EXAFS fitting.
+ * <p> Shell {@code s} of an FCC site holds the lattice sites at squared distance {@code 2s} in half steps:
+ * {@code a/√2} (12 sites), {@code a} (6), {@code a·√(3/2)} (24) and {@code a·√2} (12) for shells 1 to 4. The
+ * average coordination number {@code N_s} is the number of occupied shell sites summed over all atoms, divided by
+ * the number of atoms. Sites are looked up in an occupancy bitset at fixed integer offsets (see
+ * {@link SiteCoordination}), so the result is exact and costs {@code O(N)}; atoms are split over worker threads.
+ */
+public final class ShellCoordination {
+
+    /** Number of shells. */
+    public static final int SHELLS = 4;
+
+    /** Half-step offsets of every shell. */
+    private static final int[][][] OFFSETS = shellOffsets();
+
+    private final long atoms;
+    private final long[] pairs;
+
+    private ShellCoordination(long atoms, long @NotNull [] pairs) {
+        this.atoms = atoms;
+        this.pairs = pairs;
+    }
+
+    /**
+     * Computes the shell coordination of a set of sites using all available processors.
+     * @param sites packed half-step sites of distinct FCC lattice points, non-null
+     * @param size  number of sites to use from the start of {@code sites}
+     * @return the shell coordination
+     * @throws IllegalArgumentException if the bounding box of the sites is too large for a bitset
+     * @throws RuntimeException         if a worker thread fails or the analysis is interrupted
+     */
+    public static @NotNull ShellCoordination compute(long @NotNull [] sites, int size) {
+        return compute(sites, size, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Computes the shell coordination of a set of sites.
+     * @param sites   packed half-step sites of distinct FCC lattice points, non-null
+     * @param size    number of sites to use from the start of {@code sites}
+     * @param threads number of worker threads, positive
+     * @return the shell coordination
+     * @throws IllegalArgumentException if the bounding box of the sites is too large for a bitset
+     * @throws RuntimeException         if a worker thread fails or the analysis is interrupted
+     */
+    public static @NotNull ShellCoordination compute(long @NotNull [] sites, int size, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be positive!");
+        }
+        if (size < 0 || size > sites.length) {
+            throw new IllegalArgumentException("Site count out of range: " + size + "!");
+        }
+        long[] pairs = new long[SHELLS];
+        if (size == 0) {
+            return new ShellCoordination(0, pairs);
+        }
+        SiteGrid grid = new SiteGrid(sites, size, 2);
+        long[][] offset = new long[SHELLS][];
+        for (int s = 0; s < SHELLS; s++) {
+            offset[s] = new long[OFFSETS[s].length];
+            for (int o = 0; o < OFFSETS[s].length; o++) {
+                offset[s][o] = grid.offset(OFFSETS[s][o][0], OFFSETS[s][o][1], OFFSETS[s][o][2]);
+            }
+        }
+
+        int workers = Math.max(1, Math.min(threads, size));
+        List<Callable<long[]>> tasks = new ArrayList<>(workers);
+        for (int w = 0; w < workers; w++) {
+            int from = (int) ((long) size * w / workers), to = (int) ((long) size * (w + 1) / workers);
+            tasks.add(() -> {
+                long[] local = new long[SHELLS];
+                for (int a = from; a < to; a++) {
+                    long c = grid.cell(a);
+                    for (int s = 0; s < SHELLS; s++) {
+                        for (long d : offset[s]) {
+                            if (grid.isSet(c + d)) {
+                                local[s]++;
+                            }
+                        }
+                    }
+                }
+                return local;
+            });
+        }
+        for (long[] local : Workers.run(tasks, workers, "Shell coordination")) {
+            for (int s = 0; s < SHELLS; s++) {
+                pairs[s] += local[s];
+            }
+        }
+        return new ShellCoordination(size, pairs);
+    }
+
+    /** Enumerates the FCC lattice vectors of squared half-step length 2, 4, 6 and 8. */
+    private static int @NotNull [] @NotNull [] @NotNull [] shellOffsets() {
+        List<List<int[]>> shells = new ArrayList<>();
+        for (int s = 0; s < SHELLS; s++) {
+            shells.add(new ArrayList<>());
+        }
+        for (int di = -2; di <= 2; di++) {
+            for (int dj = -2; dj <= 2; dj++) {
+                for (int dk = -2; dk <= 2; dk++) {
+                    int m = di * di + dj * dj + dk * dk;
+                    if (((di + dj + dk) & 1) == 0 && m > 0 && m <= 2 * SHELLS && m % 2 == 0) {
+                        shells.get(m / 2 - 1).add(new int[]{di, dj, dk});
+                    }
+                }
+            }
+        }
+        int[][][] offsets = new int[SHELLS][][];
+        for (int s = 0; s < SHELLS; s++) {
+            offsets[s] = shells.get(s).toArray(new int[0][]);
+        }
+        return offsets;
+    }
+
+    /**
+     * @param shell the shell, {@code 1} to {@value #SHELLS}
+     * @return number of sites in that shell of a bulk FCC site
+     */
+    @Contract(pure = true)
+    public static int bulkCoordination(int shell) {
+        return OFFSETS[checkShell(shell) - 1].length;
+    }
+
+    /**
+     * @param shell            the shell, {@code 1} to {@value #SHELLS}
+     * @param lattice_constant the lattice constant in Å
+     * @return the radius of the shell in Å
+     */
+    @Contract(pure = true)
+    public static double distance(int shell, double lattice_constant) {
+        return lattice_constant / 2 * Math.sqrt(2.0 * checkShell(shell));
+    }
+
+    /** @return number of atoms */
+    @Contract(pure = true)
+    public long atomCount() {
+        return this.atoms;
+    }
+
+    /**
+     * @param shell the shell, {@code 1} to {@value #SHELLS}
+     * @return number of ordered atom pairs in that shell, i.e. twice the number of distinct pairs
+     */
+    @Contract(pure = true)
+    public long pairs(int shell) {
+        return this.pairs[checkShell(shell) - 1];
+    }
+
+    /**
+     * @param shell the shell, {@code 1} to {@value #SHELLS}
+     * @return the average coordination number {@code N_s} of that shell, or {@code NaN} for an empty particle
+     */
+    @Contract(pure = true)
+    public double average(int shell) {
+        return this.atoms == 0 ? Double.NaN : this.pairs(shell) / (double) this.atoms;
+    }
+
+    private static int checkShell(int shell) {
+        if (shell < 1 || shell > SHELLS) {
+            throw new IllegalArgumentException("Shell must lie within 1 to " + SHELLS + "!");
+        }
+        return shell;
+    }
+}
@@ -0,0 +1,223 @@
+package io.github.noshou.npg.lattice;
+
+import io.github.noshou.npg.nputil.Workers;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Coordination numbers of the atoms of an FCC particle, computed on packed half-step sites (see {@link LatticeSite}).
+ * <p> The coordination number {@code CN} of an atom is the number of its 12 nearest-neighbour sites
+ * {@code (±1, ±1, 0)} (and permutations, in half steps) that are occupied. The generalised coordination number
+ * (Calle-Vallejo et al., 2014) weights every neighbour by its own coordination,
+ * {@code GCN = Σ_neighbours CN / 12}; it separates e.g. atoms in the middle of (111) facets (7.5) from those of
+ * (100) facets (6.67) and from atoms near edges, and is stored exactly as the integer {@code 12 · GCN}.
+ * <p> Occupancy is held in a bitset over the bounding box of the particle, padded by one site, so every neighbour
+ * lookup is one bit test at a fixed index offset: {@code O(N)} work and about one bit per half-step cell of the box
+ * (roughly 4 bits per atom for a compact particle), with no boxed keys. Neighbours of neighbours are looked up
+ * again rather than stored. Atoms are split over worker threads.
+ */
+public final class SiteCoordination {
+
+    /** Number of nearest neighbours of an FCC site. */
+    public static final int FCC_NEIGHBOURS = 12;
+
+    /** Nearest-neighbour offsets in half steps. */
+    static final int[][] OFFSETS = {
+            {1, 1, 0}, {1, -1, 0}, {-1, 1, 0}, {-1, -1, 0},
+            {1, 0, 1}, {1, 0, -1}, {-1, 0, 1}, {-1, 0, -1},
+            {0, 1, 1}, {0, 1, -1}, {0, -1, 1}, {0, -1, -1}
+    };
+
+    /**
+     * Classes of sites by coordination number, with the usual cuts for particles bounded by (111) and (100) facets.
+     * They depend on the coordination alone, so e.g. the edges of a cube bounded by (100) planes (CN 5) count as
+     * vertices; the histograms carry the full information.
+     */
+    public enum SiteClass {
+
+        /** Corner and kink sites, {@code CN ≤ 6}. */
+        VERTEX,
+
+        /** Edge sites, {@code CN = 7}. */
+        EDGE,
+
+        /** Facet and step sites, {@code 8 ≤ CN ≤ 11}; (100) facets have 8, (111) facets 9. */
+        FACET,
+
+        /** Fully coordinated sites, {@code CN = 12}. */
+        BULK;
+
+        /**
+         * @param coordination a coordination number
+         * @return its class
+         */
+        @Contract(pure = true)
+        public static @NotNull SiteClass of(int coordination) {
+            if (coordination <= 6) {
+                return VERTEX;
+            }
+            if (coordination == 7) {
+                return EDGE;
+            }
+            return coordination < FCC_NEIGHBOURS ? FACET : BULK;
+        }
+    }
+
+    private final byte[] coordination;
+    private final short[] generalized;
+
+    private SiteCoordination(byte @NotNull [] coordination, short @NotNull [] generalized) {
+        this.coordination = coordination;
+        this.generalized = generalized;
+    }
+
+    /**
+     * Computes the coordination of every site using all available processors.
+     * @param sites packed half-step sites of distinct FCC lattice points, non-null
+     * @param size  number of sites to use from the start of {@code sites}
+     * @return the coordination numbers, in site order
+     * @throws IllegalArgumentException if the bounding box of the sites is too large for a bitset
+     * @throws RuntimeException         if a worker thread fails or the analysis is interrupted
+     */
+    public static @NotNull SiteCoordination compute(long @NotNull [] sites, int size) {
+        return compute(sites, size, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Computes the coordination of every site.
+     * @param sites   packed half-step sites of distinct FCC lattice points, non-null
+     * @param size    number of sites to use from the start of {@code sites}
+     * @param threads number of worker threads, positive
+     * @return the coordination numbers, in site order
+     * @throws IllegalArgumentException if the bounding box of the sites is too large for a bitset
+     * @throws RuntimeException         if a worker thread fails or the analysis is interrupted
+     */
+    public static @NotNull SiteCoordination compute(long @NotNull [] sites, int size, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be positive!");
+        }
+        if (size < 0 || size > sites.length) {
+            throw new IllegalArgumentException("Site count out of range: " + size + "!");
+        }
+        byte[] coordination = new byte[size];
+        short[] generalized = new short[size];
+        if (size == 0) {
+            return new SiteCoordination(coordination, generalized);
+        }
+        SiteGrid grid = new SiteGrid(sites, size, 1);
+        long[] offset = new long[OFFSETS.length];
+        for (int o = 0; o < OFFSETS.length; o++) {
+            offset[o] = grid.offset(OFFSETS[o][0], OFFSETS[o][1], OFFSETS[o][2]);
+        }
+
+        int workers = Math.max(1, Math.min(threads, size));
+        List<Callable<Void>> tasks = new ArrayList<>(workers);
+        for (int w = 0; w < workers; w++) {
+            int from = (int) ((long) size * w / workers), to = (int) ((long) size * (w + 1) / workers);
+            tasks.add(() -> {
+                for (int a = from; a < to; a++) {
+                    int cn = 0, sum = 0;
+                    for (long d : offset) {
+                        long c = grid.cell(a) + d;
+                        if (grid.isSet(c)) {
+                            cn++;
+
+                            // an occupied neighbour is an atom, so its neighbours lie inside the padded box too
+                            for (long e : offset) {
+                                if (grid.isSet(c + e)) {
+                                    sum++;
+                                }
+                            }
+                        }
+                    }
+                    coordination[a] = (byte) cn;
+                    generalized[a] = (short) sum;
+                }
+                return null;
+            });
+        }
+        Workers.run(tasks, workers, "Coordination analysis");
+        return new SiteCoordination(coordination, generalized);
+    }
+
+    /** @return number of sites */
+    @Contract(pure = true)
+    public int size() {
+        return this.coordination.length;
+    }
+
+    /**
+     * @param n site index
+     * @return its coordination number, {@code 0} to {@value #FCC_NEIGHBOURS}
+     */
+    @Contract(pure = true)
+    public int coordination(int n) {
+        return this.coordination[n];
+    }
+
+    /**
+     * @param n site index
+     * @return {@code 12 ·} its generalised coordination number, an integer from {@code 0} to {@code 144}
+     */
+    @Contract(pure = true)
+    public int generalizedSum(int n) {
+        return this.generalized[n];
+    }
+
+    /**
+     * @param n site index
+     * @return its generalised coordination number
+     */
+    @Contract(pure = true)
+    public double generalized(int n) {
+        return this.generalized[n] / (double) FCC_NEIGHBOURS;
+    }
+
+    /**
+     * @param n site index
+     * @return its class
+     */
+    @Contract(pure = true)
+    public @NotNull SiteClass siteClass(int n) {
+        return SiteClass.of(this.coordination[n]);
+    }
+
+    /** @return number of sites with coordination number {@code c}, at index {@code c} */
+    @Contract(pure = true)
+    public long @NotNull [] coordinationHistogram() {
+        long[] histogram = new long[FCC_NEIGHBOURS + 1];
+        for (byte c : this.coordination) {
+            histogram[c]++;
+        }
+        return histogram;
+    }
+
+    /** @return number of sites with generalised coordination number {@code g / 12}, at index {@code g} */
+    @Contract(pure = true)
+    public long @NotNull [] generalizedHistogram() {
+        long[] histogram = new long[FCC_NEIGHBOURS * FCC_NEIGHBOURS + 1];
+        for (short g : this.generalized) {
+            histogram[g]++;
+        }
+        return histogram;
+    }
+
+    /**
+     * @param site_class the class, non-null
+     * @return number of sites of that class
+     */
+    @Contract(pure = true)
+    public long count(@NotNull SiteClass site_class) {
+        long[] histogram = this.coordinationHistogram();
+        long count = 0;
+        for (int c = 0; c < histogram.length; c++) {
+            if (SiteClass.of(c) == site_class) {
+                count += histogram[c];
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,71 @@
+package io.github.noshou.npg.lattice;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Occupancy bitset of a set of packed half-step sites over their bounding box, padded on every side, with x
+ * running fastest. A neighbour at a fixed half-step offset is a fixed offset in cell index, so every neighbour
+ * lookup within the padding is a single bit test.
+ */
+final class SiteGrid {
+
+    private final long ni, nj;
+    private final long[] occupied;
+    private final long[] cell;
+
+    /**
+     * Marks the sites.
+     * @param sites packed half-step sites, non-null
+     * @param size  number of sites to use from the start of {@code sites}, positive
+     * @param pad   padding in half steps, non-negative
+     * @throws IllegalArgumentException if the padded box is too large for a bitset
+     */
+    SiteGrid(long @NotNull [] sites, int size, int pad) {
+        int i_min = Integer.MAX_VALUE, j_min = Integer.MAX_VALUE, k_min = Integer.MAX_VALUE;
+        int i_max = Integer.MIN_VALUE, j_max = Integer.MIN_VALUE, k_max = Integer.MIN_VALUE;
+        for (int a = 0; a < size; a++) {
+            long s = sites[a];
+            i_min = Math.min(i_min, LatticeSite.i(s));
+            i_max = Math.max(i_max, LatticeSite.i(s));
+            j_min = Math.min(j_min, LatticeSite.j(s));
+            j_max = Math.max(j_max, LatticeSite.j(s));
+            k_min = Math.min(k_min, LatticeSite.k(s));
+            k_max = Math.max(k_max, LatticeSite.k(s));
+        }
+        this.ni = i_max - i_min + 1L + 2L * pad;
+        this.nj = j_max - j_min + 1L + 2L * pad;
+        long nk = k_max - k_min + 1L + 2L * pad;
+        long words = (this.ni * this.nj * nk + 63) / 64;
+        if (words > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Particle is too large for a site bitset!");
+        }
+        this.occupied = new long[(int) words];
+        this.cell = new long[size];
+        for (int a = 0; a < size; a++) {
+            long s = sites[a];
+            long c = ((LatticeSite.k(s) - k_min + (long) pad) * this.nj + (LatticeSite.j(s) - j_min + (long) pad))
+                    * this.ni + (LatticeSite.i(s) - i_min + (long) pad);
+            this.occupied[(int) (c >>> 6)] |= 1L << c;
+            this.cell[a] = c;
+        }
+    }
+
+    /** @return the cell index offset of a half-step offset */
+    @Contract(pure = true)
+    long offset(int di, int dj, int dk) {
+        return (dk * this.nj + dj) * this.ni + di;
+    }
+
+    /** @return the cell of site {@code a} */
+    @Contract(pure = true)
+    long cell(int a) {
+        return this.cell[a];
+    }
+
+    /** @return whether cell {@code c} is occupied */
+    @Contract(pure = true)
+    boolean isSet(long c) {
+        return (this.occupied[(int) (c >>> 6)] & (1L << c)) != 0;
+    }
+}
@@ -0,0 +1,172 @@
+package io.github.noshou.npg.lattice;
+
+import io.github.noshou.npg.nputil.Workers;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * The surface sites of an FCC particle and their local outward normals, computed on packed half-step sites
+ * (see {@link LatticeSite}).
+ * <p> A site is on the surface if any of its 12 nearest-neighbour sites is empty, i.e. its coordination number
+ * (see {@link SiteCoordination}) is below 12. Its local normal is the sum of the directions to its empty neighbour
+ * sites, normalised: on a flat facet this is the facet normal (e.g. {@code [111]} from the three missing
+ * neighbours of a (111) site, {@code [100]} from the four of a (100) site), and on edges and vertices it bisects
+ * the adjoining facets. Where the empty neighbours cancel out, the normal is the radial direction of the site, or
+ * zero at the origin. Occupancy is looked up in a bitset, so the work is {@code O(N)}; atoms are split over worker
+ * threads and the result lists the surface sites in site order.
+ */
+public final class SurfaceSites {
+
+    private final int[] index;
+    private final byte[] coordination;
+    private final double[] normal;
+
+    private SurfaceSites(int @NotNull [] index, byte @NotNull [] coordination, double @NotNull [] normal) {
+        this.index = index;
+        this.coordination = coordination;
+        this.normal = normal;
+    }
+
+    /**
+     * Finds the surface sites using all available processors.
+     * @param sites packed half-step sites of distinct FCC lattice points, non-null
+     * @param size  number of sites to use from the start of {@code sites}
+     * @return the surface sites, in site order
+     * @throws IllegalArgumentException if the bounding box of the sites is too large for a bitset
+     * @throws RuntimeException         if a worker thread fails or the analysis is interrupted
+     */
+    public static @NotNull SurfaceSites compute(long @NotNull [] sites, int size) {
+        return compute(sites, size, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Finds the surface sites.
+     * @param sites   packed half-step sites of distinct FCC lattice points, non-null
+     * @param size    number of sites to use from the start of {@code sites}
+     * @param threads number of worker threads, positive
+     * @return the surface sites, in site order
+     * @throws IllegalArgumentException if the bounding box of the sites is too large for a bitset
+     * @throws RuntimeException         if a worker thread fails or the analysis is interrupted
+     */
+    public static @NotNull SurfaceSites compute(long @NotNull [] sites, int size, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be positive!");
+        }
+        if (size < 0 || size > sites.length) {
+            throw new IllegalArgumentException("Site count out of range: " + size + "!");
+        }
+        if (size == 0) {
+            return new SurfaceSites(new int[0], new byte[0], new double[0]);
+        }
+        int[][] offsets = SiteCoordination.OFFSETS;
+        SiteGrid grid = new SiteGrid(sites, size, 1);
+        long[] offset = new long[offsets.length];
+        for (int o = 0; o < offsets.length; o++) {
+            offset[o] = grid.offset(offsets[o][0], offsets[o][1], offsets[o][2]);
+        }
+
+        int workers = Math.max(1, Math.min(threads, size));
+        List<Callable<SurfaceSites>> tasks = new ArrayList<>(workers);
+        for (int w = 0; w < workers; w++) {
+            int from = (int) ((long) size * w / workers), to = (int) ((long) size * (w + 1) / workers);
+            tasks.add(() -> {
+                int count = 0;
+                int[] index = new int[64];
+                byte[] coordination = new byte[64];
+                double[] normal = new double[3 * 64];
+                for (int a = from; a < to; a++) {
+                    long c = grid.cell(a);
+                    int cn = 0, ni = 0, nj = 0, nk = 0;
+                    for (int o = 0; o < offset.length; o++) {
+                        if (grid.isSet(c + offset[o])) {
+                            cn++;
+                        } else {
+                            ni += offsets[o][0];
+                            nj += offsets[o][1];
+                            nk += offsets[o][2];
+                        }
+                    }
+                    if (cn == offsets.length) {
+                        continue;
+                    }
+                    if (ni == 0 && nj == 0 && nk == 0) {
+                        ni = LatticeSite.i(sites[a]);
+                        nj = LatticeSite.j(sites[a]);
+                        nk = LatticeSite.k(sites[a]);
+                    }
+                    if (count == index.length) {
+                        index = Arrays.copyOf(index, 2 * count);
+                        coordination = Arrays.copyOf(coordination, 2 * count);
+                        normal = Arrays.copyOf(normal, 6 * count);
+                    }
+                    double length = Math.sqrt((double) ni * ni + (double) nj * nj + (double) nk * nk);
+                    index[count] = a;
+                    coordination[count] = (byte) cn;
+                    normal[3 * count] = length == 0 ? 0 : ni / length;
+                    normal[3 * count + 1] = length == 0 ? 0 : nj / length;
+                    normal[3 * count + 2] = length == 0 ? 0 : nk / length;
+                    count++;
+                }
+                return new SurfaceSites(
+                        Arrays.copyOf(index, count),
+                        Arrays.copyOf(coordination, count),
+                        Arrays.copyOf(normal, 3 * count)
+                );
+            });
+        }
+        List<SurfaceSites> parts = Workers.run(tasks, workers, "Surface site detection");
+        int total = 0;
+        for (SurfaceSites part : parts) {
+            total += part.count();
+        }
+        int[] index = new int[total];
+        byte[] coordination = new byte[total];
+        double[] normal = new double[3 * total];
+        int at = 0;
+        for (SurfaceSites part : parts) {
+            System.arraycopy(part.index, 0, index, at, part.count());
+            System.arraycopy(part.coordination, 0, coordination, at, part.count());
+            System.arraycopy(part.normal, 0, normal, 3 * at, 3 * part.count());
+            at += part.count();
+        }
+        return new SurfaceSites(index, coordination, normal);
+    }
+
+    /** @return number of surface sites */
+    @Contract(pure = true)
+    public int count() {
+        return this.index.length;
+    }
+
+    /**
+     * @param s surface site number, {@code 0 ≤ s < count()}
+     * @return its index in the site array
+     */
+    @Contract(pure = true)
+    public int index(int s) {
+        return this.index[s];
+    }
+
+    /**
+     * @param s surface site number, {@code 0 ≤ s < count()}
+     * @return its coordination number, below 12
+     */
+    @Contract(pure = true)
+    public int coordination(int s) {
+        return this.coordination[s];
+    }
+
+    /**
+     * @param s    surface site number, {@code 0 ≤ s < count()}
+     * @param axis 0 for x, 1 for y, 2 for z
+     * @return one component of its unit outward normal (all zero only for an isolated site at the origin)
+     */
+    @Contract(pure = true)
+    public double normal(int s, int axis) {
+        return this.normal[3 * s + axis];
+    }
+}
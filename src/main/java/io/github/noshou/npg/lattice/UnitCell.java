@@ -49,6 +49,12 @@ public abstract class UnitCell {
     @Contract(pure = true)
     public @NotNull String getSpaceGroup() { return space_group; }
 
+    /** @return the basis atoms of this unit cell (read-only by convention) */
+    @Contract(pure = true)
+    public @NotNull Polyad<Atom> getBasis() {
+        return this.basis;
+    }
+
     /** @return Atom.Atom based on index */
     @Contract(pure = true)
     protected @NotNull Atom getAtom(int idx) {
@@ -0,0 +1,94 @@
+package io.github.noshou.npg.nparchive;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Index entry of one particle in a {@link ParticleArchive}.
+ * <p> Entries are keyed by {@code structure_index}; the shape name and radius allow lookups across a
+ * size-by-shape library. The remaining fields locate and verify the compressed coordinate block.
+ */
+public final class ArchiveEntry {
+
+    private final @NotNull String structure_index;
+    private final @NotNull String shape;
+    private final double radius;
+    private final long offset;
+    private final int compressed_length;
+    private final int raw_length;
+    private final int atom_count;
+    private final int crc;
+
+    ArchiveEntry(
+            @NotNull String structure_index,
+            @NotNull String shape,
+            double radius,
+            long offset,
+            int compressed_length,
+            int raw_length,
+            int atom_count,
+            int crc
+    ) {
+        this.structure_index = structure_index;
+        this.shape = shape;
+        this.radius = radius;
+        this.offset = offset;
+        this.compressed_length = compressed_length;
+        this.raw_length = raw_length;
+        this.atom_count = atom_count;
+        this.crc = crc;
+    }
+
+    /** @return unique identifier of the particle */
+    @Contract(pure = true)
+    public @NotNull String getStructureIndex() {
+        return this.structure_index;
+    }
+
+    /** @return shape (structure) name, e.g. {@code Sphere} */
+    @Contract(pure = true)
+    public @NotNull String getShape() {
+        return this.shape;
+    }
+
+    /** @return radius in Å */
+    @Contract(pure = true)
+    public double getRadius() {
+        return this.radius;
+    }
+
+    /** @return number of atoms */
+    @Contract(pure = true)
+    public int getAtomCount() {
+        return this.atom_count;
+    }
+
+    /** @return file offset of the compressed block */
+    @Contract(pure = true)
+    public long getOffset() {
+        return this.offset;
+    }
+
+    /** @return size of the compressed block in bytes */
+    @Contract(pure = true)
+    public int getCompressedLength() {
+        return this.compressed_length;
+    }
+
+    /** @return size of the uncompressed block in bytes */
+    @Contract(pure = true)
+    public int getRawLength() {
+        return this.raw_length;
+    }
+
+    /** @return CRC-32 of the compressed block */
+    @Contract(pure = true)
+    public int getCrc() {
+        return this.crc;
+    }
+
+    @Override
+    public @NotNull String toString() {
+        return structure_index + " (" + shape + ", r=" + radius + " Å, " + atom_count + " atoms)";
+    }
+}
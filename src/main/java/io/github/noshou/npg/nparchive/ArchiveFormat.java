@@ -0,0 +1,259 @@
+package io.github.noshou.npg.nparchive;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * On-disk layout of a particle archive (all values big-endian).
+ * <pre>
+ *   header   "NPGA", int32 version, 8 reserved bytes
+ *   blocks   compressed particle blocks (see {@link BlockCodec}), back to back
+ *   footer   per entry: structure_index, shape (int16 length + UTF-8 each), float64 radius,
+ *            int64 offset, int32 compressed length, int32 raw length, int32 atom count, int32 CRC-32
+ *   trailer  int64 footer offset, int32 footer length, int32 entry count, int32 footer CRC-32,
+ *            int32 version, "NPGAIDX1"
+ * </pre>
+ * The archive is append-only: new blocks, a new footer and a new trailer are written after the previous trailer,
+ * which stays valid until the new one is complete. The last {@value #TRAILER_BYTES} bytes of the file are
+ * therefore always the current trailer, unless an append was interrupted; in that case the last valid trailer
+ * is found by scanning backward (see {@link #findTrailer(FileChannel)}).
+ */
+final class ArchiveFormat {
+
+    /** Header magic. */
+    static final byte[] HEADER_MAGIC = {'N', 'P', 'G', 'A'};
+
+    /** Trailer magic. */
+    static final byte[] TRAILER_MAGIC = {'N', 'P', 'G', 'A', 'I', 'D', 'X', '1'};
+
+    /** Format version. */
+    static final int VERSION = 1;
+
+    /** Header size in bytes. */
+    static final int HEADER_BYTES = 16;
+
+    /** Trailer size in bytes. */
+    static final int TRAILER_BYTES = 32;
+
+    /** Chunk size of the backward trailer scan. */
+    private static final int SCAN_CHUNK = 1 << 20;
+
+    private ArchiveFormat() {
+        throw new AssertionError("Utility class should not be instantiated!");
+    }
+
+    /** A validated trailer and the index it points to. */
+    static final class Index {
+
+        /** File offset just past the trailer. */
+        final long end;
+
+        /** Entries keyed by structure index, in insertion order. */
+        final @NotNull LinkedHashMap<String, ArchiveEntry> entries;
+
+        Index(long end, @NotNull LinkedHashMap<String, ArchiveEntry> entries) {
+            this.end = end;
+            this.entries = entries;
+        }
+    }
+
+    /** @return a fresh archive header */
+    static @NotNull ByteBuffer header() {
+        ByteBuffer b = ByteBuffer.allocate(HEADER_BYTES);
+        b.put(HEADER_MAGIC).putInt(VERSION).putLong(0).flip();
+        return b;
+    }
+
+    /**
+     * Checks the archive header.
+     * @throws IOException if the file is not a particle archive of a supported version
+     */
+    static void checkHeader(@NotNull FileChannel channel) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(HEADER_BYTES);
+        readFully(channel, b, 0);
+        byte[] magic = new byte[HEADER_MAGIC.length];
+        b.flip().get(magic);
+        if (!Arrays.equals(magic, HEADER_MAGIC)) {
+            throw new IOException("Not a particle archive!");
+        }
+        int version = b.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported particle archive version " + version + "!");
+        }
+    }
+
+    /**
+     * Serializes an index as footer plus trailer.
+     * @param entries      the entries, non-null
+     * @param footer_offset the file offset at which the footer will be written
+     * @return footer and trailer, ready to be written
+     */
+    static @NotNull ByteBuffer footer(@NotNull Collection<ArchiveEntry> entries, long footer_offset) {
+        int length = 0;
+        for (ArchiveEntry e : entries) {
+            length += 2 + utf8(e.getStructureIndex()).length + 2 + utf8(e.getShape()).length + 8 + 8 + 4 * 4;
+        }
+        ByteBuffer b = ByteBuffer.allocate(length + TRAILER_BYTES);
+        for (ArchiveEntry e : entries) {
+            putString(b, e.getStructureIndex());
+            putString(b, e.getShape());
+            b.putDouble(e.getRadius());
+            b.putLong(e.getOffset());
+            b.putInt(e.getCompressedLength());
+            b.putInt(e.getRawLength());
+            b.putInt(e.getAtomCount());
+            b.putInt(e.getCrc());
+        }
+        CRC32 crc = new CRC32();
+        crc.update(b.array(), 0, length);
+        b.putLong(footer_offset);
+        b.putInt(length);
+        b.putInt(entries.size());
+        b.putInt((int) crc.getValue());
+        b.putInt(VERSION);
+        b.put(TRAILER_MAGIC);
+        return b.flip();
+    }
+
+    /**
+     * Finds the last valid trailer, scanning backward from the end of the file if the file does not end with one.
+     * @return the index of the last valid trailer, or null if there is none
+     * @throws IOException if reading fails
+     */
+    static @Nullable Index findTrailer(@NotNull FileChannel channel) throws IOException {
+        long size = channel.size();
+        Index index = tryIndex(channel, size - TRAILER_BYTES);
+        if (index != null) {
+            return index;
+        }
+
+        // scan backward for the trailer magic; chunks overlap by the magic length
+        int overlap = TRAILER_MAGIC.length - 1;
+        long chunk_end = size;
+        ByteBuffer chunk = ByteBuffer.allocate(SCAN_CHUNK + overlap);
+        while (chunk_end > HEADER_BYTES) {
+            long chunk_start = Math.max(HEADER_BYTES, chunk_end - SCAN_CHUNK);
+            chunk.clear().limit((int) (Math.min(size, chunk_end + overlap) - chunk_start));
+            readFully(channel, chunk, chunk_start);
+            byte[] a = chunk.array();
+            for (int p = chunk.limit() - TRAILER_MAGIC.length; p >= 0; p--) {
+                if (a[p] == TRAILER_MAGIC[0] && Arrays.equals(
+                        a, p, p + TRAILER_MAGIC.length, TRAILER_MAGIC, 0, TRAILER_MAGIC.length)) {
+                    long trailer_start = chunk_start + p + TRAILER_MAGIC.length - TRAILER_BYTES;
+                    index = tryIndex(channel, trailer_start);
+                    if (index != null) {
+                        return index;
+                    }
+                }
+            }
+            chunk_end = chunk_start;
+        }
+        return null;
+    }
+
+    /**
+     * Reads and validates the trailer at {@code trailer_start} and the footer it points to.
+     * @return the index, or null if there is no valid trailer at that position
+     */
+    private static @Nullable Index tryIndex(@NotNull FileChannel channel, long trailer_start) throws IOException {
+        if (trailer_start < HEADER_BYTES) {
+            return null;
+        }
+        ByteBuffer t = ByteBuffer.allocate(TRAILER_BYTES);
+        readFully(channel, t, trailer_start);
+        t.flip();
+        long footer_offset = t.getLong();
+        int footer_length = t.getInt();
+        int count = t.getInt();
+        int footer_crc = t.getInt();
+        int version = t.getInt();
+        byte[] magic = new byte[TRAILER_MAGIC.length];
+        t.get(magic);
+        if (
+                    !Arrays.equals(magic, TRAILER_MAGIC)
+                ||  version != VERSION
+                ||  footer_length < 0
+                ||  count < 0
+                ||  footer_offset < HEADER_BYTES
+                ||  footer_offset + footer_length != trailer_start
+        ) {
+            return null;
+        }
+        ByteBuffer f = ByteBuffer.allocate(footer_length);
+        readFully(channel, f, footer_offset);
+        CRC32 crc = new CRC32();
+        crc.update(f.array(), 0, footer_length);
+        if ((int) crc.getValue() != footer_crc) {
+            return null;
+        }
+        f.flip();
+        LinkedHashMap<String, ArchiveEntry> entries = new LinkedHashMap<>();
+        try {
+            for (int n = 0; n < count; n++) {
+                ArchiveEntry e = new ArchiveEntry(
+                        getString(f),
+                        getString(f),
+                        f.getDouble(),
+                        f.getLong(),
+                        f.getInt(),
+                        f.getInt(),
+                        f.getInt(),
+                        f.getInt()
+                );
+                entries.put(e.getStructureIndex(), e);
+            }
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+        return new Index(trailer_start + TRAILER_BYTES, entries);
+    }
+
+    /**
+     * Reads exactly {@code dst.remaining()} bytes at {@code position}.
+     * @throws IOException if the file ends first
+     */
+    static void readFully(@NotNull FileChannel channel, @NotNull ByteBuffer dst, long position) throws IOException {
+        while (dst.hasRemaining()) {
+            int r = channel.read(dst, position);
+            if (r < 0) {
+                throw new IOException("Unexpected end of particle archive!");
+            }
+            position += r;
+        }
+    }
+
+    /** Writes all of {@code src} at {@code position}. */
+    static void writeFully(@NotNull FileChannel channel, @NotNull ByteBuffer src, long position) throws IOException {
+        while (src.hasRemaining()) {
+            position += channel.write(src, position);
+        }
+    }
+
+    private static byte @NotNull [] utf8(@NotNull String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void putString(@NotNull ByteBuffer b, @NotNull String s) {
+        byte[] utf = utf8(s);
+        if (utf.length > 0xFFFF) {
+            throw new IllegalArgumentException("String too long for the archive index: " + s);
+        }
+        b.putShort((short) utf.length);
+        b.put(utf);
+    }
+
+    private static @NotNull String getString(@NotNull ByteBuffer b) {
+        byte[] utf = new byte[b.getShort() & 0xFFFF];
+        b.get(utf);
+        return new String(utf, StandardCharsets.UTF_8);
+    }
+}
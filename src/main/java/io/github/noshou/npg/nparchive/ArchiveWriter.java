@@ -0,0 +1,272 @@
+package io.github.noshou.npg.nparchive;
+
+import io.github.noshou.npg.npreader.ParticleStore;
+import io.github.noshou.npg.npwriter.AtomSink;
+import io.github.noshou.npg.npwriter.ParticleStoreSink;
+import io.github.noshou.npg.shapes.Shape;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Creates or extends a particle archive (see {@link ParticleArchive}).
+ * <p> Particles are appended as compressed blocks; the index is rewritten after the last block by
+ * {@link #flush()} and {@link #close()}. Nothing already in the file is ever overwritten, so the previous index stays
+ * valid until the new one is complete. If a previous append was interrupted, opening the archive discards the
+ * incomplete tail and continues from the last complete index.
+ * <p> Adding a particle whose {@code structure_index} is already present replaces its index entry; the old block
+ * remains in the file as unreferenced space.
+ * <p> {@link #sink()} lets a {@link Shape} build straight into the archive alongside its other outputs.
+ * All methods are thread-safe.
+ */
+public final class ArchiveWriter implements Closeable {
+
+    /** Channel to the archive. */
+    private final @NotNull FileChannel channel;
+
+    /** Entries keyed by structure index, in insertion order. */
+    private final @NotNull LinkedHashMap<String, ArchiveEntry> entries;
+
+    /** File offset at which the next block is written. */
+    private long position;
+
+    /** Whether entries were added since the index was last written. */
+    private boolean is_dirty = false;
+
+    private ArchiveWriter(
+            @NotNull FileChannel channel,
+            @NotNull LinkedHashMap<String, ArchiveEntry> entries,
+            long position
+    ) {
+        this.channel = channel;
+        this.entries = entries;
+        this.position = position;
+    }
+
+    /**
+     * Opens an archive for appending, creating it if it does not exist.
+     * @param path the archive file, non-null
+     * @return the writer
+     * @throws IOException if the file cannot be opened or is not a valid archive
+     */
+    public static @NotNull ArchiveWriter open(@NotNull Path path) throws IOException {
+        FileChannel channel = FileChannel.open(
+                path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE
+        );
+        try {
+            if (channel.size() == 0) {
+                ArchiveFormat.writeFully(channel, ArchiveFormat.header(), 0);
+                ArchiveWriter writer = new ArchiveWriter(channel, new LinkedHashMap<>(), ArchiveFormat.HEADER_BYTES);
+                writer.is_dirty = true;
+                return writer;
+            }
+            ArchiveFormat.checkHeader(channel);
+            ArchiveFormat.Index index = ArchiveFormat.findTrailer(channel);
+            if (index == null) {
+                throw new IOException("Particle archive has no valid index!");
+            }
+
+            // discard the tail of an interrupted append
+            channel.truncate(index.end);
+            return new ArchiveWriter(channel, index.entries, index.end);
+        } catch (IOException | RuntimeException e) {
+            try {
+                channel.close();
+            } catch (IOException ex2) {
+                e.addSuppressed(ex2);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Appends a particle.
+     * @param structure_index unique identifier of the particle, non-null
+     * @param shape           shape (structure) name, non-null
+     * @param radius          radius in Å
+     * @param store           the particle, non-null
+     * @return the new index entry
+     * @throws IOException if writing fails
+     */
+    public synchronized @NotNull ArchiveEntry add(
+            @NotNull String structure_index,
+            @NotNull String shape,
+            double radius,
+            @NotNull ParticleStore store
+    ) throws IOException {
+        ArchiveEntry entry = this.writeBlock(structure_index, shape, radius, store);
+        this.register(entry);
+        return entry;
+    }
+
+    /**
+     * Returns a sink that stores a build in this archive under the shape's structure index, structure name and
+     * radius. The block is written when the build prepares its outputs and indexed when it commits.
+     * <p> Each build needs its own sink.
+     * @return a new sink
+     */
+    @Contract("-> new")
+    public @NotNull AtomSink sink() {
+        return new ArchiveSink();
+    }
+
+    /** @return number of particles indexed so far */
+    @Contract(pure = true)
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * Writes the index after the last block and forces the file to storage.
+     * @throws IOException if writing fails
+     */
+    public synchronized void flush() throws IOException {
+        if (!this.is_dirty) {
+            return;
+        }
+        ByteBuffer footer = ArchiveFormat.footer(this.entries.values(), this.position);
+        int length = footer.remaining();
+        ArchiveFormat.writeFully(this.channel, footer, this.position);
+        this.channel.force(true);
+        this.position += length;
+        this.is_dirty = false;
+    }
+
+    /**
+     * Writes the index and closes the archive.
+     * @throws IOException if writing or closing fails
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            this.flush();
+        } finally {
+            this.channel.close();
+        }
+    }
+
+    /**
+     * Compresses and writes a block without indexing it.
+     * @return the entry describing the block
+     */
+    private synchronized @NotNull ArchiveEntry writeBlock(
+            @NotNull String structure_index,
+            @NotNull String shape,
+            double radius,
+            @NotNull ParticleStore store
+    ) throws IOException {
+        BlockCodec.Encoded block = BlockCodec.encode(store);
+        CRC32 crc = new CRC32();
+        crc.update(block.data);
+        long offset = this.position;
+        ArchiveFormat.writeFully(this.channel, ByteBuffer.wrap(block.data), offset);
+        this.position += block.data.length;
+        return new ArchiveEntry(
+                structure_index,
+                shape,
+                radius,
+                offset,
+                block.data.length,
+                block.raw_length,
+                store.size(),
+                (int) crc.getValue()
+        );
+    }
+
+    /**
+     * Adds a written block to the index.
+     * @return the entry it replaced, or null
+     */
+    private synchronized @Nullable ArchiveEntry register(@NotNull ArchiveEntry entry) {
+        this.is_dirty = true;
+        return this.entries.put(entry.getStructureIndex(), entry);
+    }
+
+    /** Removes a registered block from the index again, restoring the entry it replaced. */
+    private synchronized void unregister(@NotNull ArchiveEntry entry, @Nullable ArchiveEntry replaced) {
+        if (replaced == null) {
+            this.entries.remove(entry.getStructureIndex(), entry);
+        } else {
+            this.entries.replace(entry.getStructureIndex(), entry, replaced);
+        }
+        this.is_dirty = true;
+    }
+
+    /**
+     * Sink collecting one build and storing it in the archive.
+     */
+    private final class ArchiveSink extends ParticleStoreSink {
+
+        private @Nullable Shape shape = null;
+        private @Nullable ArchiveEntry pending = null;
+        private @Nullable ArchiveEntry committed = null;
+        private @Nullable ArchiveEntry replaced = null;
+
+        @Override
+        public void begin(@NotNull Shape shape) {
+            super.begin(shape);
+            this.shape = shape;
+            this.pending = null;
+            this.committed = null;
+            this.replaced = null;
+        }
+
+        /** Builds the particle and writes its block; the block is not indexed yet. */
+        @Override
+        public void prepare() throws IOException {
+            if (this.pending != null) {
+                return;
+            }
+            if (this.shape == null) {
+                throw new IllegalStateException("Sink has not been started!");
+            }
+            super.prepare();
+            super.commit();
+            this.pending = ArchiveWriter.this.writeBlock(
+                    this.shape.getStructureIndex(),
+                    this.shape.getStructureName(),
+                    this.shape.getRadius().doubleValue(),
+                    this.getStore()
+            );
+        }
+
+        /** Indexes the written block. */
+        @Override
+        public void commit() throws IOException {
+            this.prepare();
+            if (this.committed == null) {
+                this.replaced = ArchiveWriter.this.register(this.pending);
+                this.committed = this.pending;
+            }
+        }
+
+        /** Removes the block from the index again; it stays as unreferenced space. */
+        @Override
+        public void rollback() {
+            if (this.committed != null) {
+                ArchiveWriter.this.unregister(this.committed, this.replaced);
+                this.committed = null;
+                this.replaced = null;
+            }
+        }
+
+        /** Drops the build; a block already written stays as unreferenced space. */
+        @Override
+        public void abort() {
+            super.abort();
+            this.pending = null;
+            this.shape = null;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package io.github.noshou.npg.nparchive;
+
+import io.github.noshou.npg.lattice.LatticeSite;
+import io.github.noshou.npg.npreader.ParticleStore;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Encodes the atoms of one particle into a compressed archive block.
+ * <p> Uncompressed layout (big-endian):
+ * <pre>
+ *   int32    atom count N
+ *   byte     flags (1 = lattice coordinates, 2 = ids are 1..N)
+ *   float64  lattice constant in Å (NaN if unknown)
+ *   int16    number of elements E, then E symbols (int16 length + UTF-8 bytes)
+ *   byte[N]  element index per atom
+ *   ids      (unless flag 2) N zig-zag varint deltas
+ *   coords   flag 1: 3N zig-zag varint deltas of the half-step indices (i, j, k) of consecutive atoms
+ *            else:   3N float64 (x, y, z) in Å
+ * </pre>
+ * Particles generated by {@code Shape} are on the half-step grid and emitted in sweep or space-filling-curve
+ * order, so consecutive atoms are close and most deltas fit in a single byte before deflation.
+ */
+final class BlockCodec {
+
+    /** Flag: coordinates are stored as half-step indices. */
+    private static final int LATTICE = 1;
+
+    /** Flag: ids are 1..N and not stored. */
+    private static final int SEQUENTIAL_IDS = 2;
+
+    private BlockCodec() {
+        throw new AssertionError("Utility class should not be instantiated!");
+    }
+
+    /** A compressed block. */
+    static final class Encoded {
+
+        /** The compressed bytes. */
+        final byte @NotNull [] data;
+
+        /** The uncompressed size. */
+        final int raw_length;
+
+        Encoded(byte @NotNull [] data, int raw_length) {
+            this.data = data;
+            this.raw_length = raw_length;
+        }
+    }
+
+    /**
+     * Encodes and compresses a particle.
+     * @param store the particle, non-null
+     * @return the compressed block
+     */
+    static @NotNull Encoded encode(@NotNull ParticleStore store) {
+        int n = store.size();
+        boolean lattice = store.hasSites();
+        boolean sequential = true;
+        for (int a = 0; a < n && sequential; a++) {
+            sequential = store.id(a) == a + 1;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(lattice ? 4 * n + 64 : 25 * n + 64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(n);
+            out.writeByte((lattice ? LATTICE : 0) | (sequential ? SEQUENTIAL_IDS : 0));
+            out.writeDouble(store.getLatticeConstant());
+            out.writeShort(store.getElements().size());
+            for (String symbol : store.getElements()) {
+                byte[] utf = symbol.getBytes(StandardCharsets.UTF_8);
+                out.writeShort(utf.length);
+                out.write(utf);
+            }
+            for (int a = 0; a < n; a++) {
+                out.writeByte(store.elementIndex(a));
+            }
+            if (!sequential) {
+                int prev = 0;
+                for (int a = 0; a < n; a++) {
+                    writeVarint(out, store.id(a) - prev);
+                    prev = store.id(a);
+                }
+            }
+            if (lattice) {
+                int pi = 0, pj = 0, pk = 0;
+                for (int a = 0; a < n; a++) {
+                    long site = store.site(a);
+                    int i = LatticeSite.i(site), j = LatticeSite.j(site), k = LatticeSite.k(site);
+                    writeVarint(out, i - pi);
+                    writeVarint(out, j - pj);
+                    writeVarint(out, k - pk);
+                    pi = i;
+                    pj = j;
+                    pk = k;
+                }
+            } else {
+                for (int a = 0; a < n; a++) {
+                    out.writeDouble(store.x(a));
+                    out.writeDouble(store.y(a));
+                    out.writeDouble(store.z(a));
+                }
+            }
+        } catch (IOException e) {
+
+            // ByteArrayOutputStream never throws
+            throw new AssertionError(e);
+        }
+        byte[] raw = bytes.toByteArray();
+
+        Deflater deflater = new Deflater();
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 2 + 64);
+            byte[] chunk = new byte[1 << 16];
+            while (!deflater.finished()) {
+                compressed.write(chunk, 0, deflater.deflate(chunk));
+            }
+            return new Encoded(compressed.toByteArray(), raw.length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Decompresses and decodes a block.
+     * @param compressed      the compressed bytes (e.g. a mapped region of the archive), non-null
+     * @param raw_length      the uncompressed size recorded in the index
+     * @param structure_index the identifier to attach to the store, may be null
+     * @return the particle
+     * @throws IOException if the block is corrupt
+     */
+    static @NotNull ParticleStore decode(
+            @NotNull ByteBuffer compressed,
+            int raw_length,
+            @Nullable String structure_index
+    ) throws IOException {
+        byte[] raw = new byte[raw_length];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            int read = 0;
+            while (read < raw_length && !inflater.finished()) {
+                int r = inflater.inflate(raw, read, raw_length - read);
+                if (r == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                read += r;
+            }
+            if (read != raw_length || !inflater.finished()) {
+                throw new IOException("Corrupt archive block (length mismatch)!");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt archive block!", e);
+        } finally {
+            inflater.end();
+        }
+
+        try {
+            ByteBuffer in = ByteBuffer.wrap(raw);
+            int n = in.getInt();
+            int flags = in.get();
+            double lattice_constant = in.getDouble();
+            ParticleStore.Builder builder = new ParticleStore.Builder(n)
+                    .structureIndex(structure_index)
+                    .latticeConstant(lattice_constant);
+            int element_count = in.getShort();
+            int[] element_map = new int[element_count];
+            for (int e = 0; e < element_count; e++) {
+                byte[] utf = new byte[in.getShort() & 0xFFFF];
+                in.get(utf);
+                element_map[e] = builder.elementIndex(new String(utf, StandardCharsets.UTF_8));
+            }
+            int elements_at = in.position();
+            in.position(elements_at + n);
+
+            int[] ids = null;
+            if ((flags & SEQUENTIAL_IDS) == 0) {
+                ids = new int[n];
+                int prev = 0;
+                for (int a = 0; a < n; a++) {
+                    prev += readVarint(in);
+                    ids[a] = prev;
+                }
+            }
+            double half_step = lattice_constant / 2;
+            int pi = 0, pj = 0, pk = 0;
+            for (int a = 0; a < n; a++) {
+                double x, y, z;
+                if ((flags & LATTICE) != 0) {
+                    pi += readVarint(in);
+                    pj += readVarint(in);
+                    pk += readVarint(in);
+                    x = pi * half_step;
+                    y = pj * half_step;
+                    z = pk * half_step;
+                } else {
+                    x = in.getDouble();
+                    y = in.getDouble();
+                    z = in.getDouble();
+                }
+                builder.add(ids == null ? a + 1 : ids[a], element_map[raw[elements_at + a] & 0xFF], x, y, z);
+            }
+            return builder.build();
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Corrupt archive block!", e);
+        }
+    }
+
+    /** Writes a zig-zag encoded LEB128 varint. */
+    private static void writeVarint(@NotNull DataOutputStream out, int v) throws IOException {
+        int z = (v << 1) ^ (v >> 31);
+        while ((z & ~0x7F) != 0) {
+            out.writeByte((z & 0x7F) | 0x80);
+            z >>>= 7;
+        }
+        out.writeByte(z);
+    }
+
+    /** Reads a zig-zag encoded LEB128 varint. */
+    private static int readVarint(@NotNull ByteBuffer in) throws IOException {
+        int z = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.get();
+            z |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (z >>> 1) ^ -(z & 1);
+            }
+        }
+        throw new IOException("Corrupt archive block (varint too long)!");
+    }
+}
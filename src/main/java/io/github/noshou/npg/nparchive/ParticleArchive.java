@@ -0,0 +1,183 @@
+package io.github.noshou.npg.nparchive;
+
+import io.github.noshou.npg.npreader.ParticleStore;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Read-only view of a particle archive: many particles in one file, each stored as a compressed coordinate block
+ * and indexed by {@code structure_index}, shape and radius.
+ * <p> Opening an archive reads only its footer index, the last complete one if an append was interrupted.
+ * Reading a particle memory-maps its block directly from the index entry, so access time does not depend on the
+ * number of particles or the size of the file. Archives are written and extended with {@link ArchiveWriter}; see
+ * {@link ArchiveFormat} for the layout.
+ * <p> Instances are safe for concurrent reads.
+ */
+public final class ParticleArchive implements Closeable {
+
+    /** Channel to the archive. */
+    private final @NotNull FileChannel channel;
+
+    /** Entries keyed by structure index, in insertion order. */
+    private final @NotNull Map<String, ArchiveEntry> entries;
+
+    /** Entries per shape, keyed by radius. */
+    private final @NotNull Map<String, NavigableMap<Double, ArchiveEntry>> by_shape = new HashMap<>();
+
+    private ParticleArchive(@NotNull FileChannel channel, @NotNull LinkedHashMap<String, ArchiveEntry> entries) {
+        this.channel = channel;
+        this.entries = Collections.unmodifiableMap(entries);
+        for (ArchiveEntry e : entries.values()) {
+            this.by_shape.computeIfAbsent(e.getShape(), s -> new TreeMap<>()).put(e.getRadius(), e);
+        }
+    }
+
+    /**
+     * Opens an archive for reading.
+     * @param path the archive file, non-null
+     * @return the archive
+     * @throws IOException if the file cannot be opened or is not a valid archive
+     */
+    public static @NotNull ParticleArchive open(@NotNull Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ArchiveFormat.checkHeader(channel);
+
+            // an interrupted append leaves the last committed index in place; the writer discards the tail
+            ArchiveFormat.Index index = ArchiveFormat.findTrailer(channel);
+            if (index == null) {
+                throw new IOException("Particle archive has no valid index!");
+            }
+            return new ParticleArchive(channel, index.entries);
+        } catch (IOException | RuntimeException e) {
+            try {
+                channel.close();
+            } catch (IOException ex2) {
+                e.addSuppressed(ex2);
+            }
+            throw e;
+        }
+    }
+
+    /** @return number of particles */
+    @Contract(pure = true)
+    public int size() {
+        return this.entries.size();
+    }
+
+    /** @return all entries in insertion order (read-only) */
+    @Contract(pure = true)
+    public @NotNull Collection<ArchiveEntry> entries() {
+        return this.entries.values();
+    }
+
+    /**
+     * Looks up a particle by its structure index.
+     * @param structure_index the identifier, non-null
+     * @return the entry, or null if absent
+     */
+    @Contract(pure = true)
+    public @Nullable ArchiveEntry get(@NotNull String structure_index) {
+        return this.entries.get(structure_index);
+    }
+
+    /** @return the names of all shapes in the archive (read-only) */
+    @Contract(pure = true)
+    public @NotNull Set<String> shapes() {
+        return Collections.unmodifiableSet(this.by_shape.keySet());
+    }
+
+    /**
+     * Returns all sizes of a shape. If several particles share shape and radius, the one added last is listed.
+     * @param shape the shape name, non-null
+     * @return entries keyed by radius in Å (read-only, empty if the shape is absent)
+     */
+    @Contract(pure = true)
+    public @NotNull NavigableMap<Double, ArchiveEntry> sizes(@NotNull String shape) {
+        NavigableMap<Double, ArchiveEntry> sizes = this.by_shape.get(shape);
+        return sizes == null ? Collections.emptyNavigableMap() : Collections.unmodifiableNavigableMap(sizes);
+    }
+
+    /**
+     * Looks up the particle of a shape whose radius is closest to {@code radius}.
+     * @param shape  the shape name, non-null
+     * @param radius the radius in Å
+     * @return the closest entry, or null if the shape is absent
+     */
+    @Contract(pure = true)
+    public @Nullable ArchiveEntry nearest(@NotNull String shape, double radius) {
+        NavigableMap<Double, ArchiveEntry> sizes = this.by_shape.get(shape);
+        if (sizes == null) {
+            return null;
+        }
+        Map.Entry<Double, ArchiveEntry> below = sizes.floorEntry(radius);
+        Map.Entry<Double, ArchiveEntry> above = sizes.ceilingEntry(radius);
+        if (below == null) {
+            return above.getValue();
+        }
+        if (above == null || radius - below.getKey() <= above.getKey() - radius) {
+            return below.getValue();
+        }
+        return above.getValue();
+    }
+
+    /**
+     * Reads a particle by its structure index.
+     * @param structure_index the identifier, non-null
+     * @return the particle
+     * @throws IllegalArgumentException if the archive has no such particle
+     * @throws IOException              if the block cannot be read or is corrupt
+     */
+    public @NotNull ParticleStore read(@NotNull String structure_index) throws IOException {
+        ArchiveEntry e = this.get(structure_index);
+        if (e == null) {
+            throw new IllegalArgumentException("No particle " + structure_index + " in archive!");
+        }
+        return this.read(e);
+    }
+
+    /**
+     * Reads a particle.
+     * @param entry an entry of this archive, non-null
+     * @return the particle
+     * @throws IOException if the block cannot be read or is corrupt
+     */
+    public @NotNull ParticleStore read(@NotNull ArchiveEntry entry) throws IOException {
+        MappedByteBuffer block = this.channel.map(
+                FileChannel.MapMode.READ_ONLY,
+                entry.getOffset(),
+                entry.getCompressedLength()
+        );
+        CRC32 crc = new CRC32();
+        crc.update(block.duplicate());
+        if ((int) crc.getValue() != entry.getCrc()) {
+            throw new IOException("Checksum mismatch in archive block of " + entry.getStructureIndex() + "!");
+        }
+        return BlockCodec.decode(block, entry.getRawLength(), entry.getStructureIndex());
+    }
+
+    /**
+     * Closes the archive. Particles already read remain valid.
+     * @throws IOException if the channel cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+}
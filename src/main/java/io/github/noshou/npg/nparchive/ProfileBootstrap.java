@@ -0,0 +1,302 @@
+package io.github.noshou.npg.nparchive;
+
+import io.github.noshou.npg.npsaxs.SaxsData;
+import io.github.noshou.npg.nputil.Workers;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bootstrap uncertainties of a library fit: radius, scale and offset of a {@link ProfileMatch}.
+ * <p> Every replicate draws a new data set, fits the matched profile to it in closed form and refines the radius
+ * within the size series ({@link ProfileLibrary#refine(ProfileMatch, SaxsData, boolean)}); the spread of the
+ * refitted parameters over the replicates estimates their uncertainty. Profiles are read from the library's
+ * mapping, so a replicate costs a few dozen closed-form fits and no profile is ever recomputed.
+ * <p> Replicates are spread over worker threads. Replicate {@code r} always draws from the {@code r}-th stream split
+ * off a {@link SplittableRandom} seeded with {@link #seed(long)}, so results do not depend on the number of threads
+ * or on scheduling.
+ */
+public final class ProfileBootstrap {
+
+    /** How replicate data sets are drawn. */
+    public enum Resampling {
+
+        /** Points {@code (q, y_obs, y_sig)} are drawn with replacement; a point drawn {@code c} times enters the
+         *  fit with weight {@code c}. */
+        CASES,
+
+        /** Normalised residuals of the fit are drawn with replacement and added back onto the fitted curve. */
+        RESIDUALS,
+
+        /** Gaussian noise of standard deviation {@code y_sig} is added onto the fitted curve. */
+        PARAMETRIC
+    }
+
+    /** Bootstrapped parameters. */
+    public enum Parameter {
+
+        /** Radius in Å. */
+        RADIUS,
+
+        /** Scale of the profile. */
+        SCALE,
+
+        /** Constant offset. */
+        OFFSET
+    }
+
+    private final @NotNull ProfileLibrary library;
+    private final @NotNull SaxsData data;
+    private final boolean with_offset;
+    private final int threads;
+    private int replicates = 200;
+    private long seed = 0;
+    private @NotNull Resampling resampling = Resampling.CASES;
+
+    /**
+     * Constructs a bootstrap using all available processors.
+     * @param library     the library the match was made with, non-null
+     * @param data        the measurement, non-null
+     * @param with_offset whether the fit has a constant offset
+     */
+    public ProfileBootstrap(@NotNull ProfileLibrary library, @NotNull SaxsData data, boolean with_offset) {
+        this(library, data, with_offset, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a bootstrap with 200 replicates of {@link Resampling#CASES} and seed 0.
+     * @param library     the library the match was made with, non-null
+     * @param data        the measurement, non-null
+     * @param with_offset whether the fit has a constant offset
+     * @param threads     number of worker threads, positive
+     */
+    public ProfileBootstrap(@NotNull ProfileLibrary library, @NotNull SaxsData data, boolean with_offset, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be positive!");
+        }
+        this.library = library;
+        this.data = data;
+        this.with_offset = with_offset;
+        this.threads = threads;
+    }
+
+    /**
+     * Sets the number of replicates.
+     * @param replicates the number, at least 2
+     * @return this bootstrap
+     */
+    @Contract(value = "_ -> this", mutates = "this")
+    public @NotNull ProfileBootstrap replicates(int replicates) {
+        if (replicates < 2) {
+            throw new IllegalArgumentException("Bootstrap needs at least two replicates!");
+        }
+        this.replicates = replicates;
+        return this;
+    }
+
+    /**
+     * Sets the seed of the random streams.
+     * @param seed the seed
+     * @return this bootstrap
+     */
+    @Contract(value = "_ -> this", mutates = "this")
+    public @NotNull ProfileBootstrap seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Sets how replicates are drawn.
+     * @param resampling the scheme, non-null
+     * @return this bootstrap
+     */
+    @Contract(value = "_ -> this", mutates = "this")
+    public @NotNull ProfileBootstrap resampling(@NotNull Resampling resampling) {
+        this.resampling = resampling;
+        return this;
+    }
+
+    /**
+     * Runs the bootstrap around a match.
+     * @param match a match of the library against the measurement, typically refined; non-null
+     * @return the parameters of every replicate
+     * @throws IllegalArgumentException if the radius lies outside its size series or the library grid does not cover
+     *                                  the data
+     * @throws RuntimeException         if a worker thread fails or the bootstrap is interrupted
+     */
+    public @NotNull Result run(@NotNull ProfileMatch match) {
+        int n = this.data.size();
+        double[] fitted = this.library.fitted(match, this.data), residual = new double[n];
+        for (int k = 0; k < n; k++) {
+            residual[k] = (this.data.intensity(k) - fitted[k]) / this.data.sigma(k);
+        }
+
+        // one stream per replicate, split off in replicate order before any work is handed out
+        SplittableRandom root = new SplittableRandom(this.seed);
+        SplittableRandom[] streams = new SplittableRandom[this.replicates];
+        for (int r = 0; r < streams.length; r++) {
+            streams[r] = root.split();
+        }
+        double[][] values = new double[Parameter.values().length][this.replicates];
+        AtomicInteger next = new AtomicInteger();
+        int workers = Math.max(1, Math.min(this.threads, this.replicates));
+        List<Callable<Void>> tasks = new ArrayList<>(workers);
+        for (int w = 0; w < workers; w++) {
+            tasks.add(() -> {
+                int r;
+                while ((r = next.getAndIncrement()) < this.replicates) {
+                    SaxsData replicate = this.draw(streams[r], fitted, residual);
+
+                    // refit at the library entry, whose neighbours bracket the radius of an interpolated match too
+                    ProfileMatch start = this.library.fit(replicate, List.of(match.getEntry()), this.with_offset)
+                            .get(0);
+                    ProfileMatch refined = this.library.refine(start, replicate, this.with_offset);
+                    values[Parameter.RADIUS.ordinal()][r] = refined.getRadius();
+                    values[Parameter.SCALE.ordinal()][r] = refined.getScale();
+                    values[Parameter.OFFSET.ordinal()][r] = refined.getOffset();
+                }
+                return null;
+            });
+        }
+        Workers.run(tasks, workers, "Bootstrap");
+        return new Result(match, values);
+    }
+
+    /** @return a replicate data set drawn from {@code random} */
+    private @NotNull SaxsData draw(
+            @NotNull SplittableRandom random,
+            double @NotNull [] fitted,
+            double @NotNull [] residual
+    ) {
+        int n = this.data.size();
+        double[] q = new double[n], y = new double[n], sigma = new double[n];
+        if (this.resampling == Resampling.CASES) {
+            int[] count = new int[n];
+            for (int k = 0; k < n; k++) {
+                count[random.nextInt(n)]++;
+            }
+
+            // weight c as σ/√c; points never drawn drop out
+            int m = 0;
+            for (int k = 0; k < n; k++) {
+                if (count[k] > 0) {
+                    q[m] = this.data.q(k);
+                    y[m] = this.data.intensity(k);
+                    sigma[m] = this.data.sigma(k) / Math.sqrt(count[k]);
+                    m++;
+                }
+            }
+            return new SaxsData(Arrays.copyOf(q, m), Arrays.copyOf(y, m), Arrays.copyOf(sigma, m),
+                    this.data.getParameters());
+        }
+        for (int k = 0; k < n; k++) {
+            q[k] = this.data.q(k);
+            sigma[k] = this.data.sigma(k);
+            double noise = this.resampling == Resampling.RESIDUALS ? residual[random.nextInt(n)] : gaussian(random);
+            y[k] = fitted[k] + noise * sigma[k];
+        }
+        return new SaxsData(q, y, sigma, this.data.getParameters());
+    }
+
+    /** @return a standard normal deviate (Marsaglia polar method) */
+    private static double gaussian(@NotNull SplittableRandom random) {
+        double u, v, s;
+        do {
+            u = 2 * random.nextDouble() - 1;
+            v = 2 * random.nextDouble() - 1;
+            s = u * u + v * v;
+        } while (s >= 1 || s == 0);
+        return u * Math.sqrt(-2 * Math.log(s) / s);
+    }
+
+    /**
+     * Bootstrapped parameters of a match.
+     */
+    public static final class Result {
+
+        private final @NotNull ProfileMatch match;
+        private final double[][] values;
+
+        private Result(@NotNull ProfileMatch match, double @NotNull [] @NotNull [] values) {
+            this.match = match;
+            this.values = values;
+        }
+
+        /** @return the match the bootstrap was run around */
+        @Contract(pure = true)
+        public @NotNull ProfileMatch getMatch() {
+            return this.match;
+        }
+
+        /** @return number of replicates */
+        @Contract(pure = true)
+        public int size() {
+            return this.values[0].length;
+        }
+
+        /**
+         * @param parameter the parameter, non-null
+         * @return its value in every replicate, in replicate order
+         */
+        @Contract(pure = true)
+        public double @NotNull [] values(@NotNull Parameter parameter) {
+            return this.values[parameter.ordinal()].clone();
+        }
+
+        /**
+         * @param parameter the parameter, non-null
+         * @return its mean over the replicates
+         */
+        @Contract(pure = true)
+        public double mean(@NotNull Parameter parameter) {
+            double sum = 0;
+            for (double v : this.values[parameter.ordinal()]) {
+                sum += v;
+            }
+            return sum / this.size();
+        }
+
+        /**
+         * @param parameter the parameter, non-null
+         * @return its sample standard deviation over the replicates
+         */
+        @Contract(pure = true)
+        public double standardDeviation(@NotNull Parameter parameter) {
+            double mean = this.mean(parameter), sum = 0;
+            for (double v : this.values[parameter.ordinal()]) {
+                sum += (v - mean) * (v - mean);
+            }
+            return Math.sqrt(sum / (this.size() - 1));
+        }
+
+        /**
+         * Returns a percentile confidence interval.
+         * @param parameter the parameter, non-null
+         * @param level     the confidence level, in {@code (0, 1)}
+         * @return the lower and upper bound
+         */
+        @Contract(pure = true)
+        public double @NotNull [] interval(@NotNull Parameter parameter, double level) {
+            if (!(level > 0) || !(level < 1)) {
+                throw new IllegalArgumentException("Confidence level must lie within (0, 1)!");
+            }
+            double[] sorted = this.values(parameter);
+            Arrays.sort(sorted);
+            double tail = (1 - level) / 2;
+            return new double[]{percentile(sorted, tail), percentile(sorted, 1 - tail)};
+        }
+
+        /** @return the {@code p}-quantile of sorted values, interpolated linearly */
+        private static double percentile(double @NotNull [] sorted, double p) {
+            double at = p * (sorted.length - 1);
+            int lo = (int) Math.floor(at);
+            int hi = Math.min(sorted.length - 1, lo + 1);
+            return sorted[lo] + (at - lo) * (sorted[hi] - sorted[lo]);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package io.github.noshou.npg.nparchive;
+
+import io.github.noshou.npg.atom.Atom;
+import io.github.noshou.tuple.Polyad;
+import io.github.noshou.tuple.Triad;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Index entry of one profile in a {@link ProfileLibrary}.
+ * <p> Entries are keyed by shape class, lattice constant, radius and basis (see {@link #getKey()}); profiles of
+ * the same shape, lattice constant and basis form a size series (see {@link #getFamily()}) along which a library
+ * interpolates. The offset and CRC locate and verify the intensity block.
+ */
+public final class ProfileEntry {
+
+    private final @NotNull String shape;
+    private final @NotNull String basis;
+    private final double lattice_constant;
+    private final double radius;
+    private final long offset;
+    private final long atom_count;
+    private final int crc;
+
+    ProfileEntry(
+            @NotNull String shape,
+            @NotNull String basis,
+            double lattice_constant,
+            double radius,
+            long offset,
+            long atom_count,
+            int crc
+    ) {
+        this.shape = shape;
+        this.basis = basis;
+        this.lattice_constant = lattice_constant;
+        this.radius = radius;
+        this.offset = offset;
+        this.atom_count = atom_count;
+        this.crc = crc;
+    }
+
+    /**
+     * Describes a basis for use as a library key, e.g. {@code "Au 0 0 0; Au 0.5 0.5 0; ..."}.
+     * @param basis the basis atoms, non-null
+     * @return element and fractional position of every basis atom, in basis order
+     */
+    @Contract(pure = true)
+    public static @NotNull String basisKey(@NotNull Polyad<Atom> basis) {
+        StringBuilder key = new StringBuilder();
+        for (int n = 0; n < basis.fetchSize(); n++) {
+            Atom a = basis.fetch(n);
+            Triad<String> p = a.getFractionalPosition();
+            if (n > 0) {
+                key.append("; ");
+            }
+            key.append(a.getElement()).append(' ')
+                    .append(p.fetch(0)).append(' ').append(p.fetch(1)).append(' ').append(p.fetch(2));
+        }
+        return key.toString();
+    }
+
+    /**
+     * Builds the key of a profile.
+     * @return {@code shape|lattice_constant|radius|basis}
+     */
+    @Contract(pure = true)
+    static @NotNull String key(@NotNull String shape, double lattice_constant, double radius, @NotNull String basis) {
+        return family(shape, lattice_constant, basis) + "|" + radius;
+    }
+
+    /**
+     * Builds the key of a size series.
+     * @return {@code shape|lattice_constant|basis}
+     */
+    @Contract(pure = true)
+    static @NotNull String family(@NotNull String shape, double lattice_constant, @NotNull String basis) {
+        return shape + "|" + lattice_constant + "|" + basis;
+    }
+
+    /** @return unique key of the profile: shape, lattice constant, basis and radius */
+    @Contract(pure = true)
+    public @NotNull String getKey() {
+        return key(this.shape, this.lattice_constant, this.radius, this.basis);
+    }
+
+    /** @return key of the size series this profile belongs to: shape, lattice constant and basis */
+    @Contract(pure = true)
+    public @NotNull String getFamily() {
+        return family(this.shape, this.lattice_constant, this.basis);
+    }
+
+    /** @return shape class name, e.g. {@code Sphere} */
+    @Contract(pure = true)
+    public @NotNull String getShape() {
+        return this.shape;
+    }
+
+    /** @return basis description (see {@link #basisKey(Polyad)}) */
+    @Contract(pure = true)
+    public @NotNull String getBasis() {
+        return this.basis;
+    }
+
+    /** @return lattice constant in Å */
+    @Contract(pure = true)
+    public double getLatticeConstant() {
+        return this.lattice_constant;
+    }
+
+    /** @return radius in Å */
+    @Contract(pure = true)
+    public double getRadius() {
+        return this.radius;
+    }
+
+    /** @return number of atoms of the particle */
+    @Contract(pure = true)
+    public long getAtomCount() {
+        return this.atom_count;
+    }
+
+    /** @return file offset of the intensity block */
+    @Contract(pure = true)
+    public long getOffset() {
+        return this.offset;
+    }
+
+    /** @return CRC-32 of the intensity block */
+    @Contract(pure = true)
+    public int getCrc() {
+        return this.crc;
+    }
+
+    @Override
+    public @NotNull String toString() {
+        return shape + " (a=" + lattice_constant + " Å, r=" + radius + " Å, " + atom_count + " atoms)";
+    }
+}
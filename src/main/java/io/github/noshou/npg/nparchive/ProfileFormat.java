@@ -0,0 +1,264 @@
+package io.github.noshou.npg.nparchive;
+
+import io.github.noshou.npg.npsaxs.QGrid;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * On-disk layout of a SAXS profile library (all values big-endian).
+ * <pre>
+ *   header   "NPGP", int32 version, int32 grid size n, 4 reserved bytes, n float64 q values (Å⁻¹)
+ *   blocks   n float32 intensities per profile, back to back
+ *   footer   per entry: shape, basis (int16 length + UTF-8 each), float64 lattice constant, float64 radius,
+ *            int64 offset, int64 atom count, int32 CRC-32 of the block
+ *   trailer  int64 footer offset, int32 footer length, int32 entry count, int32 footer CRC-32,
+ *            int32 version, "NPGPIDX1"
+ * </pre>
+ * Like a particle archive (see {@link ArchiveFormat}) the library is append-only: every flush writes a new footer
+ * and trailer after the new blocks, and the previous trailer stays valid until the new one is complete.
+ */
+final class ProfileFormat {
+
+    /** Header magic. */
+    static final byte[] HEADER_MAGIC = {'N', 'P', 'G', 'P'};
+
+    /** Trailer magic. */
+    static final byte[] TRAILER_MAGIC = {'N', 'P', 'G', 'P', 'I', 'D', 'X', '1'};
+
+    /** Format version. */
+    static final int VERSION = 1;
+
+    /** Fixed part of the header in bytes. */
+    static final int HEADER_BYTES = 16;
+
+    /** Trailer size in bytes. */
+    static final int TRAILER_BYTES = 32;
+
+    /** Chunk size of the backward trailer scan. */
+    private static final int SCAN_CHUNK = 1 << 20;
+
+    private ProfileFormat() {
+        throw new AssertionError("Utility class should not be instantiated!");
+    }
+
+    /** A validated trailer and the index it points to. */
+    static final class Index {
+
+        /** File offset just past the trailer. */
+        final long end;
+
+        /** Entries keyed by {@link ProfileEntry#getKey()}, in insertion order. */
+        final @NotNull LinkedHashMap<String, ProfileEntry> entries;
+
+        Index(long end, @NotNull LinkedHashMap<String, ProfileEntry> entries) {
+            this.end = end;
+            this.entries = entries;
+        }
+    }
+
+    /** @return the size of the header of a library on {@code points} q values */
+    static long headerBytes(int points) {
+        return HEADER_BYTES + 8L * points;
+    }
+
+    /** @return a fresh library header for a grid */
+    static @NotNull ByteBuffer header(@NotNull QGrid grid) {
+        ByteBuffer b = ByteBuffer.allocate((int) headerBytes(grid.size()));
+        b.put(HEADER_MAGIC).putInt(VERSION).putInt(grid.size()).putInt(0);
+        for (int k = 0; k < grid.size(); k++) {
+            b.putDouble(grid.get(k));
+        }
+        return b.flip();
+    }
+
+    /**
+     * Checks the library header and reads its grid.
+     * @return the q-grid of the library
+     * @throws IOException if the file is not a profile library of a supported version
+     */
+    static @NotNull QGrid readHeader(@NotNull FileChannel channel) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(HEADER_BYTES);
+        ArchiveFormat.readFully(channel, b, 0);
+        byte[] magic = new byte[HEADER_MAGIC.length];
+        b.flip().get(magic);
+        if (!Arrays.equals(magic, HEADER_MAGIC)) {
+            throw new IOException("Not a profile library!");
+        }
+        int version = b.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported profile library version " + version + "!");
+        }
+        int points = b.getInt();
+        if (points < 1 || headerBytes(points) > channel.size()) {
+            throw new IOException("Corrupt profile library header!");
+        }
+        ByteBuffer q = ByteBuffer.allocate(8 * points);
+        ArchiveFormat.readFully(channel, q, HEADER_BYTES);
+        q.flip();
+        double[] values = new double[points];
+        for (int k = 0; k < points; k++) {
+            values[k] = q.getDouble();
+        }
+        try {
+            return QGrid.of(values);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupt profile library grid!", e);
+        }
+    }
+
+    /**
+     * Serializes an index as footer plus trailer.
+     * @param entries       the entries, non-null
+     * @param footer_offset the file offset at which the footer will be written
+     * @return footer and trailer, ready to be written
+     */
+    static @NotNull ByteBuffer footer(@NotNull Collection<ProfileEntry> entries, long footer_offset) {
+        int length = 0;
+        for (ProfileEntry e : entries) {
+            length += 2 + utf8(e.getShape()).length + 2 + utf8(e.getBasis()).length + 8 + 8 + 8 + 8 + 4;
+        }
+        ByteBuffer b = ByteBuffer.allocate(length + TRAILER_BYTES);
+        for (ProfileEntry e : entries) {
+            putString(b, e.getShape());
+            putString(b, e.getBasis());
+            b.putDouble(e.getLatticeConstant());
+            b.putDouble(e.getRadius());
+            b.putLong(e.getOffset());
+            b.putLong(e.getAtomCount());
+            b.putInt(e.getCrc());
+        }
+        CRC32 crc = new CRC32();
+        crc.update(b.array(), 0, length);
+        b.putLong(footer_offset);
+        b.putInt(length);
+        b.putInt(entries.size());
+        b.putInt((int) crc.getValue());
+        b.putInt(VERSION);
+        b.put(TRAILER_MAGIC);
+        return b.flip();
+    }
+
+    /**
+     * Finds the last valid trailer, scanning backward from the end of the file if the file does not end with one.
+     * @return the index of the last valid trailer, or null if there is none
+     * @throws IOException if reading fails
+     */
+    static @Nullable Index findTrailer(@NotNull FileChannel channel, long data_start) throws IOException {
+        long size = channel.size();
+        Index index = tryIndex(channel, size - TRAILER_BYTES, data_start);
+        if (index != null) {
+            return index;
+        }
+
+        // scan backward for the trailer magic; chunks overlap by the magic length
+        int overlap = TRAILER_MAGIC.length - 1;
+        long chunk_end = size;
+        ByteBuffer chunk = ByteBuffer.allocate(SCAN_CHUNK + overlap);
+        while (chunk_end > data_start) {
+            long chunk_start = Math.max(data_start, chunk_end - SCAN_CHUNK);
+            chunk.clear().limit((int) (Math.min(size, chunk_end + overlap) - chunk_start));
+            ArchiveFormat.readFully(channel, chunk, chunk_start);
+            byte[] a = chunk.array();
+            for (int p = chunk.limit() - TRAILER_MAGIC.length; p >= 0; p--) {
+                if (a[p] == TRAILER_MAGIC[0] && Arrays.equals(
+                        a, p, p + TRAILER_MAGIC.length, TRAILER_MAGIC, 0, TRAILER_MAGIC.length)) {
+                    long trailer_start = chunk_start + p + TRAILER_MAGIC.length - TRAILER_BYTES;
+                    index = tryIndex(channel, trailer_start, data_start);
+                    if (index != null) {
+                        return index;
+                    }
+                }
+            }
+            chunk_end = chunk_start;
+        }
+        return null;
+    }
+
+    /**
+     * Reads and validates the trailer at {@code trailer_start} and the footer it points to.
+     * @return the index, or null if there is no valid trailer at that position
+     */
+    private static @Nullable Index tryIndex(
+            @NotNull FileChannel channel,
+            long trailer_start,
+            long data_start
+    ) throws IOException {
+        if (trailer_start < data_start) {
+            return null;
+        }
+        ByteBuffer t = ByteBuffer.allocate(TRAILER_BYTES);
+        ArchiveFormat.readFully(channel, t, trailer_start);
+        t.flip();
+        long footer_offset = t.getLong();
+        int footer_length = t.getInt();
+        int count = t.getInt();
+        int footer_crc = t.getInt();
+        int version = t.getInt();
+        byte[] magic = new byte[TRAILER_MAGIC.length];
+        t.get(magic);
+        if (
+                    !Arrays.equals(magic, TRAILER_MAGIC)
+                ||  version != VERSION
+                ||  footer_length < 0
+                ||  count < 0
+                ||  footer_offset < data_start
+                ||  footer_offset + footer_length != trailer_start
+        ) {
+            return null;
+        }
+        ByteBuffer f = ByteBuffer.allocate(footer_length);
+        ArchiveFormat.readFully(channel, f, footer_offset);
+        CRC32 crc = new CRC32();
+        crc.update(f.array(), 0, footer_length);
+        if ((int) crc.getValue() != footer_crc) {
+            return null;
+        }
+        f.flip();
+        LinkedHashMap<String, ProfileEntry> entries = new LinkedHashMap<>();
+        try {
+            for (int n = 0; n < count; n++) {
+                ProfileEntry e = new ProfileEntry(
+                        getString(f),
+                        getString(f),
+                        f.getDouble(),
+                        f.getDouble(),
+                        f.getLong(),
+                        f.getLong(),
+                        f.getInt()
+                );
+                entries.put(e.getKey(), e);
+            }
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+        return new Index(trailer_start + TRAILER_BYTES, entries);
+    }
+
+    private static byte @NotNull [] utf8(@NotNull String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void putString(@NotNull ByteBuffer b, @NotNull String s) {
+        byte[] utf = utf8(s);
+        if (utf.length > 0xFFFF) {
+            throw new IllegalArgumentException("String too long for the library index: " + s);
+        }
+        b.putShort((short) utf.length);
+        b.put(utf);
+    }
+
+    private static @NotNull String getString(@NotNull ByteBuffer b) {
+        byte[] utf = new byte[b.getShort() & 0xFFFF];
+        b.get(utf);
+        return new String(utf, StandardCharsets.UTF_8);
+    }
+}
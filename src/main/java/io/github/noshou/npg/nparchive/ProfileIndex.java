@@ -0,0 +1,525 @@
+package io.github.noshou.npg.nparchive;
+
+import io.github.noshou.npg.npsaxs.SaxsData;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Nearest-neighbour index over the profiles of a {@link ProfileLibrary}, for picking candidate shapes and sizes
+ * of a measured curve without fitting the whole library.
+ * <p> Every profile is reduced to a feature vector: the logarithm of its mean over each of a fixed set of
+ * log-spaced q bins, minus the mean of the logarithms, which makes it independent of the unknown scale. Averaging
+ * over bins rather than sampling points keeps the deep minima of form factors and the noise of measurements out
+ * of the logarithm. The feature vectors are projected onto their leading
+ * principal components, and the projections are stored in a k-d tree with a bounding box per node. A query
+ * reduces the measurement the same way and returns the exact nearest neighbours in the projected space, in time
+ * roughly logarithmic in the library size; {@link #query(SaxsData, int, boolean)} then fits only those candidates
+ * with {@link ProfileLibrary#fit(SaxsData, java.util.Collection, boolean)}.
+ * <p> The projection discards the scale but not a constant background, which bends {@code ln I} where the signal is
+ * weak; restrict the feature range to where the particle dominates, and ask for more neighbours than the number
+ * of matches wanted. The index holds the library open and is safe for concurrent queries.
+ */
+public final class ProfileIndex {
+
+    /** Default number of feature bins. */
+    public static final int DEFAULT_FEATURES = 64;
+
+    /** Default number of principal components. */
+    public static final int DEFAULT_RANK = 12;
+
+    /** Smallest bin mean relative to the largest, which keeps noisy or vanishing bins from dominating. */
+    private static final double FLOOR = 1e-9;
+
+    /** Largest number of profiles the principal components are estimated from. */
+    private static final int PCA_SAMPLE = 20000;
+
+    /** Largest number of points in a leaf of the tree. */
+    private static final int LEAF = 16;
+
+    /** Sweeps of the Jacobi eigenvalue iteration. */
+    private static final int JACOBI_SWEEPS = 50;
+
+    private final @NotNull ProfileLibrary library;
+    private final @NotNull ProfileEntry @NotNull [] entries;
+    private final double[] edges;
+    private final double[] mean;
+    private final double[][] components;
+    private final int rank;
+
+    /** Projected points, {@code rank} coordinates each, in tree order. */
+    private final double[] points;
+
+    /** Tree nodes: range of points, children (or -1 for a leaf) and bounding box. */
+    private final int[] node_lo, node_hi, node_left, node_right;
+    private final double[] box_lo, box_hi;
+
+    private ProfileIndex(
+            @NotNull ProfileLibrary library,
+            @NotNull ProfileEntry @NotNull [] entries,
+            double @NotNull [] edges,
+            double @NotNull [] mean,
+            double @NotNull [] @NotNull [] components,
+            double @NotNull [] points
+    ) {
+        this.library = library;
+        this.entries = entries;
+        this.edges = edges;
+        this.mean = mean;
+        this.components = components;
+        this.rank = components.length;
+        this.points = points;
+        int n = entries.length;
+
+        // leaves hold more than LEAF / 2 points, so there are fewer than n / 4 + 1 nodes
+        int capacity = 2 * (n / (LEAF / 2)) + 1;
+        this.node_lo = new int[capacity];
+        this.node_hi = new int[capacity];
+        this.node_left = new int[capacity];
+        this.node_right = new int[capacity];
+        this.box_lo = new double[capacity * this.rank];
+        this.box_hi = new double[capacity * this.rank];
+        int[] count = {0};
+        this.split(0, n, count);
+    }
+
+    /**
+     * Builds an index over the whole q-range of the library with the default numbers of features and components.
+     * @param library the library, non-null
+     * @return the index
+     * @throws IOException if a library block is corrupt
+     */
+    public static @NotNull ProfileIndex build(@NotNull ProfileLibrary library) throws IOException {
+        return build(library, library.getGrid().get(0), library.getGrid().max(), DEFAULT_FEATURES, DEFAULT_RANK);
+    }
+
+    /**
+     * Builds an index.
+     * @param library  the library, non-null
+     * @param q_lo     lower edge of the feature bins in Å⁻¹, positive and within the library grid
+     * @param q_hi     upper edge of the feature bins in Å⁻¹, above {@code q_lo} and within the library grid
+     * @param features number of feature bins, at least 2
+     * @param rank     number of principal components, positive; at most {@code features}
+     * @return the index
+     * @throws IllegalArgumentException if the feature range or counts are invalid
+     * @throws IOException              if a library block is corrupt
+     */
+    public static @NotNull ProfileIndex build(
+            @NotNull ProfileLibrary library,
+            double q_lo,
+            double q_hi,
+            int features,
+            int rank
+    ) throws IOException {
+        if (
+                    !(q_lo > 0)
+                ||  !(q_hi > q_lo)
+                ||  q_lo < library.getGrid().get(0)
+                ||  q_hi > library.getGrid().max()
+        ) {
+            throw new IllegalArgumentException("Feature range must be positive and lie within the library grid!");
+        }
+        if (features < 2 || rank < 1 || rank > features) {
+            throw new IllegalArgumentException("Index needs at least two features and one to that many components!");
+        }
+        double[] edges = new double[features + 1];
+        for (int d = 0; d <= features; d++) {
+            edges[d] = q_lo * Math.exp(Math.log(q_hi / q_lo) * d / features);
+        }
+        double[] grid = library.getGrid().toArray();
+        ProfileEntry[] entries = library.entries().toArray(new ProfileEntry[0]);
+        int n = entries.length;
+        double[][] x = new double[n][];
+        for (int e = 0; e < n; e++) {
+            x[e] = logCentred(binMeans(grid, library.profile(entries[e]).toArray(), edges));
+        }
+
+        // principal components from the covariance of (a sample of) the feature vectors
+        double[] mean = new double[features];
+        for (double[] v : x) {
+            for (int d = 0; d < features; d++) {
+                mean[d] += v[d] / n;
+            }
+        }
+        int[] sample = sample(n, PCA_SAMPLE);
+        double[][] covariance = new double[features][features];
+        for (int e : sample) {
+            for (int a = 0; a < features; a++) {
+                double da = x[e][a] - mean[a];
+                for (int b = 0; b <= a; b++) {
+                    covariance[a][b] += da * (x[e][b] - mean[b]);
+                }
+            }
+        }
+        for (int a = 0; a < features; a++) {
+            for (int b = 0; b < a; b++) {
+                covariance[b][a] = covariance[a][b];
+            }
+        }
+        double[][] components = leadingEigenvectors(covariance, Math.min(rank, Math.max(1, n)));
+
+        int r = components.length;
+        double[] points = new double[n * r];
+        for (int e = 0; e < n; e++) {
+            project(x[e], mean, components, points, e * r);
+        }
+        return new ProfileIndex(library, entries, edges, mean, components, points);
+    }
+
+    /** @return the library the index is built over */
+    @Contract(pure = true)
+    public @NotNull ProfileLibrary getLibrary() {
+        return this.library;
+    }
+
+    /** @return number of indexed profiles */
+    @Contract(pure = true)
+    public int size() {
+        return this.entries.length;
+    }
+
+    /** @return number of principal components */
+    @Contract(pure = true)
+    public int getRank() {
+        return this.rank;
+    }
+
+    /**
+     * Finds the profiles closest in shape to a measurement.
+     * @param data the measurement, non-null; must cover the feature range of the index
+     * @param k    number of neighbours, positive
+     * @return up to {@code k} entries, closest first
+     * @throws IllegalArgumentException if the data do not cover the feature range
+     */
+    @Contract(pure = true)
+    public @NotNull List<ProfileEntry> nearest(@NotNull SaxsData data, int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("Number of neighbours must be positive!");
+        }
+        double tolerance = 1e-9 * this.edges[this.edges.length - 1];
+        if (
+                    data.q(0) > this.edges[0] + tolerance
+                ||  data.q(data.size() - 1) < this.edges[this.edges.length - 1] - tolerance
+        ) {
+            throw new IllegalArgumentException("Data do not cover the feature range of the index!");
+        }
+        double[] q = new double[data.size()], y = new double[data.size()];
+        for (int p = 0; p < q.length; p++) {
+            q[p] = data.q(p);
+            y[p] = data.intensity(p);
+        }
+        double[] v = binMeans(q, y, this.edges);
+        double[] target = new double[this.rank];
+        project(logCentred(v), this.mean, this.components, target, 0);
+
+        int count = Math.min(k, this.entries.length);
+        double[] best_d = new double[count];
+        int[] best_i = new int[count];
+        Arrays.fill(best_d, Double.POSITIVE_INFINITY);
+        Arrays.fill(best_i, -1);
+        if (this.entries.length > 0) {
+            this.search(0, target, best_d, best_i);
+        }
+        List<ProfileEntry> found = new ArrayList<>(count);
+        for (int i : best_i) {
+            if (i >= 0) {
+                found.add(this.entries[i]);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Fits the nearest profiles of a measurement.
+     * @param data        the measurement, non-null; must cover the feature range of the index
+     * @param k           number of candidates, positive
+     * @param with_offset whether to fit a constant offset
+     * @return one match per candidate, best (smallest χ²) first
+     * @throws IllegalArgumentException if the data do not cover the feature range or the library grid
+     */
+    public @NotNull List<ProfileMatch> query(@NotNull SaxsData data, int k, boolean with_offset) {
+        return this.library.fit(data, this.nearest(data, k), with_offset);
+    }
+
+    /**
+     * Builds the subtree over points {@code [lo, hi)}, splitting at the median of the widest coordinate.
+     * @return the node index
+     */
+    private int split(int lo, int hi, int @NotNull [] count) {
+        int node = count[0]++;
+        int r = this.rank;
+        this.node_lo[node] = lo;
+        this.node_hi[node] = hi;
+        for (int d = 0; d < r; d++) {
+            double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+            for (int p = lo; p < hi; p++) {
+                min = Math.min(min, this.points[p * r + d]);
+                max = Math.max(max, this.points[p * r + d]);
+            }
+            this.box_lo[node * r + d] = min;
+            this.box_hi[node * r + d] = max;
+        }
+        if (hi - lo <= LEAF) {
+            this.node_left[node] = -1;
+            this.node_right[node] = -1;
+            return node;
+        }
+        int widest = 0;
+        for (int d = 1; d < r; d++) {
+            if (
+                        this.box_hi[node * r + d] - this.box_lo[node * r + d]
+                    >   this.box_hi[node * r + widest] - this.box_lo[node * r + widest]
+            ) {
+                widest = d;
+            }
+        }
+        int mid = (lo + hi) >>> 1;
+        this.select(lo, hi - 1, mid, widest);
+        this.node_left[node] = this.split(lo, mid, count);
+        this.node_right[node] = this.split(mid, hi, count);
+        return node;
+    }
+
+    /** Partially sorts points {@code [lo, hi]} so that point {@code m} holds the median of coordinate {@code d}. */
+    private void select(int lo, int hi, int m, int d) {
+        int r = this.rank;
+        while (hi > lo) {
+            double pivot = this.points[((lo + hi) >>> 1) * r + d];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (this.points[i * r + d] < pivot) {
+                    i++;
+                }
+                while (this.points[j * r + d] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    this.swap(i++, j--);
+                }
+            }
+            if (m <= j) {
+                hi = j;
+            } else if (m >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /** Swaps two points together with their entries. */
+    private void swap(int a, int b) {
+        int r = this.rank;
+        for (int d = 0; d < r; d++) {
+            double t = this.points[a * r + d];
+            this.points[a * r + d] = this.points[b * r + d];
+            this.points[b * r + d] = t;
+        }
+        ProfileEntry e = this.entries[a];
+        this.entries[a] = this.entries[b];
+        this.entries[b] = e;
+    }
+
+    /** Depth-first nearest-neighbour search, nearer child first, pruned by the bounding boxes. */
+    private void search(int node, double @NotNull [] target, double @NotNull [] best_d, int @NotNull [] best_i) {
+        if (this.boxDistance(node, target) >= best_d[best_d.length - 1]) {
+            return;
+        }
+        int r = this.rank;
+        if (this.node_left[node] < 0) {
+            for (int p = this.node_lo[node]; p < this.node_hi[node]; p++) {
+                double dist = 0;
+                for (int d = 0; d < r; d++) {
+                    double diff = this.points[p * r + d] - target[d];
+                    dist += diff * diff;
+                }
+                if (dist < best_d[best_d.length - 1]) {
+                    int at = best_d.length - 1;
+                    while (at > 0 && best_d[at - 1] > dist) {
+                        best_d[at] = best_d[at - 1];
+                        best_i[at] = best_i[at - 1];
+                        at--;
+                    }
+                    best_d[at] = dist;
+                    best_i[at] = p;
+                }
+            }
+            return;
+        }
+        int left = this.node_left[node], right = this.node_right[node];
+        if (this.boxDistance(left, target) <= this.boxDistance(right, target)) {
+            this.search(left, target, best_d, best_i);
+            this.search(right, target, best_d, best_i);
+        } else {
+            this.search(right, target, best_d, best_i);
+            this.search(left, target, best_d, best_i);
+        }
+    }
+
+    /** @return squared distance from {@code target} to the bounding box of a node */
+    private double boxDistance(int node, double @NotNull [] target) {
+        int r = this.rank;
+        double dist = 0;
+        for (int d = 0; d < r; d++) {
+            double lo = this.box_lo[node * r + d], hi = this.box_hi[node * r + d];
+            double diff = target[d] < lo ? lo - target[d] : target[d] > hi ? target[d] - hi : 0;
+            dist += diff * diff;
+        }
+        return dist;
+    }
+
+    /** @return {@code ln v} minus its mean, with values floored at {@value #FLOOR} of the largest */
+    private static double @NotNull [] logCentred(double @NotNull [] v) {
+        double max = 0;
+        for (double value : v) {
+            max = Math.max(max, value);
+        }
+        double floor = max > 0 ? FLOOR * max : Double.MIN_NORMAL;
+        double[] x = new double[v.length];
+        double sum = 0;
+        for (int d = 0; d < v.length; d++) {
+            x[d] = Math.log(Math.max(v[d], floor));
+            sum += x[d];
+        }
+        for (int d = 0; d < v.length; d++) {
+            x[d] -= sum / v.length;
+        }
+        return x;
+    }
+
+    /** Writes the projection of {@code x} onto the components into {@code out} from {@code at}. */
+    private static void project(
+            double @NotNull [] x,
+            double @NotNull [] mean,
+            double @NotNull [] @NotNull [] components,
+            double @NotNull [] out,
+            int at
+    ) {
+        for (int c = 0; c < components.length; c++) {
+            double sum = 0;
+            for (int d = 0; d < x.length; d++) {
+                sum += (x[d] - mean[d]) * components[c][d];
+            }
+            out[at + c] = sum;
+        }
+    }
+
+    /**
+     * Averages a piecewise linear function over bins.
+     * @param q     abscissae, increasing, covering the bins
+     * @param y     values at {@code q}
+     * @param edges bin edges, increasing
+     * @return the mean of the function over every bin
+     */
+    private static double @NotNull [] binMeans(double @NotNull [] q, double @NotNull [] y, double @NotNull [] edges) {
+        double[] means = new double[edges.length - 1];
+        int j = 0;
+        for (int d = 0; d < means.length; d++) {
+            double a = edges[d], b = edges[d + 1];
+            while (j + 2 < q.length && q[j + 1] <= a) {
+                j++;
+            }
+
+            // trapezoids over the pieces between a and b
+            double sum = 0;
+            for (int p = j; p < q.length - 1 && q[p] < b; p++) {
+                double lo = Math.max(a, q[p]), hi = Math.min(b, q[p + 1]);
+                if (hi > lo) {
+                    double slope = (y[p + 1] - y[p]) / (q[p + 1] - q[p]);
+                    sum += (hi - lo) * (y[p] + slope * ((lo + hi) / 2 - q[p]));
+                }
+            }
+            means[d] = q.length == 1 ? y[0] : sum / (b - a);
+        }
+        return means;
+    }
+
+    /** @return up to {@code max} distinct indices below {@code n}, drawn with a fixed seed */
+    private static int @NotNull [] sample(int n, int max) {
+        int[] all = new int[n];
+        for (int i = 0; i < n; i++) {
+            all[i] = i;
+        }
+        if (n <= max) {
+            return all;
+        }
+        Random random = new Random(n);
+        for (int i = 0; i < max; i++) {
+            int j = i + random.nextInt(n - i);
+            int t = all[i];
+            all[i] = all[j];
+            all[j] = t;
+        }
+        return Arrays.copyOf(all, max);
+    }
+
+    /**
+     * Computes the leading eigenvectors of a symmetric matrix with the cyclic Jacobi method.
+     * @param a     the matrix, overwritten
+     * @param count number of eigenvectors
+     * @return the eigenvectors of the {@code count} largest eigenvalues, largest first
+     */
+    private static double @NotNull [] @NotNull [] leadingEigenvectors(double @NotNull [] @NotNull [] a, int count) {
+        int n = a.length;
+        double[][] v = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            v[i][i] = 1;
+        }
+        for (int sweep = 0; sweep < JACOBI_SWEEPS; sweep++) {
+            double off = 0, diagonal = 0;
+            for (int p = 0; p < n; p++) {
+                diagonal += a[p][p] * a[p][p];
+                for (int q = p + 1; q < n; q++) {
+                    off += a[p][q] * a[p][q];
+                }
+            }
+            if (off <= 1e-24 * diagonal) {
+                break;
+            }
+            for (int p = 0; p < n; p++) {
+                for (int q = p + 1; q < n; q++) {
+                    if (a[p][q] == 0) {
+                        continue;
+                    }
+                    double theta = (a[q][q] - a[p][p]) / (2 * a[p][q]);
+                    double t = Math.signum(theta) / (Math.abs(theta) + Math.sqrt(theta * theta + 1));
+                    if (theta == 0) {
+                        t = 1;
+                    }
+                    double c = 1 / Math.sqrt(t * t + 1), s = t * c;
+                    for (int k = 0; k < n; k++) {
+                        double akp = a[k][p], akq = a[k][q];
+                        a[k][p] = c * akp - s * akq;
+                        a[k][q] = s * akp + c * akq;
+                    }
+                    for (int k = 0; k < n; k++) {
+                        double apk = a[p][k], aqk = a[q][k];
+                        a[p][k] = c * apk - s * aqk;
+                        a[q][k] = s * apk + c * aqk;
+                    }
+                    for (int k = 0; k < n; k++) {
+                        double vkp = v[k][p], vkq = v[k][q];
+                        v[k][p] = c * vkp - s * vkq;
+                        v[k][q] = s * vkp + c * vkq;
+                    }
+                }
+            }
+        }
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (i, j) -> Double.compare(a[j][j], a[i][i]));
+        double[][] vectors = new double[Math.min(count, n)][n];
+        for (int c = 0; c < vectors.length; c++) {
+            for (int k = 0; k < n; k++) {
+                vectors[c][k] = v[k][order[c]];
+            }
+        }
+        return vectors;
+    }
+}
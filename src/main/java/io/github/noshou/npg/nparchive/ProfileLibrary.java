@@ -0,0 +1,496 @@
+package io.github.noshou.npg.nparchive;
+
+import io.github.noshou.npg.npsaxs.QGrid;
+import io.github.noshou.npg.npsaxs.SaxsData;
+import io.github.noshou.npg.npsaxs.SaxsProfile;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Read-only, memory-mapped view of a SAXS profile library: model profiles of many particles as float arrays on one
+ * shared q-grid, indexed by shape class, lattice constant, radius and basis.
+ * <p> Opening a library reads its header and footer index (the last complete one if an append was interrupted)
+ * and maps the profile blocks; profiles are then read straight from the mapping. {@link #fit(SaxsData, boolean)}
+ * scores every profile against a measurement without recomputing anything: the data's q values are located on the
+ * library grid once, after which each profile costs one pass of the closed-form scale/offset fit. For large
+ * libraries a {@link ProfileIndex} picks a few candidates to fit instead. {@link #interpolate(String, double)}
+ * and {@link #refine(ProfileMatch, SaxsData, boolean)} go between the radii of a size series.
+ * <p> Libraries are written and extended with {@link ProfileLibraryWriter}; see {@link ProfileFormat} for the
+ * layout. Instances are safe for concurrent reads.
+ */
+public final class ProfileLibrary implements Closeable {
+
+    /** Bytes per mapped segment; segments overlap by one block so that no block straddles two of them. */
+    private static final long SEGMENT = 1L << 30;
+
+    /** Radii scanned across a bracket before the golden-section search of {@link #refine}. */
+    private static final int REFINE_SCAN = 24;
+
+    /** Golden-section iterations of {@link #refine}. */
+    private static final int REFINE_STEPS = 40;
+
+    /** Channel to the library. */
+    private final @NotNull FileChannel channel;
+
+    /** The q-grid of every profile, and its values. */
+    private final @NotNull QGrid grid;
+    private final double[] q;
+
+    /** File offset of the first block. */
+    private final long data_start;
+
+    /** Read-only mappings of the block region. */
+    private final MappedByteBuffer[] segments;
+
+    /** Entries keyed by {@link ProfileEntry#getKey()}, in insertion order. */
+    private final @NotNull Map<String, ProfileEntry> entries;
+
+    /** Entries per size series, keyed by radius. */
+    private final @NotNull Map<String, NavigableMap<Double, ProfileEntry>> by_family = new HashMap<>();
+
+    private ProfileLibrary(
+            @NotNull FileChannel channel,
+            @NotNull QGrid grid,
+            @NotNull LinkedHashMap<String, ProfileEntry> entries,
+            long data_start,
+            long end
+    ) throws IOException {
+        this.channel = channel;
+        this.grid = grid;
+        this.q = grid.toArray();
+        this.data_start = data_start;
+        this.entries = Collections.unmodifiableMap(entries);
+        for (ProfileEntry e : entries.values()) {
+            this.by_family.computeIfAbsent(e.getFamily(), s -> new TreeMap<>()).put(e.getRadius(), e);
+        }
+        long block = 4L * grid.size();
+        int count = (int) Math.max(1, (end - data_start + SEGMENT - 1) / SEGMENT);
+        this.segments = new MappedByteBuffer[count];
+        for (int s = 0; s < count; s++) {
+            long start = data_start + s * SEGMENT;
+            long length = Math.max(0, Math.min(end, start + SEGMENT + block) - start);
+            this.segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        }
+    }
+
+    /**
+     * Opens a library for reading.
+     * @param path the library file, non-null
+     * @return the library
+     * @throws IOException if the file cannot be opened or is not a valid library
+     */
+    public static @NotNull ProfileLibrary open(@NotNull Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            QGrid grid = ProfileFormat.readHeader(channel);
+            long data_start = ProfileFormat.headerBytes(grid.size());
+
+            // an interrupted append leaves the last committed index in place; the writer discards the tail
+            ProfileFormat.Index index = ProfileFormat.findTrailer(channel, data_start);
+            if (index == null) {
+                throw new IOException("Profile library has no valid index!");
+            }
+            return new ProfileLibrary(channel, grid, index.entries, data_start, index.end);
+        } catch (IOException | RuntimeException e) {
+            try {
+                channel.close();
+            } catch (IOException ex2) {
+                e.addSuppressed(ex2);
+            }
+            throw e;
+        }
+    }
+
+    /** @return the q-grid shared by all profiles */
+    @Contract(pure = true)
+    public @NotNull QGrid getGrid() {
+        return this.grid;
+    }
+
+    /** @return number of profiles */
+    @Contract(pure = true)
+    public int size() {
+        return this.entries.size();
+    }
+
+    /** @return all entries in insertion order (read-only) */
+    @Contract(pure = true)
+    public @NotNull Collection<ProfileEntry> entries() {
+        return this.entries.values();
+    }
+
+    /**
+     * Looks up a profile by its key.
+     * @param key the key (see {@link ProfileEntry#getKey()}), non-null
+     * @return the entry, or null if absent
+     */
+    @Contract(pure = true)
+    public @Nullable ProfileEntry get(@NotNull String key) {
+        return this.entries.get(key);
+    }
+
+    /** @return the keys of all size series (see {@link ProfileEntry#getFamily()}, read-only) */
+    @Contract(pure = true)
+    public @NotNull Set<String> families() {
+        return Collections.unmodifiableSet(this.by_family.keySet());
+    }
+
+    /**
+     * Returns all sizes of a series.
+     * @param family the series key, non-null
+     * @return entries keyed by radius in Å (read-only, empty if the series is absent)
+     */
+    @Contract(pure = true)
+    public @NotNull NavigableMap<Double, ProfileEntry> sizes(@NotNull String family) {
+        NavigableMap<Double, ProfileEntry> sizes = this.by_family.get(family);
+        return sizes == null ? Collections.emptyNavigableMap() : Collections.unmodifiableNavigableMap(sizes);
+    }
+
+    /**
+     * Reads a profile.
+     * @param entry an entry of this library, non-null
+     * @return the profile on the library's grid
+     * @throws IOException if the block is corrupt
+     */
+    public @NotNull SaxsProfile profile(@NotNull ProfileEntry entry) throws IOException {
+        int n = this.q.length;
+        double[] intensity = new double[n];
+        CRC32 crc = new CRC32();
+        byte[] raw = new byte[4];
+        for (int k = 0; k < n; k++) {
+            float v = this.at(entry, k);
+            int bits = Float.floatToRawIntBits(v);
+            raw[0] = (byte) (bits >>> 24);
+            raw[1] = (byte) (bits >>> 16);
+            raw[2] = (byte) (bits >>> 8);
+            raw[3] = (byte) bits;
+            crc.update(raw);
+            intensity[k] = v;
+        }
+        if ((int) crc.getValue() != entry.getCrc()) {
+            throw new IOException("Checksum mismatch in library block of " + entry + "!");
+        }
+        return SaxsProfile.of(this.grid, intensity);
+    }
+
+    /**
+     * Interpolates a size series to an arbitrary radius.
+     * <p> The two library radii {@code r_a ≤ r ≤ r_b} around {@code r} are first rescaled to {@code r} as
+     * geometrically similar particles, {@code I_r(q) ≈ (r/r_a)⁶ I_a(q r/r_a)}, which moves their fringes to where
+     * they belong; the two estimates are then blended linearly in {@code r}. Where a rescaled q falls outside the
+     * library grid only the other estimate is used, and where both do the profiles are blended unscaled.
+     * @param family the series key, non-null
+     * @param radius the radius in Å, within the range of the series
+     * @return the profile on the library's grid
+     * @throws IllegalArgumentException if the series is absent or {@code radius} lies outside its range
+     */
+    public @NotNull SaxsProfile interpolate(@NotNull String family, double radius) {
+        ProfileEntry[] pair = this.bracket(family, radius);
+        double[] intensity = new double[this.q.length];
+        for (int k = 0; k < intensity.length; k++) {
+            intensity[k] = this.blend(pair[0], pair[1], radius, this.q[k]);
+        }
+        return SaxsProfile.of(this.grid, intensity);
+    }
+
+    /**
+     * Fits every profile of the library to a measurement.
+     * @param data        the measurement, non-null; its q-range must lie within the library grid
+     * @param with_offset whether to fit a constant offset; otherwise it is fixed at zero
+     * @return one match per profile, best (smallest χ²) first; degenerate profiles rank last with infinite χ²
+     * @throws IllegalArgumentException if the library grid does not cover the data
+     */
+    public @NotNull List<ProfileMatch> fit(@NotNull SaxsData data, boolean with_offset) {
+        return this.fit(data, this.entries.values(), with_offset);
+    }
+
+    /**
+     * Fits selected profiles of the library to a measurement, e.g. the candidates of a {@link ProfileIndex}.
+     * @param data        the measurement, non-null; its q-range must lie within the library grid
+     * @param candidates  entries of this library, non-null
+     * @param with_offset whether to fit a constant offset; otherwise it is fixed at zero
+     * @return one match per candidate, best (smallest χ²) first; degenerate profiles rank last with infinite χ²
+     * @throws IllegalArgumentException if the library grid does not cover the data
+     */
+    public @NotNull List<ProfileMatch> fit(
+            @NotNull SaxsData data,
+            @NotNull Collection<ProfileEntry> candidates,
+            boolean with_offset
+    ) {
+        Target target = new Target(data, this.q);
+        List<ProfileMatch> matches = new ArrayList<>(candidates.size());
+        double[] m = new double[data.size()];
+        for (ProfileEntry e : candidates) {
+            for (int k = 0; k < m.length; k++) {
+                int j = target.index[k];
+                double lo = this.at(e, j);
+                m[k] = target.t[k] == 0 ? lo : lo + target.t[k] * (this.at(e, j + 1) - lo);
+            }
+            matches.add(target.match(e, e.getRadius(), m, with_offset));
+        }
+        matches.sort(Comparator.comparingDouble(ProfileMatch::getChiSquared));
+        return matches;
+    }
+
+    /**
+     * Refines a match in size: searches the radius between the neighbouring library entries of its series that
+     * minimises χ², using {@link #interpolate(String, double)} profiles.
+     * @param match       a match of this library, non-null
+     * @param data        the measurement it was fitted to, non-null
+     * @param with_offset whether to fit a constant offset
+     * @return the best match found, never worse than {@code match}
+     * @throws IllegalArgumentException if the library grid does not cover the data
+     */
+    public @NotNull ProfileMatch refine(@NotNull ProfileMatch match, @NotNull SaxsData data, boolean with_offset) {
+        ProfileEntry entry = match.getEntry();
+        NavigableMap<Double, ProfileEntry> sizes = this.sizes(entry.getFamily());
+        if (sizes.size() < 2) {
+            return match;
+        }
+        Double lo_key = sizes.lowerKey(match.getRadius());
+        Double hi_key = sizes.higherKey(match.getRadius());
+        double lo = lo_key != null ? lo_key : match.getRadius();
+        double hi = hi_key != null ? hi_key : match.getRadius();
+        Target target = new Target(data, this.q);
+        double[] m = new double[data.size()];
+
+        // coarse scan, then golden-section search around the best sample
+        ProfileMatch best = match;
+        double step = (hi - lo) / REFINE_SCAN;
+        double best_r = match.getRadius();
+        for (int s = 0; s <= REFINE_SCAN; s++) {
+            ProfileMatch candidate = this.evaluate(target, entry.getFamily(), lo + s * step, m, with_offset);
+            if (candidate.getChiSquared() < best.getChiSquared()) {
+                best = candidate;
+                best_r = candidate.getRadius();
+            }
+        }
+        double a = Math.max(lo, best_r - step), b = Math.min(hi, best_r + step);
+        double ratio = (Math.sqrt(5) - 1) / 2;
+        double c = b - ratio * (b - a), d = a + ratio * (b - a);
+        ProfileMatch fc = this.evaluate(target, entry.getFamily(), c, m, with_offset);
+        ProfileMatch fd = this.evaluate(target, entry.getFamily(), d, m, with_offset);
+        for (int it = 0; it < REFINE_STEPS; it++) {
+            if (fc.getChiSquared() < fd.getChiSquared()) {
+                b = d;
+                d = c;
+                fd = fc;
+                c = b - ratio * (b - a);
+                fc = this.evaluate(target, entry.getFamily(), c, m, with_offset);
+            } else {
+                a = c;
+                c = d;
+                fc = fd;
+                d = a + ratio * (b - a);
+                fd = this.evaluate(target, entry.getFamily(), d, m, with_offset);
+            }
+        }
+        for (ProfileMatch candidate : new ProfileMatch[]{fc, fd}) {
+            if (candidate.getChiSquared() < best.getChiSquared()) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Evaluates the fitted curve of a match at the q-values of a measurement, with the same size interpolation
+     * that {@link #refine(ProfileMatch, SaxsData, boolean)} fits.
+     * @param match a match of this library, non-null
+     * @param data  the measurement, non-null
+     * @return {@code scale · I(q) + offset} at every q of {@code data}
+     * @throws IllegalArgumentException if the radius lies outside the size range of the series
+     */
+    double @NotNull [] fitted(@NotNull ProfileMatch match, @NotNull SaxsData data) {
+        ProfileEntry[] pair = this.bracket(match.getEntry().getFamily(), match.getRadius());
+        double[] fitted = new double[data.size()];
+        for (int k = 0; k < fitted.length; k++) {
+            double m = this.blend(pair[0], pair[1], match.getRadius(), data.q(k));
+            fitted[k] = match.getScale() * m + match.getOffset();
+        }
+        return fitted;
+    }
+
+    /**
+     * Closes the library. Profiles already read remain valid.
+     * @throws IOException if the channel cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    /** Fits the interpolated profile of radius {@code r} of a series. */
+    private @NotNull ProfileMatch evaluate(
+            @NotNull Target target,
+            @NotNull String family,
+            double r,
+            double @NotNull [] m,
+            boolean with_offset
+    ) {
+        ProfileEntry[] pair = this.bracket(family, r);
+        for (int k = 0; k < m.length; k++) {
+            m[k] = this.blend(pair[0], pair[1], r, target.data.q(k));
+        }
+        ProfileEntry nearest = r - pair[0].getRadius() <= pair[1].getRadius() - r ? pair[0] : pair[1];
+        return target.match(nearest, r, m, with_offset);
+    }
+
+    /** @return the entries of a series with the largest radius ≤ {@code r} and the smallest radius ≥ {@code r} */
+    private @NotNull ProfileEntry @NotNull [] bracket(@NotNull String family, double r) {
+        NavigableMap<Double, ProfileEntry> sizes = this.by_family.get(family);
+        if (sizes == null) {
+            throw new IllegalArgumentException("No size series " + family + " in library!");
+        }
+        Map.Entry<Double, ProfileEntry> a = sizes.floorEntry(r), b = sizes.ceilingEntry(r);
+        if (a == null || b == null) {
+            throw new IllegalArgumentException("Radius " + r + " Å lies outside the size range of " + family + "!");
+        }
+        return new ProfileEntry[]{a.getValue(), b.getValue()};
+    }
+
+    /** Size-interpolated intensity at {@code q} between two entries of a series. */
+    private double blend(@NotNull ProfileEntry a, @NotNull ProfileEntry b, double r, double q) {
+        if (a == b) {
+            return this.sample(a, q);
+        }
+        double t = (r - a.getRadius()) / (b.getRadius() - a.getRadius());
+        double sa = r / a.getRadius(), sb = r / b.getRadius();
+        double va = this.sample(a, q * sa) * Math.pow(sa, 6);
+        double vb = this.sample(b, q * sb) * Math.pow(sb, 6);
+        if (Double.isNaN(va) && Double.isNaN(vb)) {
+            return (1 - t) * this.sample(a, q) + t * this.sample(b, q);
+        }
+        if (Double.isNaN(va)) {
+            return vb;
+        }
+        if (Double.isNaN(vb)) {
+            return va;
+        }
+        return (1 - t) * va + t * vb;
+    }
+
+    /** @return the profile of {@code e} linearly interpolated at {@code q}, or NaN outside the grid */
+    private double sample(@NotNull ProfileEntry e, double q) {
+        int n = this.q.length;
+        if (q < this.q[0] || q > this.q[n - 1]) {
+            return Double.NaN;
+        }
+        int j = Math.max(0, Math.min(n - 2, lowerIndex(this.q, q)));
+        if (n == 1) {
+            return this.at(e, 0);
+        }
+        double t = (q - this.q[j]) / (this.q[j + 1] - this.q[j]);
+        double lo = this.at(e, j);
+        return lo + t * (this.at(e, j + 1) - lo);
+    }
+
+    /** @return intensity {@code k} of a profile, read from the mapping */
+    private float at(@NotNull ProfileEntry e, int k) {
+        long rel = e.getOffset() - this.data_start;
+        int s = (int) (rel / SEGMENT);
+        return this.segments[s].getFloat((int) (rel - s * SEGMENT) + 4 * k);
+    }
+
+    /** @return the largest {@code j} with {@code values[j] ≤ x}, or {@code -1} */
+    private static int lowerIndex(double @NotNull [] values, double x) {
+        int lo = 0, hi = values.length - 1, found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (values[mid] <= x) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * A measurement located on the library grid, with the profile-independent sums of the weighted fit.
+     */
+    private static final class Target {
+        final @NotNull SaxsData data;
+        final int[] index;
+        final double[] t;
+        final double[] w, wy;
+        final double s, sy, syy;
+
+        Target(@NotNull SaxsData data, double @NotNull [] q) {
+            int n = q.length;
+            double tolerance = 1e-9 * Math.max(q[n - 1], data.q(data.size() - 1));
+            if (data.q(0) < q[0] - tolerance || data.q(data.size() - 1) > q[n - 1] + tolerance) {
+                throw new IllegalArgumentException("Library q-grid does not cover the measured q-range!");
+            }
+            this.data = data;
+            this.index = new int[data.size()];
+            this.t = new double[data.size()];
+            this.w = new double[data.size()];
+            this.wy = new double[data.size()];
+            double s = 0, sy = 0, syy = 0;
+            for (int k = 0; k < data.size(); k++) {
+                double x = data.q(k);
+                int j = Math.max(0, Math.min(n - 2, lowerIndex(q, x)));
+                this.index[k] = n == 1 ? 0 : j;
+                this.t[k] = n == 1 ? 0 : Math.max(0, Math.min(1, (x - q[j]) / (q[j + 1] - q[j])));
+                this.w[k] = 1 / (data.sigma(k) * data.sigma(k));
+                this.wy[k] = this.w[k] * data.intensity(k);
+                s += this.w[k];
+                sy += this.wy[k];
+                syy += this.wy[k] * data.intensity(k);
+            }
+            this.s = s;
+            this.sy = sy;
+            this.syy = syy;
+        }
+
+        /** Fits scale and offset of model {@code m} in closed form. */
+        @NotNull ProfileMatch match(@NotNull ProfileEntry e, double radius, double @NotNull [] m, boolean with_offset) {
+            double sx = 0, sxx = 0, sxy = 0;
+            for (int k = 0; k < m.length; k++) {
+                double wm = this.w[k] * m[k];
+                sx += wm;
+                sxx += wm * m[k];
+                sxy += this.wy[k] * m[k];
+            }
+            double scale, offset;
+            if (with_offset) {
+                double det = this.s * sxx - sx * sx;
+                if (!(det > 1e-12 * this.s * sxx)) {
+                    return new ProfileMatch(e, radius, Double.NaN, Double.NaN, Double.POSITIVE_INFINITY);
+                }
+                scale = (this.s * sxy - sx * this.sy) / det;
+                offset = (sxx * this.sy - sx * sxy) / det;
+            } else {
+                if (!(sxx > 0)) {
+                    return new ProfileMatch(e, radius, Double.NaN, Double.NaN, Double.POSITIVE_INFINITY);
+                }
+                scale = sxy / sxx;
+                offset = 0;
+            }
+            double chi2 = this.syy - 2 * scale * sxy - 2 * offset * this.sy
+                    + scale * scale * sxx + 2 * scale * offset * sx + offset * offset * this.s;
+            return new ProfileMatch(e, radius, scale, offset, Math.max(0, chi2) / m.length);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package io.github.noshou.npg.nparchive;
+
+import io.github.noshou.npg.npsaxs.QGrid;
+import io.github.noshou.npg.npsaxs.SaxsProfile;
+import io.github.noshou.npg.shapes.Shape;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Creates or extends a SAXS profile library (see {@link ProfileLibrary}).
+ * <p> Profiles are appended as float blocks on the library's q-grid, which is fixed when the library is created;
+ * the index is rewritten after the last block by {@link #flush()} and {@link #close()}. As with an
+ * {@link ArchiveWriter}, nothing already in the file is overwritten, an interrupted append is discarded on the
+ * next open, and adding a profile under an existing key replaces its index entry.
+ * All methods are thread-safe.
+ */
+public final class ProfileLibraryWriter implements Closeable {
+
+    /** Channel to the library. */
+    private final @NotNull FileChannel channel;
+
+    /** The q-grid of every profile. */
+    private final @NotNull QGrid grid;
+
+    /** Entries keyed by {@link ProfileEntry#getKey()}, in insertion order. */
+    private final @NotNull LinkedHashMap<String, ProfileEntry> entries;
+
+    /** File offset at which the next block is written. */
+    private long position;
+
+    /** Whether entries were added since the index was last written. */
+    private boolean is_dirty = false;
+
+    private ProfileLibraryWriter(
+            @NotNull FileChannel channel,
+            @NotNull QGrid grid,
+            @NotNull LinkedHashMap<String, ProfileEntry> entries,
+            long position
+    ) {
+        this.channel = channel;
+        this.grid = grid;
+        this.entries = entries;
+        this.position = position;
+    }
+
+    /**
+     * Opens a library for appending, creating it on {@code grid} if it does not exist.
+     * @param path the library file, non-null
+     * @param grid the q-grid of the library, non-null; must equal the grid of an existing library
+     * @return the writer
+     * @throws IOException              if the file cannot be opened or is not a valid library
+     * @throws IllegalArgumentException if an existing library uses a different grid
+     */
+    public static @NotNull ProfileLibraryWriter open(@NotNull Path path, @NotNull QGrid grid) throws IOException {
+        FileChannel channel = FileChannel.open(
+                path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE
+        );
+        try {
+            if (channel.size() == 0) {
+                ByteBuffer header = ProfileFormat.header(grid);
+                long start = header.remaining();
+                ArchiveFormat.writeFully(channel, header, 0);
+                ProfileLibraryWriter writer = new ProfileLibraryWriter(channel, grid, new LinkedHashMap<>(), start);
+                writer.is_dirty = true;
+                return writer;
+            }
+            QGrid existing = ProfileFormat.readHeader(channel);
+            if (!existing.equals(grid)) {
+                throw new IllegalArgumentException("Profile library uses a different q-grid!");
+            }
+            ProfileFormat.Index index = ProfileFormat.findTrailer(channel, ProfileFormat.headerBytes(grid.size()));
+            if (index == null) {
+                throw new IOException("Profile library has no valid index!");
+            }
+
+            // discard the tail of an interrupted append
+            channel.truncate(index.end);
+            return new ProfileLibraryWriter(channel, grid, index.entries, index.end);
+        } catch (IOException | RuntimeException e) {
+            try {
+                channel.close();
+            } catch (IOException ex2) {
+                e.addSuppressed(ex2);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Appends a profile.
+     * @param shape            shape class name, non-null
+     * @param lattice_constant lattice constant in Å
+     * @param radius           radius in Å
+     * @param basis            basis description (see {@link ProfileEntry#basisKey}), non-null
+     * @param atoms            number of atoms of the particle
+     * @param profile          the profile on the library's grid, non-null
+     * @return the new index entry
+     * @throws IllegalArgumentException if the profile is not on the library's grid
+     * @throws IOException              if writing fails
+     */
+    public synchronized @NotNull ProfileEntry add(
+            @NotNull String shape,
+            double lattice_constant,
+            double radius,
+            @NotNull String basis,
+            long atoms,
+            @NotNull SaxsProfile profile
+    ) throws IOException {
+        if (!profile.getGrid().equals(this.grid)) {
+            throw new IllegalArgumentException("Profile is not on the library's q-grid!");
+        }
+        ByteBuffer block = ByteBuffer.allocate(4 * this.grid.size());
+        for (int k = 0; k < this.grid.size(); k++) {
+            block.putFloat((float) profile.intensity(k));
+        }
+        block.flip();
+        CRC32 crc = new CRC32();
+        crc.update(block.duplicate());
+        long offset = this.position;
+        ArchiveFormat.writeFully(this.channel, block, offset);
+        this.position += 4L * this.grid.size();
+        ProfileEntry entry = new ProfileEntry(shape, basis, lattice_constant, radius, offset, atoms,
+                (int) crc.getValue());
+        this.entries.put(entry.getKey(), entry);
+        this.is_dirty = true;
+        return entry;
+    }
+
+    /**
+     * Appends the profile of a shape, keyed by its class, lattice constant, radius and unit-cell basis.
+     * @param shape   the shape the profile was computed for, non-null
+     * @param atoms   number of atoms of the built particle
+     * @param profile the profile on the library's grid, non-null
+     * @return the new index entry
+     * @throws IllegalArgumentException if the profile is not on the library's grid
+     * @throws IOException              if writing fails
+     */
+    public @NotNull ProfileEntry add(@NotNull Shape shape, long atoms, @NotNull SaxsProfile profile)
+            throws IOException {
+        return this.add(
+                shape.getClass().getSimpleName(),
+                shape.getLatticeConstant().doubleValue(),
+                shape.getRadius().doubleValue(),
+                ProfileEntry.basisKey(shape.getUnitCell().getBasis()),
+                atoms,
+                profile
+        );
+    }
+
+    /** @return the q-grid of the library */
+    @Contract(pure = true)
+    public @NotNull QGrid getGrid() {
+        return this.grid;
+    }
+
+    /** @return number of profiles indexed so far */
+    @Contract(pure = true)
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * Writes the index after the last block and forces the file to storage.
+     * @throws IOException if writing fails
+     */
+    public synchronized void flush() throws IOException {
+        if (!this.is_dirty) {
+            return;
+        }
+        ByteBuffer footer = ProfileFormat.footer(this.entries.values(), this.position);
+        int length = footer.remaining();
+        ArchiveFormat.writeFully(this.channel, footer, this.position);
+        this.channel.force(true);
+        this.position += length;
+        this.is_dirty = false;
+    }
+
+    /**
+     * Writes the index and closes the library.
+     * @throws IOException if writing or closing fails
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            this.flush();
+        } finally {
+            this.channel.close();
+        }
+    }
+}
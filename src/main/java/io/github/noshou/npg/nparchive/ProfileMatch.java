@@ -0,0 +1,67 @@
+package io.github.noshou.npg.nparchive;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Fit of one library profile, or of a profile interpolated in size, to measured data.
+ * <p> {@link #getEntry()} is the library entry the fit was made with or, for an interpolated size, the entry whose
+ * radius is closest. Scale, offset and χ² are defined as in {@link io.github.noshou.npg.npsaxs.SaxsFit}.
+ */
+public final class ProfileMatch {
+
+    private final @NotNull ProfileEntry entry;
+    private final double radius;
+    private final double scale;
+    private final double offset;
+    private final double chi_squared;
+
+    ProfileMatch(@NotNull ProfileEntry entry, double radius, double scale, double offset, double chi_squared) {
+        this.entry = entry;
+        this.radius = radius;
+        this.scale = scale;
+        this.offset = offset;
+        this.chi_squared = chi_squared;
+    }
+
+    /** @return the (closest) library entry */
+    @Contract(pure = true)
+    public @NotNull ProfileEntry getEntry() {
+        return this.entry;
+    }
+
+    /** @return radius of the fitted profile in Å */
+    @Contract(pure = true)
+    public double getRadius() {
+        return this.radius;
+    }
+
+    /** @return whether the radius lies between library entries */
+    @Contract(pure = true)
+    public boolean isInterpolated() {
+        return this.radius != this.entry.getRadius();
+    }
+
+    /** @return the fitted scale {@code c} */
+    @Contract(pure = true)
+    public double getScale() {
+        return this.scale;
+    }
+
+    /** @return the fitted offset */
+    @Contract(pure = true)
+    public double getOffset() {
+        return this.offset;
+    }
+
+    /** @return {@code Σ ((y - c·I - offset)/σ)² / N} */
+    @Contract(pure = true)
+    public double getChiSquared() {
+        return this.chi_squared;
+    }
+
+    @Override
+    public @NotNull String toString() {
+        return entry.getShape() + " r=" + radius + " Å: chi2=" + chi_squared;
+    }
+}
@@ -0,0 +1,222 @@
+package io.github.noshou.npg.npenergy;
+
+import io.github.noshou.npg.npreader.ParticleStore;
+import io.github.noshou.npg.nputil.Workers;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Evaluates the potential energy of a particle with a {@link Potential}, e.g. to rank candidate morphologies by
+ * cohesive energy per atom before fitting them.
+ * <p> Atoms are sorted into a linked-cell grid with cells as wide as the cutoff, so only the 27 cells around an
+ * atom are searched and the work is linear in the number of atoms. Coordinates are copied in cell order, so the
+ * atoms of neighbouring cells lie close in memory. Worker threads take blocks of {@value #BLOCK} atoms in cell
+ * order; every worker visits each pair from both sides, so the host density of an atom is complete after a single
+ * pass and nothing is shared between workers. Block sums are added in block order, so the result does not depend
+ * on the number of threads.
+ */
+public final class EnergyCalculator {
+
+    /** Atoms per work block. */
+    private static final int BLOCK = 4096;
+
+    private final Potential potential;
+    private final int threads;
+
+    /**
+     * Constructs a calculator using all available processors.
+     * @param potential the potential, non-null
+     */
+    public EnergyCalculator(@NotNull Potential potential) {
+        this(potential, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a calculator.
+     * @param potential the potential, non-null
+     * @param threads   number of worker threads, positive
+     */
+    public EnergyCalculator(@NotNull Potential potential, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be positive!");
+        }
+        this.potential = potential;
+        this.threads = threads;
+    }
+
+    /**
+     * Computes the energy of a particle.
+     * @param store the particle, non-null; all atoms are treated as the single species of the potential
+     * @return the energy
+     * @throws IllegalArgumentException if the particle has more than one element or is too sparse for a cell grid
+     * @throws RuntimeException         if a worker thread fails or the evaluation is interrupted
+     */
+    public @NotNull Result compute(@NotNull ParticleStore store) {
+        int n = store.size();
+        if (store.getElements().size() > 1) {
+            throw new IllegalArgumentException("Potential supports single-element particles only!");
+        }
+        double[] atom_energy = new double[n];
+        if (n == 0) {
+            return new Result(0, 0, atom_energy);
+        }
+
+        // linked-cell grid with cells as wide as the cutoff (CSR layout)
+        double[] x = store.getX(), y = store.getY(), z = store.getZ();
+        double cell = this.potential.getCutoff();
+        double x0 = Double.POSITIVE_INFINITY, y0 = Double.POSITIVE_INFINITY, z0 = Double.POSITIVE_INFINITY;
+        double x1 = Double.NEGATIVE_INFINITY, y1 = Double.NEGATIVE_INFINITY, z1 = Double.NEGATIVE_INFINITY;
+        for (int a = 0; a < n; a++) {
+            x0 = Math.min(x0, x[a]);
+            y0 = Math.min(y0, y[a]);
+            z0 = Math.min(z0, z[a]);
+            x1 = Math.max(x1, x[a]);
+            y1 = Math.max(y1, y[a]);
+            z1 = Math.max(z1, z[a]);
+        }
+        int nx = (int) ((x1 - x0) / cell) + 1, ny = (int) ((y1 - y0) / cell) + 1, nz = (int) ((z1 - z0) / cell) + 1;
+        if ((long) nx * ny * nz >= Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Particle is too sparse for a cell grid!");
+        }
+        int[] cell_of = new int[n];
+        int[] start = new int[nx * ny * nz + 1];
+        for (int a = 0; a < n; a++) {
+            int cx = (int) ((x[a] - x0) / cell), cy = (int) ((y[a] - y0) / cell), cz = (int) ((z[a] - z0) / cell);
+            cell_of[a] = (cx * ny + cy) * nz + cz;
+            start[cell_of[a] + 1]++;
+        }
+        for (int c = 0; c < start.length - 1; c++) {
+            start[c + 1] += start[c];
+        }
+        int[] fill = start.clone();
+        int[] members = new int[n];
+        double[] xs = new double[n], ys = new double[n], zs = new double[n];
+        int[] cell_sorted = new int[n];
+        for (int a = 0; a < n; a++) {
+            int m = fill[cell_of[a]]++;
+            members[m] = a;
+            xs[m] = x[a];
+            ys[m] = y[a];
+            zs[m] = z[a];
+            cell_sorted[m] = cell_of[a];
+        }
+
+        double cutoff2 = cell * cell;
+        double inv_step = this.potential.inverseStep();
+        double[] pair = this.potential.pairTable();
+        double[] density = this.potential.densityTable();
+        int blocks = (n + BLOCK - 1) / BLOCK;
+        double[] pair_sum = new double[blocks], embedding_sum = new double[blocks];
+        AtomicInteger next = new AtomicInteger();
+        int workers = Math.max(1, Math.min(this.threads, blocks));
+        List<Callable<Void>> tasks = new ArrayList<>(workers);
+        for (int w = 0; w < workers; w++) {
+            tasks.add(() -> {
+                int b;
+                while ((b = next.getAndIncrement()) < blocks) {
+                    double block_pair = 0, block_embedding = 0;
+                    for (int m = b * BLOCK; m < Math.min(n, (b + 1) * BLOCK); m++) {
+                        double px = xs[m], py = ys[m], pz = zs[m];
+                        int ca = cell_sorted[m];
+                        int cx = ca / (ny * nz), cy = (ca / nz) % ny, cz = ca % nz;
+                        double phi = 0, rho = 0;
+                        for (int ix = Math.max(0, cx - 1); ix <= Math.min(nx - 1, cx + 1); ix++) {
+                            for (int iy = Math.max(0, cy - 1); iy <= Math.min(ny - 1, cy + 1); iy++) {
+                                // the cells of one z column are contiguous in CSR order
+                                int first = (ix * ny + iy) * nz;
+                                int from = start[first + Math.max(0, cz - 1)];
+                                int to = start[first + Math.min(nz - 1, cz + 1) + 1];
+                                for (int o = from; o < to; o++) {
+                                    double dx = xs[o] - px, dy = ys[o] - py, dz = zs[o] - pz;
+                                    double r2 = dx * dx + dy * dy + dz * dz;
+                                    if (r2 < cutoff2 && o != m) {
+                                        double t = Math.sqrt(r2) * inv_step;
+                                        int k = (int) t;
+                                        double frac = t - k;
+                                        phi += pair[k] + frac * (pair[k + 1] - pair[k]);
+                                        if (density != null) {
+                                            rho += density[k] + frac * (density[k + 1] - density[k]);
+                                        }
+                                    }
+                                }
+                            }
+                        }
+                        double embedding = density == null ? 0 : this.potential.embedding(rho);
+                        atom_energy[members[m]] = phi / 2 + embedding;
+                        block_pair += phi / 2;
+                        block_embedding += embedding;
+                    }
+                    pair_sum[b] = block_pair;
+                    embedding_sum[b] = block_embedding;
+                }
+                return null;
+            });
+        }
+        Workers.run(tasks, workers, "Energy evaluation");
+        double pair_energy = 0, embedding_energy = 0;
+        for (int b = 0; b < blocks; b++) {
+            pair_energy += pair_sum[b];
+            embedding_energy += embedding_sum[b];
+        }
+        return new Result(pair_energy, embedding_energy, atom_energy);
+    }
+
+    /**
+     * Potential energy of a particle.
+     */
+    public static final class Result {
+
+        private final double pair_energy;
+        private final double embedding_energy;
+        private final double[] atom_energy;
+
+        private Result(double pair_energy, double embedding_energy, double @NotNull [] atom_energy) {
+            this.pair_energy = pair_energy;
+            this.embedding_energy = embedding_energy;
+            this.atom_energy = atom_energy;
+        }
+
+        /** @return number of atoms */
+        @Contract(pure = true)
+        public int getAtomCount() {
+            return this.atom_energy.length;
+        }
+
+        /** @return the total energy in eV */
+        @Contract(pure = true)
+        public double getEnergy() {
+            return this.pair_energy + this.embedding_energy;
+        }
+
+        /** @return the energy per atom in eV (the negative cohesive energy), or {@code NaN} for an empty particle */
+        @Contract(pure = true)
+        public double getEnergyPerAtom() {
+            return this.atom_energy.length == 0 ? Double.NaN : this.getEnergy() / this.atom_energy.length;
+        }
+
+        /** @return the pair part {@code ½ Σ φ} of the energy in eV */
+        @Contract(pure = true)
+        public double getPairEnergy() {
+            return this.pair_energy;
+        }
+
+        /** @return the embedding part {@code Σ F(ρ)} of the energy in eV, zero for a pair potential */
+        @Contract(pure = true)
+        public double getEmbeddingEnergy() {
+            return this.embedding_energy;
+        }
+
+        /**
+         * @param n atom index in the particle store
+         * @return the energy of that atom in eV, {@code ½ Σ_j φ(r_nj) + F(ρ_n)}
+         */
+        @Contract(pure = true)
+        public double atomEnergy(int n) {
+            return this.atom_energy[n];
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package io.github.noshou.npg.npenergy;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Single-species interatomic potential of embedded-atom form,
+ * {@code E = Σ_i F(ρ_i) + ½ Σ_i Σ_{j≠i} φ(r_ij)} with {@code ρ_i = Σ_{j≠i} f(r_ij)}.
+ * <p> A pair potential has no embedding term. The pair function {@code φ} and the density function {@code f} are
+ * tabulated on a uniform grid {@code r_k = k·step} up to the cutoff and interpolated linearly; with the default
+ * step of 10⁻⁴ Å the interpolation error of the factories below is far under the accuracy of the potentials
+ * themselves. Below one step the tables are flat, so coincident atoms give a finite (large) energy. The embedding
+ * function {@code F} is evaluated once per atom and is kept as a function.
+ * <p> Energies are in eV and distances in Å.
+ */
+public final class Potential {
+
+    /** Default table step in Å. */
+    public static final double DEFAULT_STEP = 1e-4;
+
+    private final double cutoff;
+    private final double inv_step;
+    private final double[] pair;
+    private final double @Nullable [] density;
+    private final @Nullable DoubleUnaryOperator embedding;
+
+    private Potential(
+            double cutoff,
+            double step,
+            double @NotNull [] pair,
+            double @Nullable [] density,
+            @Nullable DoubleUnaryOperator embedding
+    ) {
+        if (!(step > 0) || Double.isInfinite(step)) {
+            throw new IllegalArgumentException("Table step must be positive!");
+        }
+        if (pair.length < 2) {
+            throw new IllegalArgumentException("Pair table needs at least two entries!");
+        }
+        if (density != null && density.length != pair.length) {
+            throw new IllegalArgumentException("Density table must match the pair table!");
+        }
+        this.cutoff = cutoff;
+        this.inv_step = 1 / step;
+
+        // one extra entry so that interpolation just below the cutoff stays in range
+        this.pair = pad(pair);
+        this.density = density == null ? null : pad(density);
+        this.embedding = embedding;
+    }
+
+    /**
+     * Creates a pair potential from a table.
+     * @param step spacing of the table in Å, positive
+     * @param pair {@code φ(k·step)} in eV; the cutoff is {@code (pair.length − 1)·step}
+     * @return the potential
+     */
+    @Contract("_, _ -> new")
+    public static @NotNull Potential tabulated(double step, double @NotNull [] pair) {
+        return new Potential((pair.length - 1) * step, step, pair.clone(), null, null);
+    }
+
+    /**
+     * Creates an embedded-atom potential from tables, e.g. those of a single-element {@code setfl} file.
+     * @param step         spacing of the pair and density tables in Å, positive
+     * @param pair         {@code φ(k·step)} in eV; the cutoff is {@code (pair.length − 1)·step}
+     * @param density      {@code f(k·step)}, same length as {@code pair}
+     * @param density_step spacing of the embedding table, positive
+     * @param embedding    {@code F(k·density_step)} in eV; densities beyond the table are extrapolated linearly
+     * @return the potential
+     */
+    @Contract("_, _, _, _, _ -> new")
+    public static @NotNull Potential tabulated(
+            double step,
+            double @NotNull [] pair,
+            double @NotNull [] density,
+            double density_step,
+            double @NotNull [] embedding
+    ) {
+        if (!(density_step > 0) || Double.isInfinite(density_step)) {
+            throw new IllegalArgumentException("Density step must be positive!");
+        }
+        if (embedding.length < 2) {
+            throw new IllegalArgumentException("Embedding table needs at least two entries!");
+        }
+        double[] f = embedding.clone();
+        double inv = 1 / density_step;
+        return new Potential((pair.length - 1) * step, step, pair.clone(), density.clone(), rho -> {
+            double t = Math.max(0, rho * inv);
+            int k = Math.min((int) t, f.length - 2);
+            return f[k] + (t - k) * (f[k + 1] - f[k]);
+        });
+    }
+
+    /**
+     * Creates a pair potential by tabulating a function.
+     * @param cutoff cutoff radius in Å, positive
+     * @param pair   {@code φ(r)} in eV
+     * @return the potential
+     */
+    @Contract("_, _ -> new")
+    public static @NotNull Potential pair(double cutoff, @NotNull DoubleUnaryOperator pair) {
+        return new Potential(cutoff, DEFAULT_STEP, table(cutoff, pair), null, null);
+    }
+
+    /**
+     * Creates an embedded-atom potential by tabulating functions.
+     * @param cutoff    cutoff radius in Å, positive
+     * @param pair      {@code φ(r)} in eV
+     * @param density   {@code f(r)}
+     * @param embedding {@code F(ρ)} in eV
+     * @return the potential
+     */
+    @Contract("_, _, _, _ -> new")
+    public static @NotNull Potential embeddedAtom(
+            double cutoff,
+            @NotNull DoubleUnaryOperator pair,
+            @NotNull DoubleUnaryOperator density,
+            @NotNull DoubleUnaryOperator embedding
+    ) {
+        return new Potential(cutoff, DEFAULT_STEP, table(cutoff, pair), table(cutoff, density), embedding);
+    }
+
+    /**
+     * Creates a Lennard-Jones potential {@code 4ε((σ/r)¹² − (σ/r)⁶)}, shifted to vanish at the cutoff.
+     * @param epsilon well depth in eV, positive
+     * @param sigma   zero crossing in Å, positive
+     * @param cutoff  cutoff radius in Å, typically {@code 2.5σ}
+     * @return the potential
+     */
+    @Contract("_, _, _ -> new")
+    public static @NotNull Potential lennardJones(double epsilon, double sigma, double cutoff) {
+        if (!(epsilon > 0) || !(sigma > 0)) {
+            throw new IllegalArgumentException("Lennard-Jones parameters must be positive!");
+        }
+        DoubleUnaryOperator lj = r -> {
+            double s6 = Math.pow(sigma / r, 6);
+            return 4 * epsilon * (s6 * s6 - s6);
+        };
+        double shift = lj.applyAsDouble(cutoff);
+        return pair(cutoff, r -> lj.applyAsDouble(r) - shift);
+    }
+
+    /**
+     * Creates a Gupta (second-moment tight-binding) potential, truncated at the cutoff:
+     * {@code E_i = Σ_j A·exp(−p(r_ij/r₀ − 1)) − √(Σ_j ξ²·exp(−2q(r_ij/r₀ − 1)))}.
+     * For gold, Cleri and Rosato give {@code A = 0.2061 eV}, {@code ξ = 1.790 eV}, {@code p = 10.229},
+     * {@code q = 4.036} and {@code r₀ = 2.884 Å}, usually with a cutoff between the third and fourth shell.
+     * @param a      repulsive strength {@code A} in eV, positive
+     * @param xi     hopping integral {@code ξ} in eV, positive
+     * @param p      repulsive decay, positive
+     * @param q      attractive decay, positive
+     * @param r0     nearest-neighbour distance {@code r₀} in Å, positive
+     * @param cutoff cutoff radius in Å, positive
+     * @return the potential
+     */
+    @Contract("_, _, _, _, _, _ -> new")
+    public static @NotNull Potential gupta(double a, double xi, double p, double q, double r0, double cutoff) {
+        if (!(a > 0) || !(xi > 0) || !(p > 0) || !(q > 0) || !(r0 > 0)) {
+            throw new IllegalArgumentException("Gupta parameters must be positive!");
+        }
+        return embeddedAtom(
+                cutoff,
+                r -> 2 * a * Math.exp(-p * (r / r0 - 1)),
+                r -> xi * xi * Math.exp(-2 * q * (r / r0 - 1)),
+                rho -> -Math.sqrt(rho)
+        );
+    }
+
+    /** Samples a function on the default grid up to (at least) the cutoff, flat below one step. */
+    private static double @NotNull [] table(double cutoff, @NotNull DoubleUnaryOperator function) {
+        if (!(cutoff > 0) || Double.isInfinite(cutoff)) {
+            throw new IllegalArgumentException("Cutoff must be positive!");
+        }
+        double[] values = new double[(int) Math.ceil(cutoff / DEFAULT_STEP) + 1];
+        for (int k = 0; k < values.length; k++) {
+            values[k] = function.applyAsDouble(Math.max(k, 1) * DEFAULT_STEP);
+        }
+        return values;
+    }
+
+    /** Appends a copy of the last entry. */
+    private static double @NotNull [] pad(double @NotNull [] table) {
+        double[] padded = new double[table.length + 1];
+        System.arraycopy(table, 0, padded, 0, table.length);
+        padded[table.length] = table[table.length - 1];
+        return padded;
+    }
+
+    /** @return the cutoff radius in Å */
+    @Contract(pure = true)
+    public double getCutoff() {
+        return this.cutoff;
+    }
+
+    /** @return whether the potential has an embedding term */
+    @Contract(pure = true)
+    public boolean isEmbedded() {
+        return this.embedding != null;
+    }
+
+    /**
+     * @param r distance in Å, non-negative
+     * @return {@code φ(r)} in eV, zero at and beyond the cutoff
+     */
+    @Contract(pure = true)
+    public double pair(double r) {
+        return r >= this.cutoff ? 0 : lookup(this.pair, r * this.inv_step);
+    }
+
+    /**
+     * @param r distance in Å, non-negative
+     * @return {@code f(r)}, zero at and beyond the cutoff or for a pair potential
+     */
+    @Contract(pure = true)
+    public double density(double r) {
+        return this.density == null || r >= this.cutoff ? 0 : lookup(this.density, r * this.inv_step);
+    }
+
+    /**
+     * @param rho host electron density
+     * @return {@code F(ρ)} in eV, zero for a pair potential
+     */
+    @Contract(pure = true)
+    public double embedding(double rho) {
+        return this.embedding == null ? 0 : this.embedding.applyAsDouble(rho);
+    }
+
+    /** @return the inverse table step in 1/Å */
+    @Contract(pure = true)
+    double inverseStep() {
+        return this.inv_step;
+    }
+
+    /** @return the padded pair table */
+    @Contract(pure = true)
+    double @NotNull [] pairTable() {
+        return this.pair;
+    }
+
+    /** @return the padded density table, or null for a pair potential */
+    @Contract(pure = true)
+    double @Nullable [] densityTable() {
+        return this.density;
+    }
+
+    /** Interpolates a table at {@code t = r/step}, {@code 0 ≤ t <} table length − 1. */
+    @Contract(pure = true)
+    static double lookup(double @NotNull [] table, double t) {
+        int k = (int) t;
+        return table[k] + (t - k) * (table[k + 1] - table[k]);
+    }
+}
@@ -0,0 +1,134 @@
+package io.github.noshou.npg.npimage;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Immutable projected image of a particle on a square grid, viewed down a zone axis.
+ * <p> Column {@code c} and row {@code r} are centred on the in-plane coordinates
+ * {@code u = (c − (pixels − 1)/2)·δ} and {@code v = (r − (pixels − 1)/2)·δ} along the image axes
+ * {@link #getAxisU()} and {@link #getAxisV()}, with pixel size {@code δ}; the zone axis points towards the viewer,
+ * so {@code (u, v, zone)} is right-handed. Intensities are column counts, weighted by {@code Z^n} and blurred if
+ * the projector was set up so (see {@link ColumnProjector}).
+ */
+public final class ProjectedImage {
+
+    private final int pixels;
+    private final double pixel_size;
+    private final double[] zone;
+    private final double[] axis_u;
+    private final double[] axis_v;
+    private final double[] intensity;
+    private final long clipped;
+
+    /**
+     * Constructs an image. The arrays are taken over without copying.
+     * @param pixels     pixels per side
+     * @param pixel_size pixel size in Å
+     * @param zone       unit zone axis
+     * @param axis_u     unit image axis along the columns
+     * @param axis_v     unit image axis along the rows
+     * @param intensity  row-major intensities, {@code pixels²} values
+     * @param clipped    number of atoms projected outside the image
+     */
+    ProjectedImage(
+            int pixels,
+            double pixel_size,
+            double @NotNull [] zone,
+            double @NotNull [] axis_u,
+            double @NotNull [] axis_v,
+            double @NotNull [] intensity,
+            long clipped
+    ) {
+        if (intensity.length != pixels * pixels) {
+            throw new IllegalArgumentException("Intensity does not match the image size!");
+        }
+        this.pixels = pixels;
+        this.pixel_size = pixel_size;
+        this.zone = zone;
+        this.axis_u = axis_u;
+        this.axis_v = axis_v;
+        this.intensity = intensity;
+        this.clipped = clipped;
+    }
+
+    /** @return pixels per side */
+    @Contract(pure = true)
+    public int getPixels() {
+        return this.pixels;
+    }
+
+    /** @return pixel size in Å */
+    @Contract(pure = true)
+    public double getPixelSize() {
+        return this.pixel_size;
+    }
+
+    /** @return a copy of the unit zone axis */
+    @Contract(pure = true)
+    public double @NotNull [] getZoneAxis() {
+        return this.zone.clone();
+    }
+
+    /** @return a copy of the unit image axis along the columns */
+    @Contract(pure = true)
+    public double @NotNull [] getAxisU() {
+        return this.axis_u.clone();
+    }
+
+    /** @return a copy of the unit image axis along the rows */
+    @Contract(pure = true)
+    public double @NotNull [] getAxisV() {
+        return this.axis_v.clone();
+    }
+
+    /** @return number of atoms that fell outside the image and were dropped */
+    @Contract(pure = true)
+    public long getClippedCount() {
+        return this.clipped;
+    }
+
+    /** @return in-plane coordinate of column {@code c} in Å */
+    @Contract(pure = true)
+    public double u(int c) {
+        return (c - (this.pixels - 1) / 2.0) * this.pixel_size;
+    }
+
+    /** @return in-plane coordinate of row {@code r} in Å */
+    @Contract(pure = true)
+    public double v(int r) {
+        return this.u(r);
+    }
+
+    /** @return intensity of the pixel at row {@code r} and column {@code c} */
+    @Contract(pure = true)
+    public double intensity(int r, int c) {
+        return this.intensity[r * this.pixels + c];
+    }
+
+    /** @return the largest intensity, or {@code 0} for an empty image */
+    @Contract(pure = true)
+    public double max() {
+        double max = 0;
+        for (double i : this.intensity) {
+            max = Math.max(max, i);
+        }
+        return max;
+    }
+
+    /** @return the summed intensity */
+    @Contract(pure = true)
+    public double total() {
+        double sum = 0;
+        for (double i : this.intensity) {
+            sum += i;
+        }
+        return sum;
+    }
+
+    /** @return a copy of the row-major intensities */
+    @Contract(pure = true)
+    public double @NotNull [] toArray() {
+        return this.intensity.clone();
+    }
+}
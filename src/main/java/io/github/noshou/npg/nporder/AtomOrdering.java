@@ -0,0 +1,32 @@
+package io.github.noshou.npg.nporder;
+
+/**
+ * Order in which the atoms of a built structure are emitted to the output.
+ * <p> The default {@link #SWEEP} order streams atoms straight from the lattice iterator, which walks
+ * the bounding cube in x-fastest, then y, then z order: neighbours in space may be written far apart.
+ * The remaining orderings pass every accepted site through an {@link ExternalSiteSorter} first, so that
+ * atoms close in space also end up close in the file (and in {@code _atom_site.id}).
+ */
+public enum AtomOrdering {
+
+    /** Raw lattice iteration order (no sorting). */
+    SWEEP,
+
+    /** Morton (Z-order) curve over the half-step lattice indices. */
+    MORTON,
+
+    /** Hilbert curve over the half-step lattice indices. */
+    HILBERT,
+
+    /**
+     * Concentric spherical shells of exact squared radius (i² + j² + k²), innermost first;
+     * atoms within one shell follow the Morton curve.
+     */
+    RADIAL_SHELL,
+
+    /**
+     * Shells of constant shape gauge (see {@code Shape.gauge}), one half lattice constant thick,
+     * innermost first; atoms within one shell follow the Morton curve.
+     */
+    GAUGE_SHELL
+}
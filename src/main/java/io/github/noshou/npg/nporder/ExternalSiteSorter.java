@@ -0,0 +1,337 @@
+package io.github.noshou.npg.nporder;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * External merge sort over packed lattice sites that respects a fixed memory budget.
+ * <p> Each record is a pair of {@code long}s: a primary sort key chosen by the caller and the
+ * site's Morton key (see {@link SpaceFillingCurve#morton(long)}), which acts both as the
+ * tie-breaker and as the stored site. Records are accumulated in primitive arrays; whenever the
+ * arrays are full they are sorted and spilled to a temporary run file. {@link #drain(SiteConsumer)}
+ * then merges all runs (in several passes if there are more runs than the budget allows to be
+ * open at once) and emits the sites in ascending {@code (key, morton)} order.
+ * <p> If every record fits in memory, nothing is written to disk. Otherwise the run arrays are released before
+ * merging, so records and stream buffers never hold the budget at the same time.
+ * <p><b>Contract:</b> {@link #close()} must always be called to remove temporary files.
+ */
+public class ExternalSiteSorter implements Closeable {
+
+    /** Size in bytes of one record (primary key + Morton key). */
+    private static final int RECORD_BYTES = 16;
+
+    /** Buffer size used for every run stream. */
+    private static final int STREAM_BUFFER = 1 << 16;
+
+    /** Smallest run size allowed regardless of the budget. */
+    private static final int MIN_RUN = 1 << 12;
+
+    /** Callback receiving sorted sites. */
+    @FunctionalInterface
+    public interface SiteConsumer {
+        /**
+         * Receives the next site in sorted order.
+         * @param site the packed site (see {@link io.github.noshou.npg.lattice.LatticeSite})
+         * @throws IOException if the consumer fails to process the site
+         */
+        void accept(long site) throws IOException;
+    }
+
+    /** In-memory primary keys of the current run (grown on demand up to {@link #run_capacity}). */
+    private long[] keys;
+
+    /** In-memory Morton keys of the current run (grown on demand up to {@link #run_capacity}). */
+    private long[] mortons;
+
+    /** Maximum number of records held in memory before a run is spilled. */
+    private final int run_capacity;
+
+    /** Maximum number of runs merged in a single pass. */
+    private final int fan_in;
+
+    /** Number of records held in memory. */
+    private int size = 0;
+
+    /** Total number of records added. */
+    private long count = 0;
+
+    /** Spilled run files. */
+    private final List<Path> runs = new ArrayList<>();
+
+    /** Whether {@link #drain(SiteConsumer)} has been called. */
+    private boolean is_drained = false;
+
+    /**
+     * Constructs a sorter bounded by the given memory budget.
+     * @param memory_budget approximate number of bytes the sorter may use for records and stream buffers
+     */
+    public ExternalSiteSorter(long memory_budget) {
+        long run = Math.max(MIN_RUN, memory_budget / RECORD_BYTES);
+        this.run_capacity = (int) Math.min(run, Integer.MAX_VALUE - 8);
+        this.keys = new long[Math.min(MIN_RUN, this.run_capacity)];
+        this.mortons = new long[this.keys.length];
+        this.fan_in = (int) Math.max(2, Math.min(1024, memory_budget / (2L * STREAM_BUFFER)));
+    }
+
+    /**
+     * Adds one record.
+     * @param key    primary sort key
+     * @param morton Morton key of the site
+     * @throws IOException           if spilling a run fails
+     * @throws IllegalStateException if the sorter has already been drained
+     */
+    @Contract(mutates = "this")
+    public void add(long key, long morton) throws IOException {
+        if (is_drained) {
+            throw new IllegalStateException("Sorter has already been drained!");
+        }
+        if (size == keys.length) {
+            if (keys.length < run_capacity) {
+                int grown = (int) Math.min(run_capacity, 2L * keys.length);
+                keys = Arrays.copyOf(keys, grown);
+                mortons = Arrays.copyOf(mortons, grown);
+            } else {
+                spill();
+            }
+        }
+        keys[size] = key;
+        mortons[size] = morton;
+        size++;
+        count++;
+    }
+
+    /** @return number of records added so far */
+    @Contract(pure = true)
+    public long size() {
+        return this.count;
+    }
+
+    /**
+     * Emits all sites in ascending {@code (key, morton)} order.
+     * @param consumer receives each site, must not be null
+     * @throws IOException           if reading a run or the consumer fails
+     * @throws IllegalStateException if called more than once
+     */
+    public void drain(@NotNull SiteConsumer consumer) throws IOException {
+        if (is_drained) {
+            throw new IllegalStateException("Sorter has already been drained!");
+        }
+        is_drained = true;
+
+        // everything fits in memory -> no disk access at all
+        if (runs.isEmpty()) {
+            sortPairs(keys, mortons, 0, size - 1);
+            for (int r = 0; r < size; r++) {
+                consumer.accept(SpaceFillingCurve.siteOfMorton(mortons[r]));
+            }
+            return;
+        }
+        if (size > 0) {
+            spill();
+        }
+
+        // the stream buffers of the merge take over the budget of the run arrays
+        keys = new long[0];
+        mortons = new long[0];
+
+        // reduce until a single merge pass suffices; every file stays listed until it is deleted,
+        // so close() also removes the inputs and the partial output of a failed pass
+        while (runs.size() > fan_in) {
+            List<Path> batch = new ArrayList<>(runs.subList(0, fan_in));
+            Path merged = Files.createTempFile("npg-sort-", ".run");
+            runs.add(merged);
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(merged), STREAM_BUFFER))) {
+                merge(batch, (key, morton) -> {
+                    out.writeLong(key);
+                    out.writeLong(morton);
+                });
+            }
+            for (Path p : batch) {
+                Files.deleteIfExists(p);
+                runs.remove(p);
+            }
+        }
+        merge(runs, (key, morton) -> consumer.accept(SpaceFillingCurve.siteOfMorton(morton)));
+    }
+
+    /**
+     * Deletes all temporary run files.
+     * @throws IOException if a run file cannot be deleted
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (Path p : runs) {
+            try {
+                Files.deleteIfExists(p);
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        runs.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /** Receives merged records. */
+    @FunctionalInterface
+    private interface RecordConsumer {
+        void accept(long key, long morton) throws IOException;
+    }
+
+    /** Cursor over one sorted run file. */
+    private static final class RunCursor {
+        final DataInputStream in;
+        long remaining;
+        long key;
+        long morton;
+
+        RunCursor(@NotNull Path path) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), STREAM_BUFFER));
+            this.remaining = Files.size(path) / RECORD_BYTES;
+        }
+
+        boolean advance() throws IOException {
+            if (remaining == 0) {
+                return false;
+            }
+            key = in.readLong();
+            morton = in.readLong();
+            remaining--;
+            return true;
+        }
+    }
+
+    /**
+     * k-way merges the given run files.
+     */
+    private static void merge(@NotNull List<Path> paths, @NotNull RecordConsumer out) throws IOException {
+        PriorityQueue<RunCursor> heap = new PriorityQueue<>(
+                Math.max(1, paths.size()),
+                (a, b) -> a.key != b.key ? Long.compare(a.key, b.key) : Long.compare(a.morton, b.morton)
+        );
+        List<RunCursor> open = new ArrayList<>(paths.size());
+        try {
+            for (Path p : paths) {
+                RunCursor c = new RunCursor(p);
+                open.add(c);
+                if (c.advance()) {
+                    heap.add(c);
+                }
+            }
+            while (!heap.isEmpty()) {
+                RunCursor c = heap.poll();
+                out.accept(c.key, c.morton);
+                if (c.advance()) {
+                    heap.add(c);
+                }
+            }
+        } finally {
+            IOException failure = null;
+            for (RunCursor c : open) {
+                try {
+                    c.in.close();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Sorts the in-memory records and writes them to a new run file.
+     */
+    private void spill() throws IOException {
+        sortPairs(keys, mortons, 0, size - 1);
+        Path run = Files.createTempFile("npg-sort-", ".run");
+        runs.add(run);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(run), STREAM_BUFFER))) {
+            for (int r = 0; r < size; r++) {
+                out.writeLong(keys[r]);
+                out.writeLong(mortons[r]);
+            }
+        }
+        size = 0;
+    }
+
+    /**
+     * In-place quicksort of two parallel arrays, ordered lexicographically by {@code (a, b)}.
+     * Recurses on the smaller partition only, so stack depth stays logarithmic.
+     */
+    private static void sortPairs(long @NotNull [] a, long @NotNull [] b, int lo, int hi) {
+        while (hi - lo > 16) {
+
+            // median of three
+            int mid = (lo + hi) >>> 1;
+            if (less(a, b, mid, lo)) swap(a, b, mid, lo);
+            if (less(a, b, hi, lo)) swap(a, b, hi, lo);
+            if (less(a, b, hi, mid)) swap(a, b, hi, mid);
+            long pa = a[mid];
+            long pb = b[mid];
+
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (a[i] < pa || (a[i] == pa && b[i] < pb)) i++;
+                while (a[j] > pa || (a[j] == pa && b[j] > pb)) j--;
+                if (i <= j) {
+                    swap(a, b, i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if (j - lo < hi - i) {
+                sortPairs(a, b, lo, j);
+                lo = i;
+            } else {
+                sortPairs(a, b, i, hi);
+                hi = j;
+            }
+        }
+
+        // insertion sort for short ranges
+        for (int i = lo + 1; i <= hi; i++) {
+            long ka = a[i];
+            long kb = b[i];
+            int j = i - 1;
+            while (j >= lo && (a[j] > ka || (a[j] == ka && b[j] > kb))) {
+                a[j + 1] = a[j];
+                b[j + 1] = b[j];
+                j--;
+            }
+            a[j + 1] = ka;
+            b[j + 1] = kb;
+        }
+    }
+
+    @Contract(pure = true)
+    private static boolean less(long @NotNull [] a, long @NotNull [] b, int x, int y) {
+        return a[x] < a[y] || (a[x] == a[y] && b[x] < b[y]);
+    }
+
+    private static void swap(long @NotNull [] a, long @NotNull [] b, int x, int y) {
+        long t = a[x];
+        a[x] = a[y];
+        a[y] = t;
+        t = b[x];
+        b[x] = b[y];
+        b[y] = t;
+    }
+}
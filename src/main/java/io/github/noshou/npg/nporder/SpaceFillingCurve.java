@@ -0,0 +1,143 @@
+package io.github.noshou.npg.nporder;
+
+import io.github.noshou.npg.lattice.LatticeSite;
+import org.jetbrains.annotations.Contract;
+
+/**
+ * Utility class mapping packed lattice sites onto one-dimensional space-filling curves.
+ * <p> Both curves operate on the unsigned {@value LatticeSite#BITS}-bit half-step indices stored in a
+ * packed site (see {@link LatticeSite}), producing 63-bit keys that are always non-negative and can
+ * therefore be compared as signed {@code long}s.
+ * <ul>
+ *     <li><b>Morton (Z-order)</b> interleaves the bits of x, y and z. It is cheap and invertible,
+ *     but jumps across the particle at every power-of-two boundary.</li>
+ *     <li><b>Hilbert</b> uses Skilling's transposition algorithm, so consecutive keys are always
+ *     face-adjacent cells; locality is noticeably better than Morton.</li>
+ * </ul>
+ * @see <a href="https://doi.org/10.1063/1.1751381">J. Skilling, "Programming the Hilbert curve", AIP Conf. Proc. 707 (2004)</a>
+ */
+public final class SpaceFillingCurve {
+
+    private static final int BITS = LatticeSite.BITS;
+
+    private SpaceFillingCurve() {
+        throw new AssertionError("Utility class should not be instantiated!");
+    }
+
+    /**
+     * Returns the Morton key of a packed site.
+     * @param site the packed site
+     * @return the 63-bit Morton key
+     */
+    @Contract(pure = true)
+    public static long morton(long site) {
+        return interleave(
+                LatticeSite.i(site) + LatticeSite.OFFSET,
+                LatticeSite.j(site) + LatticeSite.OFFSET,
+                LatticeSite.k(site) + LatticeSite.OFFSET
+        );
+    }
+
+    /**
+     * Inverts {@link #morton(long)}.
+     * @param key a Morton key
+     * @return the packed site
+     */
+    @Contract(pure = true)
+    public static long siteOfMorton(long key) {
+        return LatticeSite.pack(
+                compact(key) - LatticeSite.OFFSET,
+                compact(key >>> 1) - LatticeSite.OFFSET,
+                compact(key >>> 2) - LatticeSite.OFFSET
+        );
+    }
+
+    /**
+     * Returns the Hilbert key of a packed site.
+     * @param site the packed site
+     * @return the 63-bit Hilbert key
+     */
+    @Contract(pure = true)
+    public static long hilbert(long site) {
+        int x = LatticeSite.i(site) + LatticeSite.OFFSET;
+        int y = LatticeSite.j(site) + LatticeSite.OFFSET;
+        int z = LatticeSite.k(site) + LatticeSite.OFFSET;
+
+        // axes -> transposed Hilbert index (Skilling, 2004)
+        int m = 1 << (BITS - 1);
+
+        // inverse undo
+        for (int q = m; q > 1; q >>= 1) {
+            int p = q - 1;
+            if ((x & q) != 0) {
+                x ^= p;
+            }
+            if ((y & q) != 0) {
+                x ^= p;
+            } else {
+                int t = (x ^ y) & p;
+                x ^= t;
+                y ^= t;
+            }
+            if ((z & q) != 0) {
+                x ^= p;
+            } else {
+                int t = (x ^ z) & p;
+                x ^= t;
+                z ^= t;
+            }
+        }
+
+        // gray encode
+        y ^= x;
+        z ^= y;
+        int t = 0;
+        for (int q = m; q > 1; q >>= 1) {
+            if ((z & q) != 0) {
+                t ^= q - 1;
+            }
+        }
+        x ^= t;
+        y ^= t;
+        z ^= t;
+
+        // the transposed form stores the most significant key bit in x
+        return interleave(z, y, x);
+    }
+
+    /**
+     * Interleaves three {@value #BITS}-bit integers, {@code a} taking the least significant position.
+     */
+    @Contract(pure = true)
+    private static long interleave(int a, int b, int c) {
+        return spread(a) | (spread(b) << 1) | (spread(c) << 2);
+    }
+
+    /**
+     * Spreads the low {@value #BITS} bits of {@code v} so that two zero bits separate each original bit.
+     */
+    @Contract(pure = true)
+    private static long spread(int v) {
+        long x = v & 0x1fffffL;
+        x = (x | x << 32) & 0x1f00000000ffffL;
+        x = (x | x << 16) & 0x1f0000ff0000ffL;
+        x = (x | x << 8)  & 0x100f00f00f00f00fL;
+        x = (x | x << 4)  & 0x10c30c30c30c30c3L;
+        x = (x | x << 2)  & 0x1249249249249249L;
+        return x;
+    }
+
+    /**
+     * Inverts {@link #spread(int)}, keeping every third bit of {@code key}.
+     */
+    @Contract(pure = true)
+    private static int compact(long key) {
+        long x = key & 0x1249249249249249L;
+        x = (x ^ (x >>> 2))  & 0x10c30c30c30c30c3L;
+        x = (x ^ (x >>> 4))  & 0x100f00f00f00f00fL;
+        x = (x ^ (x >>> 8))  & 0x1f0000ff0000ffL;
+        x = (x ^ (x >>> 16)) & 0x1f00000000ffffL;
+        x = (x ^ (x >>> 32)) & 0x1fffffL;
+        return (int) x;
+    }
+}
@@ -0,0 +1,82 @@
+package io.github.noshou.npg.npreader;
+
+import org.jetbrains.annotations.NotNull;
+import org.rcsb.cif.CifIO;
+import org.rcsb.cif.model.FloatColumn;
+import org.rcsb.cif.model.StrColumn;
+import org.rcsb.cif.schema.StandardSchemata;
+import org.rcsb.cif.schema.mm.AtomSite;
+import org.rcsb.cif.schema.mm.MmCifBlock;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads BinaryCIF through ciftools-java into a {@link ParticleStore}.
+ * <p> BinaryCIF stores every column as one encoded array, so the file is decoded as a whole by ciftools; the
+ * store is then sized exactly from the row count and filled column by column.
+ */
+final class BinaryCifReader {
+
+    private BinaryCifReader() {
+        throw new AssertionError("Utility class should not be instantiated!");
+    }
+
+    /**
+     * Reads a BinaryCIF stream. The stream is not closed.
+     * @param in the stream, non-null
+     * @return the particle
+     * @throws IOException if the stream cannot be read or lacks the required columns
+     */
+    static @NotNull ParticleStore read(@NotNull InputStream in) throws IOException {
+        MmCifBlock block = CifIO.readFromInputStream(in).as(StandardSchemata.MMCIF).getFirstBlock();
+        AtomSite atom_site = block.getAtomSite();
+        FloatColumn x = atom_site.getCartnX();
+        FloatColumn y = atom_site.getCartnY();
+        FloatColumn z = atom_site.getCartnZ();
+        StrColumn type = atom_site.getTypeSymbol();
+        StrColumn id = atom_site.getId();
+        if (!atom_site.isDefined() || !x.isDefined() || !y.isDefined() || !z.isDefined() || !type.isDefined()) {
+            throw new IOException("_atom_site lacks type_symbol or Cartn_x/y/z!");
+        }
+
+        int rows = atom_site.getRowCount();
+        ParticleStore.Builder builder = new ParticleStore.Builder(rows);
+        if (block.getEntry().getId().isDefined()) {
+            builder.structureIndex(block.getEntry().getId().get(0));
+        }
+        if (block.getCell().getLengthA().isDefined()) {
+            builder.latticeConstant(block.getCell().getLengthA().get(0));
+        }
+
+        String last_symbol = null;
+        int last_element = -1;
+        for (int row = 0; row < rows; row++) {
+            String symbol = type.get(row);
+            if (!symbol.equals(last_symbol)) {
+                last_symbol = symbol;
+                last_element = builder.elementIndex(symbol);
+            }
+            builder.add(
+                    id.isDefined() ? parseId(id.get(row), row + 1) : row + 1,
+                    last_element,
+                    x.get(row),
+                    y.get(row),
+                    z.get(row)
+            );
+        }
+        return builder.build();
+    }
+
+    /**
+     * Parses an atom id, which mmCIF allows to be any code.
+     * @return the id, or {@code fallback} if it is not a non-negative integer
+     */
+    private static int parseId(String id, int fallback) {
+        try {
+            int v = Integer.parseInt(id);
+            return v < 0 ? fallback : v;
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+}
@@ -0,0 +1,384 @@
+package io.github.noshou.npg.npreader;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Streaming tokenizer for text CIF files.
+ * <p> Bytes are read through a fixed buffer (grown only for a single token longer than the buffer), and the
+ * current token is exposed in place as a byte range, so scanning an {@code _atom_site} loop allocates nothing per
+ * value. Comments are skipped; semicolon-delimited text fields are consumed and reported as empty quoted tokens,
+ * since none of the values read from them are needed.
+ */
+final class CifLexer {
+
+    /** Initial buffer size. */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /** Exact powers of ten for the fast number path. */
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final InputStream in;
+    private byte[] buf = new byte[BUFFER_SIZE];
+    private int pos = 0;
+    private int limit = 0;
+    private boolean is_eof = false;
+    private boolean at_line_start = true;
+    private boolean is_pending = false;
+
+    /** Current token range in {@link #buf}. */
+    private int start, end;
+
+    /** Whether the current token was quoted (quoted tokens are never reserved words). */
+    private boolean is_quoted;
+
+    /** Current line number (1-based). */
+    private long line = 1;
+
+    /**
+     * Constructs a lexer over a stream. The stream is not closed by the lexer.
+     * @param in the stream, non-null
+     */
+    CifLexer(@NotNull InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Advances to the next token.
+     * @return false at the end of input
+     * @throws IOException if reading fails
+     */
+    boolean next() throws IOException {
+        if (is_pending) {
+            is_pending = false;
+            return true;
+        }
+        while (true) {
+            int c = peek(0);
+            if (c < 0) {
+                return false;
+            }
+            if (c == '\n') {
+                line++;
+                at_line_start = true;
+                pos++;
+            } else if (c == ' ' || c == '\t' || c == '\r') {
+                at_line_start = false;
+                pos++;
+            } else if (c == '#') {
+                while ((c = peek(0)) >= 0 && c != '\n') {
+                    pos++;
+                }
+            } else if (c == ';' && at_line_start) {
+                this.skipTextField();
+                return true;
+            } else if (c == '\'' || c == '"') {
+                this.quotedToken(c);
+                return true;
+            } else {
+                int len = 1;
+                while ((c = peek(len)) >= 0 && !isSpace(c)) {
+                    len++;
+                }
+                start = pos;
+                end = pos + len;
+                pos = end;
+                is_quoted = false;
+                at_line_start = false;
+                return true;
+            }
+        }
+    }
+
+    /** Re-delivers the current token on the next call to {@link #next()}. */
+    void pushBack() {
+        is_pending = true;
+    }
+
+    /** @return current line number (1-based) */
+    long line() {
+        return line;
+    }
+
+    /** @return whether the current token is quoted (or a text field) */
+    boolean isQuoted() {
+        return is_quoted;
+    }
+
+    /** @return whether the current token is a tag (starts with an unquoted underscore) */
+    boolean isTag() {
+        return !is_quoted && end > start && buf[start] == '_';
+    }
+
+    /**
+     * Checks whether the current token is a tag, a data block header or a reserved word, i.e. ends a loop.
+     * @return whether the current token cannot be a loop value
+     */
+    boolean isReserved() {
+        return this.isTag()
+                || this.equalsIgnoreCase("loop_")
+                || this.startsWithIgnoreCase("data_")
+                || this.startsWithIgnoreCase("save_")
+                || this.equalsIgnoreCase("global_")
+                || this.equalsIgnoreCase("stop_");
+    }
+
+    /** @return whether the current token is the unquoted null value {@code .} or {@code ?} */
+    boolean isNull() {
+        return !is_quoted && end - start == 1 && (buf[start] == '.' || buf[start] == '?');
+    }
+
+    /**
+     * @param s an ASCII string
+     * @return whether the current unquoted token equals {@code s}, ignoring case
+     */
+    boolean equalsIgnoreCase(@NotNull String s) {
+        return !is_quoted && end - start == s.length() && this.startsWithIgnoreCase(s);
+    }
+
+    /**
+     * @param s an ASCII string
+     * @return whether the current unquoted token starts with {@code s}, ignoring case
+     */
+    boolean startsWithIgnoreCase(@NotNull String s) {
+        if (is_quoted || end - start < s.length()) {
+            return false;
+        }
+        for (int n = 0; n < s.length(); n++) {
+            if (Character.toLowerCase((char) buf[start + n]) != Character.toLowerCase(s.charAt(n))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param s an ASCII string, non-null
+     * @return whether the current token equals {@code s} exactly
+     */
+    boolean contentEquals(@NotNull String s) {
+        if (end - start != s.length()) {
+            return false;
+        }
+        for (int n = 0; n < s.length(); n++) {
+            if (buf[start + n] != s.charAt(n)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** @return the current token as a string */
+    @Contract(pure = true)
+    @NotNull String text() {
+        return new String(buf, start, end - start, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Parses the current token as a decimal integer.
+     * @param fallback value returned if the token is null or not an integer
+     * @return the parsed value or {@code fallback}
+     */
+    int integer(int fallback) {
+        int n = start;
+        boolean negative = false;
+        if (n < end && (buf[n] == '-' || buf[n] == '+')) {
+            negative = buf[n] == '-';
+            n++;
+        }
+        if (n == end || end - n > 9) {
+            return fallback;
+        }
+        int v = 0;
+        for (; n < end; n++) {
+            int d = buf[n] - '0';
+            if (d < 0 || d > 9) {
+                return fallback;
+            }
+            v = v * 10 + d;
+        }
+        return negative ? -v : v;
+    }
+
+    /**
+     * Parses the current token as a CIF number, ignoring a trailing standard uncertainty such as {@code 1.23(4)}.
+     * <p> Short decimals (at most 15 significant digits and a power of ten up to 22) are converted exactly
+     * without allocation; anything else falls back to {@link Double#parseDouble(String)}.
+     * @return the value, or {@code NaN} for the null values {@code .} and {@code ?}
+     * @throws IOException if the token is not a number
+     */
+    double number() throws IOException {
+        if (this.isNull()) {
+            return Double.NaN;
+        }
+        int n = start;
+        int stop = end;
+        for (int u = start; u < end; u++) {
+            if (buf[u] == '(') {
+                stop = u;
+                break;
+            }
+        }
+        boolean negative = false;
+        if (n < stop && (buf[n] == '-' || buf[n] == '+')) {
+            negative = buf[n] == '-';
+            n++;
+        }
+        long mantissa = 0;
+        int significant = 0;
+        int exp10 = 0;
+        boolean any = false, is_exact = true;
+        for (; n < stop && isDigit(buf[n]); n++, any = true) {
+            if (significant < 18) {
+                mantissa = mantissa * 10 + (buf[n] - '0');
+                if (mantissa != 0) {
+                    significant++;
+                }
+            } else {
+                exp10++;
+                is_exact &= buf[n] == '0';
+            }
+        }
+        if (n < stop && buf[n] == '.') {
+            for (n++; n < stop && isDigit(buf[n]); n++, any = true) {
+                if (significant < 18) {
+                    mantissa = mantissa * 10 + (buf[n] - '0');
+                    if (mantissa != 0) {
+                        significant++;
+                    }
+                    exp10--;
+                } else {
+                    is_exact &= buf[n] == '0';
+                }
+            }
+        }
+        if (any && n < stop && (buf[n] == 'e' || buf[n] == 'E')) {
+            n++;
+            boolean exp_negative = false;
+            if (n < stop && (buf[n] == '-' || buf[n] == '+')) {
+                exp_negative = buf[n] == '-';
+                n++;
+            }
+            int exp = 0;
+            boolean any_exp = false;
+            for (; n < stop && isDigit(buf[n]); n++, any_exp = true) {
+                exp = Math.min(exp * 10 + (buf[n] - '0'), 100_000);
+            }
+            any &= any_exp;
+            exp10 += exp_negative ? -exp : exp;
+        }
+        if (!any || n != stop) {
+            throw new IOException("Malformed number '" + this.text() + "' on line " + line);
+        }
+        if (mantissa == 0) {
+            return negative ? -0.0 : 0.0;
+        }
+        if (is_exact && significant <= 15 && Math.abs(exp10) <= 22) {
+            double v = exp10 >= 0 ? mantissa * POW10[exp10] : mantissa / POW10[-exp10];
+            return negative ? -v : v;
+        }
+        return Double.parseDouble(new String(buf, start, stop - start, StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * Reads a quoted token; the closing quote must be followed by whitespace or the end of input.
+     */
+    private void quotedToken(int quote) throws IOException {
+        int len = 1;
+        while (true) {
+            int c = peek(len);
+            if (c < 0 || c == '\n') {
+                throw new IOException("Unterminated quoted value on line " + line);
+            }
+            if (c == quote) {
+                int after = peek(len + 1);
+                if (after < 0 || isSpace(after)) {
+                    break;
+                }
+            }
+            len++;
+        }
+        start = pos + 1;
+        end = pos + len;
+        pos = end + 1;
+        is_quoted = true;
+        at_line_start = false;
+    }
+
+    /**
+     * Consumes a semicolon-delimited text field (from a line starting with {@code ;} to the next such line).
+     */
+    private void skipTextField() throws IOException {
+        pos++;
+        while (true) {
+            int c = peek(0);
+            if (c < 0) {
+                throw new IOException("Unterminated text field on line " + line);
+            }
+            pos++;
+            if (c == '\n') {
+                line++;
+                if (peek(0) == ';') {
+                    pos++;
+                    break;
+                }
+            }
+        }
+        start = end = pos;
+        is_quoted = true;
+        at_line_start = false;
+    }
+
+    /**
+     * Returns the byte at {@code pos + off}, reading more input if needed.
+     * @return the unsigned byte, or -1 at the end of input
+     */
+    private int peek(int off) throws IOException {
+        while (pos + off >= limit) {
+            if (!this.fill()) {
+                return -1;
+            }
+        }
+        return buf[pos + off] & 0xFF;
+    }
+
+    /**
+     * Moves unread bytes to the front of the buffer (growing it if full) and reads more input.
+     * @return false at the end of input
+     */
+    private boolean fill() throws IOException {
+        if (is_eof) {
+            return false;
+        }
+        if (pos > 0) {
+            System.arraycopy(buf, pos, buf, 0, limit - pos);
+            limit -= pos;
+            pos = 0;
+        }
+        if (limit == buf.length) {
+            buf = Arrays.copyOf(buf, buf.length * 2);
+        }
+        int read = in.read(buf, limit, buf.length - limit);
+        if (read < 0) {
+            is_eof = true;
+            return false;
+        }
+        limit += read;
+        return true;
+    }
+
+    private static boolean isSpace(int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    private static boolean isDigit(byte c) {
+        return c >= '0' && c <= '9';
+    }
+}
@@ -0,0 +1,177 @@
+package io.github.noshou.npg.npreader;
+
+import org.jetbrains.annotations.NotNull;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reads the atoms of a particle from an mmCIF file into a {@link ParticleStore}.
+ * <p> Text mmCIF (as written by {@link io.github.noshou.npg.npwriter.MmCifWriter}) is parsed by a streaming
+ * tokenizer straight into the store's primitive arrays, so memory use beyond the arrays is a fixed read buffer
+ * regardless of the file size. BinaryCIF is decoded column-wise through ciftools-java (see
+ * {@link BinaryCifReader}). The format is detected from the first byte of the file.
+ * <p> Only the first data block is read. From it, the reader takes {@code _entry.id}, {@code _cell.length_a}
+ * (used as the lattice constant) and, from the {@code _atom_site} loop, {@code id}, {@code type_symbol} and
+ * {@code Cartn_x/y/z}. Ids that are missing or not integers are replaced by the 1-based row number.
+ */
+public final class MmCifReader {
+
+    private MmCifReader() {
+        throw new AssertionError("Utility class should not be instantiated!");
+    }
+
+    /**
+     * Reads a text mmCIF or BinaryCIF file.
+     * @param path the file, non-null
+     * @return the particle
+     * @throws IOException if the file cannot be read or is malformed
+     */
+    public static @NotNull ParticleStore read(@NotNull Path path) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(path))) {
+            return read(in);
+        }
+    }
+
+    /**
+     * Reads a text mmCIF or BinaryCIF stream. The stream is not closed.
+     * @param in the stream, non-null; must support {@link InputStream#mark(int)} to detect the format
+     * @return the particle
+     * @throws IOException if the stream cannot be read or is malformed
+     */
+    public static @NotNull ParticleStore read(@NotNull InputStream in) throws IOException {
+        if (!in.markSupported()) {
+            throw new IllegalArgumentException("Stream must support mark/reset!");
+        }
+        in.mark(1);
+        int first = in.read();
+        in.reset();
+        if (isMessagePackMap(first)) {
+            return BinaryCifReader.read(in);
+        }
+        return readText(in);
+    }
+
+    /**
+     * Reads a text mmCIF stream. The stream is not closed.
+     * @param in the stream, non-null
+     * @return the particle
+     * @throws IOException if the stream cannot be read or is malformed
+     */
+    public static @NotNull ParticleStore readText(@NotNull InputStream in) throws IOException {
+        CifLexer lexer = new CifLexer(in);
+        ParticleStore.Builder builder = new ParticleStore.Builder();
+        boolean in_block = false;
+        boolean has_atoms = false;
+        while (lexer.next()) {
+            if (lexer.startsWithIgnoreCase("data_")) {
+                if (in_block) {
+                    break;
+                }
+                in_block = true;
+            } else if (lexer.equalsIgnoreCase("loop_")) {
+                has_atoms |= readLoop(lexer, builder);
+            } else if (lexer.isTag()) {
+                String tag = lexer.text().toLowerCase(Locale.ROOT);
+                if (!lexer.next() || lexer.isReserved()) {
+                    throw new IOException("Missing value for " + tag + " on line " + lexer.line());
+                }
+                switch (tag) {
+                    case "_entry.id" -> builder.structureIndex(lexer.text());
+                    case "_cell.length_a" -> builder.latticeConstant(lexer.number());
+                    default -> { }
+                }
+            }
+        }
+        if (!has_atoms) {
+            throw new IOException("No _atom_site loop found!");
+        }
+        return builder.build();
+    }
+
+    /**
+     * Reads a loop, appending its rows to the builder if it is the {@code _atom_site} loop and skipping it
+     * otherwise.
+     * @return whether the loop was the {@code _atom_site} loop
+     */
+    private static boolean readLoop(@NotNull CifLexer lexer, @NotNull ParticleStore.Builder builder)
+            throws IOException {
+        List<String> tags = new ArrayList<>();
+        while (lexer.next()) {
+            if (!lexer.isTag()) {
+                lexer.pushBack();
+                break;
+            }
+            tags.add(lexer.text().toLowerCase(Locale.ROOT));
+        }
+        if (tags.isEmpty() || !tags.get(0).startsWith("_atom_site.")) {
+            while (lexer.next()) {
+                if (lexer.isReserved()) {
+                    lexer.pushBack();
+                    break;
+                }
+            }
+            return false;
+        }
+
+        int col_id = tags.indexOf("_atom_site.id");
+        int col_type = tags.indexOf("_atom_site.type_symbol");
+        int col_x = tags.indexOf("_atom_site.cartn_x");
+        int col_y = tags.indexOf("_atom_site.cartn_y");
+        int col_z = tags.indexOf("_atom_site.cartn_z");
+        if (col_type < 0 || col_x < 0 || col_y < 0 || col_z < 0) {
+            throw new IOException("_atom_site loop lacks type_symbol or Cartn_x/y/z (line " + lexer.line() + ")");
+        }
+
+        int columns = tags.size();
+        int col = 0;
+        int id = 0, element = 0;
+        double x = 0, y = 0, z = 0;
+        String last_symbol = null;
+        int last_element = -1;
+        while (lexer.next()) {
+            if (lexer.isReserved()) {
+                lexer.pushBack();
+                break;
+            }
+            if (col == col_id) {
+                id = lexer.integer(-1);
+            } else if (col == col_type) {
+
+                // particles rarely have more than a couple of elements; skip the symbol lookup for runs
+                if (last_symbol == null || !lexer.contentEquals(last_symbol)) {
+                    last_symbol = lexer.text();
+                    last_element = builder.elementIndex(last_symbol);
+                }
+                element = last_element;
+            } else if (col == col_x) {
+                x = lexer.number();
+            } else if (col == col_y) {
+                y = lexer.number();
+            } else if (col == col_z) {
+                z = lexer.number();
+            }
+            if (++col == columns) {
+                builder.add(col_id < 0 || id < 0 ? builder.size() + 1 : id, element, x, y, z);
+                col = 0;
+            }
+        }
+        if (col != 0) {
+            throw new IOException("Incomplete _atom_site row before line " + lexer.line());
+        }
+        return true;
+    }
+
+    /**
+     * BinaryCIF files are MessagePack maps, whose first byte is a fixmap, map16 or map32 marker; a text CIF
+     * always starts with printable ASCII or whitespace.
+     */
+    private static boolean isMessagePackMap(int first) {
+        return (first & 0xF0) == 0x80 || first == 0xDE || first == 0xDF;
+    }
+}
@@ -0,0 +1,256 @@
+package io.github.noshou.npg.npreader;
+
+import io.github.noshou.npg.lattice.LatticeSite;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Content fingerprint of the atoms of a lattice particle: a 128-bit hash of its occupied half-step sites and their
+ * elements, together with the atom count and the lattice constant.
+ * <p> Particles of different classes or sizes often consist of exactly the same atoms (e.g. the canonical and
+ * biscribed variants of a solid, or chiral pairs at small radii); equal fingerprints identify such duplicates so
+ * that their results can be computed once and looked up by content afterwards.
+ * <p> The hash of a site set is the sum over its atoms of a mixed 128-bit hash of {@code (i, j, k, element)}, so it
+ * does not depend on the order atoms are visited in: it is the hash of the sorted site list without the sort, and
+ * can be accumulated while a particle is being built ({@link Accumulator}). A {@linkplain #isCanonical() canonical}
+ * fingerprint is in addition invariant under the 48 operations of the cubic point group about the origin (axis
+ * permutations and sign changes of the half-step indices): it is the smallest of the 48 hashes of the transformed
+ * site sets, so mirror images and rotated copies share it. Orientation-independent results, such as scattering
+ * profiles, can be shared between all particles of equal canonical fingerprint.
+ */
+public final class ParticleFingerprint {
+
+    /** Number of sign patterns of the three axes, one bit per axis. */
+    private static final int SIGN_PATTERNS = 8;
+
+    /** The 6 permutations of the three axes. */
+    private static final int[][] PERMUTATIONS = {{0, 1, 2}, {0, 2, 1}, {1, 0, 2}, {1, 2, 0}, {2, 0, 1}, {2, 1, 0}};
+
+    /** Number of operations of the cubic point group. */
+    public static final int CUBIC_OPERATIONS = PERMUTATIONS.length * SIGN_PATTERNS;
+
+    private final long hi;
+    private final long lo;
+    private final long atoms;
+    private final double lattice_constant;
+    private final boolean canonical;
+
+    private ParticleFingerprint(long hi, long lo, long atoms, double lattice_constant, boolean canonical) {
+        this.hi = hi;
+        this.lo = lo;
+        this.atoms = atoms;
+        this.lattice_constant = lattice_constant;
+        this.canonical = canonical;
+    }
+
+    /**
+     * Fingerprints the exact site set of a particle.
+     * @param store the particle, non-null, with lattice sites
+     * @return the fingerprint
+     * @throws IllegalArgumentException if the atoms are not on the lattice grid
+     */
+    @Contract("_ -> new")
+    public static @NotNull ParticleFingerprint of(@NotNull ParticleStore store) {
+        return of(store, false);
+    }
+
+    /**
+     * Fingerprints the site set of a particle up to the cubic point group.
+     * @param store the particle, non-null, with lattice sites
+     * @return the canonical fingerprint
+     * @throws IllegalArgumentException if the atoms are not on the lattice grid
+     */
+    @Contract("_ -> new")
+    public static @NotNull ParticleFingerprint canonical(@NotNull ParticleStore store) {
+        return of(store, true);
+    }
+
+    private static @NotNull ParticleFingerprint of(@NotNull ParticleStore store, boolean canonical) {
+        if (!store.hasSites()) {
+            throw new IllegalArgumentException("Fingerprints need atoms on the lattice grid!");
+        }
+        long[] salt = new long[store.getElements().size()];
+        for (int e = 0; e < salt.length; e++) {
+            salt[e] = salt(store.getElements().get(e));
+        }
+        Accumulator accumulator = new Accumulator(store.getLatticeConstant(), canonical);
+        long[] sites = store.getSites();
+        for (int n = 0; n < store.size(); n++) {
+            accumulator.add(sites[n], salt[store.elementIndex(n)]);
+        }
+        return accumulator.get();
+    }
+
+    /** @return the upper 64 bits of the site hash */
+    @Contract(pure = true)
+    public long getHigh() {
+        return this.hi;
+    }
+
+    /** @return the lower 64 bits of the site hash */
+    @Contract(pure = true)
+    public long getLow() {
+        return this.lo;
+    }
+
+    /** @return number of atoms */
+    @Contract(pure = true)
+    public long getAtomCount() {
+        return this.atoms;
+    }
+
+    /** @return lattice constant in Å */
+    @Contract(pure = true)
+    public double getLatticeConstant() {
+        return this.lattice_constant;
+    }
+
+    /** @return whether the fingerprint is invariant under the cubic point group */
+    @Contract(pure = true)
+    public boolean isCanonical() {
+        return this.canonical;
+    }
+
+    /** @return the site hash as 32 hexadecimal digits, e.g. as a file name */
+    @Contract(pure = true)
+    public @NotNull String toHex() {
+        return String.format("%016x%016x", this.hi, this.lo);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (
+                    o instanceof ParticleFingerprint f
+                &&  this.hi == f.hi
+                &&  this.lo == f.lo
+                &&  this.atoms == f.atoms
+                &&  Double.compare(this.lattice_constant, f.lattice_constant) == 0
+                &&  this.canonical == f.canonical
+        );
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(this.lo);
+    }
+
+    @Override
+    public @NotNull String toString() {
+        return (this.canonical ? "canonical " : "") + this.toHex() + " (" + this.atoms + " atoms, a = "
+                + this.lattice_constant + " Å)";
+    }
+
+    /**
+     * Returns the hash salt of an element, for {@link Accumulator#add(long, long)}.
+     * @param element the element symbol, non-null
+     * @return the salt
+     */
+    @Contract(pure = true)
+    public static long salt(@NotNull String element) {
+        long h = 0x9E3779B97F4A7C15L;
+        for (int c = 0; c < element.length(); c++) {
+            h = mix(h ^ element.charAt(c));
+        }
+        return h;
+    }
+
+    /** SplitMix64 finaliser. */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Accumulates a fingerprint atom by atom, in any order.
+     */
+    public static final class Accumulator {
+
+        private final double lattice_constant;
+        private final boolean canonical;
+        private final long[] hi;
+        private final long[] lo;
+        private final int[] index = new int[3];
+        private long atoms = 0;
+
+        /** Element salt cached for the last element symbol seen. */
+        private @Nullable String last_element = null;
+        private long last_salt = 0;
+
+        /**
+         * Constructs an empty accumulator.
+         * @param lattice_constant lattice constant in Å
+         * @param canonical        whether to fingerprint up to the cubic point group
+         */
+        public Accumulator(double lattice_constant, boolean canonical) {
+            this.lattice_constant = lattice_constant;
+            this.canonical = canonical;
+            int operations = canonical ? CUBIC_OPERATIONS : 1;
+            this.hi = new long[operations];
+            this.lo = new long[operations];
+        }
+
+        /**
+         * Adds an atom.
+         * @param site    the packed half-step site
+         * @param element the element symbol, non-null
+         */
+        @Contract(mutates = "this")
+        public void add(long site, @NotNull String element) {
+            if (!element.equals(this.last_element)) {
+                this.last_element = element;
+                this.last_salt = salt(element);
+            }
+            this.add(site, this.last_salt);
+        }
+
+        /**
+         * Adds an atom.
+         * @param site the packed half-step site
+         * @param salt the {@link #salt(String)} of its element
+         */
+        @Contract(mutates = "this")
+        public void add(long site, long salt) {
+            this.index[0] = LatticeSite.i(site);
+            this.index[1] = LatticeSite.j(site);
+            this.index[2] = LatticeSite.k(site);
+            for (int o = 0; o < this.hi.length; o++) {
+                int[] p = PERMUTATIONS[o / SIGN_PATTERNS];
+                int signs = o % SIGN_PATTERNS;
+                long i = (signs & 1) == 0 ? this.index[p[0]] : -this.index[p[0]];
+                long j = (signs & 2) == 0 ? this.index[p[1]] : -this.index[p[1]];
+                long k = (signs & 4) == 0 ? this.index[p[2]] : -this.index[p[2]];
+                long key = (i & 0x1FFFFF) | (j & 0x1FFFFF) << 21 | (k & 0x1FFFFF) << 42;
+                this.hi[o] += mix(key ^ salt);
+                this.lo[o] += mix((key + 0x632BE59BD9B4E019L) ^ Long.rotateLeft(salt, 32));
+            }
+            this.atoms++;
+        }
+
+        /** @return number of atoms added */
+        @Contract(pure = true)
+        public long size() {
+            return this.atoms;
+        }
+
+        /** @return the fingerprint of the atoms added so far */
+        @Contract(pure = true)
+        public @NotNull ParticleFingerprint get() {
+            int best = 0;
+            for (int o = 1; o < this.hi.length; o++) {
+                int c = Long.compareUnsigned(this.hi[o], this.hi[best]);
+                if (c < 0 || (c == 0 && Long.compareUnsigned(this.lo[o], this.lo[best]) < 0)) {
+                    best = o;
+                }
+            }
+            return new ParticleFingerprint(
+                    this.hi[best],
+                    this.lo[best],
+                    this.atoms,
+                    this.lattice_constant,
+                    this.canonical
+            );
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package io.github.noshou.npg.npreader;
+
+import io.github.noshou.npg.lattice.LatticeSite;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Compact, read-only struct-of-arrays container for the atoms of one particle.
+ * <p> Every atom is stored as primitive values only: its id, an element index into a small symbol table,
+ * and its Cartesian coordinates (Å) in three separate {@code double} arrays. When the lattice constant is known
+ * and every atom sits on the half-step grid written by {@code Shape} (multiples of {@code a/2}), the packed
+ * {@link LatticeSite} of every atom is stored as well, so analyses can work on exact integer positions.
+ * <p> The coordinate arrays returned by {@link #getX()}, {@link #getY()} and {@link #getZ()} are the backing
+ * arrays (not copies) and may be longer than {@link #size()}; callers must not modify them.
+ */
+public final class ParticleStore {
+
+    /** Largest distance (Å) from the half-step grid still accepted as a lattice site. */
+    private static final double SITE_TOLERANCE = 1e-4;
+
+    /** Identifier of the structure (e.g. the `_entry.id` of a CIF), may be null. */
+    private final @Nullable String structure_index;
+
+    /** Lattice constant in Å, or {@code NaN} if unknown. */
+    private final double lattice_constant;
+
+    /** Number of atoms. */
+    private final int size;
+
+    /** Atom ids. */
+    private final int[] ids;
+
+    /** Element index of every atom into {@link #elements}. */
+    private final byte[] element;
+
+    /** Element symbol table. */
+    private final List<String> elements;
+
+    /** Cartesian coordinates in Å. */
+    private final double[] x, y, z;
+
+    /** Packed half-step sites, or null if the atoms are not on the lattice grid. */
+    private final long @Nullable [] sites;
+
+    private ParticleStore(@NotNull Builder b) {
+        this.structure_index = b.structure_index;
+        this.lattice_constant = b.lattice_constant;
+        this.size = b.size;
+        this.ids = b.ids;
+        this.element = b.element;
+        this.elements = Collections.unmodifiableList(new ArrayList<>(b.elements));
+        this.x = b.x;
+        this.y = b.y;
+        this.z = b.z;
+        this.sites = this.computeSites();
+    }
+
+    /**
+     * Packs every atom onto the half-step grid if possible.
+     * @return the packed sites, or null if the lattice constant is unknown or an atom is off the grid
+     */
+    private long @Nullable [] computeSites() {
+        if (!(this.lattice_constant > 0)) {
+            return null;
+        }
+        double half_step = this.lattice_constant / 2;
+        long[] packed = new long[this.size];
+        for (int n = 0; n < this.size; n++) {
+            double fi = x[n] / half_step, fj = y[n] / half_step, fk = z[n] / half_step;
+            double ri = Math.rint(fi), rj = Math.rint(fj), rk = Math.rint(fk);
+            if (
+                        Math.abs(fi - ri) * half_step > SITE_TOLERANCE
+                    ||  Math.abs(fj - rj) * half_step > SITE_TOLERANCE
+                    ||  Math.abs(fk - rk) * half_step > SITE_TOLERANCE
+                    ||  Math.max(Math.abs(ri), Math.max(Math.abs(rj), Math.abs(rk))) >= LatticeSite.OFFSET
+            ) {
+                return null;
+            }
+            packed[n] = LatticeSite.pack((int) ri, (int) rj, (int) rk);
+        }
+        return packed;
+    }
+
+    /** @return identifier of the structure, or null if unknown */
+    @Contract(pure = true)
+    public @Nullable String getStructureIndex() {
+        return this.structure_index;
+    }
+
+    /** @return lattice constant in Å, or {@code NaN} if unknown */
+    @Contract(pure = true)
+    public double getLatticeConstant() {
+        return this.lattice_constant;
+    }
+
+    /** @return number of atoms */
+    @Contract(pure = true)
+    public int size() {
+        return this.size;
+    }
+
+    /** @return id of atom {@code n} */
+    @Contract(pure = true)
+    public int id(int n) {
+        return this.ids[checkIndex(n)];
+    }
+
+    /** @return element index of atom {@code n} into {@link #getElements()} */
+    @Contract(pure = true)
+    public int elementIndex(int n) {
+        return this.element[checkIndex(n)] & 0xFF;
+    }
+
+    /** @return element symbol of atom {@code n} */
+    @Contract(pure = true)
+    public @NotNull String element(int n) {
+        return this.elements.get(this.elementIndex(n));
+    }
+
+    /** @return element symbol table, indexed by {@link #elementIndex(int)} */
+    @Contract(pure = true)
+    public @NotNull List<String> getElements() {
+        return this.elements;
+    }
+
+    /** @return x coordinate of atom {@code n} in Å */
+    @Contract(pure = true)
+    public double x(int n) {
+        return this.x[checkIndex(n)];
+    }
+
+    /** @return y coordinate of atom {@code n} in Å */
+    @Contract(pure = true)
+    public double y(int n) {
+        return this.y[checkIndex(n)];
+    }
+
+    /** @return z coordinate of atom {@code n} in Å */
+    @Contract(pure = true)
+    public double z(int n) {
+        return this.z[checkIndex(n)];
+    }
+
+    /** @return backing array of x coordinates (at least {@link #size()} long, must not be modified) */
+    @Contract(pure = true)
+    public double @NotNull [] getX() {
+        return this.x;
+    }
+
+    /** @return backing array of y coordinates (at least {@link #size()} long, must not be modified) */
+    @Contract(pure = true)
+    public double @NotNull [] getY() {
+        return this.y;
+    }
+
+    /** @return backing array of z coordinates (at least {@link #size()} long, must not be modified) */
+    @Contract(pure = true)
+    public double @NotNull [] getZ() {
+        return this.z;
+    }
+
+    /** @return whether every atom has a packed lattice site */
+    @Contract(pure = true)
+    public boolean hasSites() {
+        return this.sites != null;
+    }
+
+    /**
+     * Returns the packed half-step site of an atom.
+     * @param n atom index
+     * @return the packed site
+     * @throws IllegalStateException if the store has no lattice sites (see {@link #hasSites()})
+     */
+    @Contract(pure = true)
+    public long site(int n) {
+        return this.getSites()[checkIndex(n)];
+    }
+
+    /**
+     * Returns the packed half-step sites of all atoms.
+     * @return the backing array of sites ({@link #size()} long, must not be modified)
+     * @throws IllegalStateException if the store has no lattice sites (see {@link #hasSites()})
+     */
+    @Contract(pure = true)
+    public long @NotNull [] getSites() {
+        if (this.sites == null) {
+            throw new IllegalStateException("Atoms are not on the lattice grid!");
+        }
+        return this.sites;
+    }
+
+    private int checkIndex(int n) {
+        return Objects.checkIndex(n, this.size);
+    }
+
+    /**
+     * Growable builder for a {@link ParticleStore}.
+     * <p> Arrays grow geometrically and are handed to the store without a final copy.
+     */
+    public static final class Builder {
+
+        /** Initial capacity when none is given. */
+        private static final int DEFAULT_CAPACITY = 1 << 12;
+
+        /** Maximum number of distinct elements. */
+        private static final int MAX_ELEMENTS = 256;
+
+        private @Nullable String structure_index = null;
+        private double lattice_constant = Double.NaN;
+        private int size = 0;
+        private int[] ids;
+        private byte[] element;
+        private final List<String> elements = new ArrayList<>();
+        private double[] x, y, z;
+        private boolean is_built = false;
+
+        /** Constructs a builder with a default initial capacity. */
+        public Builder() {
+            this(DEFAULT_CAPACITY);
+        }
+
+        /**
+         * Constructs a builder with the given initial capacity.
+         * @param capacity expected number of atoms, non-negative
+         */
+        public Builder(int capacity) {
+            if (capacity < 0) {
+                throw new IllegalArgumentException("Capacity must be non-negative!");
+            }
+            this.ids = new int[capacity];
+            this.element = new byte[capacity];
+            this.x = new double[capacity];
+            this.y = new double[capacity];
+            this.z = new double[capacity];
+        }
+
+        /**
+         * Sets the structure identifier.
+         * @param structure_index the identifier, may be null
+         * @return this builder
+         */
+        @Contract(value = "_ -> this", mutates = "this")
+        public @NotNull Builder structureIndex(@Nullable String structure_index) {
+            this.structure_index = structure_index;
+            return this;
+        }
+
+        /**
+         * Sets the lattice constant.
+         * @param lattice_constant the lattice constant in Å, or {@code NaN} if unknown
+         * @return this builder
+         */
+        @Contract(value = "_ -> this", mutates = "this")
+        public @NotNull Builder latticeConstant(double lattice_constant) {
+            this.lattice_constant = lattice_constant;
+            return this;
+        }
+
+        /**
+         * Returns the index of an element symbol, adding it to the symbol table if needed.
+         * @param symbol the element symbol, non-null
+         * @return the element index
+         * @throws IllegalStateException if more than 256 distinct elements are added
+         */
+        @Contract(mutates = "this")
+        public int elementIndex(@NotNull String symbol) {
+            int idx = this.elements.indexOf(symbol);
+            if (idx < 0) {
+                if (this.elements.size() == MAX_ELEMENTS) {
+                    throw new IllegalStateException("At most " + MAX_ELEMENTS + " distinct elements are supported!");
+                }
+                this.elements.add(symbol);
+                idx = this.elements.size() - 1;
+            }
+            return idx;
+        }
+
+        /**
+         * Appends an atom.
+         * @param id            the atom id
+         * @param element_index the element index returned by {@link #elementIndex(String)}
+         * @param x             x coordinate in Å
+         * @param y             y coordinate in Å
+         * @param z             z coordinate in Å
+         */
+        @Contract(mutates = "this")
+        public void add(int id, int element_index, double x, double y, double z) {
+            if (this.is_built) {
+                throw new IllegalStateException("Store has already been built!");
+            }
+            if (element_index < 0 || element_index >= this.elements.size()) {
+                throw new IllegalArgumentException("Unknown element index: " + element_index);
+            }
+            if (this.size == this.ids.length) {
+                this.grow();
+            }
+            this.ids[size] = id;
+            this.element[size] = (byte) element_index;
+            this.x[size] = x;
+            this.y[size] = y;
+            this.z[size] = z;
+            this.size++;
+        }
+
+        /** @return number of atoms added so far */
+        @Contract(pure = true)
+        public int size() {
+            return this.size;
+        }
+
+        /**
+         * Builds the store. The builder cannot be used afterward.
+         * @return the store
+         */
+        @Contract(mutates = "this")
+        public @NotNull ParticleStore build() {
+            if (this.is_built) {
+                throw new IllegalStateException("Store has already been built!");
+            }
+            this.is_built = true;
+            return new ParticleStore(this);
+        }
+
+        private void grow() {
+            int capacity = Math.max(DEFAULT_CAPACITY, this.ids.length + (this.ids.length >> 1));
+            if (capacity < 0) {
+                throw new OutOfMemoryError("Particle store exceeds the maximum array size!");
+            }
+            this.ids = Arrays.copyOf(this.ids, capacity);
+            this.element = Arrays.copyOf(this.element, capacity);
+            this.x = Arrays.copyOf(this.x, capacity);
+            this.y = Arrays.copyOf(this.y, capacity);
+            this.z = Arrays.copyOf(this.z, capacity);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package io.github.noshou.npg.npreader;
+
+import io.github.noshou.npg.npsaxs.SaxsData;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads measured SAXS data into a {@link SaxsData}.
+ * <p> Understands the CSV export in {@code au/saxs_data}: an optional title line, {@code "Instparm: name",value}
+ * lines, a quoted column header ({@code "q","y_obs","y_sig",...}) and comma-separated rows; columns are picked
+ * by name, so additional ones such as {@code y_calc} are ignored. Plain whitespace-separated files without a
+ * header are read as {@code q intensity sigma} columns. Blank lines and lines starting with {@code #} are
+ * skipped.
+ */
+public final class SaxsDataReader {
+
+    /** Prefix of instrument parameter lines. */
+    private static final String INSTPARM = "Instparm:";
+
+    private SaxsDataReader() {
+        throw new AssertionError("Utility class should not be instantiated!");
+    }
+
+    /**
+     * Reads a data file.
+     * @param path the file, non-null
+     * @return the data
+     * @throws IOException if the file cannot be read or is malformed
+     */
+    public static @NotNull SaxsData read(@NotNull Path path) throws IOException {
+        try (BufferedReader in = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            return read(in);
+        }
+    }
+
+    /**
+     * Reads data from a character stream. The stream is not closed.
+     * @param in the stream, non-null
+     * @return the data
+     * @throws IOException if the stream cannot be read or is malformed
+     */
+    public static @NotNull SaxsData read(@NotNull Reader in) throws IOException {
+        BufferedReader reader = in instanceof BufferedReader b ? b : new BufferedReader(in);
+        Map<String, String> parameters = new LinkedHashMap<>();
+        int q_col = 0, y_col = 1, sigma_col = 2;
+        int columns = 3;
+        double[] q = new double[256], y = new double[256], sigma = new double[256];
+        int n = 0;
+        String line;
+        int line_number = 0;
+        while ((line = reader.readLine()) != null) {
+            line_number++;
+            String trimmed = line.strip();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            String[] fields = split(trimmed);
+            String first = unquote(fields[0]);
+            if (first.startsWith(INSTPARM)) {
+                parameters.put(first.substring(INSTPARM.length()).strip(), fields.length > 1 ? unquote(fields[1]) : "");
+                continue;
+            }
+            if (!isNumber(first)) {
+                if (n > 0) {
+                    throw new IOException("Unexpected text after the data on line " + line_number);
+                }
+                List<String> names = new ArrayList<>(fields.length);
+                for (String f : fields) {
+                    names.add(unquote(f).toLowerCase(Locale.ROOT));
+                }
+                if (!names.contains("q")) {
+                    // title line
+                    continue;
+                }
+                q_col = names.indexOf("q");
+                y_col = names.indexOf("y_obs");
+                sigma_col = names.indexOf("y_sig");
+                if (q_col < 0 || y_col < 0 || sigma_col < 0) {
+                    throw new IOException("Header on line " + line_number + " lacks q, y_obs or y_sig!");
+                }
+                columns = Math.max(q_col, Math.max(y_col, sigma_col)) + 1;
+                continue;
+            }
+            if (fields.length < columns) {
+                throw new IOException("Expected at least " + columns + " columns on line " + line_number);
+            }
+            if (n == q.length) {
+                q = Arrays.copyOf(q, 2 * n);
+                y = Arrays.copyOf(y, 2 * n);
+                sigma = Arrays.copyOf(sigma, 2 * n);
+            }
+            try {
+                q[n] = Double.parseDouble(unquote(fields[q_col]));
+                y[n] = Double.parseDouble(unquote(fields[y_col]));
+                sigma[n] = Double.parseDouble(unquote(fields[sigma_col]));
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed number on line " + line_number, e);
+            }
+            n++;
+        }
+        if (n == 0) {
+            throw new IOException("No data rows found!");
+        }
+        try {
+            return new SaxsData(Arrays.copyOf(q, n), Arrays.copyOf(y, n), Arrays.copyOf(sigma, n), parameters);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid SAXS data: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Splits a line on commas if it has any, on whitespace otherwise.
+     */
+    private static String @NotNull [] split(@NotNull String line) {
+        String[] fields = line.indexOf(',') >= 0 ? line.split(",") : line.split("\\s+");
+        for (int f = 0; f < fields.length; f++) {
+            fields[f] = fields[f].strip();
+        }
+        return fields;
+    }
+
+    @Contract(pure = true)
+    private static @NotNull String unquote(@NotNull String field) {
+        if (field.length() >= 2 && field.startsWith("\"") && field.endsWith("\"")) {
+            return field.substring(1, field.length() - 1);
+        }
+        return field;
+    }
+
+    @Contract(pure = true)
+    private static boolean isNumber(@NotNull String field) {
+        if (field.isEmpty()) {
+            return false;
+        }
+        char c = field.charAt(0);
+        return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.';
+    }
+}
@@ -0,0 +1,447 @@
+package io.github.noshou.npg.npsaxs;
+
+import io.github.noshou.npg.npreader.ParticleStore;
+import io.github.noshou.npg.nputil.Workers;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.IntToLongFunction;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Computes scattering intensities from the complex amplitude {@code A(q) = Σ f(|q|) exp(i q·r)}.
+ * <p> {@link #compute(ParticleStore)} averages {@code |A|²} over the directions of a {@link SphereQuadrature} for
+ * every |q| of the grid; {@link #pattern(ParticleStore, double[], int, double, double)} evaluates it on the pixels
+ * of a detector for one fixed orientation. Particles from {@code Shape.build()} reach this class through a
+ * {@code ParticleStoreSink}. Cost is {@code O(N)} per q-vector, so it scales to particles far beyond pair sums;
+ * both also accept a weighted {@link BeadModel}.
+ * <p> Both cases walk lines of q-vectors along which the phase of every atom is a polynomial of degree ≤ 2 in the
+ * sample index (q·u along a uniform grid, a detector row on the paraxial Ewald sphere). The phase factors are
+ * then advanced by complex multiplication instead of {@code sin}/{@code cos}, re-anchored exactly every
+ * {@value #ANCHOR} samples; the inner loop runs over contiguous per-element coordinate arrays. Directions (or
+ * detector rows) are handed out to worker threads dynamically.
+ */
+public final class AmplitudeCalculator {
+
+    /** Samples between exact re-evaluations of the phase factors. */
+    private static final int ANCHOR = 64;
+
+    private final @NotNull QGrid grid;
+    private final @NotNull SphereQuadrature quadrature;
+    private final int threads;
+
+    /**
+     * Constructs a calculator using all available processors.
+     * @param grid       the q-grid for {@link #compute(ParticleStore)}, non-null
+     * @param quadrature orientation average, non-null
+     */
+    public AmplitudeCalculator(@NotNull QGrid grid, @NotNull SphereQuadrature quadrature) {
+        this(grid, quadrature, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a calculator.
+     * @param grid       the q-grid for {@link #compute(ParticleStore)}, non-null
+     * @param quadrature orientation average, non-null
+     * @param threads    number of worker threads, positive
+     */
+    public AmplitudeCalculator(@NotNull QGrid grid, @NotNull SphereQuadrature quadrature, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be positive!");
+        }
+        this.grid = grid;
+        this.quadrature = quadrature;
+        this.threads = threads;
+    }
+
+    /** @return the q-grid */
+    @Contract(pure = true)
+    public @NotNull QGrid getGrid() {
+        return this.grid;
+    }
+
+    /**
+     * Computes the orientation-averaged scattering profile of a particle.
+     * @param store the particle, non-null
+     * @return {@code I(q) = Σ_d w_d |A(q u_d)|²} on this calculator's grid
+     * @throws IllegalArgumentException if an element has no tabulated form factor
+     * @throws RuntimeException         if a worker thread fails or the calculation is interrupted
+     */
+    public @NotNull SaxsProfile compute(@NotNull ParticleStore store) {
+        return this.profile(new Atoms(store, null), store.getElements());
+    }
+
+    /**
+     * Computes the orientation-averaged scattering profile of a coarse-grained particle.
+     * <p> The result differs from that of the atomistic particle by at most {@link BeadModel#errorBound(QGrid)}.
+     * @param model the bead model, non-null
+     * @return {@code I(q) = Σ_d w_d |A(q u_d)|²} on this calculator's grid
+     * @throws IllegalArgumentException if an element has no tabulated form factor
+     * @throws RuntimeException         if a worker thread fails or the calculation is interrupted
+     */
+    public @NotNull SaxsProfile compute(@NotNull BeadModel model) {
+        return this.profile(new Atoms(model, null), model.getElements());
+    }
+
+    /**
+     * Computes the detector pattern of a particle in a fixed orientation.
+     * <p> With a positive wavelength, pixels lie on the paraxial Ewald sphere
+     * {@code q_z = -(q_x² + q_y²) / (2k)}, {@code k = 2π/λ}; with {@code 0} the sphere is flat ({@code q_z = 0}).
+     * @param store      the particle, non-null
+     * @param rotation   row-major 3×3 rotation applied to the atom positions, non-null
+     * @param pixels     pixels per side, at least 2
+     * @param q_max      largest in-plane q component in Å⁻¹, positive
+     * @param wavelength wavelength in Å, or {@code 0}
+     * @return the pattern
+     * @throws IllegalArgumentException if an argument is out of range or an element has no form factor
+     * @throws RuntimeException         if a worker thread fails or the calculation is interrupted
+     */
+    public @NotNull DetectorPattern pattern(
+            @NotNull ParticleStore store,
+            double @NotNull [] rotation,
+            int pixels,
+            double q_max,
+            double wavelength
+    ) {
+        checkDetector(rotation, pixels, q_max, wavelength);
+        return this.pattern(new Atoms(store, rotation), store.getElements(), pixels, q_max, wavelength);
+    }
+
+    /**
+     * Computes the detector pattern of a coarse-grained particle in a fixed orientation.
+     * @param model      the bead model, non-null
+     * @param rotation   row-major 3×3 rotation applied to the bead positions, non-null
+     * @param pixels     pixels per side, at least 2
+     * @param q_max      largest in-plane q component in Å⁻¹, positive
+     * @param wavelength wavelength in Å, or {@code 0}
+     * @return the pattern
+     * @throws IllegalArgumentException if an argument is out of range or an element has no form factor
+     * @throws RuntimeException         if a worker thread fails or the calculation is interrupted
+     * @see #pattern(ParticleStore, double[], int, double, double)
+     */
+    public @NotNull DetectorPattern pattern(
+            @NotNull BeadModel model,
+            double @NotNull [] rotation,
+            int pixels,
+            double q_max,
+            double wavelength
+    ) {
+        checkDetector(rotation, pixels, q_max, wavelength);
+        return this.pattern(new Atoms(model, rotation), model.getElements(), pixels, q_max, wavelength);
+    }
+
+    /**
+     * Averages {@code |A|²} of prepared scatterers over the quadrature.
+     */
+    private @NotNull SaxsProfile profile(@NotNull Atoms atoms, @NotNull List<String> elements) {
+        int size = this.grid.size();
+        double[][] f = new double[atoms.element_start.length - 1][];
+        for (int e = 0; e < f.length; e++) {
+            f[e] = AtomicFormFactor.of(elements.get(e)).table(this.grid);
+        }
+
+        // a uniform grid is one line of samples, any other grid one line per point
+        double step = size > 1 ? (this.grid.max() - this.grid.get(0)) / (size - 1) : 0;
+        boolean uniform = true;
+        for (int k = 1; k < size; k++) {
+            uniform &= Math.abs(this.grid.get(k) - this.grid.get(k - 1) - step) <= 1e-9 * this.grid.max();
+        }
+        boolean linear = uniform;
+        int directions = this.quadrature.size();
+        double[] intensity = this.run(directions, size, atoms, (s, d) -> {
+            double ux = this.quadrature.x(d), uy = this.quadrature.y(d), uz = this.quadrature.z(d);
+            double w = this.quadrature.weight(d);
+            for (int a = 0; a < atoms.n; a++) {
+                s.p[a] = ux * atoms.x[a] + uy * atoms.y[a] + uz * atoms.z[a];
+            }
+            if (linear) {
+                double q0 = this.grid.get(0);
+                for (int a = 0; a < atoms.n; a++) {
+                    s.a0[a] = q0 * s.p[a];
+                    s.a1[a] = step * s.p[a];
+                    s.a2[a] = 0;
+                }
+                sweep(s, atoms, f, 0, size, false, w, 0);
+            } else {
+                for (int k = 0; k < size; k++) {
+                    double q = this.grid.get(k);
+                    for (int a = 0; a < atoms.n; a++) {
+                        s.a0[a] = q * s.p[a];
+                        s.a1[a] = 0;
+                        s.a2[a] = 0;
+                    }
+                    sweep(s, atoms, f, k, 1, false, w, k);
+                }
+            }
+        });
+        return new SaxsProfile(this.grid, intensity);
+    }
+
+    private static void checkDetector(double @NotNull [] rotation, int pixels, double q_max, double wavelength) {
+        if (rotation.length != 9 || pixels < 2 || !(q_max > 0) || !(wavelength >= 0)) {
+            throw new IllegalArgumentException("Invalid detector geometry or rotation!");
+        }
+    }
+
+    /**
+     * Evaluates {@code |A|²} of prepared, rotated scatterers on the detector pixels.
+     */
+    private @NotNull DetectorPattern pattern(
+            @NotNull Atoms atoms,
+            @NotNull List<String> elements,
+            int pixels,
+            double q_max,
+            double wavelength
+    ) {
+        int e_count = atoms.element_start.length - 1;
+        AtomicFormFactor[] form = new AtomicFormFactor[e_count];
+        for (int e = 0; e < e_count; e++) {
+            form[e] = AtomicFormFactor.of(elements.get(e));
+        }
+        double delta = 2 * q_max / (pixels - 1);
+        double inv_2k = wavelength > 0 ? wavelength / (4 * Math.PI) : 0;
+        boolean curved = inv_2k > 0;
+
+        double[] intensity = this.run(pixels, pixels * pixels, atoms, (s, r) -> {
+            double qy = -q_max + r * delta;
+            double[][] f = s.f;
+            for (int c = 0; c < pixels; c++) {
+                double qx = -q_max + c * delta;
+                double q_perp2 = qx * qx + qy * qy;
+                double qz = -q_perp2 * inv_2k;
+                double q = Math.sqrt(q_perp2 + qz * qz);
+                for (int e = 0; e < e_count; e++) {
+                    f[e][c] = form[e].at(q);
+                }
+            }
+
+            // phase = (q_x(c), q_y, q_z(c))·r, quadratic in the column index c
+            double z0 = -(qy * qy + q_max * q_max) * inv_2k;
+            double z1 = 2 * q_max * delta * inv_2k;
+            double z2 = -delta * delta * inv_2k;
+            for (int a = 0; a < atoms.n; a++) {
+                s.a0[a] = -q_max * atoms.x[a] + qy * atoms.y[a] + z0 * atoms.z[a];
+                s.a1[a] = delta * atoms.x[a] + z1 * atoms.z[a];
+                s.a2[a] = z2 * atoms.z[a];
+            }
+            sweep(s, atoms, f, 0, pixels, curved, 1, r * pixels);
+        });
+        return new DetectorPattern(pixels, q_max, wavelength, intensity);
+    }
+
+    /**
+     * Scatterer coordinates grouped by element and centred on their (weighted) centroid, with optional weights.
+     */
+    private static final class Atoms {
+        final int n;
+        final double[] x, y, z;
+        final double @Nullable [] weight;
+        final int[] element_start;
+
+        Atoms(@NotNull ParticleStore store, double @Nullable [] rotation) {
+            this(store.size(), store.getElements().size(), store::elementIndex, null,
+                    store::x, store::y, store::z, rotation);
+        }
+
+        Atoms(@NotNull BeadModel model, double @Nullable [] rotation) {
+            this(model.size(), model.getElements().size(), model::elementIndex, model::weight,
+                    model::x, model::y, model::z, rotation);
+        }
+
+        private Atoms(
+                int n,
+                int e_count,
+                @NotNull IntUnaryOperator element,
+                @Nullable IntToLongFunction weight,
+                @NotNull IntToDoubleFunction px,
+                @NotNull IntToDoubleFunction py,
+                @NotNull IntToDoubleFunction pz,
+                double @Nullable [] rotation
+        ) {
+            this.n = n;
+            this.element_start = new int[e_count + 1];
+            double cx = 0, cy = 0, cz = 0, total = 0;
+            for (int a = 0; a < n; a++) {
+                double w = weight != null ? weight.applyAsLong(a) : 1;
+                this.element_start[element.applyAsInt(a) + 1]++;
+                cx += w * px.applyAsDouble(a);
+                cy += w * py.applyAsDouble(a);
+                cz += w * pz.applyAsDouble(a);
+                total += w;
+            }
+            for (int e = 0; e < e_count; e++) {
+                this.element_start[e + 1] += this.element_start[e];
+            }
+            cx /= Math.max(total, 1);
+            cy /= Math.max(total, 1);
+            cz /= Math.max(total, 1);
+            this.x = new double[n];
+            this.y = new double[n];
+            this.z = new double[n];
+            this.weight = weight != null ? new double[n] : null;
+            int[] next = this.element_start.clone();
+            for (int a = 0; a < n; a++) {
+                int b = next[element.applyAsInt(a)]++;
+                double x = px.applyAsDouble(a) - cx, y = py.applyAsDouble(a) - cy, z = pz.applyAsDouble(a) - cz;
+                if (rotation != null) {
+                    this.x[b] = rotation[0] * x + rotation[1] * y + rotation[2] * z;
+                    this.y[b] = rotation[3] * x + rotation[4] * y + rotation[5] * z;
+                    this.z[b] = rotation[6] * x + rotation[7] * y + rotation[8] * z;
+                } else {
+                    this.x[b] = x;
+                    this.y[b] = y;
+                    this.z[b] = z;
+                }
+                if (this.weight != null) {
+                    this.weight[b] = weight.applyAsLong(a);
+                }
+            }
+        }
+    }
+
+    /**
+     * Per-worker buffers and partial result.
+     */
+    private static final class Scratch {
+        final double[] p, a0, a1, a2;
+        final double[] v_re, v_im, d_re, d_im, r_re, r_im;
+        final double[][] f;
+        final double[] out;
+
+        Scratch(int atoms, int elements, int line, int out) {
+            this.p = new double[atoms];
+            this.a0 = new double[atoms];
+            this.a1 = new double[atoms];
+            this.a2 = new double[atoms];
+            this.v_re = new double[atoms];
+            this.v_im = new double[atoms];
+            this.d_re = new double[atoms];
+            this.d_im = new double[atoms];
+            this.r_re = new double[atoms];
+            this.r_im = new double[atoms];
+            this.f = new double[elements][line];
+            this.out = new double[out];
+        }
+    }
+
+    /**
+     * Adds {@code weight·|A|²} for a line of samples whose phases are {@code a0 + a1·c + a2·c²} to
+     * {@code out[out_offset + c]}, with form factors {@code f[e][f_offset + c]}.
+     */
+    private static void sweep(
+            @NotNull Scratch s,
+            @NotNull Atoms atoms,
+            double @NotNull [] @NotNull [] f,
+            int f_offset,
+            int length,
+            boolean curved,
+            double weight,
+            int out_offset
+    ) {
+        int n = atoms.n;
+        int[] start = atoms.element_start;
+        double[] weights = atoms.weight;
+        double[] v_re = s.v_re, v_im = s.v_im, d_re = s.d_re, d_im = s.d_im, r_re = s.r_re, r_im = s.r_im;
+        if (curved) {
+            for (int a = 0; a < n; a++) {
+                r_re[a] = Math.cos(2 * s.a2[a]);
+                r_im[a] = Math.sin(2 * s.a2[a]);
+            }
+        }
+        for (int c0 = 0; c0 < length; c0 += ANCHOR) {
+            int c_end = Math.min(length, c0 + ANCHOR);
+            for (int a = 0; a < n; a++) {
+                double phase = s.a0[a] + c0 * (s.a1[a] + c0 * s.a2[a]);
+                v_re[a] = Math.cos(phase);
+                v_im[a] = Math.sin(phase);
+                if (c_end - c0 > 1) {
+                    double step = s.a1[a] + (2 * c0 + 1) * s.a2[a];
+                    d_re[a] = Math.cos(step);
+                    d_im[a] = Math.sin(step);
+                }
+            }
+            for (int c = c0; c < c_end; c++) {
+                double total_re = 0, total_im = 0;
+                for (int e = 0; e + 1 < start.length; e++) {
+                    double sum_re = 0, sum_im = 0;
+                    if (weights == null) {
+                        for (int a = start[e]; a < start[e + 1]; a++) {
+                            double re = v_re[a], im = v_im[a];
+                            sum_re += re;
+                            sum_im += im;
+                            v_re[a] = re * d_re[a] - im * d_im[a];
+                            v_im[a] = re * d_im[a] + im * d_re[a];
+                        }
+                    } else {
+                        for (int a = start[e]; a < start[e + 1]; a++) {
+                            double re = v_re[a], im = v_im[a];
+                            sum_re += weights[a] * re;
+                            sum_im += weights[a] * im;
+                            v_re[a] = re * d_re[a] - im * d_im[a];
+                            v_im[a] = re * d_im[a] + im * d_re[a];
+                        }
+                    }
+                    double fe = f[e][f_offset + c];
+                    total_re += fe * sum_re;
+                    total_im += fe * sum_im;
+                }
+                if (curved) {
+                    for (int a = 0; a < n; a++) {
+                        double re = d_re[a], im = d_im[a];
+                        d_re[a] = re * r_re[a] - im * r_im[a];
+                        d_im[a] = re * r_im[a] + im * r_re[a];
+                    }
+                }
+                s.out[out_offset + c] += weight * (total_re * total_re + total_im * total_im);
+            }
+        }
+    }
+
+    /**
+     * Line work of one worker thread.
+     */
+    @FunctionalInterface
+    private interface LineTask {
+        void run(@NotNull Scratch scratch, int index);
+    }
+
+    /**
+     * Runs {@code task} for every index in {@code [0, count)} and sums the workers' outputs.
+     */
+    private double @NotNull [] run(
+            int count,
+            int out_length,
+            @NotNull Atoms atoms,
+            @NotNull LineTask task
+    ) {
+        int workers = Math.max(1, Math.min(this.threads, count));
+        AtomicInteger next = new AtomicInteger();
+        List<Scratch> scratch = new ArrayList<>(workers);
+        List<Callable<Void>> tasks = new ArrayList<>(workers);
+        int line = Math.max(count, this.grid.size());
+        for (int w = 0; w < workers; w++) {
+            Scratch s = new Scratch(atoms.n, atoms.element_start.length - 1, line, out_length);
+            scratch.add(s);
+            tasks.add(() -> {
+                int i;
+                while ((i = next.getAndIncrement()) < count) {
+                    task.run(s, i);
+                }
+                return null;
+            });
+        }
+        Workers.run(tasks, workers, "Amplitude calculation");
+        double[] total = new double[out_length];
+        for (Scratch s : scratch) {
+            for (int k = 0; k < out_length; k++) {
+                total[k] += s.out[k];
+            }
+        }
+        return total;
+    }
+}
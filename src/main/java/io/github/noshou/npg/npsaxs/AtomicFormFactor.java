@@ -0,0 +1,102 @@
+package io.github.noshou.npg.npsaxs;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * X-ray atomic form factor {@code f(q)} in the four-Gaussian Cromer–Mann parametrisation
+ * (International Tables for Crystallography, Vol. C, Table 6.1.1.4):
+ * {@code f(s) = Σ a_i exp(-b_i s²) + c} with {@code s = q / 4π} in Å⁻¹.
+ * <p> Values tabulated on a {@link QGrid} are cached per grid, so repeated calculations (e.g. a size series of
+ * gold particles on the same grid) evaluate the exponentials only once.
+ */
+public final class AtomicFormFactor {
+
+    /** Known elements, keyed by symbol. */
+    private static final Map<String, AtomicFormFactor> ELEMENTS = Map.of(
+            "Au", new AtomicFormFactor("Au",
+                    new double[] {16.8819, 18.5913, 25.5582, 5.8600},
+                    new double[] {0.4611, 8.6216, 1.4826, 36.3956}, 12.0658),
+            "Ag", new AtomicFormFactor("Ag",
+                    new double[] {19.2808, 16.6885, 4.8045, 1.0463},
+                    new double[] {0.6446, 7.4726, 24.6605, 99.8156}, 5.1790),
+            "Pt", new AtomicFormFactor("Pt",
+                    new double[] {27.0059, 17.7639, 15.7131, 5.7837},
+                    new double[] {1.51293, 8.81174, 0.424593, 38.6103}, 11.6883),
+            "Pd", new AtomicFormFactor("Pd",
+                    new double[] {19.3319, 15.5017, 5.29537, 0.605844},
+                    new double[] {0.698655, 7.98929, 25.2052, 76.8986}, 5.26593),
+            "Cu", new AtomicFormFactor("Cu",
+                    new double[] {13.3380, 7.16760, 5.61580, 1.67350},
+                    new double[] {3.58280, 0.247000, 11.3966, 64.8126}, 1.19100)
+    );
+
+    private final @NotNull String element;
+    private final double[] a;
+    private final double[] b;
+    private final double c;
+
+    /** Cached tables per q-grid. */
+    private final Map<QGrid, double[]> tables = new ConcurrentHashMap<>();
+
+    private AtomicFormFactor(@NotNull String element, double @NotNull [] a, double @NotNull [] b, double c) {
+        this.element = element;
+        this.a = a;
+        this.b = b;
+        this.c = c;
+    }
+
+    /**
+     * Returns the form factor of an element.
+     * @param element the element symbol (e.g. {@code Au}), non-null
+     * @return the form factor
+     * @throws IllegalArgumentException if the element is not tabulated
+     */
+    @Contract(pure = true)
+    public static @NotNull AtomicFormFactor of(@NotNull String element) {
+        AtomicFormFactor f = ELEMENTS.get(element);
+        if (f == null) {
+            throw new IllegalArgumentException("No form factor tabulated for element " + element + "!");
+        }
+        return f;
+    }
+
+    /** @return the element symbol */
+    @Contract(pure = true)
+    public @NotNull String getElement() {
+        return this.element;
+    }
+
+    /**
+     * Evaluates the form factor.
+     * @param q scattering vector magnitude in Å⁻¹
+     * @return {@code f(q)} in electrons
+     */
+    @Contract(pure = true)
+    public double at(double q) {
+        double s = q / (4 * Math.PI);
+        double s2 = s * s;
+        double f = this.c;
+        for (int i = 0; i < this.a.length; i++) {
+            f += this.a[i] * Math.exp(-this.b[i] * s2);
+        }
+        return f;
+    }
+
+    /**
+     * Returns the form factor tabulated on a grid, computing it on first use.
+     * @param grid the q-grid, non-null
+     * @return {@code f(q_k)} for every grid point (cached; must not be modified)
+     */
+    public double @NotNull [] table(@NotNull QGrid grid) {
+        return this.tables.computeIfAbsent(grid, g -> {
+            double[] f = new double[g.size()];
+            for (int k = 0; k < f.length; k++) {
+                f[k] = this.at(g.get(k));
+            }
+            return f;
+        });
+    }
+}
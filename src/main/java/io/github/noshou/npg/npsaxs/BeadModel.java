@@ -0,0 +1,412 @@
+package io.github.noshou.npg.npsaxs;
+
+import io.github.noshou.npg.lattice.LatticeSite;
+import io.github.noshou.npg.npreader.ParticleStore;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable coarse-grained particle: atoms collapsed into weighted beads on a cubic voxel grid.
+ * <p> Every bead stands for the atoms of one element inside one voxel. It sits at their centroid and carries their
+ * exact count as its weight, so at {@code q = 0} the bead model scatters exactly like the atoms it replaces.
+ * {@link DebyeCalculator#compute(BeadModel)} and {@link AmplitudeCalculator#compute(BeadModel)} evaluate a model
+ * directly; with voxels of a few lattice constants this cuts the number of scatterers by two to three orders of
+ * magnitude.
+ * <p> Because beads sit at centroids, the first-order term of every bead's phase error vanishes and
+ * <pre>
+ *   |A(q) - A_beads(q)| ≤ δ(q) = q²/2 · Σ_e |f_e(q)| M_e,    M_e = Σ_(atoms of e) |r - c_bead|²
+ * </pre>
+ * holds for every q-vector. With {@code F = Σ_e |f_e| N_e ≥ |A|} this bounds the intensity error by
+ * {@code δ(2F + δ)} per orientation, and therefore for any orientation average; {@link #errorBound(QGrid)}
+ * reports it. Relative to {@code I(0)} the bound is about {@code q²⟨Δr²⟩}, roughly {@code (q L / 2)²} for voxels
+ * of edge {@code L}.
+ * <p> Models are built from a {@link ParticleStore} with {@link #of(ParticleStore, double)} or straight from a
+ * lattice enumeration through a {@link Builder} (as {@code BeadModelSink} does), without keeping the atoms.
+ */
+public final class BeadModel {
+
+    private final List<String> elements;
+    private final double voxel_size;
+    private final byte[] element;
+    private final long[] weight;
+    private final double[] x, y, z;
+    private final long[] atom_counts;
+    private final double[] second_moments;
+
+    private BeadModel(
+            @NotNull List<String> elements,
+            double voxel_size,
+            byte @NotNull [] element,
+            long @NotNull [] weight,
+            double @NotNull [] x,
+            double @NotNull [] y,
+            double @NotNull [] z,
+            long @NotNull [] atom_counts,
+            double @NotNull [] second_moments
+    ) {
+        this.elements = List.copyOf(elements);
+        this.voxel_size = voxel_size;
+        this.element = element;
+        this.weight = weight;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.atom_counts = atom_counts;
+        this.second_moments = second_moments;
+    }
+
+    /**
+     * Coarse-grains a particle.
+     * <p> Particles on the lattice grid ({@link ParticleStore#hasSites()}) are binned on their integer sites, with
+     * the voxel edge rounded to a whole number of half steps ({@code a/2}), so every site falls into exactly one
+     * voxel regardless of rounding. Other particles are binned on their coordinates.
+     * @param store      the particle, non-null
+     * @param voxel_size voxel edge in Å, positive
+     * @return the bead model
+     */
+    @Contract("_, _ -> new")
+    public static @NotNull BeadModel of(@NotNull ParticleStore store, double voxel_size) {
+        List<String> symbols = store.getElements();
+        Builder builder;
+        if (store.hasSites()) {
+            double half_step = store.getLatticeConstant() / 2;
+            builder = new Builder(half_step, Builder.voxelSteps(voxel_size, half_step));
+        } else {
+            builder = new Builder(voxel_size);
+        }
+        int[] index = new int[symbols.size()];
+        for (int e = 0; e < index.length; e++) {
+            index[e] = builder.elementIndex(symbols.get(e));
+        }
+        long[] sites = store.hasSites() ? store.getSites() : null;
+        for (int a = 0; a < store.size(); a++) {
+            int e = index[store.elementIndex(a)];
+            if (sites != null) {
+                builder.addSite(e, sites[a]);
+            } else {
+                builder.add(e, store.x(a), store.y(a), store.z(a));
+            }
+        }
+        return builder.build();
+    }
+
+    /** @return element symbols, indexed by {@link #elementIndex(int)} */
+    @Contract(pure = true)
+    public @NotNull List<String> getElements() {
+        return this.elements;
+    }
+
+    /** @return voxel edge in Å */
+    @Contract(pure = true)
+    public double getVoxelSize() {
+        return this.voxel_size;
+    }
+
+    /** @return number of beads */
+    @Contract(pure = true)
+    public int size() {
+        return this.weight.length;
+    }
+
+    /** @return element index of bead {@code b} */
+    @Contract(pure = true)
+    public int elementIndex(int b) {
+        return this.element[b] & 0xFF;
+    }
+
+    /** @return number of atoms in bead {@code b} */
+    @Contract(pure = true)
+    public long weight(int b) {
+        return this.weight[b];
+    }
+
+    /** @return x coordinate of bead {@code b} in Å */
+    @Contract(pure = true)
+    public double x(int b) {
+        return this.x[b];
+    }
+
+    /** @return y coordinate of bead {@code b} in Å */
+    @Contract(pure = true)
+    public double y(int b) {
+        return this.y[b];
+    }
+
+    /** @return z coordinate of bead {@code b} in Å */
+    @Contract(pure = true)
+    public double z(int b) {
+        return this.z[b];
+    }
+
+    /** @return number of atoms of element {@code e} */
+    @Contract(pure = true)
+    public long atomCount(int e) {
+        return this.atom_counts[e];
+    }
+
+    /** @return total number of atoms */
+    @Contract(pure = true)
+    public long atomCount() {
+        long total = 0;
+        for (long c : this.atom_counts) {
+            total += c;
+        }
+        return total;
+    }
+
+    /** @return {@code Σ |r - c_bead|²} over the atoms of element {@code e}, in Å² */
+    @Contract(pure = true)
+    public double secondMoment(int e) {
+        return this.second_moments[e];
+    }
+
+    /**
+     * Bounds the amplitude error of the beads at one |q|.
+     * @param q scattering vector length in Å⁻¹
+     * @return {@code δ(q)}, an upper bound of {@code |A(q) - A_beads(q)|} in electrons for every direction
+     * @throws IllegalArgumentException if an element has no tabulated form factor
+     */
+    @Contract(pure = true)
+    public double amplitudeErrorBound(double q) {
+        double delta = 0;
+        for (int e = 0; e < this.elements.size(); e++) {
+            delta += Math.abs(AtomicFormFactor.of(this.elements.get(e)).at(q)) * this.second_moments[e];
+        }
+        return 0.5 * q * q * delta;
+    }
+
+    /**
+     * Bounds the intensity error of the beads against the atomistic particle.
+     * <p> The bound holds for every orientation and thus for any orientation average, i.e. for both Debye and
+     * amplitude calculations; a binned Debye histogram adds its own (much smaller) binning error on top.
+     * @param grid the q-grid, non-null
+     * @return {@code δ(2F + δ)} in e² at every grid point
+     * @throws IllegalArgumentException if an element has no tabulated form factor
+     */
+    public @NotNull SaxsProfile errorBound(@NotNull QGrid grid) {
+        int e_count = this.elements.size();
+        double[][] f = new double[e_count][];
+        for (int e = 0; e < e_count; e++) {
+            f[e] = AtomicFormFactor.of(this.elements.get(e)).table(grid);
+        }
+        double[] bound = new double[grid.size()];
+        for (int k = 0; k < bound.length; k++) {
+            double q = grid.get(k);
+            double delta = 0, forward = 0;
+            for (int e = 0; e < e_count; e++) {
+                delta += Math.abs(f[e][k]) * this.second_moments[e];
+                forward += Math.abs(f[e][k]) * this.atom_counts[e];
+            }
+            delta *= 0.5 * q * q;
+            bound[k] = delta * (2 * forward + delta);
+        }
+        return new SaxsProfile(grid, bound);
+    }
+
+    /**
+     * Accumulates atoms into voxels without storing them.
+     * <p> A builder either bins Cartesian coordinates ({@link #Builder(double)}) or packed half-step sites
+     * ({@link #Builder(double, int)}); in the latter case voxel membership is decided on integers and the
+     * centroids and second moments are summed exactly.
+     */
+    public static final class Builder {
+
+        /** Maximum number of distinct elements. */
+        private static final int MAX_ELEMENTS = 256;
+
+        private final double voxel_size;
+
+        /** Half step in Å for lattice builders, {@code NaN} for Cartesian ones. */
+        private final double half_step;
+
+        /** Voxel edge in half steps for lattice builders. */
+        private final int voxel_steps;
+
+        private final List<String> elements = new ArrayList<>();
+
+        /**
+         * Per element, packed voxel index to {count, Σdx, Σdy, Σdz, Σ|d|²}, with offsets {@code d} from the voxel
+         * centre in voxel units of the builder (Å or half steps).
+         */
+        private final List<Map<Long, double[]>> voxels = new ArrayList<>();
+
+        private boolean is_built = false;
+
+        /**
+         * Constructs a builder that bins Cartesian coordinates.
+         * @param voxel_size voxel edge in Å, positive
+         */
+        public Builder(double voxel_size) {
+            if (!(voxel_size > 0) || Double.isInfinite(voxel_size)) {
+                throw new IllegalArgumentException("Voxel size must be positive!");
+            }
+            this.voxel_size = voxel_size;
+            this.half_step = Double.NaN;
+            this.voxel_steps = 0;
+        }
+
+        /**
+         * Constructs a builder that bins packed half-step sites.
+         * @param half_step   half the lattice constant in Å, positive
+         * @param voxel_steps voxel edge in half steps, positive
+         */
+        public Builder(double half_step, int voxel_steps) {
+            if (!(half_step > 0) || Double.isInfinite(half_step) || voxel_steps < 1) {
+                throw new IllegalArgumentException("Half step and voxel size must be positive!");
+            }
+            this.voxel_size = half_step * voxel_steps;
+            this.half_step = half_step;
+            this.voxel_steps = voxel_steps;
+        }
+
+        /**
+         * Rounds a voxel edge to a whole number of half steps.
+         * @param voxel_size voxel edge in Å, positive
+         * @param half_step  half the lattice constant in Å, positive
+         * @return the nearest positive number of half steps
+         */
+        @Contract(pure = true)
+        public static int voxelSteps(double voxel_size, double half_step) {
+            if (!(voxel_size > 0) || !(half_step > 0)) {
+                throw new IllegalArgumentException("Voxel size and half step must be positive!");
+            }
+            double steps = Math.rint(voxel_size / half_step);
+            if (steps >= LatticeSite.OFFSET) {
+                throw new IllegalArgumentException("Voxel size exceeds the lattice grid!");
+            }
+            return (int) Math.max(1, steps);
+        }
+
+        /**
+         * Returns the index of an element symbol, adding it to the symbol table if needed.
+         * @param symbol the element symbol, non-null
+         * @return the element index
+         * @throws IllegalStateException if more than 256 distinct elements are added
+         */
+        @Contract(mutates = "this")
+        public int elementIndex(@NotNull String symbol) {
+            int idx = this.elements.indexOf(symbol);
+            if (idx < 0) {
+                if (this.elements.size() == MAX_ELEMENTS) {
+                    throw new IllegalStateException("At most " + MAX_ELEMENTS + " distinct elements are supported!");
+                }
+                this.elements.add(symbol);
+                this.voxels.add(new HashMap<>());
+                idx = this.elements.size() - 1;
+            }
+            return idx;
+        }
+
+        /**
+         * Adds an atom by its Cartesian coordinates.
+         * @param element_index the element index returned by {@link #elementIndex(String)}
+         * @param x             x coordinate in Å
+         * @param y             y coordinate in Å
+         * @param z             z coordinate in Å
+         * @throws IllegalStateException if this is a lattice builder
+         */
+        @Contract(mutates = "this")
+        public void add(int element_index, double x, double y, double z) {
+            if (!Double.isNaN(this.half_step)) {
+                throw new IllegalStateException("Lattice builders only accept sites!");
+            }
+            double l = this.voxel_size;
+            long vi = Math.round(x / l), vj = Math.round(y / l), vk = Math.round(z / l);
+            this.accumulate(element_index, vi, vj, vk, x - vi * l, y - vj * l, z - vk * l);
+        }
+
+        /**
+         * Adds an atom by its packed half-step site.
+         * @param element_index the element index returned by {@link #elementIndex(String)}
+         * @param site          the packed site (see {@link LatticeSite})
+         * @throws IllegalStateException if this is a Cartesian builder
+         */
+        @Contract(mutates = "this")
+        public void addSite(int element_index, long site) {
+            if (Double.isNaN(this.half_step)) {
+                throw new IllegalStateException("Cartesian builders do not accept sites!");
+            }
+            int m = this.voxel_steps, h = m / 2;
+            int i = LatticeSite.i(site), j = LatticeSite.j(site), k = LatticeSite.k(site);
+            long vi = Math.floorDiv(i + h, m), vj = Math.floorDiv(j + h, m), vk = Math.floorDiv(k + h, m);
+            this.accumulate(element_index, vi, vj, vk, i - vi * m, j - vj * m, k - vk * m);
+        }
+
+        /**
+         * Builds the model. The builder cannot be used afterward.
+         * @return the bead model
+         */
+        @Contract(mutates = "this")
+        public @NotNull BeadModel build() {
+            if (this.is_built) {
+                throw new IllegalStateException("Bead model has already been built!");
+            }
+            this.is_built = true;
+            boolean lattice = !Double.isNaN(this.half_step);
+            double unit = lattice ? this.half_step : 1;
+            double centre = lattice ? this.voxel_steps : this.voxel_size;
+            int e_count = this.elements.size();
+            int n = 0;
+            for (Map<Long, double[]> map : this.voxels) {
+                n += map.size();
+            }
+            byte[] element = new byte[n];
+            long[] weight = new long[n];
+            double[] x = new double[n], y = new double[n], z = new double[n];
+            long[] atom_counts = new long[e_count];
+            double[] second_moments = new double[e_count];
+            int b = 0;
+            for (int e = 0; e < e_count; e++) {
+                Map<Long, double[]> map = this.voxels.get(e);
+
+                // visit voxels in key order so that equal inputs give identical models
+                long[] keys = new long[map.size()];
+                int p = 0;
+                for (long key : map.keySet()) {
+                    keys[p++] = key;
+                }
+                Arrays.sort(keys);
+                for (long key : keys) {
+                    double[] acc = map.get(key);
+                    double w = acc[0];
+                    double mx = acc[1] / w, my = acc[2] / w, mz = acc[3] / w;
+                    element[b] = (byte) e;
+                    weight[b] = (long) w;
+                    x[b] = (LatticeSite.i(key) * centre + mx) * unit;
+                    y[b] = (LatticeSite.j(key) * centre + my) * unit;
+                    z[b] = (LatticeSite.k(key) * centre + mz) * unit;
+                    atom_counts[e] += weight[b];
+                    second_moments[e] += Math.max(0, acc[4] - w * (mx * mx + my * my + mz * mz)) * unit * unit;
+                    b++;
+                }
+            }
+            return new BeadModel(this.elements, this.voxel_size, element, weight, x, y, z, atom_counts,
+                    second_moments);
+        }
+
+        private void accumulate(int element_index, long vi, long vj, long vk, double dx, double dy, double dz) {
+            if (this.is_built) {
+                throw new IllegalStateException("Bead model has already been built!");
+            }
+            if (element_index < 0 || element_index >= this.elements.size()) {
+                throw new IllegalArgumentException("Unknown element index: " + element_index);
+            }
+            long bound = LatticeSite.OFFSET;
+            if (Math.abs(vi) >= bound || Math.abs(vj) >= bound || Math.abs(vk) >= bound) {
+                throw new IllegalArgumentException("Atom lies outside the voxel grid!");
+            }
+            double[] acc = this.voxels.get(element_index)
+                    .computeIfAbsent(LatticeSite.pack((int) vi, (int) vj, (int) vk), key -> new double[5]);
+            acc[0]++;
+            acc[1] += dx;
+            acc[2] += dy;
+            acc[3] += dz;
+            acc[4] += dx * dx + dy * dy + dz * dz;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package io.github.noshou.npg.npsaxs;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Immutable two-dimensional scattering pattern of an oriented particle on a square detector.
+ * <p> Pixels are addressed by the in-plane components of the scattering vector: column {@code c} and row
+ * {@code r} correspond to {@code q_x = -q_max + c·δ} and {@code q_y = -q_max + r·δ} with
+ * {@code δ = 2 q_max / (pixels - 1)}; the beam runs along {@code +z}. Intensities are in electron units (e²).
+ */
+public final class DetectorPattern {
+
+    private final int pixels;
+    private final double q_max;
+    private final double wavelength;
+    private final double[] intensity;
+
+    /**
+     * Constructs a pattern. The intensity array is taken over without copying.
+     * @param pixels     pixels per side
+     * @param q_max      largest in-plane q component in Å⁻¹
+     * @param wavelength wavelength in Å, or {@code 0} for a flat (small-angle) Ewald sphere
+     * @param intensity  row-major intensities, {@code pixels²} values
+     */
+    DetectorPattern(int pixels, double q_max, double wavelength, double @NotNull [] intensity) {
+        if (intensity.length != pixels * pixels) {
+            throw new IllegalArgumentException("Intensity does not match the detector size!");
+        }
+        this.pixels = pixels;
+        this.q_max = q_max;
+        this.wavelength = wavelength;
+        this.intensity = intensity;
+    }
+
+    /** @return pixels per side */
+    @Contract(pure = true)
+    public int getPixels() {
+        return this.pixels;
+    }
+
+    /** @return largest in-plane q component in Å⁻¹ */
+    @Contract(pure = true)
+    public double getQMax() {
+        return this.q_max;
+    }
+
+    /** @return wavelength in Å, or {@code 0} for a flat Ewald sphere */
+    @Contract(pure = true)
+    public double getWavelength() {
+        return this.wavelength;
+    }
+
+    /** @return {@code q_x} of column {@code c} in Å⁻¹ */
+    @Contract(pure = true)
+    public double qx(int c) {
+        return -this.q_max + c * 2 * this.q_max / (this.pixels - 1);
+    }
+
+    /** @return {@code q_y} of row {@code r} in Å⁻¹ */
+    @Contract(pure = true)
+    public double qy(int r) {
+        return this.qx(r);
+    }
+
+    /** @return intensity of the pixel at row {@code r} and column {@code c} */
+    @Contract(pure = true)
+    public double intensity(int r, int c) {
+        return this.intensity[r * this.pixels + c];
+    }
+
+    /** @return a copy of the row-major intensities */
+    @Contract(pure = true)
+    public double @NotNull [] toArray() {
+        return this.intensity.clone();
+    }
+}
@@ -0,0 +1,146 @@
+package io.github.noshou.npg.npsaxs;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import java.util.Arrays;
+
+/**
+ * Complex one-dimensional FFT of a fixed length whose prime factors are 2, 3 and 5.
+ * <p> Self-sorting (Stockham) mixed-radix transform: every pass reads one buffer and writes the other, so no
+ * bit-reversal permutation is needed. The plan (factors and twiddles) is immutable and can be shared between
+ * threads; each thread passes its own buffers. Transforms are unnormalised: forward followed by inverse scales by
+ * {@code n}.
+ */
+final class Fft {
+
+    private final int n;
+    private final int[] factors;
+    private final double[] cos;
+    private final double[] sin;
+
+    /**
+     * Plans a transform.
+     * @param n the length, a product of 2, 3 and 5
+     * @throws IllegalArgumentException if {@code n} has another prime factor
+     */
+    Fft(int n) {
+        if (n < 1 || !isSmooth(n)) {
+            throw new IllegalArgumentException("FFT length must be a product of 2, 3 and 5: " + n);
+        }
+        this.n = n;
+        int[] f = new int[32];
+        int count = 0;
+        int rest = n;
+        for (int p : new int[]{4, 2, 3, 5}) {
+            while (rest % p == 0) {
+                f[count++] = p;
+                rest /= p;
+            }
+        }
+        this.factors = Arrays.copyOf(f, count);
+        this.cos = new double[n];
+        this.sin = new double[n];
+        for (int k = 0; k < n; k++) {
+            double phi = 2 * Math.PI * k / n;
+            this.cos[k] = Math.cos(phi);
+            this.sin[k] = -Math.sin(phi);
+        }
+    }
+
+    /** @return the transform length */
+    @Contract(pure = true)
+    int size() {
+        return this.n;
+    }
+
+    /**
+     * @param min lower bound, positive
+     * @return the smallest even length {@code >= min} whose prime factors are 2, 3 and 5
+     */
+    @Contract(pure = true)
+    static int evenSize(int min) {
+        int n = Math.max(2, min + (min & 1));
+        while (!isSmooth(n)) {
+            n += 2;
+        }
+        return n;
+    }
+
+    private static boolean isSmooth(int n) {
+        for (int p : new int[]{2, 3, 5}) {
+            while (n % p == 0) {
+                n /= p;
+            }
+        }
+        return n == 1;
+    }
+
+    /**
+     * Transforms {@code (re, im)} in place.
+     * @param re      real parts, length at least {@code n}
+     * @param im      imaginary parts, length at least {@code n}
+     * @param work_re scratch buffer, length at least {@code n}
+     * @param work_im scratch buffer, length at least {@code n}
+     * @param inverse {@code true} for the inverse transform (positive exponent)
+     */
+    void transform(
+            double @NotNull [] re,
+            double @NotNull [] im,
+            double @NotNull [] work_re,
+            double @NotNull [] work_im,
+            boolean inverse
+    ) {
+        double sign = inverse ? -1 : 1;
+        double[] x_re = re, x_im = im, y_re = work_re, y_im = work_im;
+        double[] a_re = new double[5], a_im = new double[5];
+        int stride = 1;
+        int length = this.n;
+        for (int p : this.factors) {
+            int m = length / p;
+            int root = this.n / p;
+            for (int j = 0; j < m; j++) {
+                for (int q = 0; q < stride; q++) {
+                    for (int r = 0; r < p; r++) {
+                        a_re[r] = x_re[q + stride * (j + r * m)];
+                        a_im[r] = x_im[q + stride * (j + r * m)];
+                    }
+                    int out = q + stride * p * j;
+                    if (p == 2) {
+                        double w_re = this.cos[stride * j], w_im = sign * this.sin[stride * j];
+                        double d_re = a_re[0] - a_re[1], d_im = a_im[0] - a_im[1];
+                        y_re[out] = a_re[0] + a_re[1];
+                        y_im[out] = a_im[0] + a_im[1];
+                        y_re[out + stride] = d_re * w_re - d_im * w_im;
+                        y_im[out + stride] = d_re * w_im + d_im * w_re;
+                        continue;
+                    }
+                    for (int u = 0; u < p; u++) {
+                        double s_re = 0, s_im = 0;
+                        for (int r = 0; r < p; r++) {
+                            int k = root * ((r * u) % p);
+                            double c = this.cos[k], s = sign * this.sin[k];
+                            s_re += a_re[r] * c - a_im[r] * s;
+                            s_im += a_re[r] * s + a_im[r] * c;
+                        }
+                        int k = stride * j * u;
+                        double w_re = this.cos[k], w_im = sign * this.sin[k];
+                        y_re[out + stride * u] = s_re * w_re - s_im * w_im;
+                        y_im[out + stride * u] = s_re * w_im + s_im * w_re;
+                    }
+                }
+            }
+            double[] t = x_re;
+            x_re = y_re;
+            y_re = t;
+            t = x_im;
+            x_im = y_im;
+            y_im = t;
+            stride *= p;
+            length = m;
+        }
+        if (x_re != re) {
+            System.arraycopy(x_re, 0, re, 0, this.n);
+            System.arraycopy(x_im, 0, im, 0, this.n);
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package io.github.noshou.npg.npsaxs;
+
+import io.github.noshou.npg.lattice.LatticeSite;
+import io.github.noshou.npg.npreader.ParticleStore;
+import org.jetbrains.annotations.NotNull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts the exact pair-distance distribution of a lattice particle on integer half-step indices.
+ * <p> Instead of visiting all {@code N(N-1)/2} atom pairs, the particle is decomposed into <i>runs</i>: maximal
+ * sequences of same-element sites {@code i, i+2, i+4, ...} along x at fixed {@code (j, k)}. Every row of a convex
+ * particle built by {@code Shape} is a single run (per element and parity). For two runs of lengths {@code na}
+ * and {@code nb}, the number of atom pairs at each x-offset is a trapezoid in the offset, which is added in
+ * {@code O(1)} as four entries of a second-difference array. All row pairs with the same y/z offset
+ * {@code (dj, dk)} share one such array; two prefix sums then give the exact count for every x-offset
+ * {@code di}, which is binned at {@code m = di² + dj² + dk²}.
+ * <p> Work is {@code O(rows² + L³)} for a particle spanning {@code L} half-steps, compared with
+ * {@code O(N²) ~ O(L⁶)} for all pairs; all arithmetic is on integers, so the result is exact. The
+ * {@code (dj, dk)} offsets are distributed over worker threads, each with its own histogram, and only one half of
+ * the offsets is visited since {@code (dj, dk)} and {@code (-dj, -dk)} describe the same unordered pairs.
+ * Non-convex particles remain exact; they just have more runs per row.
+ */
+public final class LatticePairCounter {
+
+    /** Bits reserved for the x index in the sort key. */
+    private static final int I_BITS = LatticeSite.BITS + 1;
+
+    private final int threads;
+
+    /** Constructs a counter using all available processors. */
+    public LatticePairCounter() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a counter.
+     * @param threads number of worker threads, positive
+     */
+    public LatticePairCounter(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be positive!");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Counts all atom pairs of a particle by exact squared distance. Sites are assumed to be distinct.
+     * @param store the particle, non-null; must have lattice sites (see {@link ParticleStore#hasSites()})
+     * @return the exact pair-distance histogram
+     * @throws IllegalArgumentException if the particle has no lattice sites or is too large
+     * @throws RuntimeException         if a worker thread fails or the calculation is interrupted
+     */
+    public @NotNull LatticePairHistogram count(@NotNull ParticleStore store) {
+        if (!store.hasSites()) {
+            throw new IllegalArgumentException("Particle is not on the lattice grid!");
+        }
+        int n = store.size();
+        long[] sites = store.getSites();
+        int e_count = store.getElements().size();
+        long[] atom_counts = new long[e_count];
+        int i_min = Integer.MAX_VALUE, j_min = Integer.MAX_VALUE, k_min = Integer.MAX_VALUE;
+        int i_max = Integer.MIN_VALUE, j_max = Integer.MIN_VALUE, k_max = Integer.MIN_VALUE;
+        for (int a = 0; a < n; a++) {
+            long s = sites[a];
+            i_min = Math.min(i_min, LatticeSite.i(s));
+            i_max = Math.max(i_max, LatticeSite.i(s));
+            j_min = Math.min(j_min, LatticeSite.j(s));
+            j_max = Math.max(j_max, LatticeSite.j(s));
+            k_min = Math.min(k_min, LatticeSite.k(s));
+            k_max = Math.max(k_max, LatticeSite.k(s));
+            atom_counts[store.elementIndex(a)]++;
+        }
+        int types = PairHistogram.pairTypes(e_count);
+        double half_step = store.getLatticeConstant() / 2;
+        if (n == 0) {
+            return new LatticePairHistogram(store.getElements(), atom_counts, half_step, new long[types][1]);
+        }
+        int width = i_max - i_min;
+        int nj = j_max - j_min + 1;
+        int nk = k_max - k_min + 1;
+        int groups = 2 * e_count;
+        long m_max = (long) width * width + (long) (nj - 1) * (nj - 1) + (long) (nk - 1) * (nk - 1);
+        if ((long) nj * nk * groups >= 1L << (Long.SIZE - 1 - I_BITS) || m_max >= Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Particle is too large for exact lattice pair counting!");
+        }
+
+        // sort sites by (row, element, parity, i) so that runs are consecutive
+        long[] keys = new long[n];
+        for (int a = 0; a < n; a++) {
+            long s = sites[a];
+            int i = LatticeSite.i(s);
+            long cell = (long) (LatticeSite.j(s) - j_min) * nk + (LatticeSite.k(s) - k_min);
+            int group = store.elementIndex(a) * 2 + (i & 1);
+            keys[a] = ((cell * groups + group) << I_BITS) | (i - i_min);
+        }
+        Arrays.parallelSort(keys);
+
+        // decompose into runs, indexed by cell (CSR layout)
+        int cells = nj * nk;
+        int[] cell_start = new int[cells + 1];
+        int[] run_i = new int[n];
+        int[] run_length = new int[n];
+        byte[] run_element = new byte[n];
+        int runs = 0;
+        long i_mask = (1L << I_BITS) - 1;
+        for (int a = 0; a < n; a++) {
+            long group_key = keys[a] >>> I_BITS;
+            int i = (int) (keys[a] & i_mask);
+            if (
+                        a > 0
+                    &&  (keys[a - 1] >>> I_BITS) == group_key
+                    &&  run_i[runs - 1] + 2 * run_length[runs - 1] == i
+            ) {
+                run_length[runs - 1]++;
+                continue;
+            }
+            int cell = (int) (group_key / groups);
+            run_i[runs] = i;
+            run_length[runs] = 1;
+            run_element[runs] = (byte) ((group_key % groups) / 2);
+            cell_start[cell + 1]++;
+            runs++;
+        }
+        for (int c = 0; c < cells; c++) {
+            cell_start[c + 1] += cell_start[c];
+        }
+        int[] occupied = new int[cells];
+        int occupied_count = 0;
+        for (int c = 0; c < cells; c++) {
+            if (cell_start[c + 1] > cell_start[c]) {
+                occupied[occupied_count++] = c;
+            }
+        }
+        int[] type_of = new int[e_count * e_count];
+        for (int e = 0; e < e_count; e++) {
+            for (int g = 0; g < e_count; g++) {
+                type_of[e * e_count + g] = PairHistogram.pairType(e, g);
+            }
+        }
+
+        // offsets (dj, dk) with dj > 0, or dj == 0 and dk >= 0
+        int dk_span = 2 * nk - 1;
+        int offsets = nj * dk_span;
+        AtomicInteger next = new AtomicInteger();
+        int bins = (int) m_max + 1;
+        int workers = Math.max(1, Math.min(this.threads, offsets));
+        final int occupied_cells = occupied_count;
+
+        List<Callable<long[][]>> tasks = new ArrayList<>(workers);
+        for (int w = 0; w < workers; w++) {
+            tasks.add(() -> {
+                long[][] hist = new long[types][bins];
+                long[][] diff = new long[types][2 * width + 1];
+                boolean[] touched = new boolean[types];
+                int o;
+                while ((o = next.getAndIncrement()) < offsets) {
+                    int dj = o / dk_span;
+                    int dk = o % dk_span - (nk - 1);
+                    if (dj == 0 && dk < 0) {
+                        continue;
+                    }
+                    for (int p = 0; p < occupied_cells; p++) {
+                        int c1 = occupied[p];
+                        int j2 = c1 / nk + dj;
+                        int k2 = c1 % nk + dk;
+                        if (j2 >= nj || k2 < 0 || k2 >= nk) {
+                            continue;
+                        }
+                        int c2 = j2 * nk + k2;
+                        for (int ra = cell_start[c1]; ra < cell_start[c1 + 1]; ra++) {
+                            int na = run_length[ra];
+                            int row = run_element[ra] * e_count;
+                            for (int rb = cell_start[c2]; rb < cell_start[c2 + 1]; rb++) {
+                                int nb = run_length[rb];
+                                int t = type_of[row + run_element[rb]];
+                                long[] d = diff[t];
+                                touched[t] = true;
+
+                                // pairs at di = d0 + 2s form a trapezoid in s with corners -na, -na+m, nb-m, nb
+                                int m = Math.min(na, nb);
+                                int base = run_i[rb] - run_i[ra] + width;
+                                d[base + 2 * (1 - na)]++;
+                                int x = base + 2 * (1 - na + m);
+                                if (x < d.length) {
+                                    d[x]--;
+                                }
+                                x = base + 2 * (nb - m + 1);
+                                if (x < d.length) {
+                                    d[x]--;
+                                }
+                                x = base + 2 * (nb + 1);
+                                if (x < d.length) {
+                                    d[x]++;
+                                }
+                            }
+                        }
+                    }
+                    int dm = dj * dj + dk * dk;
+                    for (int t = 0; t < types; t++) {
+                        if (!touched[t]) {
+                            continue;
+                        }
+                        touched[t] = false;
+                        long[] d = diff[t];
+                        long[] h = hist[t];
+                        for (int x = 2; x < d.length; x++) {
+                            d[x] += d[x - 2];
+                        }
+                        for (int x = 2; x < d.length; x++) {
+                            d[x] += d[x - 2];
+                        }
+
+                        // within a row, only positive x-offsets are distinct unordered pairs
+                        int x_start = dm == 0 ? width + 1 : 0;
+                        for (int x = x_start; x < d.length; x++) {
+                            if (d[x] != 0) {
+                                int di = x - width;
+                                h[di * di + dm] += d[x];
+                            }
+                        }
+                        Arrays.fill(d, 0);
+                    }
+                }
+                return hist;
+            });
+        }
+
+        long[][] total = DebyeCalculator.runAndSum(tasks, workers, types, bins);
+        return new LatticePairHistogram(store.getElements(), atom_counts, half_step, total);
+    }
+}
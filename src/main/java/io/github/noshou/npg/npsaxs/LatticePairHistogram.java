@@ -0,0 +1,130 @@
+package io.github.noshou.npg.npsaxs;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import java.util.List;
+
+/**
+ * Exact pair-distance distribution of a lattice particle.
+ * <p> All sites lie on the half-step grid (multiples of {@code h = a/2}), so every squared interatomic distance
+ * is an integer {@code m} times {@code h²}. For every unordered element pair (see
+ * {@link PairHistogram#pairType(int, int)}) this histogram stores the exact number of unordered atom pairs at
+ * every {@code m}; {@link #distance(int)} gives the corresponding distance {@code h·√m}.
+ * <p> {@link #toPairHistogram()} converts it to the input of {@link DebyeCalculator#intensity(PairHistogram)}
+ * with exact distances, i.e. without binning error.
+ */
+public final class LatticePairHistogram {
+
+    private final List<String> elements;
+    private final long[] atom_counts;
+    private final double half_step;
+    private final long[][] counts;
+
+    /**
+     * Constructs a histogram. Arrays are taken over without copying.
+     * @param elements    element symbols, non-null
+     * @param atom_counts number of atoms per element
+     * @param half_step   half the lattice constant in Å
+     * @param counts      per pair type, the number of atom pairs at every squared distance {@code m}
+     */
+    LatticePairHistogram(
+            @NotNull List<String> elements,
+            long @NotNull [] atom_counts,
+            double half_step,
+            long @NotNull [] @NotNull [] counts
+    ) {
+        if (atom_counts.length != elements.size() || counts.length != PairHistogram.pairTypes(elements.size())) {
+            throw new IllegalArgumentException("Histogram arrays do not match the number of elements!");
+        }
+        this.elements = List.copyOf(elements);
+        this.atom_counts = atom_counts;
+        this.half_step = half_step;
+        this.counts = counts;
+    }
+
+    /** @return element symbols */
+    @Contract(pure = true)
+    public @NotNull List<String> getElements() {
+        return this.elements;
+    }
+
+    /** @return number of atoms of element {@code e} */
+    @Contract(pure = true)
+    public long atomCount(int e) {
+        return this.atom_counts[e];
+    }
+
+    /** @return half the lattice constant in Å */
+    @Contract(pure = true)
+    public double getHalfStep() {
+        return this.half_step;
+    }
+
+    /** @return largest squared distance (in units of {@code h²}) the histogram can hold */
+    @Contract(pure = true)
+    public int maxSquaredDistance() {
+        return this.counts.length == 0 ? 0 : this.counts[0].length - 1;
+    }
+
+    /**
+     * @param type pair type
+     * @param m    squared distance in units of {@code h²}
+     * @return number of unordered atom pairs of that type at that distance
+     */
+    @Contract(pure = true)
+    public long count(int type, int m) {
+        long[] c = this.counts[type];
+        return m < c.length ? c[m] : 0;
+    }
+
+    /**
+     * @param m squared distance in units of {@code h²}
+     * @return the distance in Å
+     */
+    @Contract(pure = true)
+    public double distance(int m) {
+        return this.half_step * Math.sqrt(m);
+    }
+
+    /** @return total number of unordered atom pairs */
+    @Contract(pure = true)
+    public long pairCount() {
+        long total = 0;
+        for (long[] c : this.counts) {
+            for (long v : c) {
+                total += v;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Converts the histogram into one with explicit, exact distances for the Debye sum.
+     * @return the histogram, with one populated bin per occurring squared distance
+     */
+    @Contract(pure = true)
+    public @NotNull PairHistogram toPairHistogram() {
+        double[][] distances = new double[this.counts.length][];
+        long[][] populated = new long[this.counts.length][];
+        for (int t = 0; t < this.counts.length; t++) {
+            long[] c = this.counts[t];
+            int p = 0;
+            for (long v : c) {
+                if (v != 0) {
+                    p++;
+                }
+            }
+            distances[t] = new double[p];
+            populated[t] = new long[p];
+            p = 0;
+            for (int m = 0; m < c.length; m++) {
+                if (c[m] != 0) {
+                    distances[t][p] = this.distance(m);
+                    populated[t][p] = c[m];
+                    p++;
+                }
+            }
+        }
+        return new PairHistogram(this.elements, this.atom_counts.clone(), distances, populated);
+    }
+}
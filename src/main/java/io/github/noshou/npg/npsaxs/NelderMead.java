@@ -0,0 +1,130 @@
+package io.github.noshou.npg.npsaxs;
+
+import org.jetbrains.annotations.NotNull;
+import java.util.Arrays;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Nelder–Mead minimisation over the unit cube, for objectives without usable gradients.
+ * <p> Trial points outside the cube are clamped onto it, which keeps every evaluation within the parameter
+ * bounds the cube is mapped onto.
+ */
+final class NelderMead {
+
+    private NelderMead() {
+        throw new AssertionError("Utility class should not be instantiated!");
+    }
+
+    /**
+     * Minimises {@code f} from a starting point.
+     * @param f               the objective on the unit cube, non-null
+     * @param u               the starting point, replaced by the best point found
+     * @param step            edge of the initial simplex
+     * @param tolerance       the search stops once the simplex is smaller than this along every axis
+     * @param max_evaluations the search stops after about this many evaluations
+     * @return the smallest value found
+     */
+    static double minimize(
+            @NotNull ToDoubleFunction<double[]> f,
+            double @NotNull [] u,
+            double step,
+            double tolerance,
+            int max_evaluations
+    ) {
+        int n = u.length;
+        if (n == 0) {
+            return f.applyAsDouble(u);
+        }
+        double[][] simplex = new double[n + 1][];
+        double[] value = new double[n + 1];
+        for (int v = 0; v <= n; v++) {
+            simplex[v] = u.clone();
+            if (v > 0) {
+                simplex[v][v - 1] += u[v - 1] + step <= 1 ? step : -step;
+            }
+            value[v] = f.applyAsDouble(simplex[v]);
+        }
+        int evaluations = n + 1;
+        Integer[] order = new Integer[n + 1];
+        while (evaluations < max_evaluations) {
+            for (int v = 0; v <= n; v++) {
+                order[v] = v;
+            }
+            Arrays.sort(order, (p, q) -> Double.compare(value[p], value[q]));
+            int best = order[0], worst = order[n], second = order[n - 1];
+            double size = 0;
+            for (int v = 0; v <= n; v++) {
+                for (int d = 0; d < n; d++) {
+                    size = Math.max(size, Math.abs(simplex[v][d] - simplex[best][d]));
+                }
+            }
+            if (size < tolerance) {
+                break;
+            }
+            double[] centroid = new double[n];
+            for (int v = 0; v <= n; v++) {
+                if (v != worst) {
+                    for (int d = 0; d < n; d++) {
+                        centroid[d] += simplex[v][d] / n;
+                    }
+                }
+            }
+            double[] reflected = along(centroid, simplex[worst], -1);
+            double f_r = f.applyAsDouble(reflected);
+            evaluations++;
+            if (f_r < value[best]) {
+                double[] expanded = along(centroid, simplex[worst], -2);
+                double f_e = f.applyAsDouble(expanded);
+                evaluations++;
+                simplex[worst] = f_e < f_r ? expanded : reflected;
+                value[worst] = Math.min(f_e, f_r);
+            } else if (f_r < value[second]) {
+                simplex[worst] = reflected;
+                value[worst] = f_r;
+            } else {
+                boolean outside = f_r < value[worst];
+                double[] contracted = along(centroid, outside ? reflected : simplex[worst], 0.5);
+                double f_c = f.applyAsDouble(contracted);
+                evaluations++;
+                if (f_c < Math.min(f_r, value[worst])) {
+                    simplex[worst] = contracted;
+                    value[worst] = f_c;
+                } else {
+
+                    // shrink towards the best vertex
+                    for (int v = 0; v <= n; v++) {
+                        if (v != best) {
+                            simplex[v] = along(simplex[best], simplex[v], 0.5);
+                            value[v] = f.applyAsDouble(simplex[v]);
+                            evaluations++;
+                        }
+                    }
+                }
+            }
+        }
+        int best = 0;
+        for (int v = 1; v <= n; v++) {
+            if (value[v] < value[best]) {
+                best = v;
+            }
+        }
+        for (int d = 0; d < n; d++) {
+            u[d] = clamp(simplex[best][d]);
+        }
+        return value[best];
+    }
+
+    /** @return {@code u} clamped to {@code [0, 1]} */
+    static double clamp(double u) {
+        return Math.max(0, Math.min(1, u));
+    }
+
+    /** @return {@code from + t·(to − from)}, clamped to the unit cube */
+    private static double @NotNull [] along(double @NotNull [] from, double @NotNull [] to, double t) {
+        double[] p = new double[from.length];
+        for (int d = 0; d < p.length; d++) {
+            p[d] = clamp(from[d] + t * (to[d] - from[d]));
+        }
+        return p;
+    }
+}
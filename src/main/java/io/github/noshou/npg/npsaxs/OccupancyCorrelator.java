@@ -0,0 +1,389 @@
+package io.github.noshou.npg.npsaxs;
+
+import io.github.noshou.npg.lattice.LatticeSite;
+import io.github.noshou.npg.npreader.ParticleStore;
+import io.github.noshou.npg.nputil.Workers;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Computes the pair-distance distribution of a lattice particle from the autocorrelation of its occupancy grid.
+ * <p> Every element is rasterised onto the half-step grid as a 0/1 occupancy {@code ρ_e}, zero-padded to at least
+ * twice the particle extent so that the cyclic correlation does not wrap around. The correlation
+ * {@code C_ef(Δ) = Σ ρ_e(r) ρ_f(r + Δ) = IFFT(conj(F_e) · F_f)} then counts the atom pairs at every lattice offset
+ * {@code Δ}; rounded to integers and binned at {@code m = |Δ|²} it gives exactly the same
+ * {@link LatticePairHistogram} as {@link LatticePairCounter}.
+ * <p> Cost is {@code O(G log G)} time and {@code O(G)} memory for {@code G} grid cells, independent of how the
+ * atoms are arranged. This makes it the better choice for particles that break into many short runs (random
+ * alloys, porous or faceted shapes), where the run-based counter degrades towards all pairs. Grids are stored as
+ * x-slabs of half-complex z-lines; the z and y passes run per slab and the x pass per y-row, both spread over the
+ * worker threads. One element needs {@code 8·G} bytes, {@code E} elements {@code 8·(E+1)·G} bytes.
+ */
+public final class OccupancyCorrelator {
+
+    private final @NotNull QGrid grid;
+    private final int threads;
+
+    /**
+     * Constructs a correlator using all available processors.
+     * @param grid the q-grid for {@link #compute(ParticleStore)}, non-null
+     */
+    public OccupancyCorrelator(@NotNull QGrid grid) {
+        this(grid, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a correlator.
+     * @param grid    the q-grid for {@link #compute(ParticleStore)}, non-null
+     * @param threads number of worker threads, positive
+     */
+    public OccupancyCorrelator(@NotNull QGrid grid, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be positive!");
+        }
+        this.grid = grid;
+        this.threads = threads;
+    }
+
+    /** @return the q-grid */
+    @Contract(pure = true)
+    public @NotNull QGrid getGrid() {
+        return this.grid;
+    }
+
+    /**
+     * Computes the spherically averaged scattering profile of a particle.
+     * @param store the particle, non-null; must have lattice sites
+     * @return {@code I(q)} on this correlator's grid
+     */
+    public @NotNull SaxsProfile compute(@NotNull ParticleStore store) {
+        DebyeCalculator debye = new DebyeCalculator(this.grid, DebyeCalculator.DEFAULT_BIN_WIDTH, this.threads);
+        return debye.intensity(this.histogram(store).toPairHistogram());
+    }
+
+    /**
+     * Counts all atom pairs of a particle by exact squared distance. Sites are assumed to be distinct.
+     * @param store the particle, non-null; must have lattice sites (see {@link ParticleStore#hasSites()})
+     * @return the pair-distance histogram, i.e. the radial {@code P(r)}
+     * @throws IllegalArgumentException if the particle has no lattice sites or its grid is too large
+     * @throws RuntimeException         if a worker thread fails or the calculation is interrupted
+     */
+    public @NotNull LatticePairHistogram histogram(@NotNull ParticleStore store) {
+        if (!store.hasSites()) {
+            throw new IllegalArgumentException("Particle is not on the lattice grid!");
+        }
+        int n = store.size();
+        long[] sites = store.getSites();
+        int e_count = store.getElements().size();
+        long[] atom_counts = new long[e_count];
+        int i_min = Integer.MAX_VALUE, j_min = Integer.MAX_VALUE, k_min = Integer.MAX_VALUE;
+        int i_max = Integer.MIN_VALUE, j_max = Integer.MIN_VALUE, k_max = Integer.MIN_VALUE;
+        for (int a = 0; a < n; a++) {
+            long s = sites[a];
+            i_min = Math.min(i_min, LatticeSite.i(s));
+            i_max = Math.max(i_max, LatticeSite.i(s));
+            j_min = Math.min(j_min, LatticeSite.j(s));
+            j_max = Math.max(j_max, LatticeSite.j(s));
+            k_min = Math.min(k_min, LatticeSite.k(s));
+            k_max = Math.max(k_max, LatticeSite.k(s));
+            atom_counts[store.elementIndex(a)]++;
+        }
+        int types = PairHistogram.pairTypes(e_count);
+        double half_step = store.getLatticeConstant() / 2;
+        if (n == 0) {
+            return new LatticePairHistogram(store.getElements(), atom_counts, half_step, new long[types][1]);
+        }
+        Layout layout = new Layout(i_max - i_min, j_max - j_min, k_max - k_min);
+
+        ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+        try {
+            double[][][] occupancy = new double[e_count][][];
+            for (int e = 0; e < e_count; e++) {
+                occupancy[e] = new double[layout.nx][layout.slab];
+            }
+            for (int a = 0; a < n; a++) {
+                long s = sites[a];
+                occupancy[store.elementIndex(a)][LatticeSite.i(s) - i_min]
+                        [(LatticeSite.j(s) - j_min) * layout.hz * 2 + LatticeSite.k(s) - k_min] = 1;
+            }
+            for (double[][] slabs : occupancy) {
+                this.forward(pool, layout, slabs);
+            }
+
+            long[][] counts = new long[types][];
+            double[][] work = e_count == 1 ? occupancy[0] : new double[layout.nx][layout.slab];
+            for (int e = 0; e < e_count; e++) {
+                for (int g = 0; g <= e; g++) {
+                    double[][] f_e = occupancy[e], f_g = occupancy[g];
+                    this.parallel(pool, layout, layout.nx, 0, (scratch, x) -> {
+                        double[] a = f_g[x], b = f_e[x], w = work[x];
+                        for (int c = 0; c < layout.slab; c += 2) {
+                            double re = a[c] * b[c] + a[c + 1] * b[c + 1];
+                            double im = a[c] * b[c + 1] - a[c + 1] * b[c];
+                            w[c] = re;
+                            w[c + 1] = im;
+                        }
+                    });
+                    long[] h = this.inverseAndCount(pool, layout, work, e == g);
+                    if (e == g) {
+                        for (int m = 0; m < h.length; m++) {
+                            h[m] /= 2;
+                        }
+                    }
+                    counts[PairHistogram.pairType(e, g)] = h;
+                }
+            }
+            return new LatticePairHistogram(store.getElements(), atom_counts, half_step, counts);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Grid dimensions for a particle spanning {@code (span_x, span_y, span_z)} half-steps.
+     */
+    private static final class Layout {
+        final int span_x, span_y, span_z;
+        final int nx, ny, nz;
+        final int hz;
+        final int slab;
+        final int bins;
+        final int line_max;
+        final Fft fft_x, fft_y, fft_z;
+
+        Layout(int span_x, int span_y, int span_z) {
+            this.span_x = span_x;
+            this.span_y = span_y;
+            this.span_z = span_z;
+            this.nx = Fft.evenSize(2 * span_x + 1);
+            this.ny = Fft.evenSize(2 * span_y + 1);
+            this.nz = Fft.evenSize(2 * span_z + 1);
+            this.hz = this.nz / 2 + 1;
+            long slab = 2L * this.ny * this.hz;
+            long bins = (long) span_x * span_x + (long) span_y * span_y + (long) span_z * span_z + 1;
+            if (slab >= Integer.MAX_VALUE - 8 || bins >= Integer.MAX_VALUE - 8) {
+                throw new IllegalArgumentException("Particle is too large for the occupancy grid!");
+            }
+            this.slab = (int) slab;
+            this.bins = (int) bins;
+            this.line_max = Math.max(this.nx, Math.max(this.ny, this.nz));
+            this.fft_x = new Fft(this.nx);
+            this.fft_y = new Fft(this.ny);
+            this.fft_z = new Fft(this.nz);
+        }
+    }
+
+    /**
+     * Per-worker line buffers and histogram.
+     */
+    private static final class Scratch {
+        final double[] re, im, work_re, work_im;
+        long[] hist;
+
+        Scratch(int length, int bins) {
+            this.re = new double[length];
+            this.im = new double[length];
+            this.work_re = new double[length];
+            this.work_im = new double[length];
+            this.hist = bins > 0 ? new long[bins] : null;
+        }
+    }
+
+    /**
+     * Forward transform of real occupancy slabs into half-complex spectra, in place.
+     */
+    private void forward(@NotNull ExecutorService pool, @NotNull Layout layout, double @NotNull [] @NotNull [] slabs) {
+        int line = layout.hz * 2;
+        this.parallel(pool, layout, layout.nx, 0, (s, x) -> {
+            double[] slab = slabs[x];
+
+            // two real z-lines per complex transform, split by Hermitian symmetry
+            for (int y = 0; y < layout.ny; y += 2) {
+                int a = y * line, b = a + line;
+                boolean pair = y + 1 < layout.ny;
+                for (int z = 0; z < layout.nz; z++) {
+                    s.re[z] = slab[a + z];
+                    s.im[z] = pair ? slab[b + z] : 0;
+                }
+                layout.fft_z.transform(s.re, s.im, s.work_re, s.work_im, false);
+                for (int k = 0; k < layout.hz; k++) {
+                    int kk = (layout.nz - k) % layout.nz;
+                    slab[a + 2 * k] = (s.re[k] + s.re[kk]) / 2;
+                    slab[a + 2 * k + 1] = (s.im[k] - s.im[kk]) / 2;
+                    if (pair) {
+                        slab[b + 2 * k] = (s.im[k] + s.im[kk]) / 2;
+                        slab[b + 2 * k + 1] = (s.re[kk] - s.re[k]) / 2;
+                    }
+                }
+            }
+            for (int k = 0; k < layout.hz; k++) {
+                transformColumn(layout.fft_y, s, slab, 2 * k, line, layout.ny, false);
+            }
+        });
+        this.parallel(pool, layout, layout.ny, 0, (s, y) -> {
+            for (int k = 0; k < layout.hz; k++) {
+                transformRow(layout.fft_x, s, slabs, (y * layout.hz + k) * 2, false);
+            }
+        });
+    }
+
+    /**
+     * Inverse transform of a correlation spectrum, counting the rounded correlation at every offset.
+     */
+    private long @NotNull [] inverseAndCount(
+            @NotNull ExecutorService pool,
+            @NotNull Layout layout,
+            double @NotNull [] @NotNull [] slabs,
+            boolean self
+    ) {
+        int line = layout.hz * 2;
+        double scale = 1.0 / ((double) layout.nx * layout.ny * layout.nz);
+        this.parallel(pool, layout, layout.ny, 0, (s, y) -> {
+            for (int k = 0; k < layout.hz; k++) {
+                transformRow(layout.fft_x, s, slabs, (y * layout.hz + k) * 2, true);
+            }
+        });
+        List<Scratch> workers = this.parallel(pool, layout, layout.nx, layout.bins, (s, x) -> {
+            double[] slab = slabs[x];
+            int dx = signed(x, layout.nx);
+            if (Math.abs(dx) > layout.span_x) {
+                return;
+            }
+            for (int k = 0; k < layout.hz; k++) {
+                transformColumn(layout.fft_y, s, slab, 2 * k, line, layout.ny, true);
+            }
+
+            // rebuild two real z-lines from their half spectra with one complex transform
+            for (int y = 0; y < layout.ny; y += 2) {
+                int a = y * line, b = a + line;
+                boolean pair = y + 1 < layout.ny;
+                for (int k = 0; k < layout.nz; k++) {
+                    int c = k < layout.hz ? 2 * k : 2 * (layout.nz - k);
+                    double conj = k < layout.hz ? 1 : -1;
+                    double a_re = slab[a + c], a_im = conj * slab[a + c + 1];
+                    double b_re = pair ? slab[b + c] : 0, b_im = pair ? conj * slab[b + c + 1] : 0;
+                    s.re[k] = a_re - b_im;
+                    s.im[k] = a_im + b_re;
+                }
+                layout.fft_z.transform(s.re, s.im, s.work_re, s.work_im, true);
+                count(layout, s, s.re, dx, signed(y, layout.ny), scale, self);
+                if (pair) {
+                    count(layout, s, s.im, dx, signed(y + 1, layout.ny), scale, self);
+                }
+            }
+        });
+        long[] total = new long[layout.bins];
+        for (Scratch s : workers) {
+            for (int m = 0; m < total.length; m++) {
+                total[m] += s.hist[m];
+            }
+        }
+        return total;
+    }
+
+    private static void count(
+            @NotNull Layout layout,
+            @NotNull Scratch s,
+            double @NotNull [] values,
+            int dx,
+            int dy,
+            double scale,
+            boolean self
+    ) {
+        if (Math.abs(dy) > layout.span_y) {
+            return;
+        }
+        int dxy = dx * dx + dy * dy;
+        for (int z = 0; z < layout.nz; z++) {
+            int dz = signed(z, layout.nz);
+            if (Math.abs(dz) > layout.span_z || (self && dxy == 0 && dz == 0)) {
+                continue;
+            }
+            long v = Math.round(values[z] * scale);
+            if (v != 0) {
+                s.hist[dxy + dz * dz] += v;
+            }
+        }
+    }
+
+    /** @return the cyclic index {@code d} of an {@code n}-periodic grid as a signed offset */
+    @Contract(pure = true)
+    private static int signed(int d, int n) {
+        return d <= n / 2 ? d : d - n;
+    }
+
+    private static void transformColumn(
+            @NotNull Fft fft,
+            @NotNull Scratch s,
+            double @NotNull [] slab,
+            int offset,
+            int stride,
+            int length,
+            boolean inverse
+    ) {
+        for (int y = 0, c = offset; y < length; y++, c += stride) {
+            s.re[y] = slab[c];
+            s.im[y] = slab[c + 1];
+        }
+        fft.transform(s.re, s.im, s.work_re, s.work_im, inverse);
+        for (int y = 0, c = offset; y < length; y++, c += stride) {
+            slab[c] = s.re[y];
+            slab[c + 1] = s.im[y];
+        }
+    }
+
+    private static void transformRow(
+            @NotNull Fft fft,
+            @NotNull Scratch s,
+            double @NotNull [] @NotNull [] slabs,
+            int offset,
+            boolean inverse
+    ) {
+        for (int x = 0; x < slabs.length; x++) {
+            s.re[x] = slabs[x][offset];
+            s.im[x] = slabs[x][offset + 1];
+        }
+        fft.transform(s.re, s.im, s.work_re, s.work_im, inverse);
+        for (int x = 0; x < slabs.length; x++) {
+            slabs[x][offset] = s.re[x];
+            slabs[x][offset + 1] = s.im[x];
+        }
+    }
+
+    /**
+     * Runs {@code body} for every index in {@code [0, count)} on the pool; indices are claimed dynamically.
+     * @return the scratch state of every worker
+     */
+    private @NotNull List<Scratch> parallel(
+            @NotNull ExecutorService pool,
+            @NotNull Layout layout,
+            int count,
+            int bins,
+            @NotNull ObjIntConsumer<Scratch> body
+    ) {
+        int workers = Math.max(1, Math.min(this.threads, count));
+        AtomicInteger next = new AtomicInteger();
+        List<Scratch> scratch = new ArrayList<>(workers);
+        List<Callable<Void>> tasks = new ArrayList<>(workers);
+        for (int w = 0; w < workers; w++) {
+            Scratch s = new Scratch(layout.line_max, bins);
+            scratch.add(s);
+            tasks.add(() -> {
+                int i;
+                while ((i = next.getAndIncrement()) < count) {
+                    body.accept(s, i);
+                }
+                return null;
+            });
+        }
+        Workers.run(pool, tasks, "Occupancy correlation");
+        return scratch;
+    }
+}
@@ -0,0 +1,156 @@
+package io.github.noshou.npg.npsaxs;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import java.util.List;
+
+/**
+ * Histogram of interatomic distances of one particle, split by element pair.
+ * <p> For every unordered element pair {@code (e, f)} with {@code e <= f} (see {@link #pairType(int, int)}) the
+ * histogram stores the distinct distances that occur and how many unordered atom pairs ({@code i < j}) lie at
+ * each of them. Empty bins are dropped, so the Debye sum only visits populated distances. Together with the
+ * atom count of every element this is all the Debye formula needs:
+ * <pre>
+ *   I(q) = Σ_e N_e f_e(q)² + 2 Σ_(e≤f) f_e(q) f_f(q) Σ_b n_(ef,b) sinc(q r_b)
+ * </pre>
+ * Distances are either bin centres of a binned histogram or exact distances (e.g. from integer lattice indices).
+ */
+public final class PairHistogram {
+
+    private final List<String> elements;
+    private final long[] atom_counts;
+    private final double[][] distances;
+    private final long[][] counts;
+
+    /**
+     * Constructs a histogram. Arrays are taken over without copying.
+     * @param elements    element symbols, non-null
+     * @param atom_counts number of atoms per element
+     * @param distances   per pair type, the distances in Å of the populated bins
+     * @param counts      per pair type, the number of atom pairs at each distance
+     */
+    PairHistogram(
+            @NotNull List<String> elements,
+            long @NotNull [] atom_counts,
+            double @NotNull [] @NotNull [] distances,
+            long @NotNull [] @NotNull [] counts
+    ) {
+        int types = pairTypes(elements.size());
+        if (atom_counts.length != elements.size() || distances.length != types || counts.length != types) {
+            throw new IllegalArgumentException("Histogram arrays do not match the number of elements!");
+        }
+        for (int t = 0; t < types; t++) {
+            if (distances[t].length != counts[t].length) {
+                throw new IllegalArgumentException("Distance and count arrays differ in length!");
+            }
+        }
+        this.elements = List.copyOf(elements);
+        this.atom_counts = atom_counts;
+        this.distances = distances;
+        this.counts = counts;
+    }
+
+    /**
+     * Compacts dense per-type bins into a histogram, dropping empty bins.
+     * @param elements    element symbols, non-null
+     * @param atom_counts number of atoms per element
+     * @param bin_width   width of the dense bins in Å; bin {@code b} is represented by its centre
+     * @param dense       per pair type, dense bin counts
+     * @return the histogram
+     */
+    static @NotNull PairHistogram fromBins(
+            @NotNull List<String> elements,
+            long @NotNull [] atom_counts,
+            double bin_width,
+            long @NotNull [] @NotNull [] dense
+    ) {
+        double[][] distances = new double[dense.length][];
+        long[][] counts = new long[dense.length][];
+        for (int t = 0; t < dense.length; t++) {
+            int populated = 0;
+            for (long c : dense[t]) {
+                if (c != 0) {
+                    populated++;
+                }
+            }
+            distances[t] = new double[populated];
+            counts[t] = new long[populated];
+            int p = 0;
+            for (int b = 0; b < dense[t].length; b++) {
+                if (dense[t][b] != 0) {
+                    distances[t][p] = (b + 0.5) * bin_width;
+                    counts[t][p] = dense[t][b];
+                    p++;
+                }
+            }
+        }
+        return new PairHistogram(elements, atom_counts, distances, counts);
+    }
+
+    /**
+     * @param elements number of elements
+     * @return number of unordered element pairs
+     */
+    @Contract(pure = true)
+    public static int pairTypes(int elements) {
+        return elements * (elements + 1) / 2;
+    }
+
+    /**
+     * Index of the unordered element pair {@code (e, f)}.
+     * @param e element index
+     * @param f element index
+     * @return the pair type, in {@code [0, pairTypes(elements))}
+     */
+    @Contract(pure = true)
+    public static int pairType(int e, int f) {
+        int lo = Math.min(e, f), hi = Math.max(e, f);
+        return hi * (hi + 1) / 2 + lo;
+    }
+
+    /** @return element symbols */
+    @Contract(pure = true)
+    public @NotNull List<String> getElements() {
+        return this.elements;
+    }
+
+    /** @return number of atoms of element {@code e} */
+    @Contract(pure = true)
+    public long atomCount(int e) {
+        return this.atom_counts[e];
+    }
+
+    /** @return distances in Å of the populated bins of pair type {@code t} (must not be modified) */
+    @Contract(pure = true)
+    public double @NotNull [] distances(int t) {
+        return this.distances[t];
+    }
+
+    /** @return pair counts of the populated bins of pair type {@code t} (must not be modified) */
+    @Contract(pure = true)
+    public long @NotNull [] counts(int t) {
+        return this.counts[t];
+    }
+
+    /** @return the largest distance in Å */
+    @Contract(pure = true)
+    public double maxDistance() {
+        double max = 0;
+        for (double[] d : this.distances) {
+            for (double r : d) {
+                max = Math.max(max, r);
+            }
+        }
+        return max;
+    }
+
+    /** @return total number of atoms */
+    @Contract(pure = true)
+    public long atomCount() {
+        long n = 0;
+        for (long c : this.atom_counts) {
+            n += c;
+        }
+        return n;
+    }
+}
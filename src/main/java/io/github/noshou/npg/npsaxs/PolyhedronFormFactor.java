@@ -0,0 +1,390 @@
+package io.github.noshou.npg.npsaxs;
+
+import io.github.noshou.npg.shapes.Shape;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Continuum form factor of a uniform convex polyhedron, computed from its faces without any atoms.
+ * <p> The shape is given by its bounding planes ({@link Shape#getFacePlanes()}). Each face polygon is rebuilt by
+ * clipping its plane against all others, so only a point and a normal per face are needed. With the divergence
+ * theorem, first in 3D and then in every face plane, the Fourier transform becomes a sum over faces and edges:
+ * <pre>
+ *   F(q) = Σ_faces (q·n)/(i q²) Σ_edges (q·(E×n))/(i q_∥²) L·sinc(q·E/2)·exp(i q·c)
+ * </pre>
+ * with edge vector {@code E}, edge midpoint {@code c} and {@code q_∥} the component of {@code q} in the face plane.
+ * Where {@code q} (or {@code q_∥}) is too small for the closed form to be accurate, the zeroth-order expansion is
+ * used instead. Orientation averages of {@code |F|²} cost {@code O(directions × edges)} per q and take
+ * milliseconds, which makes them suitable for screening shapes and sizes before atomistic builds.
+ */
+public final class PolyhedronFormFactor {
+
+    /** Below this value of {@code q·R} the closed form loses accuracy and the expansion is used. */
+    private static final double SMALL = 1e-3;
+
+    private final int faces;
+    private final double[] normal;
+    private final double[] face_area;
+    private final double[] face_centroid;
+    private final double[] face_size;
+    private final int[] edge_start;
+    private final double[] edge_vector;
+    private final double[] edge_mid;
+    private final double[] edge_normal;
+    private final double volume;
+    private final double[] centroid;
+    private final double extent;
+
+    private PolyhedronFormFactor(@NotNull List<double[]> planes) {
+        List<double[]> unique = new ArrayList<>();
+        double scale = 0;
+        for (double[] plane : planes) {
+            if (plane.length != 4 || !(plane[3] > 0)) {
+                throw new IllegalArgumentException("Face planes must be {n_x, n_y, n_z, d} with d > 0!");
+            }
+            double length = Math.sqrt(plane[0] * plane[0] + plane[1] * plane[1] + plane[2] * plane[2]);
+            double[] p = {plane[0] / length, plane[1] / length, plane[2] / length, plane[3] / length};
+            scale = Math.max(scale, p[3]);
+            boolean duplicate = false;
+            for (double[] u : unique) {
+                duplicate |= Math.abs(u[0] - p[0]) + Math.abs(u[1] - p[1]) + Math.abs(u[2] - p[2]) < 1e-9
+                        && Math.abs(u[3] - p[3]) < 1e-9 * u[3];
+            }
+            if (!duplicate) {
+                unique.add(p);
+            }
+        }
+        if (unique.size() < 4) {
+            throw new IllegalArgumentException("A polyhedron needs at least four face planes!");
+        }
+        double tolerance = 1e-9 * scale;
+        double far = 1e3 * scale;
+
+        List<double[]> loops = new ArrayList<>();
+        List<double[]> kept = new ArrayList<>();
+        for (int f = 0; f < unique.size(); f++) {
+            double[] loop = clippedFace(unique, f, far, tolerance);
+            if (loop != null) {
+                loops.add(loop);
+                kept.add(unique.get(f));
+            }
+        }
+
+        this.faces = loops.size();
+        this.normal = new double[3 * this.faces];
+        this.face_area = new double[this.faces];
+        this.face_centroid = new double[3 * this.faces];
+        this.face_size = new double[this.faces];
+        this.edge_start = new int[this.faces + 1];
+        int edges = 0;
+        for (double[] loop : loops) {
+            edges += loop.length / 3;
+        }
+        this.edge_vector = new double[3 * edges];
+        this.edge_mid = new double[3 * edges];
+        this.edge_normal = new double[3 * edges];
+
+        double v = 0, vx = 0, vy = 0, vz = 0, extent = 0;
+        int e = 0;
+        for (int f = 0; f < this.faces; f++) {
+            double[] loop = loops.get(f);
+            double[] n = kept.get(f);
+            int k = loop.length / 3;
+            System.arraycopy(n, 0, this.normal, 3 * f, 3);
+
+            // area and centroid by a triangle fan around the first vertex
+            double area = 0, cx = 0, cy = 0, cz = 0;
+            for (int j = 1; j + 1 < k; j++) {
+                double ax = loop[3 * j] - loop[0], ay = loop[3 * j + 1] - loop[1], az = loop[3 * j + 2] - loop[2];
+                double bx = loop[3 * j + 3] - loop[0], by = loop[3 * j + 4] - loop[1], bz = loop[3 * j + 5] - loop[2];
+                double t = ((ay * bz - az * by) * n[0] + (az * bx - ax * bz) * n[1] + (ax * by - ay * bx) * n[2]) / 2;
+                area += t;
+                cx += t * (loop[0] + loop[3 * j] + loop[3 * j + 3]) / 3;
+                cy += t * (loop[1] + loop[3 * j + 1] + loop[3 * j + 4]) / 3;
+                cz += t * (loop[2] + loop[3 * j + 2] + loop[3 * j + 5]) / 3;
+            }
+            cx /= area;
+            cy /= area;
+            cz /= area;
+            this.face_area[f] = area;
+            this.face_centroid[3 * f] = cx;
+            this.face_centroid[3 * f + 1] = cy;
+            this.face_centroid[3 * f + 2] = cz;
+
+            // pyramid from the origin: volume A·d/3, centroid at 3/4 of the way to the face centroid
+            double pyramid = area * n[3] / 3;
+            v += pyramid;
+            vx += pyramid * 0.75 * cx;
+            vy += pyramid * 0.75 * cy;
+            vz += pyramid * 0.75 * cz;
+
+            this.edge_start[f] = e;
+            double size = 0;
+            for (int j = 0; j < k; j++) {
+                int a = 3 * j, b = 3 * ((j + 1) % k);
+                double ex = loop[b] - loop[a], ey = loop[b + 1] - loop[a + 1], ez = loop[b + 2] - loop[a + 2];
+                this.edge_vector[3 * e] = ex;
+                this.edge_vector[3 * e + 1] = ey;
+                this.edge_vector[3 * e + 2] = ez;
+                this.edge_mid[3 * e] = (loop[a] + loop[b]) / 2;
+                this.edge_mid[3 * e + 1] = (loop[a + 1] + loop[b + 1]) / 2;
+                this.edge_mid[3 * e + 2] = (loop[a + 2] + loop[b + 2]) / 2;
+
+                // E × n: outward in-plane edge normal scaled by the edge length
+                this.edge_normal[3 * e] = ey * n[2] - ez * n[1];
+                this.edge_normal[3 * e + 1] = ez * n[0] - ex * n[2];
+                this.edge_normal[3 * e + 2] = ex * n[1] - ey * n[0];
+                double dx = loop[a] - cx, dy = loop[a + 1] - cy, dz = loop[a + 2] - cz;
+                size = Math.max(size, Math.sqrt(dx * dx + dy * dy + dz * dz));
+                extent = Math.max(extent, Math.sqrt(loop[a] * loop[a] + loop[a + 1] * loop[a + 1]
+                        + loop[a + 2] * loop[a + 2]));
+                e++;
+            }
+            this.face_size[f] = size;
+        }
+        this.edge_start[this.faces] = e;
+        this.volume = v;
+        this.centroid = new double[]{vx / v, vy / v, vz / v};
+        this.extent = extent;
+    }
+
+    /**
+     * Clips face {@code f} against all other planes.
+     * @return the face polygon as counter-clockwise (seen from outside) {@code (x, y, z)} triples, or
+     *         {@code null} if the plane does not touch the polyhedron
+     */
+    private static double @Nullable [] clippedFace(
+            @NotNull List<double[]> planes,
+            int f,
+            double far,
+            double tolerance
+    ) {
+        double[] n = planes.get(f);
+
+        // in-plane basis with u × v = n
+        double[] u = Math.abs(n[0]) < 0.9 ? new double[]{0, -n[2], n[1]} : new double[]{n[2], 0, -n[0]};
+        double un = Math.sqrt(u[0] * u[0] + u[1] * u[1] + u[2] * u[2]);
+        u[0] /= un;
+        u[1] /= un;
+        u[2] /= un;
+        double[] w = {n[1] * u[2] - n[2] * u[1], n[2] * u[0] - n[0] * u[2], n[0] * u[1] - n[1] * u[0]};
+        List<double[]> polygon = new ArrayList<>();
+        double[][] corners = {{-far, -far}, {far, -far}, {far, far}, {-far, far}};
+        for (double[] c : corners) {
+            polygon.add(new double[]{
+                    n[3] * n[0] + c[0] * u[0] + c[1] * w[0],
+                    n[3] * n[1] + c[0] * u[1] + c[1] * w[1],
+                    n[3] * n[2] + c[0] * u[2] + c[1] * w[2]
+            });
+        }
+
+        for (int g = 0; g < planes.size() && polygon.size() >= 3; g++) {
+            if (g == f) {
+                continue;
+            }
+            double[] p = planes.get(g);
+            List<double[]> clipped = new ArrayList<>();
+            for (int j = 0; j < polygon.size(); j++) {
+                double[] a = polygon.get(j), b = polygon.get((j + 1) % polygon.size());
+                double da = p[0] * a[0] + p[1] * a[1] + p[2] * a[2] - p[3];
+                double db = p[0] * b[0] + p[1] * b[1] + p[2] * b[2] - p[3];
+                if (da <= tolerance) {
+                    clipped.add(a);
+                }
+                if ((da < -tolerance && db > tolerance) || (da > tolerance && db < -tolerance)) {
+                    double t = da / (da - db);
+                    clipped.add(new double[]{a[0] + t * (b[0] - a[0]), a[1] + t * (b[1] - a[1]), a[2] + t * (b[2] - a[2])});
+                }
+            }
+            polygon = clipped;
+        }
+
+        // drop repeated vertices left by planes through a vertex
+        List<double[]> loop = new ArrayList<>();
+        for (double[] a : polygon) {
+            double[] last = loop.isEmpty() ? null : loop.get(loop.size() - 1);
+            if (last == null || Math.abs(a[0] - last[0]) + Math.abs(a[1] - last[1]) + Math.abs(a[2] - last[2]) > 10 * tolerance) {
+                loop.add(a);
+            }
+        }
+        while (loop.size() > 1) {
+            double[] a = loop.get(0), b = loop.get(loop.size() - 1);
+            if (Math.abs(a[0] - b[0]) + Math.abs(a[1] - b[1]) + Math.abs(a[2] - b[2]) > 10 * tolerance) {
+                break;
+            }
+            loop.remove(loop.size() - 1);
+        }
+        if (loop.size() < 3) {
+            return null;
+        }
+
+        // planes touching the polyhedron only along an edge leave a sliver of no area
+        double sx = 0, sy = 0, sz = 0;
+        for (int j = 0; j < loop.size(); j++) {
+            double[] a = loop.get(j), b = loop.get((j + 1) % loop.size());
+            sx += a[1] * b[2] - a[2] * b[1];
+            sy += a[2] * b[0] - a[0] * b[2];
+            sz += a[0] * b[1] - a[1] * b[0];
+        }
+        if ((sx * n[0] + sy * n[1] + sz * n[2]) / 2 <= tolerance * far) {
+            return null;
+        }
+        double[] out = new double[3 * loop.size()];
+        for (int j = 0; j < loop.size(); j++) {
+            double[] a = loop.get(j);
+            if (Math.abs(a[0]) + Math.abs(a[1]) + Math.abs(a[2]) > far / 2) {
+                throw new IllegalArgumentException("Face planes do not enclose a bounded polyhedron!");
+            }
+            System.arraycopy(a, 0, out, 3 * j, 3);
+        }
+        return out;
+    }
+
+    /**
+     * Creates the form factor of a shape from its face planes.
+     * @param shape the shape, non-null
+     * @return the form factor
+     * @throws IllegalArgumentException if the shape has no face planes (e.g. a sphere)
+     */
+    @Contract("_ -> new")
+    public static @NotNull PolyhedronFormFactor of(@NotNull Shape shape) {
+        List<double[]> planes = shape.getFacePlanes();
+        if (planes.isEmpty()) {
+            throw new IllegalArgumentException(shape.getStructureName() + " has no face planes!");
+        }
+        return new PolyhedronFormFactor(planes);
+    }
+
+    /**
+     * Creates the form factor of the convex polyhedron bounded by the given planes.
+     * @param planes {@code {n_x, n_y, n_z, d}} per face, see {@link Shape#getFacePlanes()}; non-null
+     * @return the form factor
+     * @throws IllegalArgumentException if the planes do not enclose a bounded polyhedron
+     */
+    @Contract("_ -> new")
+    public static @NotNull PolyhedronFormFactor fromPlanes(@NotNull List<double @NotNull []> planes) {
+        return new PolyhedronFormFactor(planes);
+    }
+
+    /** @return the volume in Å³ */
+    @Contract(pure = true)
+    public double volume() {
+        return this.volume;
+    }
+
+    /** @return number of faces */
+    @Contract(pure = true)
+    public int faceCount() {
+        return this.faces;
+    }
+
+    /** @return largest distance of a vertex from the origin in Å */
+    @Contract(pure = true)
+    public double extent() {
+        return this.extent;
+    }
+
+    /**
+     * Evaluates the complex amplitude {@code F(q) = ∫ exp(i q·r) dV}.
+     * @param qx  x component of q in Å⁻¹
+     * @param qy  y component of q in Å⁻¹
+     * @param qz  z component of q in Å⁻¹
+     * @param out receives the real and imaginary part (Å³), length at least 2
+     */
+    public void amplitude(double qx, double qy, double qz, double @NotNull [] out) {
+        double q2 = qx * qx + qy * qy + qz * qz;
+        if (q2 * this.extent * this.extent < SMALL * SMALL) {
+            double phase = qx * this.centroid[0] + qy * this.centroid[1] + qz * this.centroid[2];
+            out[0] = this.volume * Math.cos(phase);
+            out[1] = this.volume * Math.sin(phase);
+            return;
+        }
+        double re = 0, im = 0;
+        for (int f = 0; f < this.faces; f++) {
+            double qn = qx * this.normal[3 * f] + qy * this.normal[3 * f + 1] + qz * this.normal[3 * f + 2];
+            if (qn == 0) {
+                continue;
+            }
+            double qp2 = q2 - qn * qn;
+            if (qp2 * this.face_size[f] * this.face_size[f] < SMALL * SMALL) {
+
+                // q normal to the face: (q·n)/(i q²) · A exp(i q·c)
+                double phase = qx * this.face_centroid[3 * f] + qy * this.face_centroid[3 * f + 1]
+                        + qz * this.face_centroid[3 * f + 2];
+                double a = qn * this.face_area[f] / q2;
+                re += a * Math.sin(phase);
+                im -= a * Math.cos(phase);
+                continue;
+            }
+
+            // (q·n)/(i q²) · 1/(i q_∥²) = -(q·n)/(q² q_∥²)
+            double factor = -qn / (q2 * qp2);
+            double s_re = 0, s_im = 0;
+            for (int e = this.edge_start[f]; e < this.edge_start[f + 1]; e++) {
+                double qm = qx * this.edge_normal[3 * e] + qy * this.edge_normal[3 * e + 1]
+                        + qz * this.edge_normal[3 * e + 2];
+                double half = (qx * this.edge_vector[3 * e] + qy * this.edge_vector[3 * e + 1]
+                        + qz * this.edge_vector[3 * e + 2]) / 2;
+                double sinc = Math.abs(half) < 1e-4 ? 1 - half * half / 6 : Math.sin(half) / half;
+                double phase = qx * this.edge_mid[3 * e] + qy * this.edge_mid[3 * e + 1]
+                        + qz * this.edge_mid[3 * e + 2];
+                double a = qm * sinc;
+                s_re += a * Math.cos(phase);
+                s_im += a * Math.sin(phase);
+            }
+            re += factor * s_re;
+            im += factor * s_im;
+        }
+        out[0] = re;
+        out[1] = im;
+    }
+
+    /**
+     * Computes the orientation average {@code <|F(q)|²>} of the shape.
+     * @param grid       the q-grid, non-null
+     * @param quadrature orientation average, non-null
+     * @return {@code <|F|²>} in Å⁶
+     */
+    public @NotNull SaxsProfile intensity(@NotNull QGrid grid, @NotNull SphereQuadrature quadrature) {
+        double[] intensity = new double[grid.size()];
+        double[] amplitude = new double[2];
+        for (int k = 0; k < intensity.length; k++) {
+            double q = grid.get(k);
+            double sum = 0;
+            for (int d = 0; d < quadrature.size(); d++) {
+                this.amplitude(q * quadrature.x(d), q * quadrature.y(d), q * quadrature.z(d), amplitude);
+                sum += quadrature.weight(d) * (amplitude[0] * amplitude[0] + amplitude[1] * amplitude[1]);
+            }
+            intensity[k] = sum;
+        }
+        return new SaxsProfile(grid, intensity);
+    }
+
+    /**
+     * Computes the scattering of the shape filled uniformly with atoms of one element, {@code (ρ f(q))² <|F|²>}.
+     * At low q this approximates the atomistic Debye profile of the built particle.
+     * @param grid           the q-grid, non-null
+     * @param quadrature     orientation average, non-null
+     * @param element        element symbol, non-null
+     * @param number_density atoms per Å³ (e.g. {@code 4 / a³} for FCC)
+     * @return {@code I(q)} in electron units
+     * @throws IllegalArgumentException if the element has no tabulated form factor
+     */
+    public @NotNull SaxsProfile intensity(
+            @NotNull QGrid grid,
+            @NotNull SphereQuadrature quadrature,
+            @NotNull String element,
+            double number_density
+    ) {
+        double[] f = AtomicFormFactor.of(element).table(grid);
+        double[] intensity = this.intensity(grid, quadrature).toArray();
+        for (int k = 0; k < intensity.length; k++) {
+            double rho = number_density * f[k];
+            intensity[k] *= rho * rho;
+        }
+        return new SaxsProfile(grid, intensity);
+    }
+}
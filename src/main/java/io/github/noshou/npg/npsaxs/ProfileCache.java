@@ -0,0 +1,105 @@
+package io.github.noshou.npg.npsaxs;
+
+import io.github.noshou.npg.npreader.ParticleFingerprint;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Content-addressed store of scattering profiles on one q-grid, keyed by {@link ParticleFingerprint}.
+ * <p> A Debye profile depends only on the set of atoms, not on the shape class or size that produced it, so
+ * particles of equal fingerprint share one profile; with canonical fingerprints, rotated and mirrored copies do as
+ * well. The cache is safe for concurrent use: when several threads ask for the same missing profile, one computes
+ * it and the others wait for its result.
+ */
+public final class ProfileCache {
+
+    private final @NotNull QGrid grid;
+    private final ConcurrentHashMap<ParticleFingerprint, CompletableFuture<SaxsProfile>> profiles =
+            new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * Constructs an empty cache.
+     * @param grid the q-grid of the profiles, non-null
+     */
+    public ProfileCache(@NotNull QGrid grid) {
+        this.grid = grid;
+    }
+
+    /** @return the q-grid of the profiles */
+    @Contract(pure = true)
+    public @NotNull QGrid getGrid() {
+        return this.grid;
+    }
+
+    /** @return number of profiles stored */
+    @Contract(pure = true)
+    public int size() {
+        return this.profiles.size();
+    }
+
+    /** @return number of lookups answered from the cache */
+    @Contract(pure = true)
+    public long hits() {
+        return this.hits.get();
+    }
+
+    /**
+     * Looks up a profile.
+     * @param fingerprint the particle, non-null
+     * @return its profile, or null if it has not been computed (yet)
+     */
+    public @Nullable SaxsProfile get(@NotNull ParticleFingerprint fingerprint) {
+        CompletableFuture<SaxsProfile> future = this.profiles.get(fingerprint);
+        if (future == null || !future.isDone() || future.isCompletedExceptionally()) {
+            return null;
+        }
+        this.hits.incrementAndGet();
+        return future.join();
+    }
+
+    /**
+     * Returns the profile of a particle, computing it if it is not stored yet.
+     * @param fingerprint the particle, non-null
+     * @param compute     computes the profile on {@link #getGrid()}; called at most once per fingerprint unless it
+     *                    fails
+     * @return the profile
+     * @throws IllegalArgumentException if the computed profile is not on the grid of the cache
+     * @throws RuntimeException         if computing the profile fails, in this or the computing thread
+     */
+    public @NotNull SaxsProfile computeIfAbsent(
+            @NotNull ParticleFingerprint fingerprint,
+            @NotNull Supplier<SaxsProfile> compute
+    ) {
+        CompletableFuture<SaxsProfile> mine = new CompletableFuture<>();
+        CompletableFuture<SaxsProfile> theirs = this.profiles.putIfAbsent(fingerprint, mine);
+        if (theirs != null) {
+            this.hits.incrementAndGet();
+            try {
+                return theirs.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException r ? r : e;
+            }
+        }
+        try {
+            SaxsProfile profile = compute.get();
+            if (!profile.getGrid().equals(this.grid)) {
+                throw new IllegalArgumentException("Profile is not on the q-grid of the cache!");
+            }
+            mine.complete(profile);
+            return profile;
+        } catch (RuntimeException | Error e) {
+
+            // let a later caller try again
+            this.profiles.remove(fingerprint, mine);
+            mine.completeExceptionally(e);
+            throw e;
+        }
+    }
+}
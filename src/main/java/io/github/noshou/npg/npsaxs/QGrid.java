@@ -0,0 +1,109 @@
+package io.github.noshou.npg.npsaxs;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import java.util.Arrays;
+
+/**
+ * Immutable grid of scattering vector magnitudes {@code q = 4π sin(θ) / λ} in Å⁻¹.
+ */
+public final class QGrid {
+
+    /** Grid values in Å⁻¹, strictly increasing. */
+    private final double[] q;
+
+    private QGrid(double @NotNull [] q) {
+        if (q.length == 0) {
+            throw new IllegalArgumentException("q-grid must not be empty!");
+        }
+        for (int n = 0; n < q.length; n++) {
+            if (!(q[n] >= 0) || Double.isInfinite(q[n]) || (n > 0 && q[n] <= q[n - 1])) {
+                throw new IllegalArgumentException("q-grid must be finite, non-negative and strictly increasing!");
+            }
+        }
+        this.q = q;
+    }
+
+    /**
+     * Creates a grid from explicit values.
+     * @param q values in Å⁻¹, strictly increasing and non-negative
+     * @return the grid
+     */
+    @Contract("_ -> new")
+    public static @NotNull QGrid of(double @NotNull ... q) {
+        return new QGrid(q.clone());
+    }
+
+    /**
+     * Creates an evenly spaced grid including both end points.
+     * @param q_min first value in Å⁻¹
+     * @param q_max last value in Å⁻¹
+     * @param n     number of points, at least 2
+     * @return the grid
+     */
+    @Contract("_, _, _ -> new")
+    public static @NotNull QGrid linear(double q_min, double q_max, int n) {
+        if (n < 2) {
+            throw new IllegalArgumentException("A linear q-grid needs at least two points!");
+        }
+        double[] q = new double[n];
+        for (int k = 0; k < n; k++) {
+            q[k] = q_min + (q_max - q_min) * k / (n - 1);
+        }
+        return new QGrid(q);
+    }
+
+    /**
+     * Creates a logarithmically spaced grid including both end points.
+     * @param q_min first value in Å⁻¹, positive
+     * @param q_max last value in Å⁻¹
+     * @param n     number of points, at least 2
+     * @return the grid
+     */
+    @Contract("_, _, _ -> new")
+    public static @NotNull QGrid logarithmic(double q_min, double q_max, int n) {
+        if (n < 2 || !(q_min > 0)) {
+            throw new IllegalArgumentException("A logarithmic q-grid needs q_min > 0 and at least two points!");
+        }
+        double[] q = new double[n];
+        double ratio = Math.log(q_max / q_min);
+        for (int k = 0; k < n; k++) {
+            q[k] = q_min * Math.exp(ratio * k / (n - 1));
+        }
+        return new QGrid(q);
+    }
+
+    /** @return number of points */
+    @Contract(pure = true)
+    public int size() {
+        return this.q.length;
+    }
+
+    /** @return value {@code k} in Å⁻¹ */
+    @Contract(pure = true)
+    public double get(int k) {
+        return this.q[k];
+    }
+
+    /** @return largest value in Å⁻¹ */
+    @Contract(pure = true)
+    public double max() {
+        return this.q[this.q.length - 1];
+    }
+
+    /** @return a copy of the values in Å⁻¹ */
+    @Contract(pure = true)
+    public double @NotNull [] toArray() {
+        return this.q.clone();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof QGrid g && Arrays.equals(this.q, g.q));
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(this.q);
+    }
+}
@@ -0,0 +1,363 @@
+package io.github.noshou.npg.npsaxs;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import java.util.Arrays;
+
+/**
+ * Instrument resolution as a sparse linear map from a model profile to smeared observations.
+ * <p> A smeared intensity is an average of the model over nearby q, {@code I_s(q) = ∫ R(q, q') I(q') dq'}. The
+ * model is taken to be linear between the points of its grid, so the integral is a fixed linear combination of
+ * the model values: a kernel matrix with one row per observed q and one non-zero column per model point under
+ * the kernel. The matrix is built once per observed grid, model grid and instrument, stored in compressed sparse
+ * row form, and every profile is then smeared by a sparse matrix–vector product; {@link #smear(double[][])}
+ * smears a whole batch of candidate profiles in one sweep over the kernel.
+ * <p> The pinhole Gaussian, cut off at {@code ±4σ} and renormalised, is integrated in closed form over every
+ * linear segment of the model (error-function differences for the constant part, Gaussian differences for the
+ * linear part), so the kernel is exact for any model grid, however fine. Slit smearing samples the beam profile
+ * with a midpoint rule and spreads every sample onto the two model points around it.
+ * <p> The model grid must cover the support of the resolution: from {@code q − 4σ} (or zero) to {@code q + 4σ}
+ * for pinhole smearing, and from {@code q − W/2} (or zero) to {@code √((q + W/2)² + L²)} for a slit of length
+ * {@code L} and width {@code W}. Model values below zero q are those at {@code |q|}.
+ */
+public final class Resolution {
+
+    /** Extent of the Gaussian pinhole kernel in standard deviations. */
+    private static final double PINHOLE_EXTENT = 4;
+
+    /** Quadrature points along the slit length. */
+    private static final int SLIT_LENGTH_POINTS = 64;
+
+    /** Quadrature points across the slit width. */
+    private static final int SLIT_WIDTH_POINTS = 8;
+
+    private final @NotNull QGrid observed;
+    private final @NotNull QGrid model;
+    private final int[] row_start;
+    private final int[] column;
+    private final double[] weight;
+
+    private Resolution(@NotNull QGrid observed, @NotNull QGrid model, int @NotNull [] row_start,
+                       int @NotNull [] column, double @NotNull [] weight) {
+        this.observed = observed;
+        this.model = model;
+        this.row_start = row_start;
+        this.column = column;
+        this.weight = weight;
+    }
+
+    /**
+     * Pinhole smearing with a Gaussian of standard deviation {@code σ_q} at every observed point.
+     * @param observed the q-grid of the observations, non-null
+     * @param sigma    standard deviation in Å⁻¹ at every observed point, non-negative
+     * @param model    the q-grid of the model profiles, non-null
+     * @return the resolution
+     * @throws IllegalArgumentException if the arrays do not match or the model grid does not cover the kernel
+     */
+    @Contract("_, _, _ -> new")
+    public static @NotNull Resolution pinhole(@NotNull QGrid observed, double @NotNull [] sigma, @NotNull QGrid model) {
+        if (sigma.length != observed.size()) {
+            throw new IllegalArgumentException("Pinhole smearing needs one sigma per observed q!");
+        }
+        for (double s : sigma) {
+            if (!(s >= 0) || Double.isInfinite(s)) {
+                throw new IllegalArgumentException("Pinhole sigma must be finite and non-negative!");
+            }
+        }
+        Builder builder = new Builder(observed, model);
+        for (int k = 0; k < observed.size(); k++) {
+            double q = observed.get(k);
+            if (sigma[k] == 0) {
+                builder.sample(q, 1);
+            } else {
+                double lo = q - PINHOLE_EXTENT * sigma[k], hi = q + PINHOLE_EXTENT * sigma[k];
+                if (lo < 0) {
+                    // the part below zero q, folded onto |q'|
+                    builder.gaussian(-q, sigma[k], 0, -lo);
+                    lo = 0;
+                }
+                builder.gaussian(q, sigma[k], lo, hi);
+            }
+            builder.endRow();
+        }
+        return builder.build();
+    }
+
+    /**
+     * Pinhole smearing with a constant relative resolution {@code σ_q = relative · q}.
+     * @param observed the q-grid of the observations, non-null
+     * @param relative the relative standard deviation, non-negative
+     * @param model    the q-grid of the model profiles, non-null
+     * @return the resolution
+     * @throws IllegalArgumentException if the model grid does not cover the kernel
+     */
+    @Contract("_, _, _ -> new")
+    public static @NotNull Resolution pinhole(@NotNull QGrid observed, double relative, @NotNull QGrid model) {
+        double[] sigma = observed.toArray();
+        for (int k = 0; k < sigma.length; k++) {
+            sigma[k] *= relative;
+        }
+        return pinhole(observed, sigma, model);
+    }
+
+    /**
+     * Slit smearing with a uniform beam profile (Lake, 1967):
+     * {@code I_s(q) = (1/LW) ∫₀^L ∫_{−W/2}^{W/2} I(√((q + v)² + u²)) dv du}.
+     * @param observed the q-grid of the observations, non-null
+     * @param length   slit length {@code L} in Å⁻¹, non-negative
+     * @param width    slit width {@code W} in Å⁻¹, non-negative; zero for a slit of negligible width
+     * @param model    the q-grid of the model profiles, non-null
+     * @return the resolution
+     * @throws IllegalArgumentException if the model grid does not cover the kernel
+     */
+    @Contract("_, _, _, _ -> new")
+    public static @NotNull Resolution slit(@NotNull QGrid observed, double length, double width, @NotNull QGrid model) {
+        if (!(length >= 0) || !(width >= 0) || Double.isInfinite(length) || Double.isInfinite(width)) {
+            throw new IllegalArgumentException("Slit length and width must be finite and non-negative!");
+        }
+        int nu = length > 0 ? SLIT_LENGTH_POINTS : 1;
+        int nv = width > 0 ? SLIT_WIDTH_POINTS : 1;
+        Builder builder = new Builder(observed, model);
+        for (int k = 0; k < observed.size(); k++) {
+            double q = observed.get(k);
+
+            // midpoint rule in both directions
+            for (int a = 0; a < nu; a++) {
+                double u = length * (a + 0.5) / nu;
+                for (int b = 0; b < nv; b++) {
+                    double v = width * ((b + 0.5) / nv - 0.5);
+                    builder.sample(Math.hypot(q + v, u), 1);
+                }
+            }
+            builder.endRow();
+        }
+        return builder.build();
+    }
+
+    /** @return the q-grid of the observations */
+    @Contract(pure = true)
+    public @NotNull QGrid getObservedGrid() {
+        return this.observed;
+    }
+
+    /** @return the q-grid of the model profiles */
+    @Contract(pure = true)
+    public @NotNull QGrid getModelGrid() {
+        return this.model;
+    }
+
+    /** @return number of non-zero kernel entries */
+    @Contract(pure = true)
+    public int nonZeros() {
+        return this.weight.length;
+    }
+
+    /**
+     * Smears one profile.
+     * @param profile the model profile on the model grid, non-null
+     * @return the smeared profile on the observed grid
+     * @throws IllegalArgumentException if the profile is not on the model grid
+     */
+    @Contract(pure = true)
+    public @NotNull SaxsProfile smear(@NotNull SaxsProfile profile) {
+        if (!profile.getGrid().equals(this.model)) {
+            throw new IllegalArgumentException("Profile is not on the model grid of the resolution!");
+        }
+        double[] intensity = new double[this.observed.size()];
+        for (int k = 0; k < intensity.length; k++) {
+            double sum = 0;
+            for (int e = this.row_start[k]; e < this.row_start[k + 1]; e++) {
+                sum += this.weight[e] * profile.intensity(this.column[e]);
+            }
+            intensity[k] = sum;
+        }
+        return new SaxsProfile(this.observed, intensity);
+    }
+
+    /**
+     * Smears a batch of profiles. The profiles are interleaved point by point first, so that every kernel entry
+     * is read once for the whole batch and applied in a contiguous inner loop.
+     * @param profiles model intensities on the model grid, one row per profile
+     * @return smeared intensities on the observed grid, one row per profile
+     * @throws IllegalArgumentException if a row does not match the model grid
+     */
+    @Contract(pure = true)
+    public double @NotNull [] @NotNull [] smear(double @NotNull [] @NotNull [] profiles) {
+        int count = profiles.length, m = this.model.size(), n = this.observed.size();
+        double[] interleaved = new double[m * count];
+        for (int p = 0; p < count; p++) {
+            if (profiles[p].length != m) {
+                throw new IllegalArgumentException("Profile does not match the model grid of the resolution!");
+            }
+            for (int j = 0; j < m; j++) {
+                interleaved[j * count + p] = profiles[p][j];
+            }
+        }
+        double[][] smeared = new double[count][n];
+        double[] sum = new double[count];
+        for (int k = 0; k < n; k++) {
+            Arrays.fill(sum, 0);
+            for (int e = this.row_start[k]; e < this.row_start[k + 1]; e++) {
+                double w = this.weight[e];
+                int base = this.column[e] * count;
+                for (int p = 0; p < count; p++) {
+                    sum[p] += w * interleaved[base + p];
+                }
+            }
+            for (int p = 0; p < count; p++) {
+                smeared[p][k] = sum[p];
+            }
+        }
+        return smeared;
+    }
+
+    /**
+     * Fits a model profile to a measurement after smearing it.
+     * @param data        the measurement on the observed grid, non-null
+     * @param profile     the model profile on the model grid, non-null
+     * @param with_offset whether to fit a constant offset
+     * @return the fit of the smeared profile
+     * @throws IllegalArgumentException if the grids do not match or the model is degenerate
+     */
+    public @NotNull SaxsFit fit(@NotNull SaxsData data, @NotNull SaxsProfile profile, boolean with_offset) {
+        if (!data.getGrid().equals(this.observed)) {
+            throw new IllegalArgumentException("Data are not on the observed grid of the resolution!");
+        }
+        return SaxsFit.fit(data, this.smear(profile), with_offset);
+    }
+
+    /**
+     * Accumulates kernel rows from weighted samples, spreading every sample onto the two model points around it,
+     * and from Gaussians integrated exactly over the linear segments of the model.
+     */
+    private static final class Builder {
+
+        private final @NotNull QGrid observed;
+        private final @NotNull QGrid model;
+        private final double[] q;
+        private final double tolerance;
+        private final double[] row;
+        private final int[] touched;
+        private int touched_count = 0;
+        private double row_weight = 0;
+        private final int[] row_start;
+        private int rows = 0;
+        private int[] column = new int[1024];
+        private double[] weight = new double[1024];
+        private int size = 0;
+
+        Builder(@NotNull QGrid observed, @NotNull QGrid model) {
+            this.observed = observed;
+            this.model = model;
+            this.q = model.toArray();
+            this.tolerance = 1e-9 * model.max();
+            this.row = new double[this.q.length];
+            this.touched = new int[this.q.length];
+            this.row_start = new int[observed.size() + 1];
+        }
+
+        /** Adds the model value at {@code q} with weight {@code w} to the current row. */
+        void sample(double q, double w) {
+            int n = this.q.length;
+            if (q < this.q[0] - this.tolerance || q > this.q[n - 1] + this.tolerance) {
+                throw new IllegalArgumentException("Model grid does not cover the resolution at q = " + q + "!");
+            }
+            if (n == 1) {
+                this.add(0, w);
+                return;
+            }
+            int j = Arrays.binarySearch(this.q, q);
+            j = j >= 0 ? Math.min(j, n - 2) : Math.max(0, Math.min(-j - 2, n - 2));
+            double t = Math.max(0, Math.min(1, (q - this.q[j]) / (this.q[j + 1] - this.q[j])));
+            this.add(j, (1 - t) * w);
+            this.add(j + 1, t * w);
+        }
+
+        /**
+         * Adds {@code ∫ exp(−(q' − center)² / 2σ²) I(q') dq'} over {@code [lo, hi]} to the current row, with
+         * {@code I} linear on every model segment.
+         */
+        void gaussian(double center, double sigma, double lo, double hi) {
+            int n = this.q.length;
+            if (lo < this.q[0] - this.tolerance || hi > this.q[n - 1] + this.tolerance) {
+                throw new IllegalArgumentException(
+                        "Model grid does not cover the resolution at q = " + (lo < this.q[0] ? lo : hi) + "!"
+                );
+            }
+            if (n == 1) {
+                this.add(0, 1);
+                return;
+            }
+            int j = Arrays.binarySearch(this.q, lo);
+            j = j >= 0 ? Math.min(j, n - 2) : Math.max(0, Math.min(-j - 2, n - 2));
+            double scale = sigma * Math.sqrt(Math.PI / 2);
+            for (; j < n - 1 && this.q[j] < hi; j++) {
+                double z0 = (Math.max(lo, this.q[j]) - center) / sigma;
+                double z1 = (Math.min(hi, this.q[j + 1]) - center) / sigma;
+                if (!(z1 > z0)) {
+                    continue;
+                }
+                // zeroth moment, and first moment about the centre
+                double m0 = scale * (erf(z1 / Math.sqrt(2)) - erf(z0 / Math.sqrt(2)));
+                double m1 = sigma * sigma * (Math.exp(-0.5 * z0 * z0) - Math.exp(-0.5 * z1 * z1));
+                double h = this.q[j + 1] - this.q[j];
+                this.add(j, Math.max(0, ((this.q[j + 1] - center) * m0 - m1) / h));
+                this.add(j + 1, Math.max(0, ((center - this.q[j]) * m0 + m1) / h));
+            }
+        }
+
+        private void add(int j, double w) {
+            if (w == 0) {
+                return;
+            }
+            if (this.row[j] == 0) {
+                this.touched[this.touched_count++] = j;
+            }
+            this.row[j] += w;
+            this.row_weight += w;
+        }
+
+        /** Normalises the current row to unit sum and appends it. */
+        void endRow() {
+            Arrays.sort(this.touched, 0, this.touched_count);
+            for (int t = 0; t < this.touched_count; t++) {
+                int j = this.touched[t];
+                if (this.size == this.column.length) {
+                    this.column = Arrays.copyOf(this.column, 2 * this.size);
+                    this.weight = Arrays.copyOf(this.weight, 2 * this.size);
+                }
+                this.column[this.size] = j;
+                this.weight[this.size] = this.row[j] / this.row_weight;
+                this.size++;
+                this.row[j] = 0;
+            }
+            this.touched_count = 0;
+            this.row_weight = 0;
+            this.row_start[++this.rows] = this.size;
+        }
+
+        /**
+         * The error function by its series {@code erf(x) = 2x/√π · e^(−x²) · Σ (2x²)ⁿ / (1·3···(2n+1))},
+         * whose terms are all positive; accurate to rounding within the kernel extent ({@code |x| ≤ 4/√2}).
+         */
+        @Contract(pure = true)
+        private static double erf(double x) {
+            double x2 = x * x, term = 1, sum = 1;
+            for (int n = 1; term > 1e-17 * sum; n++) {
+                term *= 2 * x2 / (2 * n + 1);
+                sum += term;
+            }
+            return 2 * x / Math.sqrt(Math.PI) * Math.exp(-x2) * sum;
+        }
+
+        @NotNull Resolution build() {
+            return new Resolution(
+                    this.observed,
+                    this.model,
+                    this.row_start,
+                    Arrays.copyOf(this.column, this.size),
+                    Arrays.copyOf(this.weight, this.size)
+            );
+        }
+    }
+}
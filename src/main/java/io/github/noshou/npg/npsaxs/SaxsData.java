@@ -0,0 +1,93 @@
+package io.github.noshou.npg.npsaxs;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable measured SAXS profile: intensities with their standard deviations on a q-grid, plus the instrument
+ * parameters that came with them (e.g. the {@code Instparm} lines of a CSV export).
+ */
+public final class SaxsData {
+
+    private final @NotNull QGrid grid;
+    private final double[] intensity;
+    private final double[] sigma;
+    private final Map<String, String> parameters;
+
+    /**
+     * Constructs a data set. Arrays are copied.
+     * @param q          q values in Å⁻¹, strictly increasing and non-negative
+     * @param intensity  observed intensities, one per q value
+     * @param sigma      standard deviations, one per q value, positive
+     * @param parameters instrument parameters by name, non-null
+     */
+    public SaxsData(
+            double @NotNull [] q,
+            double @NotNull [] intensity,
+            double @NotNull [] sigma,
+            @NotNull Map<String, String> parameters
+    ) {
+        if (q.length == 0 || intensity.length != q.length || sigma.length != q.length) {
+            throw new IllegalArgumentException("Data needs one intensity and one sigma per q value!");
+        }
+        for (int k = 0; k < q.length; k++) {
+            if (!(sigma[k] > 0) || Double.isInfinite(sigma[k]) || !Double.isFinite(intensity[k])) {
+                throw new IllegalArgumentException("Invalid intensity or sigma at q = " + q[k] + "!");
+            }
+        }
+        this.grid = QGrid.of(q);
+        this.intensity = intensity.clone();
+        this.sigma = sigma.clone();
+        this.parameters = Collections.unmodifiableMap(new LinkedHashMap<>(parameters));
+    }
+
+    /** @return the q-grid of the measurement */
+    @Contract(pure = true)
+    public @NotNull QGrid getGrid() {
+        return this.grid;
+    }
+
+    /** @return number of points */
+    @Contract(pure = true)
+    public int size() {
+        return this.intensity.length;
+    }
+
+    /** @return q of point {@code k} in Å⁻¹ */
+    @Contract(pure = true)
+    public double q(int k) {
+        return this.grid.get(k);
+    }
+
+    /** @return observed intensity of point {@code k} */
+    @Contract(pure = true)
+    public double intensity(int k) {
+        return this.intensity[k];
+    }
+
+    /** @return standard deviation of point {@code k} */
+    @Contract(pure = true)
+    public double sigma(int k) {
+        return this.sigma[k];
+    }
+
+    /** @return instrument parameters in file order, unmodifiable */
+    @Contract(pure = true)
+    public @NotNull Map<String, String> getParameters() {
+        return this.parameters;
+    }
+
+    /**
+     * Returns one instrument parameter.
+     * @param name the parameter name, e.g. {@code "Lam"}, non-null
+     * @return its value, or null if absent
+     */
+    @Contract(pure = true)
+    public @Nullable String parameter(@NotNull String name) {
+        return this.parameters.get(name);
+    }
+}
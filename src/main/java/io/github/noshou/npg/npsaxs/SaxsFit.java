@@ -0,0 +1,157 @@
+package io.github.noshou.npg.npsaxs;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Immutable least-squares fit of a model profile to measured data, {@code y ≈ c·I(q) + offset}.
+ * <p> Scale and offset enter linearly, so the weighted least-squares problem with weights {@code 1/σ²} is
+ * solved in closed form from five sums. The reported χ² is the mean squared normalised residual
+ * {@code Σ ((y - c·I - offset)/σ)² / N}, the same figure as the {@code Chi^2} in the headers of the
+ * {@code *_saxs_intensity_file.dat} files. Their {@code model_intensity} column is already scaled, so refitting it
+ * gives {@code c = 1}; the scaling {@code c} in their headers belongs to the unscaled profile of the external
+ * fitter, which is not in the files.
+ * <p> The model is linearly interpolated onto the q values of the data when the grids differ; it must cover
+ * the whole measured range.
+ */
+public final class SaxsFit {
+
+    private final @NotNull SaxsData data;
+    private final double[] model;
+    private final double scale;
+    private final double offset;
+    private final double chi_squared;
+
+    private SaxsFit(@NotNull SaxsData data, double @NotNull [] model, double scale, double offset) {
+        this.data = data;
+        this.model = model;
+        this.scale = scale;
+        this.offset = offset;
+        double sum = 0;
+        for (int k = 0; k < model.length; k++) {
+            double r = (data.intensity(k) - scale * model[k] - offset) / data.sigma(k);
+            sum += r * r;
+        }
+        this.chi_squared = sum / model.length;
+    }
+
+    /**
+     * Fits scale and offset.
+     * @param data  the measurement, non-null
+     * @param model the model profile, non-null
+     * @return the fit
+     * @throws IllegalArgumentException if the model does not cover the data or is degenerate
+     */
+    @Contract("_, _ -> new")
+    public static @NotNull SaxsFit fit(@NotNull SaxsData data, @NotNull SaxsProfile model) {
+        return fit(data, model, true);
+    }
+
+    /**
+     * Fits the scale and, optionally, the offset.
+     * @param data        the measurement, non-null
+     * @param model       the model profile, non-null
+     * @param with_offset whether to fit a constant offset; otherwise it is fixed at zero
+     * @return the fit
+     * @throws IllegalArgumentException if the model does not cover the data or is degenerate
+     */
+    @Contract("_, _, _ -> new")
+    public static @NotNull SaxsFit fit(@NotNull SaxsData data, @NotNull SaxsProfile model, boolean with_offset) {
+        double[] m = resample(model, data.getGrid());
+        double s = 0, sx = 0, sy = 0, sxx = 0, sxy = 0;
+        for (int k = 0; k < m.length; k++) {
+            double w = 1 / (data.sigma(k) * data.sigma(k));
+            double y = data.intensity(k);
+            s += w;
+            sx += w * m[k];
+            sy += w * y;
+            sxx += w * m[k] * m[k];
+            sxy += w * m[k] * y;
+        }
+        double scale, offset;
+        if (with_offset) {
+            double det = s * sxx - sx * sx;
+            if (!(det > 1e-12 * s * sxx)) {
+                throw new IllegalArgumentException("Model is constant over the data; scale and offset are degenerate!");
+            }
+            scale = (s * sxy - sx * sy) / det;
+            offset = (sxx * sy - sx * sxy) / det;
+        } else {
+            if (!(sxx > 0)) {
+                throw new IllegalArgumentException("Model vanishes over the data!");
+            }
+            scale = sxy / sxx;
+            offset = 0;
+        }
+        return new SaxsFit(data, m, scale, offset);
+    }
+
+    /** @return the measurement */
+    @Contract(pure = true)
+    public @NotNull SaxsData getData() {
+        return this.data;
+    }
+
+    /** @return the fitted scale {@code c} */
+    @Contract(pure = true)
+    public double getScale() {
+        return this.scale;
+    }
+
+    /** @return the fitted offset */
+    @Contract(pure = true)
+    public double getOffset() {
+        return this.offset;
+    }
+
+    /** @return {@code Σ ((y - c·I - offset)/σ)² / N} */
+    @Contract(pure = true)
+    public double getChiSquared() {
+        return this.chi_squared;
+    }
+
+    /** @return the unscaled model at point {@code k} of the data */
+    @Contract(pure = true)
+    public double model(int k) {
+        return this.model[k];
+    }
+
+    /** @return {@code c·I + offset} at point {@code k} of the data */
+    @Contract(pure = true)
+    public double fitted(int k) {
+        return this.scale * this.model[k] + this.offset;
+    }
+
+    /**
+     * Linearly interpolates a profile onto a grid that lies within its range.
+     */
+    private static double @NotNull [] resample(@NotNull SaxsProfile model, @NotNull QGrid grid) {
+        double[] out = new double[grid.size()];
+        if (model.getGrid().equals(grid)) {
+            for (int k = 0; k < out.length; k++) {
+                out[k] = model.intensity(k);
+            }
+            return out;
+        }
+        int n = model.size();
+        double tolerance = 1e-9 * Math.max(grid.max(), model.q(n - 1));
+        if (grid.get(0) < model.q(0) - tolerance || grid.max() > model.q(n - 1) + tolerance) {
+            throw new IllegalArgumentException("Model profile does not cover the measured q-range!");
+        }
+        int j = 0;
+        for (int k = 0; k < out.length; k++) {
+            double q = grid.get(k);
+            while (j + 2 < n && model.q(j + 1) < q) {
+                j++;
+            }
+            if (n == 1) {
+                out[k] = model.intensity(0);
+                continue;
+            }
+            double t = (q - model.q(j)) / (model.q(j + 1) - model.q(j));
+            t = Math.max(0, Math.min(1, t));
+            out[k] = model.intensity(j) + t * (model.intensity(j + 1) - model.intensity(j));
+        }
+        return out;
+    }
+}
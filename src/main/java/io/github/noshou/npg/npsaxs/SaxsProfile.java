@@ -0,0 +1,68 @@
+package io.github.noshou.npg.npsaxs;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Immutable scattering profile: intensity {@code I(q)} on a {@link QGrid}.
+ * <p> Intensities are in electron units (e²), i.e. not scaled to any instrument.
+ */
+public final class SaxsProfile {
+
+    private final @NotNull QGrid grid;
+    private final double[] intensity;
+
+    /**
+     * Constructs a profile. The intensity array is taken over without copying.
+     * @param grid      the q-grid, non-null
+     * @param intensity one value per grid point
+     */
+    SaxsProfile(@NotNull QGrid grid, double @NotNull [] intensity) {
+        if (intensity.length != grid.size()) {
+            throw new IllegalArgumentException("Intensity does not match the q-grid!");
+        }
+        this.grid = grid;
+        this.intensity = intensity;
+    }
+
+    /**
+     * Creates a profile from explicit values.
+     * @param grid      the q-grid, non-null
+     * @param intensity one value per grid point, non-null
+     * @return the profile
+     */
+    @Contract("_, _ -> new")
+    public static @NotNull SaxsProfile of(@NotNull QGrid grid, double @NotNull [] intensity) {
+        return new SaxsProfile(grid, intensity.clone());
+    }
+
+    /** @return the q-grid */
+    @Contract(pure = true)
+    public @NotNull QGrid getGrid() {
+        return this.grid;
+    }
+
+    /** @return number of points */
+    @Contract(pure = true)
+    public int size() {
+        return this.intensity.length;
+    }
+
+    /** @return q of point {@code k} in Å⁻¹ */
+    @Contract(pure = true)
+    public double q(int k) {
+        return this.grid.get(k);
+    }
+
+    /** @return intensity of point {@code k} */
+    @Contract(pure = true)
+    public double intensity(int k) {
+        return this.intensity[k];
+    }
+
+    /** @return a copy of the intensities */
+    @Contract(pure = true)
+    public double @NotNull [] toArray() {
+        return this.intensity.clone();
+    }
+}
@@ -0,0 +1,234 @@
+package io.github.noshou.npg.npsaxs;
+
+import io.github.noshou.npg.nporder.AtomOrdering;
+import io.github.noshou.npg.npreader.ParticleFingerprint;
+import io.github.noshou.npg.nputil.Workers;
+import io.github.noshou.npg.npwriter.BeadModelSink;
+import io.github.noshou.npg.npwriter.FingerprintSink;
+import io.github.noshou.npg.npwriter.ParticleStoreSink;
+import io.github.noshou.npg.shapes.Shape;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Screens candidate particles against one measured SAXS profile.
+ * <p> Every candidate is a {@link Shape} factory. {@link #run()} builds the candidates in parallel, one per worker
+ * thread, straight into memory (no CIF is written), computes their Debye profiles on the q values of the data
+ * and fits scale and offset in closed form ({@link SaxsFit}). The results come back ranked by χ². Lattice
+ * particles are counted exactly (see {@link LatticePairCounter}); with {@link #coarseGrain(double)} they are
+ * collapsed into {@link BeadModel}s during the build instead, which keeps large candidates cheap at low q.
+ * <p> Every built candidate is fingerprinted ({@link ParticleFingerprint}). Candidates made of the same atoms, as
+ * different shape classes often are at small radii, share one profile: atomistic profiles are looked up by
+ * canonical fingerprint in a {@link ProfileCache}, which can be shared between screens of the same q-grid
+ * ({@link #cache(ProfileCache)}), and bead profiles by exact fingerprint within one run.
+ */
+public final class SaxsScreen {
+
+    private final @NotNull SaxsData data;
+    private final int threads;
+    private final Map<String, Supplier<? extends Shape>> candidates = new LinkedHashMap<>();
+    private boolean with_offset = true;
+    private double voxel_size = 0;
+    private @Nullable ProfileCache cache = null;
+
+    /**
+     * Constructs a screen using all available processors.
+     * @param data the measurement, non-null
+     */
+    public SaxsScreen(@NotNull SaxsData data) {
+        this(data, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a screen.
+     * @param data    the measurement, non-null
+     * @param threads number of candidates processed at once, positive
+     */
+    public SaxsScreen(@NotNull SaxsData data, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be positive!");
+        }
+        this.data = data;
+        this.threads = threads;
+    }
+
+    /**
+     * Adds a candidate.
+     * @param label unique name of the candidate, non-null
+     * @param shape creates the (unbuilt) shape; called once, on a worker thread
+     * @return this screen
+     */
+    @Contract(value = "_, _ -> this", mutates = "this")
+    public @NotNull SaxsScreen add(@NotNull String label, @NotNull Supplier<? extends Shape> shape) {
+        if (this.candidates.putIfAbsent(label, shape) != null) {
+            throw new IllegalArgumentException("Duplicate candidate label: " + label + "!");
+        }
+        return this;
+    }
+
+    /**
+     * Adds one candidate per size, labelled {@code label_radius}.
+     * @param label base name of the shape, non-null
+     * @param shape creates the (unbuilt) shape for a radius
+     * @param radii the radii, in the unit the factory expects
+     * @return this screen
+     */
+    @Contract(value = "_, _, _ -> this", mutates = "this")
+    public @NotNull SaxsScreen addSizes(
+            @NotNull String label,
+            @NotNull Function<String, ? extends Shape> shape,
+            @NotNull String @NotNull ... radii
+    ) {
+        for (String radius : radii) {
+            this.add(label + "_" + radius, () -> shape.apply(radius));
+        }
+        return this;
+    }
+
+    /**
+     * Sets whether a constant offset is fitted along with the scale (the default) or fixed at zero.
+     * @param with_offset whether to fit the offset
+     * @return this screen
+     */
+    @Contract(value = "_ -> this", mutates = "this")
+    public @NotNull SaxsScreen fitOffset(boolean with_offset) {
+        this.with_offset = with_offset;
+        return this;
+    }
+
+    /**
+     * Coarse-grains candidates into beads before computing their profiles.
+     * @param voxel_size voxel edge in Å, or {@code 0} for atomistic profiles (the default)
+     * @return this screen
+     */
+    @Contract(value = "_ -> this", mutates = "this")
+    public @NotNull SaxsScreen coarseGrain(double voxel_size) {
+        if (!(voxel_size >= 0) || Double.isInfinite(voxel_size)) {
+            throw new IllegalArgumentException("Voxel size must be non-negative!");
+        }
+        this.voxel_size = voxel_size;
+        return this;
+    }
+
+    /**
+     * Sets the store atomistic profiles are looked up in and added to.
+     * @param cache a cache on the q-grid of the data, or null for a new cache per run (the default)
+     * @return this screen
+     */
+    @Contract(value = "_ -> this", mutates = "this")
+    public @NotNull SaxsScreen cache(@Nullable ProfileCache cache) {
+        if (cache != null && !cache.getGrid().equals(this.data.getGrid())) {
+            throw new IllegalArgumentException("Profile cache is not on the q-grid of the data!");
+        }
+        this.cache = cache;
+        return this;
+    }
+
+    /**
+     * Builds, computes and fits every candidate.
+     * @return the results, best (smallest χ²) first
+     * @throws RuntimeException if a candidate fails or the screen is interrupted
+     */
+    public @NotNull List<Result> run() {
+        int workers = Math.max(1, Math.min(this.threads, this.candidates.size()));
+        ProfileCache atomistic = this.cache != null ? this.cache : new ProfileCache(this.data.getGrid());
+        ProfileCache beads = new ProfileCache(this.data.getGrid());
+        List<Callable<Result>> tasks = new ArrayList<>(this.candidates.size());
+        for (Map.Entry<String, Supplier<? extends Shape>> candidate : this.candidates.entrySet()) {
+            tasks.add(() -> this.evaluate(
+                    candidate.getKey(),
+                    candidate.getValue().get(),
+                    this.voxel_size > 0 ? beads : atomistic
+            ));
+        }
+        List<Result> results = Workers.run(tasks, workers, "SAXS screen");
+        results.sort(Comparator.comparingDouble(r -> r.getFit().getChiSquared()));
+        return results;
+    }
+
+    private @NotNull Result evaluate(@NotNull String label, @NotNull Shape shape, @NotNull ProfileCache cache) {
+        DebyeCalculator debye = new DebyeCalculator(this.data.getGrid(), DebyeCalculator.DEFAULT_BIN_WIDTH, 1);
+        SaxsProfile profile;
+        ParticleFingerprint fingerprint;
+        if (this.voxel_size > 0) {
+
+            // voxels are not symmetric about the origin, so only exact duplicates share a bead profile
+            BeadModelSink sink = new BeadModelSink(this.voxel_size);
+            FingerprintSink fingerprint_sink = new FingerprintSink(false);
+            shape.build(AtomOrdering.SWEEP, 0, sink, fingerprint_sink);
+            fingerprint = fingerprint_sink.getFingerprint();
+            profile = cache.computeIfAbsent(fingerprint, () -> debye.compute(sink.getModel()));
+        } else {
+            ParticleStoreSink sink = new ParticleStoreSink();
+            shape.build(AtomOrdering.SWEEP, 0, sink);
+            fingerprint = ParticleFingerprint.canonical(sink.getStore());
+            profile = cache.computeIfAbsent(fingerprint, () -> debye.compute(sink.getStore()));
+        }
+        return new Result(label, fingerprint, profile, SaxsFit.fit(this.data, profile, this.with_offset));
+    }
+
+    /**
+     * Outcome of one candidate.
+     */
+    public static final class Result {
+
+        private final @NotNull String label;
+        private final @NotNull ParticleFingerprint fingerprint;
+        private final @NotNull SaxsProfile profile;
+        private final @NotNull SaxsFit fit;
+
+        private Result(
+                @NotNull String label,
+                @NotNull ParticleFingerprint fingerprint,
+                @NotNull SaxsProfile profile,
+                @NotNull SaxsFit fit
+        ) {
+            this.label = label;
+            this.fingerprint = fingerprint;
+            this.profile = profile;
+            this.fit = fit;
+        }
+
+        /** @return the candidate label */
+        @Contract(pure = true)
+        public @NotNull String getLabel() {
+            return this.label;
+        }
+
+        /** @return number of atoms of the built particle */
+        @Contract(pure = true)
+        public long getAtomCount() {
+            return this.fingerprint.getAtomCount();
+        }
+
+        /**
+         * @return the fingerprint of the built particle; canonical for atomistic profiles, exact for bead profiles.
+         *         Candidates of equal fingerprint share their profile.
+         */
+        @Contract(pure = true)
+        public @NotNull ParticleFingerprint getFingerprint() {
+            return this.fingerprint;
+        }
+
+        /** @return the unscaled model profile on the q values of the data */
+        @Contract(pure = true)
+        public @NotNull SaxsProfile getProfile() {
+            return this.profile;
+        }
+
+        /** @return the fit against the data */
+        @Contract(pure = true)
+        public @NotNull SaxsFit getFit() {
+            return this.fit;
+        }
+    }
+}
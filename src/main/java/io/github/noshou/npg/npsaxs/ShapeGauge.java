@@ -0,0 +1,143 @@
+package io.github.noshou.npg.npsaxs;
+
+import io.github.noshou.npg.atom.Atom;
+import io.github.noshou.npg.lattice.LatticeSite;
+import io.github.noshou.npg.shapes.Shape;
+import io.github.noshou.tuple.Polyad;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Gauge of a shape in units of its radius, for selecting lattice sites without building the shape.
+ * <p> {@link #at(double, double, double)} is the radius the shape would need for a point to lie on its boundary,
+ * so that a point is inside the shape of radius {@code R} iff its gauge is at most {@code R}. It is the shape's own
+ * gauge (see {@link Shape#gauge(double, double, double)}), face planes for polyhedra, scaled by the radius, so
+ * selected sites agree with the gauge shells of a build. Since the gauge scales linearly with position, the site at
+ * half-step index {@code (i, j, k)} is inside iff {@code at(i, j, k) ≤ 2R/a}: one gauge per site serves every
+ * radius and lattice constant.
+ */
+final class ShapeGauge {
+
+    /** Unit directions sampled to find how far the shape reaches per unit radius. */
+    private static final int REACH_DIRECTIONS = 4096;
+
+    /** Safety factor on the sampled reach. */
+    private static final double REACH_MARGIN = 1.1;
+
+    private final @NotNull Shape shape;
+    private final double radius;
+
+    /**
+     * @param shape the shape, non-null
+     */
+    ShapeGauge(@NotNull Shape shape) {
+        this.shape = shape;
+        this.radius = shape.getRadius().doubleValue();
+    }
+
+    /** @return the gauge of the point {@code (x, y, z)}, in units of radius */
+    @Contract(pure = true)
+    double at(double x, double y, double z) {
+        return this.radius * this.shape.gauge(x, y, z);
+    }
+
+    /** @return how far the shape reaches from the origin per unit of radius, with a safety margin */
+    @Contract(pure = true)
+    double reach() {
+        double reach = 0;
+        double golden = Math.PI * (3 - Math.sqrt(5));
+        for (int n = 0; n < REACH_DIRECTIONS; n++) {
+            double z = 1 - (2 * n + 1.0) / REACH_DIRECTIONS;
+            double r = Math.sqrt(1 - z * z);
+            reach = Math.max(reach, 1 / this.at(r * Math.cos(golden * n), r * Math.sin(golden * n), z));
+        }
+        return reach * REACH_MARGIN;
+    }
+
+    /**
+     * All FCC lattice sites within a ball, with the elements of a unit cell.
+     */
+    static final class Sites {
+
+        final int[] i, j, k;
+        final byte[] element;
+        final @NotNull List<String> elements;
+
+        private Sites(int @NotNull [] i, int @NotNull [] j, int @NotNull [] k, byte @NotNull [] element,
+                      @NotNull List<String> elements) {
+            this.i = i;
+            this.j = j;
+            this.k = k;
+            this.element = element;
+            this.elements = elements;
+        }
+
+        /**
+         * Enumerates the lattice sites of a shape's unit cell within {@code l} half-steps of the origin.
+         * @param shape the shape whose unit cell provides the elements, non-null
+         * @param l     radius of the ball in half-steps
+         * @return the sites, in x-major order
+         * @throws IllegalArgumentException if the basis is not an FCC basis or the ball is too large
+         */
+        static @NotNull Sites of(@NotNull Shape shape, int l) {
+            Polyad<Atom> basis = shape.getUnitCell().getBasis();
+            if (basis.fetchSize() != 4) {
+                throw new IllegalArgumentException("Lattice site enumeration needs an FCC basis!");
+            }
+            if (l >= LatticeSite.OFFSET) {
+                throw new IllegalArgumentException("Particle is too large for lattice pair counting!");
+            }
+            List<String> elements = new ArrayList<>();
+            byte[] basis_element = new byte[basis.fetchSize()];
+            for (int b = 0; b < basis.fetchSize(); b++) {
+                String symbol = basis.fetch(b).getElement();
+                if (!elements.contains(symbol)) {
+                    elements.add(symbol);
+                }
+                basis_element[b] = (byte) elements.indexOf(symbol);
+            }
+            int capacity = 1 << 12, count = 0;
+            int[] i = new int[capacity], j = new int[capacity], k = new int[capacity];
+            byte[] element = new byte[capacity];
+            long l2 = (long) l * l;
+            for (int x = -l; x <= l; x++) {
+                for (int y = -l; y <= l; y++) {
+                    for (int z = -l; z <= l; z++) {
+                        int b = LatticeSite.fccBasisIndex(LatticeSite.pack(x, y, z));
+                        if (b < 0 || (long) x * x + (long) y * y + (long) z * z > l2) {
+                            continue;
+                        }
+                        if (count == i.length) {
+                            capacity = i.length * 2;
+                            i = Arrays.copyOf(i, capacity);
+                            j = Arrays.copyOf(j, capacity);
+                            k = Arrays.copyOf(k, capacity);
+                            element = Arrays.copyOf(element, capacity);
+                        }
+                        i[count] = x;
+                        j[count] = y;
+                        k[count] = z;
+                        element[count] = basis_element[b];
+                        count++;
+                    }
+                }
+            }
+            return new Sites(
+                    Arrays.copyOf(i, count),
+                    Arrays.copyOf(j, count),
+                    Arrays.copyOf(k, count),
+                    Arrays.copyOf(element, count),
+                    List.copyOf(elements)
+            );
+        }
+
+        /** @return number of sites */
+        @Contract(pure = true)
+        int size() {
+            return this.i.length;
+        }
+    }
+}
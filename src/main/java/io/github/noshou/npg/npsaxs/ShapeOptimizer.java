@@ -0,0 +1,543 @@
+package io.github.noshou.npg.npsaxs;
+
+import io.github.noshou.npg.shapes.Shape;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Fits continuous shape parameters of a lattice particle to one measured SAXS profile.
+ * <p> The particle is the set of lattice sites inside a convex body: the shape given at construction, scaled to
+ * radius {@code R}, stretched along z by the aspect ratio {@code ε} and optionally intersected with a truncating
+ * shape scaled to radius {@code τ·R}. Both bodies are described by their gauge (see {@link ShapeGauge}). The lattice
+ * constant {@code a} is the fourth parameter; {@link #bounds(Parameter, double, double)} frees or fixes each of
+ * them. {@link #run()} minimises χ² ({@link SaxsFit}) with Nelder–Mead from several starting points; χ² is
+ * piecewise constant in {@code R/a} (sites enter the particle one shell at a time), which rules out
+ * gradient-based methods, and its basins are often narrower than a shell spacing, so the runs are seeded by a
+ * scan over every distinct particle along the radius.
+ * <p> No shape is ever built and no pair list is ever recomputed in full without need:
+ * <ul>
+ *   <li>All candidate sites are enumerated once. Since gauges scale linearly with position, a site at half-step
+ *   index {@code s} lies in the particle iff {@code G(s) ≤ 2R/a}, where {@code G} depends on {@code ε} and
+ *   {@code τ} only. Per-site gauges of both bodies are cached for the last aspect ratio, so a change of
+ *   {@code R}, {@code a} or {@code τ} costs one comparison per site.</li>
+ *   <li>Pair counts are kept per squared half-step distance, which makes them independent of {@code a}, and are
+ *   updated incrementally from one evaluation to the next by the sites that entered or left, or recounted
+ *   with a {@link LatticePairCounter} when that is cheaper (see {@link SiteSetHistogram}). Near convergence most
+ *   evaluations change a few sites or none at all and only re-evaluate the Debye sum at the new lattice
+ *   constant.</li>
+ * </ul>
+ */
+public final class ShapeOptimizer {
+
+    /** Optimised parameters. */
+    public enum Parameter {
+
+        /** Radius {@code R} of the shape in Å. */
+        RADIUS,
+
+        /** Radius of the truncating shape relative to {@code R}. */
+        TRUNCATION,
+
+        /** Stretch of the particle along z. */
+        ASPECT,
+
+        /** Lattice constant in Å. */
+        LATTICE_CONSTANT
+    }
+
+    /** Largest number of radii evaluated by the shell scan that seeds the runs. */
+    private static final int MAX_SCAN = 512;
+
+    /** Edge of the initial simplex in normalised parameter space. */
+    private static final double SIMPLEX_STEP = 0.1;
+
+    private final @NotNull Shape shape;
+    private final @Nullable Shape truncation;
+    private final @NotNull SaxsData data;
+    private final int threads;
+    private final double[] lo = new double[4], hi = new double[4];
+    private boolean with_offset = true;
+    private int starts = 4;
+    private int max_evaluations = 200;
+    private double tolerance = 1e-3;
+
+    /**
+     * Constructs an optimiser using all available processors.
+     * @param shape      the shape, non-null; its radius and lattice constant are the defaults of the parameters
+     * @param truncation the truncating shape, or null for none
+     * @param data       the measurement, non-null
+     */
+    public ShapeOptimizer(@NotNull Shape shape, @Nullable Shape truncation, @NotNull SaxsData data) {
+        this(shape, truncation, data, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs an optimiser.
+     * <p> By default only the radius is free, within half and one and a half times that of {@code shape};
+     * the truncation ratio, if a truncating shape is given, may vary between 0.5 and 1; aspect ratio 1 and the
+     * lattice constant of {@code shape} are fixed.
+     * @param shape      the shape, non-null; its radius and lattice constant are the defaults of the parameters
+     * @param truncation the truncating shape, or null for none
+     * @param data       the measurement, non-null
+     * @param threads    number of worker threads for pair counting, positive
+     */
+    public ShapeOptimizer(@NotNull Shape shape, @Nullable Shape truncation, @NotNull SaxsData data, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be positive!");
+        }
+        this.shape = shape;
+        this.truncation = truncation;
+        this.data = data;
+        this.threads = threads;
+        double radius = shape.getRadius().doubleValue();
+        double a = shape.getLatticeConstant().doubleValue();
+        this.bounds(Parameter.RADIUS, radius / 2, 1.5 * radius);
+        this.lo[Parameter.TRUNCATION.ordinal()] = truncation == null ? 1 : 0.5;
+        this.hi[Parameter.TRUNCATION.ordinal()] = 1;
+        this.bounds(Parameter.ASPECT, 1, 1);
+        this.bounds(Parameter.LATTICE_CONSTANT, a, a);
+    }
+
+    /**
+     * Sets the range of a parameter; equal bounds fix it.
+     * @param parameter the parameter, non-null
+     * @param lo        lower bound, positive
+     * @param hi        upper bound, at least {@code lo}
+     * @return this optimiser
+     * @throws IllegalArgumentException if the bounds are invalid, or a truncation range is set without a
+     *                                  truncating shape
+     */
+    @Contract(value = "_, _, _ -> this", mutates = "this")
+    public @NotNull ShapeOptimizer bounds(@NotNull Parameter parameter, double lo, double hi) {
+        if (!(lo > 0) || !(hi >= lo) || Double.isInfinite(hi)) {
+            throw new IllegalArgumentException("Parameter bounds must be positive and ordered!");
+        }
+        if (parameter == Parameter.TRUNCATION && this.truncation == null) {
+            throw new IllegalArgumentException("Truncation needs a truncating shape!");
+        }
+        this.lo[parameter.ordinal()] = lo;
+        this.hi[parameter.ordinal()] = hi;
+        return this;
+    }
+
+    /**
+     * Sets whether a constant offset is fitted along with the scale (the default) or fixed at zero.
+     * @param with_offset whether to fit the offset
+     * @return this optimiser
+     */
+    @Contract(value = "_ -> this", mutates = "this")
+    public @NotNull ShapeOptimizer fitOffset(boolean with_offset) {
+        this.with_offset = with_offset;
+        return this;
+    }
+
+    /**
+     * Sets the number of Nelder–Mead runs (default 4). If the radius is free, the runs start from the best local
+     * minima of a shell-by-shell radius scan at the initial values of the other parameters; remaining runs start
+     * from the parameters of the shape, clamped to the bounds, and from a Halton sequence over the bounds.
+     * @param starts number of starting points, positive
+     * @return this optimiser
+     */
+    @Contract(value = "_ -> this", mutates = "this")
+    public @NotNull ShapeOptimizer starts(int starts) {
+        if (starts < 1) {
+            throw new IllegalArgumentException("Start count must be positive!");
+        }
+        this.starts = starts;
+        return this;
+    }
+
+    /**
+     * Sets the evaluation budget of each Nelder–Mead run (default 200).
+     * @param max_evaluations maximum number of χ² evaluations per run, positive
+     * @return this optimiser
+     */
+    @Contract(value = "_ -> this", mutates = "this")
+    public @NotNull ShapeOptimizer maxEvaluations(int max_evaluations) {
+        if (max_evaluations < 1) {
+            throw new IllegalArgumentException("Evaluation count must be positive!");
+        }
+        this.max_evaluations = max_evaluations;
+        return this;
+    }
+
+    /**
+     * Sets the convergence tolerance (default 10⁻³): a run stops once its simplex is smaller than this fraction
+     * of every parameter range.
+     * @param tolerance the tolerance, positive
+     * @return this optimiser
+     */
+    @Contract(value = "_ -> this", mutates = "this")
+    public @NotNull ShapeOptimizer tolerance(double tolerance) {
+        if (!(tolerance > 0)) {
+            throw new IllegalArgumentException("Tolerance must be positive!");
+        }
+        this.tolerance = tolerance;
+        return this;
+    }
+
+    /**
+     * Runs the optimisation.
+     * @return the best parameters found, with their profile and fit
+     * @throws IllegalArgumentException if the unit cell of the shape is not an FCC basis
+     * @throws RuntimeException         if pair counting fails or is interrupted
+     */
+    public @NotNull Result run() {
+        Evaluator evaluator = new Evaluator();
+        int[] free = this.freeParameters();
+        double[] initial = new double[4];
+        for (int p = 0; p < 4; p++) {
+            double value = p == Parameter.RADIUS.ordinal()
+                    ? this.shape.getRadius().doubleValue()
+                    : p == Parameter.LATTICE_CONSTANT.ordinal()
+                    ? this.shape.getLatticeConstant().doubleValue()
+                    : 1;
+            initial[p] = Math.max(this.lo[p], Math.min(this.hi[p], value));
+        }
+
+        // seed with the best shells of a radius scan, then with the initial parameters and a Halton sequence
+        List<double[]> seeds = new ArrayList<>();
+        if (this.hi[Parameter.RADIUS.ordinal()] > this.lo[Parameter.RADIUS.ordinal()]) {
+            seeds.addAll(this.shellSeeds(evaluator, initial));
+        }
+        for (int start = seeds.size(); start < this.starts; start++) {
+            double[] x = initial.clone();
+            for (int d = 0; d < free.length && start > 0; d++) {
+                int p = free[d];
+                x[p] = this.lo[p] + halton(start, d) * (this.hi[p] - this.lo[p]);
+            }
+            seeds.add(x);
+        }
+        double[] best_u = new double[free.length];
+        double best = Double.POSITIVE_INFINITY;
+        for (double[] seed : seeds) {
+            double[] u = new double[free.length];
+            for (int d = 0; d < free.length; d++) {
+                int p = free[d];
+                u[d] = clamp((seed[p] - this.lo[p]) / (this.hi[p] - this.lo[p]));
+            }
+            double value = this.minimize(evaluator, free, u);
+            if (value < best) {
+                best = value;
+                best_u = u;
+            }
+        }
+        return evaluator.result(this.parameters(free, best_u));
+    }
+
+    /**
+     * Scans the radius shell by shell at otherwise initial parameters; in increasing order every step only adds
+     * sites to the pair histogram.
+     * @return up to {@link #starts} parameter sets at the local minima of χ², best first
+     */
+    private @NotNull List<double[]> shellSeeds(@NotNull Evaluator evaluator, double @NotNull [] initial) {
+        double[] radii = evaluator.shellRadii(
+                initial, this.lo[Parameter.RADIUS.ordinal()], this.hi[Parameter.RADIUS.ordinal()]
+        );
+        double[] f = new double[radii.length];
+        for (int n = 0; n < radii.length; n++) {
+            double[] x = initial.clone();
+            x[Parameter.RADIUS.ordinal()] = radii[n];
+            f[n] = evaluator.chiSquared(x);
+        }
+        List<Integer> minima = new ArrayList<>();
+        for (int n = 0; n < radii.length; n++) {
+            if (
+                        f[n] < Double.POSITIVE_INFINITY
+                    &&  (n == 0 || f[n] <= f[n - 1])
+                    &&  (n == radii.length - 1 || f[n] <= f[n + 1])
+            ) {
+                minima.add(n);
+            }
+        }
+        minima.sort((p, q) -> Double.compare(f[p], f[q]));
+        List<double[]> seeds = new ArrayList<>();
+        for (int n : minima.subList(0, Math.min(this.starts, minima.size()))) {
+            double[] x = initial.clone();
+            x[Parameter.RADIUS.ordinal()] = radii[n];
+            seeds.add(x);
+        }
+        return seeds;
+    }
+
+    /** @return the ordinals of the parameters with a non-empty range */
+    private int @NotNull [] freeParameters() {
+        int count = 0;
+        int[] free = new int[4];
+        for (int p = 0; p < 4; p++) {
+            if (this.hi[p] > this.lo[p]) {
+                free[count++] = p;
+            }
+        }
+        return Arrays.copyOf(free, count);
+    }
+
+    /** @return all four parameters for a point {@code u} of the normalised space of the free ones */
+    private double @NotNull [] parameters(int @NotNull [] free, double @NotNull [] u) {
+        double[] x = this.lo.clone();
+        for (int d = 0; d < free.length; d++) {
+            int p = free[d];
+            x[p] = this.lo[p] + clamp(u[d]) * (this.hi[p] - this.lo[p]);
+        }
+        return x;
+    }
+
+    /**
+     * Nelder–Mead minimisation over the unit cube of the free parameters.
+     * @param u the starting point, replaced by the best point found
+     * @return the smallest χ² found
+     */
+    private double minimize(@NotNull Evaluator evaluator, int @NotNull [] free, double @NotNull [] u) {
+        return NelderMead.minimize(
+                v -> evaluator.chiSquared(this.parameters(free, v)),
+                u,
+                SIMPLEX_STEP,
+                this.tolerance,
+                this.max_evaluations
+        );
+    }
+
+    private static double clamp(double u) {
+        return NelderMead.clamp(u);
+    }
+
+    /** @return element {@code index} of the Halton sequence in the prime base of dimension {@code d} */
+    private static double halton(int index, int d) {
+        int base = new int[]{2, 3, 5, 7}[d];
+        double value = 0, weight = 1.0 / base;
+        for (int n = index; n > 0; n /= base) {
+            value += weight * (n % base);
+            weight /= base;
+        }
+        return value;
+    }
+
+    /**
+     * Candidate sites, their cached gauges and the incremental histogram of the current particle.
+     */
+    private final class Evaluator {
+
+        private final int[] i, j, k;
+        private final @NotNull SiteSetHistogram histogram;
+        private final @NotNull DebyeCalculator debye;
+        private final @NotNull ShapeGauge shape_gauge;
+        private final @Nullable ShapeGauge truncation_gauge;
+        private final double[] shape_values, truncation_values;
+        private final boolean[] member;
+        private double cached_aspect = Double.NaN;
+        private double last_half_step = Double.NaN;
+        private double last_chi_squared = Double.NaN;
+
+        Evaluator() {
+            Shape truncation = ShapeOptimizer.this.truncation;
+            this.shape_gauge = new ShapeGauge(ShapeOptimizer.this.shape);
+            this.truncation_gauge = truncation == null ? null : new ShapeGauge(truncation);
+
+            // every site the largest particle within the bounds can reach
+            double[] lo = ShapeOptimizer.this.lo, hi = ShapeOptimizer.this.hi;
+            double extent = this.shape_gauge.reach()
+                    * hi[Parameter.RADIUS.ordinal()]
+                    * Math.max(1, hi[Parameter.ASPECT.ordinal()])
+                    / (lo[Parameter.LATTICE_CONSTANT.ordinal()] / 2);
+            ShapeGauge.Sites sites = ShapeGauge.Sites.of(ShapeOptimizer.this.shape, (int) Math.ceil(extent) + 1);
+            this.i = sites.i;
+            this.j = sites.j;
+            this.k = sites.k;
+            this.histogram = new SiteSetHistogram(
+                    sites.i, sites.j, sites.k, sites.element, sites.elements, ShapeOptimizer.this.threads
+            );
+            this.debye = new DebyeCalculator(ShapeOptimizer.this.data.getGrid());
+            this.shape_values = new double[sites.size()];
+            this.truncation_values = new double[sites.size()];
+            this.member = new boolean[sites.size()];
+        }
+
+        /**
+         * Moves the particle to the parameters {@code x}.
+         * @return whether the pair histogram changed
+         */
+        private boolean select(double @NotNull [] x) {
+            this.cacheGauges(x[Parameter.ASPECT.ordinal()]);
+            double threshold = 2 * x[Parameter.RADIUS.ordinal()] / x[Parameter.LATTICE_CONSTANT.ordinal()];
+            double truncation = x[Parameter.TRUNCATION.ordinal()];
+            for (int s = 0; s < this.member.length; s++) {
+                this.member[s] = Math.max(this.shape_values[s], this.truncation_values[s] / truncation) <= threshold;
+            }
+            return this.histogram.update(this.member);
+        }
+
+        /** Computes the gauges of every candidate site unless they are cached for {@code aspect}. */
+        private void cacheGauges(double aspect) {
+            if (aspect == this.cached_aspect) {
+                return;
+            }
+            for (int s = 0; s < this.member.length; s++) {
+                double z = this.k[s] / aspect;
+                this.shape_values[s] = this.shape_gauge.at(this.i[s], this.j[s], z);
+                this.truncation_values[s] = this.truncation_gauge == null
+                        ? 0
+                        : this.truncation_gauge.at(this.i[s], this.j[s], z);
+            }
+            this.cached_aspect = aspect;
+        }
+
+        /**
+         * Lists one radius per distinct particle between two radii at otherwise fixed parameters.
+         * @param x    the other parameters
+         * @param r_lo smallest radius in Å
+         * @param r_hi largest radius in Å
+         * @return increasing radii, one inside every interval of constant particle (at most {@value #MAX_SCAN},
+         *         evenly spaced if there are more intervals)
+         */
+        double @NotNull [] shellRadii(double @NotNull [] x, double r_lo, double r_hi) {
+            this.cacheGauges(x[Parameter.ASPECT.ordinal()]);
+            double half_step = x[Parameter.LATTICE_CONSTANT.ordinal()] / 2;
+            double truncation = x[Parameter.TRUNCATION.ordinal()];
+            double t_lo = r_lo / half_step, t_hi = r_hi / half_step;
+            double[] g = new double[this.member.length];
+            int n = 0;
+            for (int s = 0; s < this.member.length; s++) {
+                double v = Math.max(this.shape_values[s], this.truncation_values[s] / truncation);
+                if (v > t_lo && v <= t_hi) {
+                    g[n++] = v;
+                }
+            }
+            Arrays.sort(g, 0, n);
+            double[] bounds = new double[n + 2];
+            int count = 0;
+            bounds[count++] = t_lo;
+            for (int s = 0; s < n; s++) {
+                if (g[s] > bounds[count - 1] * (1 + 1e-12)) {
+                    bounds[count++] = g[s];
+                }
+            }
+            if (t_hi > bounds[count - 1]) {
+                bounds[count++] = t_hi;
+            }
+            int intervals = Math.max(1, count - 1);
+            if (intervals > MAX_SCAN) {
+                double[] radii = new double[MAX_SCAN];
+                for (int r = 0; r < MAX_SCAN; r++) {
+                    radii[r] = r_lo + (r + 0.5) * (r_hi - r_lo) / MAX_SCAN;
+                }
+                return radii;
+            }
+            double[] radii = new double[intervals];
+            for (int r = 0; r < intervals; r++) {
+                radii[r] = count > 1 ? half_step * (bounds[r] + bounds[r + 1]) / 2 : r_lo;
+            }
+            return radii;
+        }
+
+        /** @return the profile of the current particle for lattice constant {@code a} */
+        private @NotNull SaxsProfile profile(double a) {
+            return this.debye.intensity(this.histogram.toHistogram(a / 2).toPairHistogram());
+        }
+
+        /** @return χ² at the parameters {@code x}, or infinity for an empty or degenerate particle */
+        double chiSquared(double @NotNull [] x) {
+            double half_step = x[Parameter.LATTICE_CONSTANT.ordinal()] / 2;
+            if (!this.select(x) && half_step == this.last_half_step) {
+                return this.last_chi_squared;
+            }
+            this.last_half_step = half_step;
+            this.last_chi_squared = Double.POSITIVE_INFINITY;
+            if (this.histogram.size() > 0) {
+                try {
+                    this.last_chi_squared = SaxsFit.fit(
+                            ShapeOptimizer.this.data,
+                            this.profile(2 * half_step),
+                            ShapeOptimizer.this.with_offset
+                    ).getChiSquared();
+                } catch (IllegalArgumentException e) {
+                    // constant or vanishing model: leave χ² infinite
+                }
+            }
+            return this.last_chi_squared;
+        }
+
+        /** @return the result at the parameters {@code x} */
+        @NotNull Result result(double @NotNull [] x) {
+            this.select(x);
+            if (this.histogram.size() == 0) {
+                throw new IllegalArgumentException("No lattice site lies inside the shape within the bounds!");
+            }
+            SaxsProfile profile = this.profile(x[Parameter.LATTICE_CONSTANT.ordinal()]);
+            return new Result(x, this.histogram.size(), profile,
+                    SaxsFit.fit(ShapeOptimizer.this.data, profile, ShapeOptimizer.this.with_offset));
+        }
+    }
+
+    /**
+     * Optimised parameters with the profile and fit of the particle they describe.
+     */
+    public static final class Result {
+
+        private final double[] parameters;
+        private final long atoms;
+        private final @NotNull SaxsProfile profile;
+        private final @NotNull SaxsFit fit;
+
+        private Result(double @NotNull [] parameters, long atoms, @NotNull SaxsProfile profile, @NotNull SaxsFit fit) {
+            this.parameters = parameters;
+            this.atoms = atoms;
+            this.profile = profile;
+            this.fit = fit;
+        }
+
+        /**
+         * @param parameter the parameter, non-null
+         * @return its optimised value
+         */
+        @Contract(pure = true)
+        public double get(@NotNull Parameter parameter) {
+            return this.parameters[parameter.ordinal()];
+        }
+
+        /** @return radius in Å */
+        @Contract(pure = true)
+        public double getRadius() {
+            return this.get(Parameter.RADIUS);
+        }
+
+        /** @return radius of the truncating shape relative to the radius */
+        @Contract(pure = true)
+        public double getTruncation() {
+            return this.get(Parameter.TRUNCATION);
+        }
+
+        /** @return stretch along z */
+        @Contract(pure = true)
+        public double getAspect() {
+            return this.get(Parameter.ASPECT);
+        }
+
+        /** @return lattice constant in Å */
+        @Contract(pure = true)
+        public double getLatticeConstant() {
+            return this.get(Parameter.LATTICE_CONSTANT);
+        }
+
+        /** @return number of atoms of the particle */
+        @Contract(pure = true)
+        public long getAtomCount() {
+            return this.atoms;
+        }
+
+        /** @return the unscaled model profile on the q values of the data */
+        @Contract(pure = true)
+        public @NotNull SaxsProfile getProfile() {
+            return this.profile;
+        }
+
+        /** @return the fit against the data */
+        @Contract(pure = true)
+        public @NotNull SaxsFit getFit() {
+            return this.fit;
+        }
+    }
+}
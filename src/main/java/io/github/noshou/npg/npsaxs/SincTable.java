@@ -0,0 +1,46 @@
+package io.github.noshou.npg.npsaxs;
+
+import org.jetbrains.annotations.Contract;
+
+/**
+ * Lookup table for {@code sinc(x) = sin(x) / x} on {@code [0, x_max]} with linear interpolation.
+ * <p> With the default step of 10⁻³ the interpolation error is below 5·10⁻⁸, far under the binning error of
+ * a pair-distance histogram, while a lookup costs two multiplies, a truncation and an addition.
+ */
+final class SincTable {
+
+    /** Default table step. */
+    static final double DEFAULT_STEP = 1e-3;
+
+    private final double[] values;
+    private final double inv_step;
+
+    /**
+     * Builds a table.
+     * @param x_max largest argument that will be looked up
+     * @param step  table step
+     */
+    SincTable(double x_max, double step) {
+        int n = (int) Math.ceil(x_max / step) + 2;
+        this.values = new double[n];
+        this.inv_step = 1 / step;
+        this.values[0] = 1;
+        for (int i = 1; i < n; i++) {
+            double x = i * step;
+            this.values[i] = Math.sin(x) / x;
+        }
+    }
+
+    /**
+     * Looks up {@code sinc(x)}.
+     * @param x argument in {@code [0, x_max]}
+     * @return the interpolated value
+     */
+    @Contract(pure = true)
+    double at(double x) {
+        double t = x * this.inv_step;
+        int i = (int) t;
+        double frac = t - i;
+        return this.values[i] + frac * (this.values[i + 1] - this.values[i]);
+    }
+}
@@ -0,0 +1,246 @@
+package io.github.noshou.npg.npsaxs;
+
+import io.github.noshou.npg.npreader.ParticleStore;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Exact pair-distance histogram of a changing subset of a fixed list of candidate lattice sites.
+ * <p> Counts are kept per pair type and squared half-step distance {@code m}, as in
+ * {@link LatticePairHistogram}, and are therefore independent of the lattice constant. When the subset changes
+ * from {@code K ∪ D} to {@code K ∪ A} (sites {@code D} leave, {@code A} arrive), the histogram is updated as
+ * {@code − P(D, K) − P(D, D) + P(A, K) + P(A, A)}, costing {@code O((|A| + |D|)·N)} pair visits. If that is more
+ * than a fresh {@link LatticePairCounter} count would cost, roughly {@code rows²} run pairs, the histogram is
+ * recounted from scratch instead. Not thread-safe.
+ */
+final class SiteSetHistogram {
+
+    /** Sites per work unit of an incremental update. */
+    private static final int CHUNK = 64;
+
+    private final int[] i, j, k;
+    private final byte[] element;
+    private final @NotNull List<String> elements;
+    private final int threads;
+    private final int types;
+    private final int[] type_of;
+    private final int j_min, k_min, nk, rows;
+    private final int bins;
+
+    /** Current subset. */
+    private final boolean[] member;
+    private int size = 0;
+    private final long[] atom_counts;
+    private final long[][] counts;
+
+    /**
+     * Constructs an empty subset. Arrays are taken over without copying.
+     * @param i        half-step x index of every candidate
+     * @param j        half-step y index of every candidate
+     * @param k        half-step z index of every candidate
+     * @param element  element index of every candidate into {@code elements}
+     * @param elements element symbols, non-null
+     * @param threads  number of worker threads, positive
+     */
+    SiteSetHistogram(
+            int @NotNull [] i,
+            int @NotNull [] j,
+            int @NotNull [] k,
+            byte @NotNull [] element,
+            @NotNull List<String> elements,
+            int threads
+    ) {
+        this.i = i;
+        this.j = j;
+        this.k = k;
+        this.element = element;
+        this.elements = List.copyOf(elements);
+        this.threads = threads;
+        int e_count = elements.size();
+        this.types = PairHistogram.pairTypes(e_count);
+        this.type_of = new int[e_count * e_count];
+        for (int e = 0; e < e_count; e++) {
+            for (int g = 0; g < e_count; g++) {
+                this.type_of[e * e_count + g] = PairHistogram.pairType(e, g);
+            }
+        }
+        int i_min = 0, i_max = 0, j_min = 0, j_max = 0, k_min = 0, k_max = 0;
+        for (int s = 0; s < i.length; s++) {
+            i_min = Math.min(i_min, i[s]);
+            i_max = Math.max(i_max, i[s]);
+            j_min = Math.min(j_min, j[s]);
+            j_max = Math.max(j_max, j[s]);
+            k_min = Math.min(k_min, k[s]);
+            k_max = Math.max(k_max, k[s]);
+        }
+        long di = i_max - i_min, dj = j_max - j_min, dk = k_max - k_min;
+        if (di * di + dj * dj + dk * dk >= Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Candidate sites span too far for exact pair counting!");
+        }
+        this.j_min = j_min;
+        this.k_min = k_min;
+        this.nk = (int) dk + 1;
+        this.rows = (int) (dj + 1) * this.nk;
+        this.bins = (int) (di * di + dj * dj + dk * dk) + 1;
+        this.member = new boolean[i.length];
+        this.atom_counts = new long[e_count];
+        this.counts = new long[this.types][this.bins];
+    }
+
+    /** @return number of sites in the current subset */
+    @Contract(pure = true)
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Moves to a new subset.
+     * @param next membership of every candidate in the new subset (not retained)
+     * @return whether the subset changed
+     * @throws RuntimeException if a worker thread fails or the update is interrupted
+     */
+    boolean update(boolean @NotNull [] next) {
+        int added = 0, removed = 0, kept = 0;
+        for (int s = 0; s < next.length; s++) {
+            if (next[s] != this.member[s]) {
+                if (next[s]) {
+                    added++;
+                } else {
+                    removed++;
+                }
+            } else if (next[s]) {
+                kept++;
+            }
+        }
+        if (added + removed == 0) {
+            return false;
+        }
+        int[] a = new int[added], d = new int[removed], keep = new int[kept];
+        added = removed = kept = 0;
+        boolean[] rows = new boolean[this.rows];
+        int row_count = 0;
+        for (int s = 0; s < next.length; s++) {
+            if (next[s]) {
+                int row = (this.j[s] - this.j_min) * this.nk + (this.k[s] - this.k_min);
+                if (!rows[row]) {
+                    rows[row] = true;
+                    row_count++;
+                }
+            }
+            if (next[s] != this.member[s]) {
+                if (next[s]) {
+                    a[added++] = s;
+                } else {
+                    d[removed++] = s;
+                }
+            } else if (next[s]) {
+                keep[kept++] = s;
+            }
+        }
+
+        // a row holds one run per element and parity; one pair visit costs about as much as one run pair
+        long runs = (long) row_count * 2 * this.elements.size();
+        long incremental = (long) (added + removed) * (kept + (added + removed) / 2);
+        if (incremental > runs * runs) {
+            this.recount(next);
+        } else {
+            long[][] minus = this.pairs(d, keep);
+            long[][] plus = this.pairs(a, keep);
+            for (int t = 0; t < this.types; t++) {
+                long[] c = this.counts[t], m = minus[t], p = plus[t];
+                for (int b = 0; b < this.bins; b++) {
+                    c[b] += p[b] - m[b];
+                }
+            }
+            for (int s : d) {
+                this.member[s] = false;
+                this.atom_counts[this.element[s] & 0xFF]--;
+            }
+            for (int s : a) {
+                this.member[s] = true;
+                this.atom_counts[this.element[s] & 0xFF]++;
+            }
+            this.size += added - removed;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the histogram of the current subset.
+     * @param half_step half the lattice constant in Å
+     * @return a copy of the counts
+     */
+    @Contract(pure = true)
+    @NotNull LatticePairHistogram toHistogram(double half_step) {
+        long[][] copy = new long[this.types][];
+        for (int t = 0; t < this.types; t++) {
+            copy[t] = this.counts[t].clone();
+        }
+        return new LatticePairHistogram(this.elements, this.atom_counts.clone(), half_step, copy);
+    }
+
+    /** Recounts the histogram of {@code next} with a {@link LatticePairCounter}. */
+    private void recount(boolean @NotNull [] next) {
+        ParticleStore.Builder builder = new ParticleStore.Builder().latticeConstant(2);
+        for (String symbol : this.elements) {
+            builder.elementIndex(symbol);
+        }
+        this.size = 0;
+        Arrays.fill(this.atom_counts, 0);
+        for (int s = 0; s < next.length; s++) {
+            this.member[s] = next[s];
+            if (next[s]) {
+                builder.add(this.size++, this.element[s], this.i[s], this.j[s], this.k[s]);
+                this.atom_counts[this.element[s] & 0xFF]++;
+            }
+        }
+        LatticePairHistogram fresh = new LatticePairCounter(this.threads).count(builder.build());
+        for (int t = 0; t < this.types; t++) {
+            long[] c = this.counts[t];
+            for (int b = 0; b < this.bins; b++) {
+                c[b] = fresh.count(t, b);
+            }
+        }
+    }
+
+    /**
+     * Counts the pairs between {@code xs} and {@code ys} plus the pairs within {@code xs}.
+     * @return counts per pair type and squared half-step distance
+     */
+    private long @NotNull [] @NotNull [] pairs(int @NotNull [] xs, int @NotNull [] ys) {
+        AtomicInteger next = new AtomicInteger();
+        int chunks = (xs.length + CHUNK - 1) / CHUNK;
+        int workers = Math.max(1, Math.min(this.threads, chunks));
+        int e_count = this.elements.size();
+        List<Callable<long[][]>> tasks = new ArrayList<>(workers);
+        for (int w = 0; w < workers; w++) {
+            tasks.add(() -> {
+                long[][] hist = new long[this.types][this.bins];
+                int c;
+                while ((c = next.getAndIncrement()) < chunks) {
+                    for (int p = c * CHUNK; p < Math.min(xs.length, (c + 1) * CHUNK); p++) {
+                        int x = xs[p];
+                        int xi = this.i[x], xj = this.j[x], xk = this.k[x];
+                        int row = (this.element[x] & 0xFF) * e_count;
+                        for (int y : ys) {
+                            int di = this.i[y] - xi, dj = this.j[y] - xj, dk = this.k[y] - xk;
+                            hist[this.type_of[row + (this.element[y] & 0xFF)]][di * di + dj * dj + dk * dk]++;
+                        }
+                        for (int q = p + 1; q < xs.length; q++) {
+                            int y = xs[q];
+                            int di = this.i[y] - xi, dj = this.j[y] - xj, dk = this.k[y] - xk;
+                            hist[this.type_of[row + (this.element[y] & 0xFF)]][di * di + dj * dj + dk * dk]++;
+                        }
+                    }
+                }
+                return hist;
+            });
+        }
+        return DebyeCalculator.runAndSum(tasks, workers, this.types, this.bins);
+    }
+}
@@ -0,0 +1,142 @@
+package io.github.noshou.npg.npsaxs;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Distribution of particle radii in a polydisperse sample.
+ * <p> Only the shape of the distribution matters: {@link #weights(double[])} normalises it over the radii of a
+ * {@link SizeSeries}. Whether the weights are number or volume fractions is decided when the ensemble is formed
+ * (see {@link SizeSeries.Weighting}).
+ */
+public interface SizeDistribution {
+
+    /**
+     * Returns the logarithm of the (unnormalised) probability density.
+     * @param radius a radius in Å, positive
+     * @return {@code ln p(radius)}, or negative infinity where the density vanishes
+     */
+    @Contract(pure = true)
+    double logDensity(double radius);
+
+    /**
+     * Discretises the distribution onto a set of radii with the midpoint rule: every radius stands for the interval
+     * between the midpoints to its neighbours. The radii should be spaced finer than the width of the distribution.
+     * @param radii strictly increasing radii in Å, non-empty
+     * @return one weight per radius, summing to one
+     * @throws IllegalArgumentException if the density vanishes at every radius
+     */
+    @Contract(pure = true)
+    default double @NotNull [] weights(double @NotNull [] radii) {
+        int n = radii.length;
+        double[] log = new double[n];
+        double max = Double.NEGATIVE_INFINITY;
+        for (int k = 0; k < n; k++) {
+            double lo = k == 0 ? radii[0] : (radii[k - 1] + radii[k]) / 2;
+            double hi = k == n - 1 ? radii[n - 1] : (radii[k] + radii[k + 1]) / 2;
+            double width = n == 1 ? 1 : hi - lo;
+            log[k] = this.logDensity(radii[k]) + Math.log(width);
+            max = Math.max(max, log[k]);
+        }
+        if (max == Double.NEGATIVE_INFINITY || Double.isNaN(max)) {
+            throw new IllegalArgumentException("Size distribution vanishes at every radius!");
+        }
+        double[] w = new double[n];
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+            w[k] = Math.exp(log[k] - max);
+            sum += w[k];
+        }
+        for (int k = 0; k < n; k++) {
+            w[k] /= sum;
+        }
+        return w;
+    }
+
+    /**
+     * Lognormal distribution.
+     * @param median median radius in Å, positive
+     * @param sigma  standard deviation of {@code ln R}, positive
+     * @return the distribution
+     */
+    @Contract(pure = true)
+    static @NotNull SizeDistribution lognormal(double median, double sigma) {
+        if (!(median > 0) || !(sigma > 0)) {
+            throw new IllegalArgumentException("Median and width must be positive!");
+        }
+        double mu = Math.log(median);
+        return radius -> {
+            double t = (Math.log(radius) - mu) / sigma;
+            return -0.5 * t * t - Math.log(radius);
+        };
+    }
+
+    /**
+     * Schulz (Schulz–Zimm) distribution {@code p(R) ∝ R^z exp(-(z+1) R / mean)}, with {@code z = 1/width² - 1}.
+     * @param mean  mean radius in Å, positive
+     * @param width relative standard deviation, in {@code (0, 1)}
+     * @return the distribution
+     */
+    @Contract(pure = true)
+    static @NotNull SizeDistribution schulz(double mean, double width) {
+        if (!(mean > 0) || !(width > 0) || !(width < 1)) {
+            throw new IllegalArgumentException("Mean must be positive and relative width within (0, 1)!");
+        }
+        double z = 1 / (width * width) - 1;
+        return radius -> z * Math.log(radius) - (z + 1) * radius / mean;
+    }
+
+    /**
+     * Piecewise constant distribution.
+     * @param edges   strictly increasing bin edges in Å, at least two
+     * @param weights non-negative weight of every bin, one fewer than edges
+     * @return the distribution
+     */
+    @Contract(pure = true)
+    static @NotNull SizeDistribution histogram(double @NotNull [] edges, double @NotNull [] weights) {
+        if (edges.length < 2 || weights.length != edges.length - 1) {
+            throw new IllegalArgumentException("Histogram needs one weight per pair of adjacent edges!");
+        }
+        double[] e = edges.clone();
+        double[] log = new double[weights.length];
+        for (int b = 0; b < weights.length; b++) {
+            if (!(e[b + 1] > e[b]) || !(weights[b] >= 0)) {
+                throw new IllegalArgumentException("Histogram edges must increase and weights be non-negative!");
+            }
+            log[b] = Math.log(weights[b] / (e[b + 1] - e[b]));
+        }
+        return radius -> {
+            for (int b = 0; b < log.length; b++) {
+                if (radius >= e[b] && radius < e[b + 1] || b == log.length - 1 && radius == e[b + 1]) {
+                    return log[b];
+                }
+            }
+            return Double.NEGATIVE_INFINITY;
+        };
+    }
+
+    /**
+     * Two-parameter families that {@link SizeSeries#fit} can optimise.
+     */
+    enum Family {
+
+        /** {@link #lognormal(double, double)}: centre is the median, width the standard deviation of {@code ln R}. */
+        LOGNORMAL,
+
+        /** {@link #schulz(double, double)}: centre is the mean, width the relative standard deviation. */
+        SCHULZ;
+
+        /**
+         * @param centre the centre in Å
+         * @param width  the width
+         * @return the member of this family
+         */
+        @Contract(pure = true)
+        public @NotNull SizeDistribution of(double centre, double width) {
+            return switch (this) {
+                case LOGNORMAL -> lognormal(centre, width);
+                case SCHULZ -> schulz(centre, width);
+            };
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package io.github.noshou.npg.npsaxs;
+
+import io.github.noshou.npg.shapes.Shape;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Profiles of one shape at a series of radii, for polydisperse ensembles.
+ * <p> The particles of a series are nested: a lattice site inside the shape at radius {@code R_k} is inside it at
+ * every larger radius. {@link #compute(Shape, double[], QGrid, int)} therefore enumerates the candidate sites and
+ * their gauges once (see {@link ShapeGauge}) and grows a single pair histogram shell by shell, from the smallest
+ * particle to the largest, adding only the pairs of the sites that enter at each step (see
+ * {@link SiteSetHistogram}). The pair work of the whole series is that of the largest particle.
+ * <p> Ensembles are weighted sums of the per-size profiles, so a {@link SizeDistribution} can be re-weighted and
+ * re-fitted without touching the lattice: {@link #fit(SaxsData, SizeDistribution.Family, Weighting, boolean)}
+ * optimises the centre and width of a distribution with the scale and offset solved in closed form at every step.
+ */
+public final class SizeSeries {
+
+    /** How the weights of a size distribution are interpreted. */
+    public enum Weighting {
+
+        /** Weights are number fractions of particles. */
+        NUMBER,
+
+        /** Weights are volume fractions; particles are counted as weight over atom count. */
+        VOLUME
+    }
+
+    /** Widths of the coarse scan that seeds the distribution fit. */
+    private static final double[] SCAN_WIDTHS = {0.02, 0.05, 0.1, 0.2, 0.4};
+
+    /** Largest number of centres of the coarse scan. */
+    private static final int SCAN_CENTRES = 32;
+
+    /** Range of the fitted width. */
+    private static final double WIDTH_LO = 0.01, WIDTH_HI = 0.5;
+
+    /** Number of coarse scan points refined with Nelder–Mead. */
+    private static final int STARTS = 3;
+
+    private static final double SIMPLEX_STEP = 0.1;
+    private static final double TOLERANCE = 1e-4;
+    private static final int MAX_EVALUATIONS = 200;
+
+    private final @NotNull QGrid grid;
+    private final double[] radii;
+    private final long[] atoms;
+    private final double[][] intensities;
+
+    private SizeSeries(@NotNull QGrid grid, double @NotNull [] radii, long @NotNull [] atoms,
+                       double @NotNull [] @NotNull [] intensities) {
+        this.grid = grid;
+        this.radii = radii;
+        this.atoms = atoms;
+        this.intensities = intensities;
+    }
+
+    /**
+     * Computes a size series using all available processors.
+     * @param shape the shape, non-null; only its form, unit cell and lattice constant are used
+     * @param radii strictly increasing radii in Å, non-empty
+     * @param grid  the q values, non-null
+     * @return the series
+     */
+    public static @NotNull SizeSeries compute(@NotNull Shape shape, double @NotNull [] radii, @NotNull QGrid grid) {
+        return compute(shape, radii, grid, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Computes a size series.
+     * @param shape   the shape, non-null; only its form, unit cell and lattice constant are used
+     * @param radii   strictly increasing radii in Å, non-empty
+     * @param grid    the q values, non-null
+     * @param threads number of worker threads for pair counting, positive
+     * @return the series
+     * @throws IllegalArgumentException if the radii are invalid, a radius holds no lattice site, or the unit cell
+     *                                  is not an FCC basis
+     * @throws RuntimeException         if pair counting fails or is interrupted
+     */
+    public static @NotNull SizeSeries compute(
+            @NotNull Shape shape,
+            double @NotNull [] radii,
+            @NotNull QGrid grid,
+            int threads
+    ) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be positive!");
+        }
+        if (radii.length == 0 || !(radii[0] > 0)) {
+            throw new IllegalArgumentException("Size series needs positive radii!");
+        }
+        for (int r = 1; r < radii.length; r++) {
+            if (!(radii[r] > radii[r - 1])) {
+                throw new IllegalArgumentException("Size series radii must be strictly increasing!");
+            }
+        }
+        double half_step = shape.getLatticeConstant().doubleValue() / 2;
+        ShapeGauge gauge = new ShapeGauge(shape);
+        int l = (int) Math.ceil(gauge.reach() * radii[radii.length - 1] / half_step) + 1;
+        ShapeGauge.Sites sites = ShapeGauge.Sites.of(shape, l);
+        double[] values = new double[sites.size()];
+        for (int s = 0; s < values.length; s++) {
+            values[s] = gauge.at(sites.i[s], sites.j[s], sites.k[s]);
+        }
+        SiteSetHistogram histogram = new SiteSetHistogram(
+                sites.i, sites.j, sites.k, sites.element, sites.elements, threads
+        );
+        DebyeCalculator debye = new DebyeCalculator(grid);
+        boolean[] member = new boolean[values.length];
+        long[] atoms = new long[radii.length];
+        double[][] intensities = new double[radii.length][];
+        for (int r = 0; r < radii.length; r++) {
+            double threshold = radii[r] / half_step;
+            for (int s = 0; s < values.length; s++) {
+                member[s] = values[s] <= threshold;
+            }
+            histogram.update(member);
+            if (histogram.size() == 0) {
+                throw new IllegalArgumentException("No lattice site lies inside the shape at radius " + radii[r] + "!");
+            }
+            atoms[r] = histogram.size();
+            intensities[r] = debye.intensity(histogram.toHistogram(half_step).toPairHistogram()).toArray();
+        }
+        return new SizeSeries(grid, radii.clone(), atoms, intensities);
+    }
+
+    /** @return the q values of the profiles */
+    @Contract(pure = true)
+    public @NotNull QGrid getGrid() {
+        return this.grid;
+    }
+
+    /** @return number of radii */
+    @Contract(pure = true)
+    public int size() {
+        return this.radii.length;
+    }
+
+    /**
+     * @param index index into the series
+     * @return radius in Å
+     */
+    @Contract(pure = true)
+    public double radius(int index) {
+        return this.radii[index];
+    }
+
+    /**
+     * @param index index into the series
+     * @return number of atoms of the particle
+     */
+    @Contract(pure = true)
+    public long atomCount(int index) {
+        return this.atoms[index];
+    }
+
+    /**
+     * @param index index into the series
+     * @return profile of the particle
+     */
+    @Contract(pure = true)
+    public @NotNull SaxsProfile profile(int index) {
+        return SaxsProfile.of(this.grid, this.intensities[index]);
+    }
+
+    /**
+     * Averages the profiles over a size distribution, per particle.
+     * @param distribution the distribution, non-null
+     * @param weighting    whether its weights are number or volume fractions, non-null
+     * @return the mean profile of one particle of the ensemble
+     * @throws IllegalArgumentException if the distribution vanishes at every radius of the series
+     */
+    @Contract(pure = true)
+    public @NotNull SaxsProfile ensemble(@NotNull SizeDistribution distribution, @NotNull Weighting weighting) {
+        double[] w = distribution.weights(this.radii);
+        double total = 0;
+        for (int r = 0; r < w.length; r++) {
+            if (weighting == Weighting.VOLUME) {
+                w[r] /= this.atoms[r];
+            }
+            total += w[r];
+        }
+        double[] sum = new double[this.grid.size()];
+        for (int r = 0; r < w.length; r++) {
+            double f = w[r] / total;
+            if (f == 0) {
+                continue;
+            }
+            double[] intensity = this.intensities[r];
+            for (int q = 0; q < sum.length; q++) {
+                sum[q] += f * intensity[q];
+            }
+        }
+        return SaxsProfile.of(this.grid, sum);
+    }
+
+    /**
+     * Fits the centre and width of a size distribution to a measurement, with scale and offset solved in closed
+     * form ({@link SaxsFit}). The centre is kept within the radii of the series and the width within
+     * {@value #WIDTH_LO} and {@value #WIDTH_HI}; a coarse scan over both seeds a few Nelder–Mead runs.
+     * @param data        the measurement, non-null
+     * @param family      the distribution family, non-null
+     * @param weighting   whether the distribution gives number or volume fractions, non-null
+     * @param with_offset whether to fit a constant offset
+     * @return the best distribution found, with its profile and fit
+     * @throws IllegalArgumentException if no distribution gives a usable model
+     */
+    public @NotNull Result fit(
+            @NotNull SaxsData data,
+            SizeDistribution.@NotNull Family family,
+            @NotNull Weighting weighting,
+            boolean with_offset
+    ) {
+        double c_lo = this.radii[0], c_hi = this.radii[this.radii.length - 1];
+
+        // coarse scan; the best points seed the refinement
+        int centres = Math.min(this.radii.length, SCAN_CENTRES);
+        List<double[]> scan = new ArrayList<>();
+        for (int c = 0; c < centres; c++) {
+            for (double width : SCAN_WIDTHS) {
+                double u_c = centres == 1 ? 0.5 : (double) c / (centres - 1);
+                double u_w = (width - WIDTH_LO) / (WIDTH_HI - WIDTH_LO);
+                scan.add(new double[]{u_c, u_w, this.chiSquared(data, family, weighting, with_offset, u_c, u_w)});
+            }
+        }
+        scan.sort((p, q) -> Double.compare(p[2], q[2]));
+        double[] best_u = null;
+        double best = Double.POSITIVE_INFINITY;
+        for (double[] seed : scan.subList(0, Math.min(STARTS, scan.size()))) {
+            if (seed[2] == Double.POSITIVE_INFINITY) {
+                break;
+            }
+            double[] u = {seed[0], seed[1]};
+            double value = NelderMead.minimize(
+                    v -> this.chiSquared(data, family, weighting, with_offset, v[0], v[1]),
+                    u,
+                    SIMPLEX_STEP,
+                    TOLERANCE,
+                    MAX_EVALUATIONS
+            );
+            if (value < best) {
+                best = value;
+                best_u = u;
+            }
+        }
+        if (best_u == null) {
+            throw new IllegalArgumentException("No size distribution gives a usable model!");
+        }
+        double centre = c_lo + best_u[0] * (c_hi - c_lo);
+        double width = WIDTH_LO + best_u[1] * (WIDTH_HI - WIDTH_LO);
+        SizeDistribution distribution = family.of(centre, width);
+        SaxsProfile profile = this.ensemble(distribution, weighting);
+        return new Result(distribution, centre, width, profile, SaxsFit.fit(data, profile, with_offset));
+    }
+
+    /** @return χ² of the distribution at normalised centre {@code u_c} and width {@code u_w}, or infinity */
+    private double chiSquared(
+            @NotNull SaxsData data,
+            SizeDistribution.@NotNull Family family,
+            @NotNull Weighting weighting,
+            boolean with_offset,
+            double u_c,
+            double u_w
+    ) {
+        double centre = this.radii[0] + NelderMead.clamp(u_c) * (this.radii[this.radii.length - 1] - this.radii[0]);
+        double width = WIDTH_LO + NelderMead.clamp(u_w) * (WIDTH_HI - WIDTH_LO);
+        try {
+            return SaxsFit.fit(data, this.ensemble(family.of(centre, width), weighting), with_offset).getChiSquared();
+        } catch (IllegalArgumentException e) {
+            // distribution outside the series or degenerate model
+            return Double.POSITIVE_INFINITY;
+        }
+    }
+
+    /**
+     * Fitted size distribution with the ensemble profile and fit it gives.
+     */
+    public static final class Result {
+
+        private final @NotNull SizeDistribution distribution;
+        private final double centre, width;
+        private final @NotNull SaxsProfile profile;
+        private final @NotNull SaxsFit fit;
+
+        private Result(@NotNull SizeDistribution distribution, double centre, double width,
+                       @NotNull SaxsProfile profile, @NotNull SaxsFit fit) {
+            this.distribution = distribution;
+            this.centre = centre;
+            this.width = width;
+            this.profile = profile;
+            this.fit = fit;
+        }
+
+        /** @return the fitted distribution */
+        @Contract(pure = true)
+        public @NotNull SizeDistribution getDistribution() {
+            return this.distribution;
+        }
+
+        /** @return centre of the distribution in Å (see {@link SizeDistribution.Family}) */
+        @Contract(pure = true)
+        public double getCentre() {
+            return this.centre;
+        }
+
+        /** @return width of the distribution (see {@link SizeDistribution.Family}) */
+        @Contract(pure = true)
+        public double getWidth() {
+            return this.width;
+        }
+
+        /** @return the unscaled ensemble profile */
+        @Contract(pure = true)
+        public @NotNull SaxsProfile getProfile() {
+            return this.profile;
+        }
+
+        /** @return the fit against the data */
+        @Contract(pure = true)
+        public @NotNull SaxsFit getFit() {
+            return this.fit;
+        }
+    }
+}
@@ -0,0 +1,366 @@
+package io.github.noshou.npg.npsaxs;
+
+import io.github.noshou.npg.atom.Atom;
+import io.github.noshou.npg.npreader.ParticleStore;
+import io.github.noshou.npg.nputil.Workers;
+import io.github.noshou.npg.shapes.Shape;
+import io.github.noshou.tuple.Polyad;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Solvent terms of the scattering of a particle in solution, in the style of CRYSOL and FoXS.
+ * <p> Every atom of element {@code e} scatters with the effective form factor
+ * <pre>
+ *   f(q) = f_e(q) − c₁ g_e(q) + c₂ s h(q)
+ * </pre>
+ * where {@code f_e} is the vacuum form factor ({@link AtomicFormFactor}),
+ * {@code g_e(q) = ρ₀ V_e exp(−V_e^(2/3) q² / 4π)} is the solvent displaced by the atom's volume {@code V_e} as a
+ * Gaussian sphere (Fraser, MacRae &amp; Suzuki, 1978), and {@code h(q)} is the excess scattering of the hydration
+ * layer, one water molecule's worth of electrons ({@value #WATER_ELECTRONS}) spread over a Gaussian of the
+ * volume of a water molecule ({@value #WATER_VOLUME} Å³). {@code s} is one for surface atoms and zero otherwise;
+ * an atom is on the surface if a solvent probe touches it ({@link #surface(ParticleStore, int)}).
+ * <p> Atomic volumes are those of the {@link Atom}s of a unit cell ({@link #of(Shape)}) or given per element.
+ * By default {@code c₁ = 1} and the hydration layer is off; {@link #hydration(double)} turns it on.
+ * {@link DebyeCalculator#compute(ParticleStore, SolventModel)} evaluates all terms from a single pair count,
+ * so {@code c₁} and {@code c₂} can be re-fitted without touching the particle (see {@link SolventProfile}).
+ */
+public final class SolventModel {
+
+    /** Electron density of bulk water in e/Å³. */
+    public static final double WATER_DENSITY = 0.334;
+
+    /** Electrons of a water molecule. */
+    public static final double WATER_ELECTRONS = 10;
+
+    /** Volume of a water molecule in Å³. */
+    public static final double WATER_VOLUME = 29.9;
+
+    /** Default radius of the solvent probe in Å. */
+    public static final double PROBE_RADIUS = 1.4;
+
+    /** Test points per atom of the surface detection. */
+    private static final int SURFACE_POINTS = 64;
+
+    /** Atoms per work unit of the surface detection. */
+    private static final int CHUNK = 1024;
+
+    private final @NotNull Map<String, Double> volumes;
+    private double density = WATER_DENSITY;
+    private double excluded_volume = 1;
+    private double hydration = 0;
+    private boolean hydration_layer = false;
+    private double probe_radius = PROBE_RADIUS;
+
+    /**
+     * Constructs a solvent model from atomic volumes.
+     * @param volumes volume in Å³ of every element, keyed by symbol, non-null
+     * @throws IllegalArgumentException if a volume is not positive
+     */
+    public SolventModel(@NotNull Map<String, Double> volumes) {
+        for (Map.Entry<String, Double> entry : volumes.entrySet()) {
+            if (!(entry.getValue() > 0)) {
+                throw new IllegalArgumentException("Volume of element " + entry.getKey() + " must be positive!");
+            }
+        }
+        this.volumes = Map.copyOf(volumes);
+    }
+
+    /**
+     * Constructs a solvent model with the atomic volumes of a shape's unit cell.
+     * @param shape the shape, non-null
+     * @return the solvent model
+     */
+    @Contract(pure = true)
+    public static @NotNull SolventModel of(@NotNull Shape shape) {
+        Polyad<Atom> basis = shape.getUnitCell().getBasis();
+        Map<String, Double> volumes = new HashMap<>();
+        for (int b = 0; b < basis.fetchSize(); b++) {
+            Atom atom = basis.fetch(b);
+            volumes.put(atom.getElement(), Double.parseDouble(atom.getVolume()));
+        }
+        return new SolventModel(volumes);
+    }
+
+    /**
+     * Sets the electron density of the solvent.
+     * @param density the density in e/Å³, positive
+     * @return this model
+     */
+    @Contract(value = "_ -> this", mutates = "this")
+    public @NotNull SolventModel density(double density) {
+        if (!(density > 0)) {
+            throw new IllegalArgumentException("Solvent density must be positive!");
+        }
+        this.density = density;
+        return this;
+    }
+
+    /**
+     * Sets the scale {@code c₁} of the excluded volume.
+     * @param c1 the scale, non-negative
+     * @return this model
+     */
+    @Contract(value = "_ -> this", mutates = "this")
+    public @NotNull SolventModel excludedVolume(double c1) {
+        if (!(c1 >= 0) || Double.isInfinite(c1)) {
+            throw new IllegalArgumentException("Excluded volume scale must be non-negative!");
+        }
+        this.excluded_volume = c1;
+        return this;
+    }
+
+    /**
+     * Turns the hydration layer on and sets its scale {@code c₂}.
+     * @param c2 the scale; negative values describe a depleted layer
+     * @return this model
+     */
+    @Contract(value = "_ -> this", mutates = "this")
+    public @NotNull SolventModel hydration(double c2) {
+        if (Double.isNaN(c2) || Double.isInfinite(c2)) {
+            throw new IllegalArgumentException("Hydration scale must be finite!");
+        }
+        this.hydration = c2;
+        this.hydration_layer = true;
+        return this;
+    }
+
+    /**
+     * Sets the radius of the probe that decides which atoms carry the hydration layer.
+     * @param probe_radius the radius in Å, positive
+     * @return this model
+     */
+    @Contract(value = "_ -> this", mutates = "this")
+    public @NotNull SolventModel probeRadius(double probe_radius) {
+        if (!(probe_radius > 0)) {
+            throw new IllegalArgumentException("Probe radius must be positive!");
+        }
+        this.probe_radius = probe_radius;
+        return this;
+    }
+
+    /** @return electron density of the solvent in e/Å³ */
+    @Contract(pure = true)
+    public double getDensity() {
+        return this.density;
+    }
+
+    /** @return scale {@code c₁} of the excluded volume */
+    @Contract(pure = true)
+    public double getExcludedVolume() {
+        return this.excluded_volume;
+    }
+
+    /** @return scale {@code c₂} of the hydration layer, zero if it is off */
+    @Contract(pure = true)
+    public double getHydration() {
+        return this.hydration_layer ? this.hydration : 0;
+    }
+
+    /** @return whether surface atoms carry a hydration layer */
+    @Contract(pure = true)
+    public boolean hasHydrationLayer() {
+        return this.hydration_layer;
+    }
+
+    /**
+     * @param element the element symbol, non-null
+     * @return the atomic volume in Å³
+     * @throws IllegalArgumentException if the model has no volume for the element
+     */
+    @Contract(pure = true)
+    public double volume(@NotNull String element) {
+        Double volume = this.volumes.get(element);
+        if (volume == null) {
+            throw new IllegalArgumentException("No atomic volume for element " + element + "!");
+        }
+        return volume;
+    }
+
+    /**
+     * Tabulates the displaced-solvent form factor {@code g_e(q)} of an element, without {@code c₁}.
+     * @param element the element symbol, non-null
+     * @param grid    the q-grid, non-null
+     * @return {@code g_e(q_k)} for every grid point
+     */
+    @Contract(pure = true)
+    double @NotNull [] excludedTable(@NotNull String element, @NotNull QGrid grid) {
+        return gaussian(this.density * this.volume(element), this.volume(element), grid);
+    }
+
+    /**
+     * Tabulates the hydration form factor {@code h(q)}, without {@code c₂}.
+     * @param grid the q-grid, non-null
+     * @return {@code h(q_k)} for every grid point
+     */
+    @Contract(pure = true)
+    static double @NotNull [] hydrationTable(@NotNull QGrid grid) {
+        return gaussian(WATER_ELECTRONS, WATER_VOLUME, grid);
+    }
+
+    /** @return {@code electrons · exp(−V^(2/3) q² / 4π)} on the grid */
+    private static double @NotNull [] gaussian(double electrons, double volume, @NotNull QGrid grid) {
+        double width = Math.pow(volume, 2.0 / 3) / (4 * Math.PI);
+        double[] f = new double[grid.size()];
+        for (int k = 0; k < f.length; k++) {
+            double q = grid.get(k);
+            f[k] = electrons * Math.exp(-width * q * q);
+        }
+        return f;
+    }
+
+    /**
+     * Finds the atoms a solvent probe can touch (Shrake–Rupley). Every atom is a sphere of the radius of its
+     * volume; an atom is on the surface if any of {@value #SURFACE_POINTS} points on its sphere, expanded by the
+     * probe radius, lies outside the expanded spheres of all other atoms. Neighbours are looked up in a cell
+     * grid, so the work is linear in the number of atoms.
+     * @param store   the particle, non-null
+     * @param threads number of worker threads, positive
+     * @return whether every atom is on the surface
+     * @throws IllegalArgumentException if the model has no volume for an element of the particle
+     * @throws RuntimeException         if a worker thread fails or the detection is interrupted
+     */
+    boolean @NotNull [] surface(@NotNull ParticleStore store, int threads) {
+        int n = store.size();
+        boolean[] surface = new boolean[n];
+        if (n == 0) {
+            return surface;
+        }
+        List<String> elements = store.getElements();
+        double[] reach = new double[elements.size()];
+        double reach_max = 0;
+        for (int e = 0; e < reach.length; e++) {
+            reach[e] = Math.cbrt(3 * this.volume(elements.get(e)) / (4 * Math.PI)) + this.probe_radius;
+            reach_max = Math.max(reach_max, reach[e]);
+        }
+
+        // unit test points on a Fibonacci sphere
+        double[][] points = new double[SURFACE_POINTS][3];
+        double golden = Math.PI * (3 - Math.sqrt(5));
+        for (int p = 0; p < SURFACE_POINTS; p++) {
+            double z = 1 - (2 * p + 1.0) / SURFACE_POINTS;
+            double r = Math.sqrt(1 - z * z);
+            points[p][0] = r * Math.cos(golden * p);
+            points[p][1] = r * Math.sin(golden * p);
+            points[p][2] = z;
+        }
+
+        // cell grid with cells as wide as the largest overlap distance (CSR layout)
+        double[] x = store.getX(), y = store.getY(), z = store.getZ();
+        double cell = 2 * reach_max;
+        double x0 = Double.POSITIVE_INFINITY, y0 = Double.POSITIVE_INFINITY, z0 = Double.POSITIVE_INFINITY;
+        double x1 = Double.NEGATIVE_INFINITY, y1 = Double.NEGATIVE_INFINITY, z1 = Double.NEGATIVE_INFINITY;
+        for (int a = 0; a < n; a++) {
+            x0 = Math.min(x0, x[a]);
+            y0 = Math.min(y0, y[a]);
+            z0 = Math.min(z0, z[a]);
+            x1 = Math.max(x1, x[a]);
+            y1 = Math.max(y1, y[a]);
+            z1 = Math.max(z1, z[a]);
+        }
+        int nx = (int) ((x1 - x0) / cell) + 1, ny = (int) ((y1 - y0) / cell) + 1, nz = (int) ((z1 - z0) / cell) + 1;
+        if ((long) nx * ny * nz >= Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Particle is too sparse for a cell grid!");
+        }
+        int[] cell_of = new int[n];
+        int[] start = new int[nx * ny * nz + 1];
+        for (int a = 0; a < n; a++) {
+            int cx = (int) ((x[a] - x0) / cell), cy = (int) ((y[a] - y0) / cell), cz = (int) ((z[a] - z0) / cell);
+            cell_of[a] = (cx * ny + cy) * nz + cz;
+            start[cell_of[a] + 1]++;
+        }
+        for (int c = 0; c < start.length - 1; c++) {
+            start[c + 1] += start[c];
+        }
+        int[] fill = start.clone();
+        int[] members = new int[n];
+        for (int a = 0; a < n; a++) {
+            members[fill[cell_of[a]]++] = a;
+        }
+
+        AtomicInteger next = new AtomicInteger();
+        int chunks = (n + CHUNK - 1) / CHUNK;
+        int workers = Math.max(1, Math.min(threads, chunks));
+        List<Callable<Void>> tasks = new ArrayList<>(workers);
+        for (int w = 0; w < workers; w++) {
+            tasks.add(() -> {
+                int[] neighbours = new int[64];
+                int c;
+                while ((c = next.getAndIncrement()) < chunks) {
+                    for (int a = c * CHUNK; a < Math.min(n, (c + 1) * CHUNK); a++) {
+                        double ra = reach[store.elementIndex(a)];
+                        int ca = cell_of[a];
+                        int cx = ca / (ny * nz), cy = (ca / nz) % ny, cz = ca % nz;
+
+                        // atoms whose expanded spheres overlap that of a
+                        int count = 0;
+                        for (int ix = Math.max(0, cx - 1); ix <= Math.min(nx - 1, cx + 1); ix++) {
+                            for (int iy = Math.max(0, cy - 1); iy <= Math.min(ny - 1, cy + 1); iy++) {
+                                for (int iz = Math.max(0, cz - 1); iz <= Math.min(nz - 1, cz + 1); iz++) {
+                                    int cc = (ix * ny + iy) * nz + iz;
+                                    for (int m = start[cc]; m < start[cc + 1]; m++) {
+                                        int b = members[m];
+                                        double dx = x[b] - x[a], dy = y[b] - y[a], dz = z[b] - z[a];
+                                        double d = ra + reach[store.elementIndex(b)];
+                                        if (b != a && dx * dx + dy * dy + dz * dz < d * d) {
+                                            if (count == neighbours.length) {
+                                                neighbours = Arrays.copyOf(neighbours, 2 * count);
+                                            }
+                                            neighbours[count++] = b;
+                                        }
+                                    }
+                                }
+                            }
+                        }
+                        surface[a] = exposed(a, ra, neighbours, count, points, x, y, z, reach, store);
+                    }
+                }
+                return null;
+            });
+        }
+        Workers.run(tasks, workers, "Surface detection");
+        return surface;
+    }
+
+    /** @return whether any test point of atom {@code a} lies outside the expanded spheres of its neighbours */
+    private static boolean exposed(
+            int a,
+            double ra,
+            int @NotNull [] neighbours,
+            int count,
+            double @NotNull [] @NotNull [] points,
+            double @NotNull [] x,
+            double @NotNull [] y,
+            double @NotNull [] z,
+            double @NotNull [] reach,
+            @NotNull ParticleStore store
+    ) {
+        int last = 0;
+        for (double[] p : points) {
+            double px = x[a] + ra * p[0], py = y[a] + ra * p[1], pz = z[a] + ra * p[2];
+            boolean buried = false;
+
+            // start with the neighbour that buried the previous point, which is often close to this one
+            for (int t = 0; t < count && !buried; t++) {
+                int b = neighbours[(last + t) % count];
+                double dx = px - x[b], dy = py - y[b], dz = pz - z[b];
+                double rb = reach[store.elementIndex(b)];
+                if (dx * dx + dy * dy + dz * dz < rb * rb) {
+                    buried = true;
+                    last = (last + t) % count;
+                }
+            }
+            if (!buried) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,175 @@
+package io.github.noshou.npg.npsaxs;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Scattering profile of a particle in solution, kept as partial profiles so that the solvent scales can be
+ * changed without a new pair count.
+ * <p> With the effective form factor {@code f = A − c₁ B + c₂ C} of {@link SolventModel} (vacuum, excluded volume
+ * and hydration term), the Debye sum is a quadratic form in {@code c₁} and {@code c₂}:
+ * <pre>
+ *   I(q) = I_AA − 2c₁ I_AB + c₁² I_BB + 2c₂ I_AC − 2c₁c₂ I_BC + c₂² I_CC
+ * </pre>
+ * where {@code I_XY} is the Debye sum with {@code X} on one atom of every pair and {@code Y} on the other.
+ * {@link #at(double, double)} combines the six partial profiles in {@code O(q-points)}, which makes a scan over
+ * the scales as cheap as {@link SaxsFit} itself.
+ */
+public final class SolventProfile {
+
+    /** Range and step of the excluded-volume scale scanned by {@link #fit(SaxsData, boolean)}, as in FoXS. */
+    private static final double C1_LO = 0.95, C1_HI = 1.05, C1_STEP = 0.005;
+
+    /** Range and step of the hydration scale scanned by {@link #fit(SaxsData, boolean)}, as in FoXS. */
+    private static final double C2_LO = -2, C2_HI = 4, C2_STEP = 0.05;
+
+    private final @NotNull QGrid grid;
+    private final double[] aa, ab, bb, ac, bc, cc;
+    private final double excluded_volume, hydration;
+    private final boolean hydration_layer;
+    private final long surface_atoms;
+
+    /**
+     * Constructs a profile. Arrays are taken over without copying.
+     * @param grid          the q-grid, non-null
+     * @param partials      the partial profiles {@code I_AA, I_AB, I_BB, I_AC, I_BC, I_CC}
+     * @param solvent       the solvent model whose scales are the defaults, non-null
+     * @param surface_atoms number of atoms carrying the hydration layer
+     */
+    SolventProfile(
+            @NotNull QGrid grid,
+            double @NotNull [] @NotNull [] partials,
+            @NotNull SolventModel solvent,
+            long surface_atoms
+    ) {
+        this.grid = grid;
+        this.aa = partials[0];
+        this.ab = partials[1];
+        this.bb = partials[2];
+        this.ac = partials[3];
+        this.bc = partials[4];
+        this.cc = partials[5];
+        this.excluded_volume = solvent.getExcludedVolume();
+        this.hydration = solvent.getHydration();
+        this.hydration_layer = solvent.hasHydrationLayer();
+        this.surface_atoms = surface_atoms;
+    }
+
+    /** @return the q-grid */
+    @Contract(pure = true)
+    public @NotNull QGrid getGrid() {
+        return this.grid;
+    }
+
+    /** @return number of atoms carrying the hydration layer (zero if it is off) */
+    @Contract(pure = true)
+    public long getSurfaceAtomCount() {
+        return this.surface_atoms;
+    }
+
+    /** @return the profile in vacuum */
+    @Contract(pure = true)
+    public @NotNull SaxsProfile vacuum() {
+        return new SaxsProfile(this.grid, this.aa.clone());
+    }
+
+    /** @return the profile at the scales of the solvent model */
+    @Contract(pure = true)
+    public @NotNull SaxsProfile profile() {
+        return this.at(this.excluded_volume, this.hydration);
+    }
+
+    /**
+     * Returns the profile at other solvent scales.
+     * @param c1 scale of the excluded volume
+     * @param c2 scale of the hydration layer (ignored if the layer is off)
+     * @return {@code I(q)}
+     */
+    @Contract(pure = true)
+    public @NotNull SaxsProfile at(double c1, double c2) {
+        double[] intensity = new double[this.grid.size()];
+        for (int k = 0; k < intensity.length; k++) {
+            intensity[k] = this.aa[k] - 2 * c1 * this.ab[k] + c1 * c1 * this.bb[k]
+                    + 2 * c2 * this.ac[k] - 2 * c1 * c2 * this.bc[k] + c2 * c2 * this.cc[k];
+        }
+        return new SaxsProfile(this.grid, intensity);
+    }
+
+    /**
+     * Fits the solvent scales to a measurement by a scan over {@code c₁ ∈ [0.95, 1.05]} and, if the hydration
+     * layer is on, {@code c₂ ∈ [−2, 4]}, with scale and offset solved in closed form at every point.
+     * @param data        the measurement, non-null
+     * @param with_offset whether to fit a constant offset
+     * @return the best scales with their profile and fit
+     * @throws IllegalArgumentException if no scales give a usable model
+     */
+    public @NotNull Result fit(@NotNull SaxsData data, boolean with_offset) {
+        int n1 = (int) Math.round((C1_HI - C1_LO) / C1_STEP) + 1;
+        int n2 = this.hydration_layer ? (int) Math.round((C2_HI - C2_LO) / C2_STEP) + 1 : 1;
+        double best = Double.POSITIVE_INFINITY, best_c1 = Double.NaN, best_c2 = 0;
+        for (int i = 0; i < n1; i++) {
+            double c1 = C1_LO + i * C1_STEP;
+            for (int j = 0; j < n2; j++) {
+                double c2 = this.hydration_layer ? C2_LO + j * C2_STEP : 0;
+                double chi_squared;
+                try {
+                    chi_squared = SaxsFit.fit(data, this.at(c1, c2), with_offset).getChiSquared();
+                } catch (IllegalArgumentException e) {
+                    // degenerate model at these scales
+                    continue;
+                }
+                if (chi_squared < best) {
+                    best = chi_squared;
+                    best_c1 = c1;
+                    best_c2 = c2;
+                }
+            }
+        }
+        if (Double.isNaN(best_c1)) {
+            throw new IllegalArgumentException("No solvent scales give a usable model!");
+        }
+        SaxsProfile profile = this.at(best_c1, best_c2);
+        return new Result(best_c1, best_c2, profile, SaxsFit.fit(data, profile, with_offset));
+    }
+
+    /**
+     * Fitted solvent scales with the profile and fit they give.
+     */
+    public static final class Result {
+
+        private final double excluded_volume, hydration;
+        private final @NotNull SaxsProfile profile;
+        private final @NotNull SaxsFit fit;
+
+        private Result(double excluded_volume, double hydration, @NotNull SaxsProfile profile, @NotNull SaxsFit fit) {
+            this.excluded_volume = excluded_volume;
+            this.hydration = hydration;
+            this.profile = profile;
+            this.fit = fit;
+        }
+
+        /** @return scale {@code c₁} of the excluded volume */
+        @Contract(pure = true)
+        public double getExcludedVolume() {
+            return this.excluded_volume;
+        }
+
+        /** @return scale {@code c₂} of the hydration layer, zero if it is off */
+        @Contract(pure = true)
+        public double getHydration() {
+            return this.hydration;
+        }
+
+        /** @return the unscaled profile at the fitted scales */
+        @Contract(pure = true)
+        public @NotNull SaxsProfile getProfile() {
+            return this.profile;
+        }
+
+        /** @return the fit against the data */
+        @Contract(pure = true)
+        public @NotNull SaxsFit getFit() {
+            return this.fit;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package io.github.noshou.npg.npsaxs;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Immutable set of unit directions with weights for averaging over orientations.
+ * <p> Scattering intensities of real form factors obey {@code I(q) = I(-q)} (Friedel's law), so a quadrature
+ * only has to cover one hemisphere; {@link #fibonacci(int)} places its points on {@code z > 0}. Other rules, e.g.
+ * published Lebedev tables, can be supplied through {@link #of(double[], double[])} and may cover the whole
+ * sphere.
+ */
+public final class SphereQuadrature {
+
+    /** Directions as consecutive {@code (x, y, z)} triples. */
+    private final double[] directions;
+
+    /** Weights, summing to one. */
+    private final double[] weights;
+
+    private SphereQuadrature(double @NotNull [] directions, double @NotNull [] weights) {
+        this.directions = directions;
+        this.weights = weights;
+    }
+
+    /**
+     * Creates an equal-weight Fibonacci (golden-angle spiral) set on the upper hemisphere.
+     * @param n number of directions, positive
+     * @return the quadrature
+     */
+    @Contract("_ -> new")
+    public static @NotNull SphereQuadrature fibonacci(int n) {
+        if (n < 1) {
+            throw new IllegalArgumentException("A quadrature needs at least one direction!");
+        }
+        double golden = Math.PI * (3 - Math.sqrt(5));
+        double[] directions = new double[3 * n];
+        double[] weights = new double[n];
+        for (int d = 0; d < n; d++) {
+            double z = (d + 0.5) / n;
+            double rho = Math.sqrt(1 - z * z);
+            directions[3 * d] = rho * Math.cos(golden * d);
+            directions[3 * d + 1] = rho * Math.sin(golden * d);
+            directions[3 * d + 2] = z;
+            weights[d] = 1.0 / n;
+        }
+        return new SphereQuadrature(directions, weights);
+    }
+
+    /**
+     * Creates a quadrature from explicit directions and weights.
+     * @param directions consecutive {@code (x, y, z)} triples, non-zero; normalised to unit length
+     * @param weights    one positive weight per direction; normalised to sum to one
+     * @return the quadrature
+     */
+    @Contract("_, _ -> new")
+    public static @NotNull SphereQuadrature of(double @NotNull [] directions, double @NotNull [] weights) {
+        if (weights.length == 0 || directions.length != 3 * weights.length) {
+            throw new IllegalArgumentException("Quadrature needs one (x, y, z) direction per weight!");
+        }
+        double[] u = new double[directions.length];
+        double[] w = new double[weights.length];
+        double total = 0;
+        for (int d = 0; d < weights.length; d++) {
+            double x = directions[3 * d], y = directions[3 * d + 1], z = directions[3 * d + 2];
+            double norm = Math.sqrt(x * x + y * y + z * z);
+            if (!(norm > 0) || !(weights[d] > 0) || Double.isInfinite(norm) || Double.isInfinite(weights[d])) {
+                throw new IllegalArgumentException("Quadrature directions and weights must be finite and non-zero!");
+            }
+            u[3 * d] = x / norm;
+            u[3 * d + 1] = y / norm;
+            u[3 * d + 2] = z / norm;
+            total += weights[d];
+        }
+        for (int d = 0; d < weights.length; d++) {
+            w[d] = weights[d] / total;
+        }
+        return new SphereQuadrature(u, w);
+    }
+
+    /** @return number of directions */
+    @Contract(pure = true)
+    public int size() {
+        return this.weights.length;
+    }
+
+    /** @return x component of direction {@code d} */
+    @Contract(pure = true)
+    public double x(int d) {
+        return this.directions[3 * d];
+    }
+
+    /** @return y component of direction {@code d} */
+    @Contract(pure = true)
+    public double y(int d) {
+        return this.directions[3 * d + 1];
+    }
+
+    /** @return z component of direction {@code d} */
+    @Contract(pure = true)
+    public double z(int d) {
+        return this.directions[3 * d + 2];
+    }
+
+    /** @return weight of direction {@code d} */
+    @Contract(pure = true)
+    public double weight(int d) {
+        return this.weights[d];
+    }
+}
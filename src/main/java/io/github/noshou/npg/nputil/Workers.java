@@ -0,0 +1,76 @@
+package io.github.noshou.npg.nputil;
+
+import org.jetbrains.annotations.NotNull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs batches of worker tasks and waits for all of them, with one failure policy for every parallel computation.
+ * <p> Results are returned in task order. A task that throws fails the batch with a
+ * {@code RuntimeException("<what> worker failed!")} whose cause is the task's exception; an interrupted wait
+ * restores the interrupt flag and fails with {@code RuntimeException("<what> interrupted!")}.
+ */
+public final class Workers {
+
+    private Workers() {
+        throw new AssertionError("Utility class should not be instantiated!");
+    }
+
+    /**
+     * Runs the tasks on a fixed pool of its own, shut down before returning.
+     * @param tasks   the tasks, non-null
+     * @param threads maximum number of worker threads, positive; never more than one per task
+     * @param what    name of the computation for error messages, e.g. {@code "Energy evaluation"}
+     * @param <T>     the result type of the tasks
+     * @return the results, in task order
+     * @throws RuntimeException if a task fails or the wait is interrupted
+     */
+    public static <T> @NotNull List<T> run(
+            @NotNull List<? extends Callable<T>> tasks,
+            int threads,
+            @NotNull String what
+    ) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be positive!");
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, tasks.size())));
+        try {
+            return run(pool, tasks, what);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs the tasks on a pool owned by the caller, for computations that run several batches in a row.
+     * @param pool  the pool, non-null; left running
+     * @param tasks the tasks, non-null
+     * @param what  name of the computation for error messages, e.g. {@code "Projection"}
+     * @param <T>   the result type of the tasks
+     * @return the results, in task order
+     * @throws RuntimeException if a task fails or the wait is interrupted
+     */
+    public static <T> @NotNull List<T> run(
+            @NotNull ExecutorService pool,
+            @NotNull List<? extends Callable<T>> tasks,
+            @NotNull String what
+    ) {
+        try {
+            List<T> results = new ArrayList<>(tasks.size());
+            for (Future<T> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(what + " interrupted!", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(what + " worker failed!", e.getCause());
+        }
+    }
+}
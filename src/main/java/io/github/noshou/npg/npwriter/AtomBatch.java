@@ -0,0 +1,152 @@
+package io.github.noshou.npg.npwriter;
+
+import io.github.noshou.npg.atom.Atom;
+import io.github.noshou.npg.lattice.LatticeSite;
+import org.apfloat.Apfloat;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import java.util.Arrays;
+
+/**
+ * A reusable, fixed-capacity batch of accepted atoms passed from a {@link SinkFanOut} to its {@link AtomSink}s.
+ * <p> Each entry holds the atom's 1-based {@code _atom_site.id}, its packed half-step site
+ * (see {@link LatticeSite}) and the basis {@link Atom} supplying element, charge and radius. Coordinates are
+ * derived from the site on demand, either as doubles for numeric sinks or as exact {@link Apfloat}s for text
+ * formats that must match the sweep output digit for digit.
+ * <p> The basis atoms are shared between entries and must be treated as read-only.
+ */
+public final class AtomBatch {
+
+    /** Atom ids (1-based). */
+    private final int[] ids;
+
+    /** Packed half-step sites. */
+    private final long[] sites;
+
+    /** Basis atom of each entry. */
+    private final Atom[] atoms;
+
+    /** Lattice constant (Å) used to convert half-step indices to Cartesian coordinates. */
+    private final @NotNull Apfloat lattice_constant;
+
+    /** Half the lattice constant as a double (Å). */
+    private final double half_step;
+
+    /** Number of valid entries. */
+    private int size = 0;
+
+    /**
+     * Constructs an empty batch.
+     * @param capacity         maximum number of entries, must be positive
+     * @param lattice_constant the lattice constant in Å, must not be null
+     */
+    public AtomBatch(int capacity, @NotNull Apfloat lattice_constant) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive!");
+        }
+        this.ids = new int[capacity];
+        this.sites = new long[capacity];
+        this.atoms = new Atom[capacity];
+        this.lattice_constant = lattice_constant;
+        this.half_step = lattice_constant.doubleValue() / 2;
+    }
+
+    /**
+     * Appends an entry.
+     * @param id   the 1-based atom id
+     * @param site the packed half-step site
+     * @param atom the basis atom occupying the site, must not be null
+     * @throws IllegalStateException if the batch is full
+     */
+    @Contract(mutates = "this")
+    void add(int id, long site, @NotNull Atom atom) {
+        if (size == ids.length) {
+            throw new IllegalStateException("Batch is full!");
+        }
+        ids[size] = id;
+        sites[size] = site;
+        atoms[size] = atom;
+        size++;
+    }
+
+    /** Removes all entries. */
+    @Contract(mutates = "this")
+    void clear() {
+        Arrays.fill(atoms, 0, size, null);
+        size = 0;
+    }
+
+    /** @return {@code true} if no more entries fit */
+    @Contract(pure = true)
+    boolean isFull() {
+        return size == ids.length;
+    }
+
+    /** @return number of entries in the batch */
+    @Contract(pure = true)
+    public int size() {
+        return this.size;
+    }
+
+    /** @return the 1-based atom id of entry {@code n} */
+    @Contract(pure = true)
+    public int id(int n) {
+        return ids[n];
+    }
+
+    /** @return the packed half-step site of entry {@code n} */
+    @Contract(pure = true)
+    public long site(int n) {
+        return sites[n];
+    }
+
+    /** @return the basis atom of entry {@code n} */
+    @Contract(pure = true)
+    public @NotNull Atom atom(int n) {
+        return atoms[n];
+    }
+
+    /** @return half the lattice constant in Å (the spacing of the half-step grid) */
+    @Contract(pure = true)
+    public double halfStep() {
+        return this.half_step;
+    }
+
+    /**
+     * Returns one Cartesian coordinate of entry {@code n} as a double.
+     * @param n    the entry index
+     * @param axis 0 for x, 1 for y, 2 for z
+     * @return the coordinate in Å
+     */
+    @Contract(pure = true)
+    public double cartesian(int n, int axis) {
+        return halfSteps(sites[n], axis) * half_step;
+    }
+
+    /**
+     * Returns one Cartesian coordinate of entry {@code n} exactly, as computed by the lattice sweep.
+     * @param n    the entry index
+     * @param axis 0 for x, 1 for y, 2 for z
+     * @return the coordinate in Å
+     */
+    @Contract(pure = true)
+    public @NotNull Apfloat cartesianExact(int n, int axis) {
+        return LatticeSite.toFractional(halfSteps(sites[n], axis)).multiply(lattice_constant);
+    }
+
+    /**
+     * Returns the half-step index of a packed site along one axis.
+     * @param site the packed site
+     * @param axis 0 for x, 1 for y, 2 for z
+     * @return the half-step index
+     */
+    @Contract(pure = true)
+    static int halfSteps(long site, int axis) {
+        return switch (axis) {
+            case 0 -> LatticeSite.i(site);
+            case 1 -> LatticeSite.j(site);
+            case 2 -> LatticeSite.k(site);
+            default -> throw new IllegalArgumentException("axis must be 0, 1 or 2!");
+        };
+    }
+}
@@ -0,0 +1,94 @@
+package io.github.noshou.npg.npwriter;
+
+import io.github.noshou.npg.shapes.Shape;
+import org.jetbrains.annotations.NotNull;
+import java.io.IOException;
+
+/**
+ * A consumer of the atoms produced by a single {@link Shape#build(io.github.noshou.npg.nporder.AtomOrdering, long, AtomSink...)}
+ * enumeration.
+ * <p> Sinks are driven by a {@link SinkFanOut}, which classifies the lattice once and forwards the accepted atoms
+ * to every sink in batches. Finalization is split into two phases so that several sinks can be finalized as a unit:
+ * <ol>
+ *     <li>{@link #prepare()} completes the output (trailers, flushing, syncing, closing, building in-memory
+ *     results) without publishing it; all work that can fail belongs here;</li>
+ *     <li>{@link #commit()} publishes the prepared output with a single cheap step (e.g. the atomic rename of a
+ *     temporary file, or handing out a result that has already been built).</li>
+ * </ol>
+ * If any sink fails before the commit phase, {@link #abort()} is called on every sink and nothing is committed.
+ * If a commit still fails, the sinks already committed are rolled back ({@link #rollback()}) and the others
+ * aborted, so a build publishes either all of its outputs or none.
+ */
+public interface AtomSink {
+
+    /**
+     * Called once before any atom is delivered.
+     * @param shape the shape being built, must not be null
+     * @throws IOException if writing headers fails
+     */
+    void begin(@NotNull Shape shape) throws IOException;
+
+    /**
+     * Receives the next batch of accepted atoms, in emission order.
+     * <p> The batch instance is reused by the caller; implementations must not keep a reference to it.
+     * @param batch the atoms, must not be null
+     * @throws IOException if writing fails
+     */
+    void accept(@NotNull AtomBatch batch) throws IOException;
+
+    /**
+     * Receives an in-bounds grid site that is not occupied by a lattice atom.
+     * <p> Only debugging sinks are interested in these; the default implementation ignores them.
+     * @param site the packed half-step site (see {@link io.github.noshou.npg.lattice.LatticeSite})
+     * @throws IOException if writing fails
+     */
+    default void acceptEmpty(long site) throws IOException {
+    }
+
+    /**
+     * Reports whether this sink wants to receive {@link #acceptEmpty(long)} calls.
+     * @return {@code true} if empty sites should be forwarded to this sink
+     */
+    default boolean wantsEmptySites() {
+        return false;
+    }
+
+    /**
+     * Receives the ligand anchors placed by a {@link LigandShell} around the particle, after the last batch of
+     * atoms and before {@link #prepare()}. Their ids continue those of the atoms.
+     * <p> Sinks that do not write anchors keep the default implementation, which ignores them.
+     * @param anchors the anchors, must not be null
+     * @throws IOException if writing fails
+     */
+    default void acceptAnchors(@NotNull LigandAnchors anchors) throws IOException {
+    }
+
+    /**
+     * Completes the output without publishing it. No atoms may be delivered afterwards.
+     * @throws IOException if completing the output fails
+     */
+    void prepare() throws IOException;
+
+    /**
+     * Publishes the prepared output. Only called after every sink of the build has been prepared successfully.
+     * <p> Implementations should do no more than publish what {@link #prepare()} completed, so that a commit can
+     * only fail for reasons outside the sink's control.
+     * @throws IOException if publishing fails
+     */
+    void commit() throws IOException;
+
+    /**
+     * Withdraws a committed output because another sink of the same build failed to commit. Only called after a
+     * successful {@link #commit()}.
+     * <p> The default does nothing, which suits sinks whose commit has no effect outside themselves.
+     * @throws IOException if withdrawing the output fails
+     */
+    default void rollback() throws IOException {
+    }
+
+    /**
+     * Discards all output. May be called at any stage, including after a failed commit.
+     * @throws IOException if cleaning up fails
+     */
+    void abort() throws IOException;
+}
@@ -0,0 +1,133 @@
+package io.github.noshou.npg.npwriter;
+
+import io.github.noshou.npg.atom.Atom;
+import io.github.noshou.npg.npsaxs.BeadModel;
+import io.github.noshou.npg.shapes.Shape;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import java.io.IOException;
+
+/**
+ * Coarse-grains a build into a {@link BeadModel} while the lattice is enumerated.
+ * <p> Sites are binned on their integer half-step indices, so bead weights are exact site counts, and only one
+ * accumulator per occupied voxel and element is kept: memory scales with the number of beads, not atoms. The
+ * voxel edge is rounded to a whole number of half steps ({@code a/2}) of the shape being built; the model is
+ * available through {@link #getModel()} once the build has committed.
+ */
+public class BeadModelSink implements AtomSink {
+
+    /** Requested voxel edge in Å. */
+    private final double voxel_size;
+
+    /** Builder of the current build, or null before {@link #begin(Shape)} and after abort. */
+    private @Nullable BeadModel.Builder builder = null;
+
+    /** The model built by {@link #prepare()}, not yet committed. */
+    private @Nullable BeadModel pending = null;
+
+    /** The committed model. */
+    private @Nullable BeadModel model = null;
+
+    /** Element index of the last basis atom seen, cached to skip the symbol lookup. */
+    private @Nullable Atom last_atom = null;
+    private int last_element = -1;
+
+    /**
+     * Constructs a sink.
+     * @param voxel_size voxel edge in Å, positive
+     */
+    public BeadModelSink(double voxel_size) {
+        if (!(voxel_size > 0) || Double.isInfinite(voxel_size)) {
+            throw new IllegalArgumentException("Voxel size must be positive!");
+        }
+        this.voxel_size = voxel_size;
+    }
+
+    /**
+     * Starts collecting a build.
+     * @param shape the shape being built, must not be null
+     */
+    @Override
+    public void begin(@NotNull Shape shape) {
+        double half_step = shape.getLatticeConstant().doubleValue() / 2;
+        this.builder = new BeadModel.Builder(half_step, BeadModel.Builder.voxelSteps(this.voxel_size, half_step));
+        this.pending = null;
+        this.model = null;
+        this.last_atom = null;
+    }
+
+    /**
+     * Adds the sites of a batch to their voxels.
+     * @param batch the atoms, must not be null
+     */
+    @Override
+    public void accept(@NotNull AtomBatch batch) {
+        BeadModel.Builder b = this.checkBuilder();
+        for (int n = 0; n < batch.size(); n++) {
+            Atom a = batch.atom(n);
+            if (a != last_atom) {
+                last_atom = a;
+                last_element = b.elementIndex(a.getElement());
+            }
+            b.addSite(last_element, batch.site(n));
+        }
+    }
+
+    /**
+     * Builds the model.
+     * @throws IOException never by this implementation; declared for subclasses
+     */
+    @Override
+    public void prepare() throws IOException {
+        if (this.pending == null) {
+            this.pending = this.checkBuilder().build();
+            this.builder = null;
+        }
+    }
+
+    /**
+     * Publishes the model built by {@link #prepare()}.
+     * @throws IOException never by this implementation; declared for subclasses
+     */
+    @Override
+    public void commit() throws IOException {
+        this.prepare();
+        this.model = this.pending;
+        this.pending = null;
+    }
+
+    /** Withdraws the committed model. */
+    @Override
+    public void rollback() {
+        this.model = null;
+    }
+
+    /** Discards the collected beads. */
+    @Override
+    public void abort() {
+        this.builder = null;
+        this.pending = null;
+        this.model = null;
+    }
+
+    /**
+     * Returns the coarse-grained particle.
+     * @return the bead model
+     * @throws IllegalStateException if no build has been committed
+     */
+    @Contract(pure = true)
+    public @NotNull BeadModel getModel() {
+        if (this.model == null) {
+            throw new IllegalStateException("No build has been committed!");
+        }
+        return this.model;
+    }
+
+    private @NotNull BeadModel.Builder checkBuilder() {
+        if (this.builder == null) {
+            throw new IllegalStateException("Sink has not been started!");
+        }
+        return this.builder;
+    }
+}
@@ -0,0 +1,89 @@
+package io.github.noshou.npg.npwriter;
+
+import io.github.noshou.npg.shapes.Shape;
+import org.jetbrains.annotations.NotNull;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Writes the Cartesian coordinates of a build as a flat little-endian {@code float32} array.
+ * <p> Layout ({@value #HEADER_BYTES}-byte header, then one record per atom in emission order):
+ * <pre>
+ *   offset  size  content
+ *   0       4     magic "NPGB"
+ *   4       4     format version (int32, currently 1)
+ *   8       8     atom count (int64)
+ *   16      8     half lattice constant in Å (float64)
+ *   24      12·N  x, y, z in Å (float32 each)
+ * </pre>
+ * With NumPy, for example: {@code np.fromfile(path, '<f4', offset=24).reshape(-1, 3)}.
+ */
+public class BinaryCoordsWriter extends ChannelFileWriter implements AtomSink {
+
+    /** File magic. */
+    private static final byte[] MAGIC = {'N', 'P', 'G', 'B'};
+
+    /** Format version. */
+    private static final int VERSION = 1;
+
+    /** Header size in bytes. */
+    public static final int HEADER_BYTES = 24;
+
+    /** Number of atoms written. */
+    private long count = 0;
+
+    /** Half lattice constant of the shape being built. */
+    private double half_step = 0;
+
+    /**
+     * Constructs a writer for a `.bin` file.
+     * @param file_name The base name of the output file (without extension).
+     * @throws IOException If the underlying file cannot be created or opened for writing.
+     */
+    public BinaryCoordsWriter(@NotNull String file_name) throws IOException {
+        super(file_name, ".bin");
+    }
+
+    /**
+     * Writes a provisional header; the atom count is patched in by {@link #prepare()}.
+     * @param shape the shape being built, must not be null
+     * @throws IOException If writing fails.
+     */
+    @Override
+    public void begin(@NotNull Shape shape) throws IOException {
+        this.half_step = shape.getLatticeConstant().doubleValue() / 2;
+        ByteBuffer b = reserve(HEADER_BYTES);
+        b.put(MAGIC);
+        b.putInt(VERSION);
+        b.putLong(0);
+        b.putDouble(this.half_step);
+    }
+
+    /**
+     * Appends the coordinates of a batch.
+     * @param batch the atoms, must not be null
+     * @throws IOException If writing fails.
+     */
+    @Override
+    public void accept(@NotNull AtomBatch batch) throws IOException {
+        for (int n = 0; n < batch.size(); n++) {
+            ByteBuffer b = reserve(12);
+            b.putFloat((float) batch.cartesian(n, 0));
+            b.putFloat((float) batch.cartesian(n, 1));
+            b.putFloat((float) batch.cartesian(n, 2));
+        }
+        count += batch.size();
+    }
+
+    /**
+     * Patches the atom count into the header.
+     * @throws IOException If writing fails.
+     */
+    @Override
+    protected void writeTrailer() throws IOException {
+        ByteBuffer header_count = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        header_count.putLong(count).flip();
+        writeAt(8, header_count);
+    }
+}
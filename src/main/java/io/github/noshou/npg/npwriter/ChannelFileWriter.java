@@ -0,0 +1,183 @@
+package io.github.noshou.npg.npwriter;
+
+import org.jetbrains.annotations.NotNull;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Byte-oriented counterpart of {@link FileWriter} for binary outputs and for text outputs whose header can only
+ * be completed at the end (e.g. an atom count).
+ * <p> Content is staged in a little-endian {@link ByteBuffer} and written to a temporary file (with `.tmp`
+ * extension) through a {@link FileChannel}, which also allows headers to be patched in place. As with
+ * {@link FileWriter}, the file is only renamed to its final name once it is complete.
+ */
+abstract class ChannelFileWriter {
+
+    /** Size of the staging buffer. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** The full file name including the extension (excluding `.tmp` suffix during writing). */
+    private final String file_name;
+
+    /** Channel to the temporary file. */
+    protected final FileChannel channel;
+
+    /** Little-endian staging buffer. Subclasses obtain it through {@link #reserve(int)}. */
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+    /** Flag indicating whether the file has been prepared (no more content may be written). */
+    protected boolean is_finished = false;
+
+    /** Flag indicating whether the file has been published under its final name. */
+    private boolean is_committed = false;
+
+    /**
+     * Constructs a writer that writes to a temporary file.
+     * The final file will be named {@code file_name + extension}.
+     * @param file_name The base name of the file (without extension).
+     * @param extension The extension to append (e.g., ".xyz", ".bin").
+     * @throws IOException If the temporary file cannot be created or opened.
+     */
+    public ChannelFileWriter(
+            @NotNull String file_name,
+            @NotNull String extension
+    ) throws IOException {
+        this.file_name = file_name + extension;
+        Path temp_path = Paths.get(this.file_name + ".tmp");
+        this.channel = FileChannel.open(
+                temp_path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE
+        );
+    }
+
+    /**
+     * Returns the staging buffer with at least {@code bytes} bytes remaining, flushing it if needed.
+     * @param bytes number of bytes about to be written (at most the buffer size)
+     * @return the staging buffer, positioned for writing
+     * @throws IOException If flushing fails.
+     */
+    protected @NotNull ByteBuffer reserve(int bytes) throws IOException {
+        if (is_finished) {
+            throw new IllegalStateException("Writer has already been finalized!");
+        }
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+        return buffer;
+    }
+
+    /**
+     * Writes ASCII text through the staging buffer.
+     * @param text the text to write; characters outside ASCII are not supported
+     * @throws IOException If writing fails.
+     */
+    protected void writeAscii(@NotNull CharSequence text) throws IOException {
+        for (int c = 0; c < text.length(); c++) {
+            reserve(1).put((byte) text.charAt(c));
+        }
+    }
+
+    /**
+     * Overwrites bytes at an absolute position of the file (after flushing pending content).
+     * @param position the file offset
+     * @param src      the bytes to write
+     * @throws IOException If writing fails.
+     */
+    protected void writeAt(long position, @NotNull ByteBuffer src) throws IOException {
+        flush();
+        while (src.hasRemaining()) {
+            position += channel.write(src, position);
+        }
+    }
+
+    /**
+     * Writes all staged bytes to the channel.
+     */
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Writes content that can only be produced once all data is known (e.g. counts in a header).
+     * <p> Called exactly once by {@link #prepare()}, before the channel is closed. The default writes nothing.
+     * @throws IOException If writing fails.
+     */
+    protected void writeTrailer() throws IOException {
+    }
+
+    /**
+     * Completes the temporary file without publishing it: writes any trailer, forces the content to the storage
+     * device and closes the channel, so {@link #commit()} only has to rename the file. Calling it more than once
+     * has no effect.
+     * @throws IOException If the trailer cannot be written or the channel cannot be synced or closed.
+     */
+    public void prepare() throws IOException {
+        if (!is_finished) {
+            writeTrailer();
+            flush();
+            channel.force(true);
+            channel.close();
+            is_finished = true;
+        }
+    }
+
+    /**
+     * Publishes a prepared file by atomically renaming it to its final name, replacing any existing file.
+     * @throws IOException If the file cannot be prepared or moved.
+     */
+    public void commit() throws IOException {
+        if (!is_committed) {
+            prepare();
+            Files.move(
+                    Paths.get(this.file_name + ".tmp"),
+                    Paths.get(this.file_name),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING
+            );
+            is_committed = true;
+        }
+    }
+
+    /**
+     * Withdraws a committed file by deleting it, e.g. because another output of the same build failed to commit.
+     * <p> A file it replaced is not restored. Has no effect if the file has not been committed.
+     * @throws IOException If the file cannot be deleted.
+     */
+    public void rollback() throws IOException {
+        if (is_committed) {
+            Files.deleteIfExists(Paths.get(this.file_name));
+            is_committed = false;
+        }
+    }
+
+    /**
+     * Finalizes and renames the file to its intended name.
+     * @throws IOException If the temporary file cannot be closed or moved.
+     */
+    public void writeFile() throws IOException {
+        commit();
+    }
+
+    /**
+     * Aborts the build and deletes the temporary file.
+     * @throws IOException If the temporary file cannot be deleted.
+     */
+    public void abort() throws IOException {
+        is_finished = true;
+        channel.close();
+        Files.deleteIfExists(Paths.get(this.file_name + ".tmp"));
+    }
+}
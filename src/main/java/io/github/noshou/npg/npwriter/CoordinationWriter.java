@@ -0,0 +1,156 @@
+package io.github.noshou.npg.npwriter;
+
+import io.github.noshou.npg.lattice.SiteCoordination;
+import io.github.noshou.npg.shapes.Shape;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Computes the coordination of every atom of a build (see {@link SiteCoordination}) and writes it to a `.coord`
+ * side file next to the structure.
+ * <p> The file starts with the identification of the shape and a key/value summary: atom counts per site class
+ * (vertex, edge, facet, bulk), the coordination histogram ({@code cn_<CN>}) and the non-empty bins of the
+ * generalised coordination histogram ({@code gcn_<GCN>}). It then lists {@code id CN GCN} for every atom, in
+ * emission order, so the columns can be joined to the CIF by {@code _atom_site.id}. Only packed sites and ids are
+ * kept during the build, 12 bytes per atom.
+ */
+public class CoordinationWriter extends FileWriter implements AtomSink {
+
+    /** Generalised coordination numbers {@code g / 12} as written, indexed by {@code g}. */
+    private static final String[] GCN_LABELS = new String[SiteCoordination.FCC_NEIGHBOURS
+            * SiteCoordination.FCC_NEIGHBOURS + 1];
+
+    static {
+        for (int g = 0; g < GCN_LABELS.length; g++) {
+            GCN_LABELS[g] = String.format(Locale.ROOT, "%.3f", g / (double) SiteCoordination.FCC_NEIGHBOURS);
+        }
+    }
+
+    /** Number of worker threads of the analysis. */
+    private final int threads;
+
+    /** Ids and packed sites of the atoms seen. */
+    private int[] ids = new int[1024];
+    private long[] sites = new long[1024];
+    private int count = 0;
+
+    /** The coordination, once the file has been prepared. */
+    private @Nullable SiteCoordination coordination = null;
+
+    /**
+     * Constructs a writer for a `.coord` file using all available processors.
+     * @param file_name The base name of the output file (without extension).
+     * @throws IOException If the underlying file cannot be created or opened for writing.
+     */
+    public CoordinationWriter(@NotNull String file_name) throws IOException {
+        this(file_name, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a writer for a `.coord` file.
+     * @param file_name The base name of the output file (without extension).
+     * @param threads   The number of worker threads of the analysis, positive.
+     * @throws IOException If the underlying file cannot be created or opened for writing.
+     */
+    public CoordinationWriter(@NotNull String file_name, int threads) throws IOException {
+        super(file_name, ".coord");
+        if (threads < 1) {
+            this.abort();
+            throw new IllegalArgumentException("Thread count must be positive!");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Writes the identification header of the coordination file.
+     * @param initializer the {@link Shape} being built
+     * @throws IOException              If writing fails.
+     * @throws IllegalArgumentException If {@code initializer} is not a {@link Shape}.
+     */
+    @Override
+    @Contract("null -> fail")
+    public void init(@Nullable Object initializer) throws IOException {
+        if (!(initializer instanceof Shape s)) {
+            throw new IllegalArgumentException("initializer must be of type Shapes.Shape!");
+        }
+        writer.write("structure_index\t" + s.getStructureIndex() + "\n");
+        writer.write("structure_name\t" + s.getStructureName() + "\n");
+        writer.write("lattice_constant\t" + s.getLatticeConstant() + "\n");
+        writer.write("radius\t" + s.getRadius() + "\n");
+    }
+
+    /**
+     * Writes the identification header for a build.
+     * @param shape the shape being built, must not be null
+     * @throws IOException If writing fails.
+     */
+    @Override
+    public void begin(@NotNull Shape shape) throws IOException {
+        this.init(shape);
+    }
+
+    /**
+     * Collects the ids and sites of a batch.
+     * @param batch the atoms, must not be null
+     */
+    @Override
+    public void accept(@NotNull AtomBatch batch) {
+        if (this.count + batch.size() > this.ids.length) {
+            int capacity = Math.max(this.count + batch.size(), this.ids.length + (this.ids.length >> 1));
+            this.ids = Arrays.copyOf(this.ids, capacity);
+            this.sites = Arrays.copyOf(this.sites, capacity);
+        }
+        for (int n = 0; n < batch.size(); n++) {
+            this.ids[this.count] = batch.id(n);
+            this.sites[this.count] = batch.site(n);
+            this.count++;
+        }
+    }
+
+    /**
+     * Computes the coordination and writes the summary and the per-atom table.
+     * @throws IOException If writing fails.
+     */
+    @Override
+    protected void writeTrailer() throws IOException {
+        SiteCoordination c = SiteCoordination.compute(this.sites, this.count, this.threads);
+        this.coordination = c;
+        writer.write("atom_count\t" + this.count + "\n");
+        for (SiteCoordination.SiteClass site_class : SiteCoordination.SiteClass.values()) {
+            writer.write(site_class.name().toLowerCase(Locale.ROOT) + "_atoms\t" + c.count(site_class) + "\n");
+        }
+        long[] cn = c.coordinationHistogram();
+        for (int k = 0; k < cn.length; k++) {
+            writer.write("cn_" + k + "\t" + cn[k] + "\n");
+        }
+        long[] gcn = c.generalizedHistogram();
+        for (int g = 0; g < gcn.length; g++) {
+            if (gcn[g] > 0) {
+                writer.write("gcn_" + GCN_LABELS[g] + "\t" + gcn[g] + "\n");
+            }
+        }
+        writer.write("atoms\tid cn gcn\n");
+        for (int n = 0; n < this.count; n++) {
+            writer.write(this.ids[n] + "\t" + c.coordination(n) + "\t" + GCN_LABELS[c.generalizedSum(n)] + "\n");
+        }
+        this.ids = new int[0];
+        this.sites = new long[0];
+    }
+
+    /**
+     * Returns the coordination of the build.
+     * @return the coordination, indexed by emission order
+     * @throws IllegalStateException if the file has not been prepared
+     */
+    @Contract(pure = true)
+    public @NotNull SiteCoordination getCoordination() {
+        if (this.coordination == null) {
+            throw new IllegalStateException("Coordination is only known once the file has been prepared!");
+        }
+        return this.coordination;
+    }
+}
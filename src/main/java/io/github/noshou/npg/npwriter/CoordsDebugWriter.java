@@ -1,5 +1,7 @@
 package io.github.noshou.npg.npwriter;
 
+import io.github.noshou.npg.lattice.LatticeSite;
+import io.github.noshou.npg.shapes.Shape;
 import org.apfloat.Apfloat;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
@@ -11,8 +13,13 @@ import java.io.IOException;
  * <p>
  * The output contains both fractional and Cartesian coordinates, along with
  * an occupancy flag. This is primarily used for diagnostics or visualization.
+ * <p>
+ * As an {@link AtomSink}, the writer records both the atoms of a build and the in-bounds sites left empty.
  */
-public class CoordsDebugWriter extends FileWriter {
+public class CoordsDebugWriter extends FileWriter implements AtomSink {
+
+    /** Lattice constant of the shape being built (set by {@link #begin(Shape)}). */
+    private @Nullable Apfloat lattice_constant = null;
 
     /**
      * Constructs a {@code FileWriter.CoordsDebugWriter} that writes to a CSV file.
@@ -74,4 +81,64 @@ public class CoordsDebugWriter extends FileWriter {
         );
         writer.write(line);
     }
+
+    /**
+     * Initializes the CSV header for a build.
+     * @param shape the shape being built, must not be null
+     * @throws IOException If writing the header fails.
+     */
+    @Override
+    public void begin(@NotNull Shape shape) throws IOException {
+        this.lattice_constant = shape.getLatticeConstant();
+        this.init(null);
+    }
+
+    /**
+     * Appends every atom of a batch as an occupied site.
+     * @param batch the atoms, must not be null
+     * @throws IOException If writing to the file fails.
+     */
+    @Override
+    public void accept(@NotNull AtomBatch batch) throws IOException {
+        for (int n = 0; n < batch.size(); n++) {
+            this.addSite(batch.site(n), true);
+        }
+    }
+
+    /**
+     * Appends an in-bounds site that holds no atom.
+     * @param site the packed half-step site
+     * @throws IOException If writing to the file fails.
+     */
+    @Override
+    public void acceptEmpty(long site) throws IOException {
+        this.addSite(site, false);
+    }
+
+    /** @return always {@code true}: the debug log records empty sites */
+    @Override
+    public boolean wantsEmptySites() {
+        return true;
+    }
+
+    /**
+     * Appends a packed site, recomputing its exact fractional and Cartesian coordinates.
+     */
+    private void addSite(long site, boolean is_occupied) throws IOException {
+        if (this.lattice_constant == null) {
+            throw new IllegalStateException("begin() must be called before adding sites!");
+        }
+        Apfloat x_frac = LatticeSite.toFractional(LatticeSite.i(site));
+        Apfloat y_frac = LatticeSite.toFractional(LatticeSite.j(site));
+        Apfloat z_frac = LatticeSite.toFractional(LatticeSite.k(site));
+        this.addCoordinate(
+                x_frac,
+                y_frac,
+                z_frac,
+                x_frac.multiply(this.lattice_constant),
+                y_frac.multiply(this.lattice_constant),
+                z_frac.multiply(this.lattice_constant),
+                is_occupied
+        );
+    }
 }
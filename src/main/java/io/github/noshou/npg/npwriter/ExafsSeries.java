@@ -0,0 +1,181 @@
+package io.github.noshou.npg.npwriter;
+
+import io.github.noshou.npg.lattice.ShellCoordination;
+import io.github.noshou.npg.nporder.AtomOrdering;
+import io.github.noshou.npg.nputil.Workers;
+import io.github.noshou.npg.shapes.Shape;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Computes the EXAFS shell coordination numbers {@code N1}–{@code N4} (see {@link ShellCoordination}) of a series
+ * of shapes and sizes in one run.
+ * <p> {@link #run()} builds the candidates in parallel, one per worker thread, straight into memory: only the
+ * packed sites of a build are kept, no CIF is written or read. Results come back in the order the candidates were
+ * added and can be written as one table with {@link ExafsTableWriter}.
+ */
+public final class ExafsSeries {
+
+    private final int threads;
+    private final Map<String, Supplier<? extends Shape>> candidates = new LinkedHashMap<>();
+
+    /** Constructs a series using all available processors. */
+    public ExafsSeries() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a series.
+     * @param threads number of candidates processed at once, positive
+     */
+    public ExafsSeries(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be positive!");
+        }
+        this.threads = threads;
+    }
+
+    /**
+     * Adds a candidate.
+     * @param label unique name of the candidate, non-null
+     * @param shape creates the (unbuilt) shape; called once, on a worker thread
+     * @return this series
+     */
+    @Contract(value = "_, _ -> this", mutates = "this")
+    public @NotNull ExafsSeries add(@NotNull String label, @NotNull Supplier<? extends Shape> shape) {
+        if (this.candidates.putIfAbsent(label, shape) != null) {
+            throw new IllegalArgumentException("Duplicate candidate label: " + label + "!");
+        }
+        return this;
+    }
+
+    /**
+     * Adds one candidate per size, labelled {@code label_radius}.
+     * @param label base name of the shape, non-null
+     * @param shape creates the (unbuilt) shape for a radius
+     * @param radii the radii, in the unit the factory expects
+     * @return this series
+     */
+    @Contract(value = "_, _, _ -> this", mutates = "this")
+    public @NotNull ExafsSeries addSizes(
+            @NotNull String label,
+            @NotNull Function<String, ? extends Shape> shape,
+            @NotNull String @NotNull ... radii
+    ) {
+        for (String radius : radii) {
+            this.add(label + "_" + radius, () -> shape.apply(radius));
+        }
+        return this;
+    }
+
+    /**
+     * Builds every candidate and computes its shell coordination.
+     * @return the results, in the order the candidates were added
+     * @throws RuntimeException if a candidate fails or the run is interrupted
+     */
+    public @NotNull List<Result> run() {
+        int workers = Math.max(1, Math.min(this.threads, this.candidates.size()));
+        List<Callable<Result>> tasks = new ArrayList<>(this.candidates.size());
+        for (Map.Entry<String, Supplier<? extends Shape>> candidate : this.candidates.entrySet()) {
+            tasks.add(() -> evaluate(candidate.getKey(), candidate.getValue().get()));
+        }
+        return Workers.run(tasks, workers, "EXAFS series");
+    }
+
+    private static @NotNull Result evaluate(@NotNull String label, @NotNull Shape shape) {
+        SiteSink sink = new SiteSink();
+        shape.build(AtomOrdering.SWEEP, 0, sink);
+        return new Result(
+                label,
+                shape.getLatticeConstant().doubleValue(),
+                ShellCoordination.compute(sink.sites, sink.count, 1)
+        );
+    }
+
+    /**
+     * Collects the packed sites of a build.
+     */
+    private static final class SiteSink implements AtomSink {
+
+        private long[] sites = new long[1024];
+        private int count = 0;
+
+        @Override
+        public void begin(@NotNull Shape shape) {
+            this.count = 0;
+        }
+
+        @Override
+        public void accept(@NotNull AtomBatch batch) {
+            if (this.count + batch.size() > this.sites.length) {
+                int capacity = Math.max(this.count + batch.size(), this.sites.length + (this.sites.length >> 1));
+                this.sites = Arrays.copyOf(this.sites, capacity);
+            }
+            for (int n = 0; n < batch.size(); n++) {
+                this.sites[this.count++] = batch.site(n);
+            }
+        }
+
+        @Override
+        public void prepare() {
+        }
+
+        @Override
+        public void commit() {
+        }
+
+        @Override
+        public void abort() {
+            this.sites = new long[0];
+            this.count = 0;
+        }
+    }
+
+    /**
+     * Shell coordination of one candidate.
+     */
+    public static final class Result {
+
+        private final @NotNull String label;
+        private final double lattice_constant;
+        private final @NotNull ShellCoordination coordination;
+
+        private Result(@NotNull String label, double lattice_constant, @NotNull ShellCoordination coordination) {
+            this.label = label;
+            this.lattice_constant = lattice_constant;
+            this.coordination = coordination;
+        }
+
+        /** @return the candidate label */
+        @Contract(pure = true)
+        public @NotNull String getLabel() {
+            return this.label;
+        }
+
+        /** @return the lattice constant of the built particle in Å */
+        @Contract(pure = true)
+        public double getLatticeConstant() {
+            return this.lattice_constant;
+        }
+
+        /** @return number of atoms of the built particle */
+        @Contract(pure = true)
+        public long getAtomCount() {
+            return this.coordination.atomCount();
+        }
+
+        /** @return the shell coordination of the built particle */
+        @Contract(pure = true)
+        public @NotNull ShellCoordination getCoordination() {
+            return this.coordination;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package io.github.noshou.npg.npwriter;
+
+import io.github.noshou.npg.lattice.ShellCoordination;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Writes the results of an {@link ExafsSeries} as a `.csv` table.
+ * <p> One row per candidate with columns {@code label, atoms, lattice_constant, N1, N2, N3, N4}; the shell radii
+ * are {@code a/√2, a, a·√(3/2), a·√2} (see {@link ShellCoordination}).
+ */
+public class ExafsTableWriter extends FileWriter {
+
+    /**
+     * Constructs a writer for a `.csv` file.
+     * @param file_name The base name of the output file (without extension).
+     * @throws IOException If the underlying file cannot be created or opened for writing.
+     */
+    public ExafsTableWriter(@NotNull String file_name) throws IOException {
+        super(file_name, ".csv");
+    }
+
+    /**
+     * Writes the whole table.
+     * @param initializer the {@link List} of {@link ExafsSeries.Result}s to write
+     * @throws IOException              If writing fails.
+     * @throws IllegalArgumentException If {@code initializer} is not a list of series results.
+     */
+    @Override
+    @Contract("null -> fail")
+    public void init(@Nullable Object initializer) throws IOException {
+        if (!(initializer instanceof List<?> results)) {
+            throw new IllegalArgumentException("initializer must be a List of ExafsSeries.Result!");
+        }
+        writer.write("\"label\",\"atoms\",\"lattice_constant\"");
+        for (int s = 1; s <= ShellCoordination.SHELLS; s++) {
+            writer.write(",\"N" + s + "\"");
+        }
+        writer.write("\n");
+        for (Object o : results) {
+            if (!(o instanceof ExafsSeries.Result r)) {
+                throw new IllegalArgumentException("initializer must be a List of ExafsSeries.Result!");
+            }
+            StringBuilder row = new StringBuilder(String.format(
+                    Locale.ROOT,
+                    "\"%s\",%d,%s",
+                    r.getLabel().replace("\"", "\"\""), r.getAtomCount(), r.getLatticeConstant()
+            ));
+            for (int s = 1; s <= ShellCoordination.SHELLS; s++) {
+                row.append(',').append(r.getCoordination().average(s));
+            }
+            writer.write(row.append('\n').toString());
+        }
+    }
+
+    /**
+     * Writes series results to {@code file_name.csv}.
+     * @param file_name the base name of the output file, non-null
+     * @param results   the results, non-null
+     * @throws IOException If the file cannot be written (nothing is published in that case).
+     */
+    public static void write(@NotNull String file_name, @NotNull List<ExafsSeries.Result> results) throws IOException {
+        ExafsTableWriter file = new ExafsTableWriter(file_name);
+        try {
+            file.init(results);
+            file.writeFile();
+        } catch (IOException | RuntimeException e) {
+            try {
+                file.abort();
+            } catch (IOException ex2) {
+                e.addSuppressed(ex2);
+            }
+            throw e;
+        }
+    }
+}
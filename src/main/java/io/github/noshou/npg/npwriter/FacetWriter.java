@@ -0,0 +1,302 @@
+package io.github.noshou.npg.npwriter;
+
+import io.github.noshou.npg.shapes.Shape;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Labels the surface atoms of a build with the faces of the shape they lie on and writes a `.facets` side file.
+ * <p> The faces are the bounding planes of the shape ({@link Shape#getFacePlanes()}). An atom lies on a face if it
+ * is in the outermost lattice layer below the face plane: {@code d − δ < n·r}, where {@code δ} is the spacing of
+ * the FCC lattice planes of the face's Miller indices ({@code a/√(h²+k²+l²)} for unmixed,
+ * {@code a/(2√(h²+k²+l²))} for mixed parity), or that of the (111) planes for faces without small Miller indices.
+ * Atoms on one face are face atoms, atoms on two faces edge atoms and atoms on three or more faces vertex atoms.
+ * Labelling happens while the lattice is classified, so the sink keeps nothing per atom.
+ * <p> The file lists the faces (index, Miller indices {@code h k l} or {@code ? ? ?}, unit normal, plane distance),
+ * then one row {@code id class faces} per surface atom in emission order, e.g. {@code 812 edge 3,7}, and finally
+ * the atom counts per face ({@code face_<index>}: atoms on the face only, and including its edges and vertices),
+ * per edge ({@code edge_<f>_<g>} with {@code f < g}, in ascending order of {@code (f, g)}) and per class. Curved
+ * shapes have no faces, and no atom is labelled.
+ */
+public class FacetWriter extends FileWriter implements AtomSink {
+
+    /** Largest Miller index tried when indexing a face normal. */
+    public static final int MAX_MILLER_INDEX = 12;
+
+    /** Largest angle (rad) between a face normal and its Miller direction. */
+    private static final double MILLER_TOLERANCE = 1e-6;
+
+    /** Margin (Å) that keeps the next layer below a face out of its surface band despite rounding. */
+    private static final double LAYER_TOLERANCE = 1e-4;
+
+    /** Face planes {n_x, n_y, n_z, d}, set by {@link #begin(Shape)}. */
+    private List<double @NotNull []> planes = List.of();
+
+    /** Miller indices of every face, or null for a face without small indices. */
+    private final List<int @Nullable []> miller = new ArrayList<>();
+
+    /** Surface layer thickness of every face in Å. */
+    private double[] layer = new double[0];
+
+    /** Atoms on each face only, and on each face including its edges and vertices. */
+    private long[] face_only = new long[0];
+    private long[] face_total = new long[0];
+
+    /** Atoms per pair of faces, keyed by {@link #edgeKey(int, int)}, so that edges sort by {@code (f, g)}. */
+    private final Map<Long, Long> edges = new TreeMap<>();
+
+    /** Number of edge and vertex atoms. */
+    private long edge_atoms = 0, vertex_atoms = 0;
+
+    /** Faces of the current atom. */
+    private int[] on = new int[0];
+
+    /**
+     * Constructs a writer for a `.facets` file.
+     * @param file_name The base name of the output file (without extension).
+     * @throws IOException If the underlying file cannot be created or opened for writing.
+     */
+    public FacetWriter(@NotNull String file_name) throws IOException {
+        super(file_name, ".facets");
+    }
+
+    /**
+     * Indexes the faces of a shape and writes the identification header and the face table.
+     * @param initializer the {@link Shape} being built
+     * @throws IOException              If writing fails.
+     * @throws IllegalArgumentException If {@code initializer} is not a {@link Shape}.
+     */
+    @Override
+    @Contract("null -> fail")
+    public void init(@Nullable Object initializer) throws IOException {
+        if (!(initializer instanceof Shape s)) {
+            throw new IllegalArgumentException("initializer must be of type Shapes.Shape!");
+        }
+        double a = s.getLatticeConstant().doubleValue();
+        this.planes = s.getFacePlanes();
+        int faces = this.planes.size();
+        this.layer = new double[faces];
+        this.face_only = new long[faces];
+        this.face_total = new long[faces];
+        this.on = new int[faces];
+        this.miller.clear();
+        this.edges.clear();
+        this.edge_atoms = 0;
+        this.vertex_atoms = 0;
+        writer.write("structure_index\t" + s.getStructureIndex() + "\n");
+        writer.write("structure_name\t" + s.getStructureName() + "\n");
+        writer.write("lattice_constant\t" + s.getLatticeConstant() + "\n");
+        writer.write("radius\t" + s.getRadius() + "\n");
+        writer.write("face_count\t" + faces + "\n");
+        for (int f = 0; f < faces; f++) {
+            double[] p = this.planes.get(f);
+            int[] hkl = millerIndices(p);
+            this.miller.add(hkl);
+            this.layer[f] = layerSpacing(hkl, a);
+            writer.write(String.format(
+                    Locale.ROOT,
+                    "face\t%d %s %.6f %.6f %.6f %.6f\n",
+                    f, hkl == null ? "? ? ?" : hkl[0] + " " + hkl[1] + " " + hkl[2], p[0], p[1], p[2], p[3]
+            ));
+        }
+        writer.write("atoms\tid class faces\n");
+    }
+
+    /**
+     * Indexes the faces of a shape and writes the header for a build.
+     * @param shape the shape being built, must not be null
+     * @throws IOException If writing fails.
+     */
+    @Override
+    public void begin(@NotNull Shape shape) throws IOException {
+        this.init(shape);
+    }
+
+    /**
+     * Labels the atoms of a batch and writes a row for every surface atom.
+     * @param batch the atoms, must not be null
+     * @throws IOException If writing fails.
+     */
+    @Override
+    public void accept(@NotNull AtomBatch batch) throws IOException {
+        int faces = this.planes.size();
+        if (faces == 0) {
+            return;
+        }
+        StringBuilder row = new StringBuilder();
+        for (int n = 0; n < batch.size(); n++) {
+            double x = batch.cartesian(n, 0), y = batch.cartesian(n, 1), z = batch.cartesian(n, 2);
+            int count = 0;
+            for (int f = 0; f < faces; f++) {
+                double[] p = this.planes.get(f);
+                if (p[0] * x + p[1] * y + p[2] * z > p[3] - this.layer[f] + LAYER_TOLERANCE) {
+                    this.on[count++] = f;
+                }
+            }
+            if (count == 0) {
+                continue;
+            }
+            for (int c = 0; c < count; c++) {
+                this.face_total[this.on[c]]++;
+            }
+            String label;
+            if (count == 1) {
+                this.face_only[this.on[0]]++;
+                label = "face";
+            } else if (count == 2) {
+                this.edge_atoms++;
+                this.edges.merge(edgeKey(this.on[0], this.on[1]), 1L, Long::sum);
+                label = "edge";
+            } else {
+                this.vertex_atoms++;
+                label = "vertex";
+            }
+            row.setLength(0);
+            row.append(batch.id(n)).append('\t').append(label).append('\t');
+            for (int c = 0; c < count; c++) {
+                row.append(c == 0 ? "" : ",").append(this.on[c]);
+            }
+            writer.write(row.append('\n').toString());
+        }
+    }
+
+    /**
+     * Writes the atom counts per face, edge and class.
+     * @throws IOException If writing fails.
+     */
+    @Override
+    protected void writeTrailer() throws IOException {
+        for (int f = 0; f < this.planes.size(); f++) {
+            writer.write("face_" + f + "\t" + this.face_only[f] + " " + this.face_total[f] + "\n");
+        }
+        for (Map.Entry<Long, Long> e : this.edges.entrySet()) {
+            long key = e.getKey();
+            writer.write("edge_" + (key >>> 32) + "_" + (int) key + "\t" + e.getValue() + "\n");
+        }
+        writer.write("face_atoms\t" + this.getFaceAtomCount() + "\n");
+        writer.write("edge_atoms\t" + this.edge_atoms + "\n");
+        writer.write("vertex_atoms\t" + this.vertex_atoms + "\n");
+    }
+
+    /** @return number of faces of the shape */
+    @Contract(pure = true)
+    public int getFaceCount() {
+        return this.planes.size();
+    }
+
+    /**
+     * @param face face index
+     * @return its Miller indices {h, k, l} with the sign of the outward normal, or null if the normal has no
+     *         indices up to {@value #MAX_MILLER_INDEX}
+     */
+    @Contract(pure = true)
+    public int @Nullable [] getMillerIndices(int face) {
+        int[] hkl = this.miller.get(face);
+        return hkl == null ? null : hkl.clone();
+    }
+
+    /**
+     * @param face face index
+     * @return number of atoms on that face and no other
+     */
+    @Contract(pure = true)
+    public long getFaceOnlyCount(int face) {
+        return this.face_only[face];
+    }
+
+    /**
+     * @param face face index
+     * @return number of atoms on that face, including those on its edges and vertices
+     */
+    @Contract(pure = true)
+    public long getFaceTotalCount(int face) {
+        return this.face_total[face];
+    }
+
+    /** @return atom count per pair of faces, keyed by {@link #edgeKey(int, int)} in ascending order, read-only */
+    @Contract(pure = true)
+    public @NotNull Map<Long, Long> getEdgeCounts() {
+        return Collections.unmodifiableMap(this.edges);
+    }
+
+    /**
+     * @param f the lower face index
+     * @param g the higher face index
+     * @return the key of the edge between faces {@code f} and {@code g} in {@link #getEdgeCounts()},
+     *         {@code f << 32 | g}
+     */
+    @Contract(pure = true)
+    public static long edgeKey(int f, int g) {
+        return (long) f << 32 | g;
+    }
+
+    /** @return number of atoms on exactly one face */
+    @Contract(pure = true)
+    public long getFaceAtomCount() {
+        long sum = 0;
+        for (long c : this.face_only) {
+            sum += c;
+        }
+        return sum;
+    }
+
+    /** @return number of atoms on exactly two faces */
+    @Contract(pure = true)
+    public long getEdgeAtomCount() {
+        return this.edge_atoms;
+    }
+
+    /** @return number of atoms on three or more faces */
+    @Contract(pure = true)
+    public long getVertexAtomCount() {
+        return this.vertex_atoms;
+    }
+
+    /**
+     * Finds the smallest integer direction parallel to a face normal.
+     * @param plane the plane {n_x, n_y, n_z, d}, non-null
+     * @return {h, k, l} with no common divisor, or null if there is none up to {@link #MAX_MILLER_INDEX}
+     */
+    @Contract(pure = true)
+    static int @Nullable [] millerIndices(double @NotNull [] plane) {
+        double largest = Math.max(Math.abs(plane[0]), Math.max(Math.abs(plane[1]), Math.abs(plane[2])));
+        for (int m = 1; m <= MAX_MILLER_INDEX; m++) {
+            int[] hkl = new int[3];
+            double dot = 0, length = 0;
+            for (int c = 0; c < 3; c++) {
+                hkl[c] = (int) Math.round(plane[c] / largest * m);
+                dot += hkl[c] * plane[c];
+                length += hkl[c] * hkl[c];
+            }
+            double cosine = dot / Math.sqrt(length);
+            if (length > 0 && Math.acos(Math.min(1, cosine)) < MILLER_TOLERANCE) {
+                int g = gcd(Math.abs(hkl[0]), gcd(Math.abs(hkl[1]), Math.abs(hkl[2])));
+                return new int[]{hkl[0] / g, hkl[1] / g, hkl[2] / g};
+            }
+        }
+        return null;
+    }
+
+    /** @return the spacing of the FCC lattice planes {@code (hkl)} in Å, or of the (111) planes if unknown */
+    @Contract(pure = true)
+    private static double layerSpacing(int @Nullable [] hkl, double a) {
+        if (hkl == null) {
+            return a / Math.sqrt(3);
+        }
+        int odd = (hkl[0] & 1) + (hkl[1] & 1) + (hkl[2] & 1);
+        double spacing = a / Math.sqrt(hkl[0] * hkl[0] + hkl[1] * hkl[1] + hkl[2] * hkl[2]);
+        return odd == 3 ? spacing : spacing / 2;
+    }
+
+    private static int gcd(int a, int b) {
+        return b == 0 ? Math.max(a, 1) : gcd(b, a % b);
+    }
+}
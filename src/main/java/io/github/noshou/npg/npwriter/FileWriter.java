@@ -4,10 +4,12 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 
 /**
  * An abstract base class for safely building files with atomic finalization.
@@ -24,9 +26,12 @@ abstract class FileWriter {
     /** Writer for the temporary file. Accessible to subclasses for writing content. */
     protected final BufferedWriter writer;
 
-    /** Flag indicating whether {@link #writeFile()} has been called. */
+    /** Flag indicating whether the file has been prepared (no more content may be written). */
     protected boolean is_finished = false;
 
+    /** Flag indicating whether the file has been published under its final name. */
+    private boolean is_committed = false;
+
     /**
      * Constructs a file builder that writes to a temporary file.
      * The final file will be named {@code file_name + extension}.
@@ -56,25 +61,72 @@ abstract class FileWriter {
     }
 
     /**
-     * Finalizes and renames the file to its intended name, replacing any existing file.
-     * <p>
-     * This method performs an atomic move to ensure that the file either fully exists or
-     * not at all. It is safe to call this method only once.
-     * @throws IOException If the temporary file cannot be closed or moved.
+     * Completes the temporary file without publishing it: writes any trailer, closes the writer and forces the
+     * content to the storage device.
+     * <p> After this call no more content may be written, and {@link #commit()} only has to rename the file.
+     * Calling it more than once has no effect.
+     * @throws IOException If the trailer cannot be written or the file cannot be closed or synced.
      */
-    public void writeFile() throws IOException {
+    public void prepare() throws IOException {
         if (!is_finished) {
+            writeTrailer();
             writer.close();
+            try (FileChannel channel = FileChannel.open(Paths.get(this.file_name + ".tmp"), StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            is_finished = true;
+        }
+    }
+
+    /**
+     * Publishes a prepared file by atomically renaming it to its final name, replacing any existing file.
+     * <p> Prepares the file first if necessary. Calling it more than once has no effect.
+     * @throws IOException If the file cannot be prepared or moved.
+     */
+    public void commit() throws IOException {
+        if (!is_committed) {
+            prepare();
             Files.move(
                     Paths.get(this.file_name + ".tmp"),
                     Paths.get(this.file_name),
                     StandardCopyOption.ATOMIC_MOVE,
                     StandardCopyOption.REPLACE_EXISTING
             );
-            is_finished = true;
+            is_committed = true;
         }
     }
 
+    /**
+     * Withdraws a committed file by deleting it, e.g. because another output of the same build failed to commit.
+     * <p> A file it replaced is not restored. Has no effect if the file has not been committed.
+     * @throws IOException If the file cannot be deleted.
+     */
+    public void rollback() throws IOException {
+        if (is_committed) {
+            Files.deleteIfExists(Paths.get(this.file_name));
+            is_committed = false;
+        }
+    }
+
+    /**
+     * Finalizes and renames the file to its intended name, replacing any existing file.
+     * <p>
+     * This method performs an atomic move to ensure that the file either fully exists or
+     * not at all. It is safe to call this method only once.
+     * @throws IOException If the temporary file cannot be closed or moved.
+     */
+    public void writeFile() throws IOException {
+        commit();
+    }
+
+    /**
+     * Writes content that can only be produced once all data is known (e.g. summaries).
+     * <p> Called exactly once by {@link #prepare()}, before the writer is closed. The default writes nothing.
+     * @throws IOException If writing fails.
+     */
+    protected void writeTrailer() throws IOException {
+    }
+
     /**
      * Initializes the builder's output by writing metadata or headers.
      * <p>
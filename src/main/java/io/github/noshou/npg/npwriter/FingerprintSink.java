@@ -0,0 +1,120 @@
+package io.github.noshou.npg.npwriter;
+
+import io.github.noshou.npg.npreader.ParticleFingerprint;
+import io.github.noshou.npg.shapes.Shape;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import java.io.IOException;
+
+/**
+ * Fingerprints a build while the lattice is enumerated (see {@link ParticleFingerprint}).
+ * <p> Only the running hashes are kept, so the sink adds no per-atom memory to a build; combined with other sinks
+ * it identifies a particle whose atoms are identical to those of an earlier build. The fingerprint is available
+ * through {@link #getFingerprint()} once the build has committed.
+ */
+public class FingerprintSink implements AtomSink {
+
+    /** Whether to fingerprint up to the cubic point group. */
+    private final boolean canonical;
+
+    /** Accumulator of the current build, or null before {@link #begin(Shape)} and after abort. */
+    private ParticleFingerprint.@Nullable Accumulator accumulator = null;
+
+    /** The fingerprint taken by {@link #prepare()}, not yet committed. */
+    private @Nullable ParticleFingerprint pending = null;
+
+    /** The committed fingerprint. */
+    private @Nullable ParticleFingerprint fingerprint = null;
+
+    /**
+     * Constructs a sink.
+     * @param canonical whether to fingerprint up to the cubic point group
+     */
+    public FingerprintSink(boolean canonical) {
+        this.canonical = canonical;
+    }
+
+    /**
+     * Starts fingerprinting a build.
+     * @param shape the shape being built, must not be null
+     */
+    @Override
+    public void begin(@NotNull Shape shape) {
+        this.accumulator = new ParticleFingerprint.Accumulator(
+                shape.getLatticeConstant().doubleValue(),
+                this.canonical
+        );
+        this.pending = null;
+        this.fingerprint = null;
+    }
+
+    /**
+     * Adds the atoms of a batch.
+     * @param batch the atoms, must not be null
+     */
+    @Override
+    public void accept(@NotNull AtomBatch batch) {
+        ParticleFingerprint.Accumulator a = this.checkAccumulator();
+        for (int n = 0; n < batch.size(); n++) {
+            a.add(batch.site(n), batch.atom(n).getElement());
+        }
+    }
+
+    /**
+     * Takes the fingerprint.
+     * @throws IOException never by this implementation; declared for subclasses
+     */
+    @Override
+    public void prepare() throws IOException {
+        if (this.pending == null) {
+            this.pending = this.checkAccumulator().get();
+            this.accumulator = null;
+        }
+    }
+
+    /**
+     * Publishes the fingerprint taken by {@link #prepare()}.
+     * @throws IOException never by this implementation; declared for subclasses
+     */
+    @Override
+    public void commit() throws IOException {
+        this.prepare();
+        this.fingerprint = this.pending;
+        this.pending = null;
+    }
+
+    /** Withdraws the committed fingerprint. */
+    @Override
+    public void rollback() {
+        this.fingerprint = null;
+    }
+
+    /** Discards the running hashes. */
+    @Override
+    public void abort() {
+        this.accumulator = null;
+        this.pending = null;
+        this.fingerprint = null;
+    }
+
+    /**
+     * Returns the fingerprint of the build.
+     * @return the fingerprint
+     * @throws IllegalStateException if no build has been committed
+     */
+    @Contract(pure = true)
+    public @NotNull ParticleFingerprint getFingerprint() {
+        if (this.fingerprint == null) {
+            throw new IllegalStateException("No build has been committed!");
+        }
+        return this.fingerprint;
+    }
+
+    private ParticleFingerprint.@NotNull Accumulator checkAccumulator() {
+        if (this.accumulator == null) {
+            throw new IllegalStateException("Sink has not been started!");
+        }
+        return this.accumulator;
+    }
+}
@@ -0,0 +1,66 @@
+package io.github.noshou.npg.npwriter;
+
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The ligand anchor points placed by a {@link LigandShell}, as delivered to {@link AtomSink#acceptAnchors}.
+ * <p> Each anchor has a 1-based id continuing the atom ids of the build, the id of the surface atom it is bound
+ * to and Cartesian coordinates in Å. All anchors share one element symbol. Instances are immutable.
+ */
+public final class LigandAnchors {
+
+    private final @NotNull String element;
+    private final int first_id;
+    private final int[] atom_ids;
+    private final double[] coordinates;
+
+    /**
+     * Constructs anchors. The arrays are taken over without copying.
+     * @param element     element symbol of the anchors
+     * @param first_id    id of the first anchor
+     * @param atom_ids    id of the surface atom of every anchor
+     * @param coordinates x, y, z of every anchor, interleaved
+     */
+    LigandAnchors(@NotNull String element, int first_id, int @NotNull [] atom_ids, double @NotNull [] coordinates) {
+        this.element = element;
+        this.first_id = first_id;
+        this.atom_ids = atom_ids;
+        this.coordinates = coordinates;
+    }
+
+    /** @return number of anchors */
+    @Contract(pure = true)
+    public int size() {
+        return this.atom_ids.length;
+    }
+
+    /** @return the element symbol of the anchors */
+    @Contract(pure = true)
+    public @NotNull String getElement() {
+        return this.element;
+    }
+
+    /** @return the 1-based id of anchor {@code n} */
+    @Contract(pure = true)
+    public int id(int n) {
+        return this.first_id + n;
+    }
+
+    /** @return the id of the surface atom anchor {@code n} is bound to */
+    @Contract(pure = true)
+    public int atomId(int n) {
+        return this.atom_ids[n];
+    }
+
+    /**
+     * Returns one Cartesian coordinate of anchor {@code n}.
+     * @param n    the anchor index
+     * @param axis 0 for x, 1 for y, 2 for z
+     * @return the coordinate in Å
+     */
+    @Contract(pure = true)
+    public double cartesian(int n, int axis) {
+        return this.coordinates[3 * n + axis];
+    }
+}
@@ -0,0 +1,303 @@
+package io.github.noshou.npg.npwriter;
+
+import io.github.noshou.npg.lattice.LatticeSite;
+import io.github.noshou.npg.lattice.SurfaceSites;
+import io.github.noshou.npg.shapes.Shape;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Places a capping layer of ligand anchors on the surface of a build and hands it to the wrapped sink together
+ * with the core atoms, e.g. the sulfur atoms of a thiol shell on gold.
+ * <p> Core atoms are forwarded to the wrapped sink as they arrive, and their packed sites are kept. Once the
+ * build is complete, the surface sites and their local normals are found from the site occupancy (see
+ * {@link SurfaceSites}). Every surface atom is then offered an anchor at a fixed offset along its normal, in
+ * order of increasing coordination (vertices, then edges, then facets), ties in emission order. An anchor closer
+ * than the minimum spacing to one already placed is rejected; placed anchors are kept in a spatial hash with
+ * cells as wide as the spacing, so every check looks at 27 cells only. Anchors do not check the core atoms: an
+ * offset of about one bond length along the outward normal keeps them clear of it.
+ * <p> The anchors reach the wrapped sink through {@link AtomSink#acceptAnchors(LigandAnchors)} before it is
+ * prepared, with ids continuing those of the core; a sink that does not write anchors keeps only the core. Every
+ * other call is passed straight through, so the shell takes part in the transaction of the {@link SinkFanOut}
+ * driving it like the sink it wraps. Outputs that need no anchors are given to the fan-out directly.
+ */
+public class LigandShell implements AtomSink {
+
+    /** Default anchor element. */
+    public static final String DEFAULT_ELEMENT = "S";
+
+    /** Default offset from the surface atom in Å (the Au–S bond length). */
+    public static final double DEFAULT_OFFSET = 2.4;
+
+    /** Default minimum distance between anchors in Å (the S–S distance of a (√3×√3)R30° thiol layer on Au). */
+    public static final double DEFAULT_SPACING = 5.0;
+
+    /** Wrapped sink. */
+    private final @NotNull AtomSink sink;
+
+    private @NotNull String element = DEFAULT_ELEMENT;
+    private double offset = DEFAULT_OFFSET;
+    private double spacing = DEFAULT_SPACING;
+
+    /** Packed sites and ids of the core atoms. */
+    private long[] sites = new long[1024];
+    private int[] ids = new int[1024];
+    private int count = 0;
+
+    /** Half the lattice constant in Å. */
+    private double half_step = 0;
+
+    /** Placed anchors, or null before {@link #prepare()}. */
+    private @Nullable LigandAnchors anchors = null;
+
+    /** Number of surface atoms of the build. */
+    private int surface = 0;
+
+    /**
+     * Constructs a ligand shell around the output of the given sink.
+     * @param sink the sink receiving the core atoms and the anchors, must not be null
+     */
+    public LigandShell(@NotNull AtomSink sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Sets the element symbol of the anchors.
+     * @param element the symbol, non-empty
+     * @return this shell
+     */
+    @Contract(value = "_ -> this", mutates = "this")
+    public @NotNull LigandShell element(@NotNull String element) {
+        if (element.isEmpty()) {
+            throw new IllegalArgumentException("Anchor element cannot be empty!");
+        }
+        this.element = element;
+        return this;
+    }
+
+    /**
+     * Sets the distance of an anchor from its surface atom.
+     * @param offset distance along the local normal in Å, non-negative
+     * @return this shell
+     */
+    @Contract(value = "_ -> this", mutates = "this")
+    public @NotNull LigandShell offset(double offset) {
+        if (!(offset >= 0) || Double.isInfinite(offset)) {
+            throw new IllegalArgumentException("Anchor offset must be non-negative!");
+        }
+        this.offset = offset;
+        return this;
+    }
+
+    /**
+     * Sets the minimum distance between anchors.
+     * @param spacing distance in Å, non-negative; {@code 0} anchors every surface atom
+     * @return this shell
+     */
+    @Contract(value = "_ -> this", mutates = "this")
+    public @NotNull LigandShell spacing(double spacing) {
+        if (!(spacing >= 0) || Double.isInfinite(spacing)) {
+            throw new IllegalArgumentException("Anchor spacing must be non-negative!");
+        }
+        this.spacing = spacing;
+        return this;
+    }
+
+    /**
+     * Starts the build on the wrapped sink.
+     * @param shape the shape being built, must not be null
+     * @throws IOException if the wrapped sink fails
+     */
+    @Override
+    public void begin(@NotNull Shape shape) throws IOException {
+        this.count = 0;
+        this.anchors = null;
+        this.surface = 0;
+        this.half_step = shape.getLatticeConstant().doubleValue() / 2;
+        this.sink.begin(shape);
+    }
+
+    /**
+     * Records the sites of a batch and forwards it to the wrapped sink.
+     * @param batch the atoms, must not be null
+     * @throws IOException if the wrapped sink fails
+     */
+    @Override
+    public void accept(@NotNull AtomBatch batch) throws IOException {
+        if (this.count + batch.size() > this.sites.length) {
+            int capacity = Math.max(this.count + batch.size(), this.sites.length + (this.sites.length >> 1));
+            this.sites = Arrays.copyOf(this.sites, capacity);
+            this.ids = Arrays.copyOf(this.ids, capacity);
+        }
+        for (int n = 0; n < batch.size(); n++) {
+            this.sites[this.count] = batch.site(n);
+            this.ids[this.count++] = batch.id(n);
+        }
+        this.sink.accept(batch);
+    }
+
+    /**
+     * Forwards an empty site to the wrapped sink.
+     * @param site the packed half-step site
+     * @throws IOException if the wrapped sink fails
+     */
+    @Override
+    public void acceptEmpty(long site) throws IOException {
+        this.sink.acceptEmpty(site);
+    }
+
+    /** @return whether the wrapped sink wants empty sites */
+    @Override
+    public boolean wantsEmptySites() {
+        return this.sink.wantsEmptySites();
+    }
+
+    /**
+     * Places the anchors, hands them to the wrapped sink and prepares it.
+     * @throws IOException if the wrapped sink fails
+     */
+    @Override
+    public void prepare() throws IOException {
+        if (this.anchors == null) {
+            this.anchors = this.place();
+            this.sink.acceptAnchors(this.anchors);
+        }
+        this.sink.prepare();
+    }
+
+    /**
+     * Commits the wrapped sink.
+     * @throws IOException if the wrapped sink fails
+     */
+    @Override
+    public void commit() throws IOException {
+        this.sink.commit();
+    }
+
+    /**
+     * Rolls back the wrapped sink.
+     * @throws IOException if the wrapped sink fails
+     */
+    @Override
+    public void rollback() throws IOException {
+        this.sink.rollback();
+    }
+
+    /**
+     * Aborts the wrapped sink and drops the recorded sites.
+     * @throws IOException if the wrapped sink fails
+     */
+    @Override
+    public void abort() throws IOException {
+        this.sites = new long[0];
+        this.ids = new int[0];
+        this.count = 0;
+        this.sink.abort();
+    }
+
+    /** Finds the surface and places the anchors greedily, rejecting overlaps. */
+    private @NotNull LigandAnchors place() {
+        SurfaceSites found = SurfaceSites.compute(this.sites, this.count);
+        this.surface = found.count();
+
+        // vertices first, then edges, then facets; ties in emission order
+        long[] order = new long[found.count()];
+        for (int s = 0; s < order.length; s++) {
+            order[s] = (long) found.coordination(s) << 32 | s;
+        }
+        Arrays.sort(order);
+
+        double[] coordinates = new double[3 * order.length];
+        int[] atom_ids = new int[order.length];
+        int[] next = new int[order.length];
+        Map<Long, Integer> heads = new HashMap<>();
+        double inv = this.spacing > 0 ? 1 / this.spacing : 0;
+        int placed = 0;
+        for (long key : order) {
+            int s = (int) key;
+            long site = this.sites[found.index(s)];
+            double x = LatticeSite.i(site) * this.half_step + this.offset * found.normal(s, 0);
+            double y = LatticeSite.j(site) * this.half_step + this.offset * found.normal(s, 1);
+            double z = LatticeSite.k(site) * this.half_step + this.offset * found.normal(s, 2);
+            long cx = (long) Math.floor(x * inv), cy = (long) Math.floor(y * inv), cz = (long) Math.floor(z * inv);
+            if (this.spacing > 0 && this.overlaps(x, y, z, cx, cy, cz, heads, next, coordinates)) {
+                continue;
+            }
+            coordinates[3 * placed] = x;
+            coordinates[3 * placed + 1] = y;
+            coordinates[3 * placed + 2] = z;
+            atom_ids[placed] = this.ids[found.index(s)];
+            if (this.spacing > 0) {
+                Integer head = heads.put(cellKey(cx, cy, cz), placed);
+                next[placed] = head == null ? -1 : head;
+            }
+            placed++;
+        }
+        return new LigandAnchors(
+                this.element,
+                this.count == 0 ? 1 : this.ids[this.count - 1] + 1,
+                Arrays.copyOf(atom_ids, placed),
+                Arrays.copyOf(coordinates, 3 * placed)
+        );
+    }
+
+    /** @return whether a placed anchor lies closer than the spacing to {@code (x, y, z)} in cell {@code c} */
+    private boolean overlaps(
+            double x,
+            double y,
+            double z,
+            long cx,
+            long cy,
+            long cz,
+            @NotNull Map<Long, Integer> heads,
+            int @NotNull [] next,
+            double @NotNull [] coordinates
+    ) {
+        double limit = this.spacing * this.spacing;
+        for (long ix = cx - 1; ix <= cx + 1; ix++) {
+            for (long iy = cy - 1; iy <= cy + 1; iy++) {
+                for (long iz = cz - 1; iz <= cz + 1; iz++) {
+                    Integer head = heads.get(cellKey(ix, iy, iz));
+                    for (int a = head == null ? -1 : head; a >= 0; a = next[a]) {
+                        double dx = coordinates[3 * a] - x;
+                        double dy = coordinates[3 * a + 1] - y;
+                        double dz = coordinates[3 * a + 2] - z;
+                        if (dx * dx + dy * dy + dz * dz < limit) {
+                            return true;
+                        }
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Packs the 21 low bits of each cell coordinate into a hash key. */
+    @Contract(pure = true)
+    private static long cellKey(long cx, long cy, long cz) {
+        return (cx & 0x1FFFFF) << 42 | (cy & 0x1FFFFF) << 21 | (cz & 0x1FFFFF);
+    }
+
+    /**
+     * @return the anchors placed by the last build
+     * @throws IllegalStateException if no build has been prepared
+     */
+    @Contract(pure = true)
+    public @NotNull LigandAnchors getAnchors() {
+        if (this.anchors == null) {
+            throw new IllegalStateException("No build has been prepared!");
+        }
+        return this.anchors;
+    }
+
+    /** @return number of surface atoms of the last prepared build */
+    @Contract(pure = true)
+    public int getSurfaceCount() {
+        return this.surface;
+    }
+}
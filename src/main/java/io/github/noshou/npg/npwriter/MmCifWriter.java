@@ -13,8 +13,10 @@ import java.io.IOException;
  * Structural metadata such as unit cell dimensions, angles, and symmetry are included, along with atom records.
  * <p>
  * Once finalized, the file cannot be modified.
+ * <p>
+ * As an {@link AtomSink}, the writer can be fed by a {@link SinkFanOut} alongside other outputs of the same build.
  */
-public class MmCifWriter extends FileWriter {
+public class MmCifWriter extends FileWriter implements AtomSink {
 
     /**
      * Constructs a builder that writes to the specified file with a `.cif` extension.
@@ -130,35 +132,126 @@ public class MmCifWriter extends FileWriter {
             );
         }
 
+        Triad<String> coords = (Triad<String>) a.getCartesian();
+        this.writeRow(
+                a.getIndex(),
+                element,
+                a.getFormalCharge(),
+                coords.fetch(0),
+                coords.fetch(1),
+                coords.fetch(2)
+        );
+    }
+
+    /**
+     * Initializes the mmCIF structure from the shape being built.
+     * @param shape the shape being built, must not be null
+     * @throws IOException If writing to the file fails.
+     */
+    @Override
+    public void begin(@NotNull Shape shape) throws IOException {
+        this.init(shape);
+    }
+
+    /**
+     * Appends a batch of atoms to the atom site loop.
+     * <p> Cartesian coordinates are computed exactly from each site, so the output is identical
+     * to adding the same atoms one by one through {@link #addAtom(Atom)}.
+     * @param batch the atoms to write, must not be null
+     * @throws IOException           If writing to the file fails.
+     * @throws IllegalStateException If the builder has already been finalized and closed.
+     */
+    @Override
+    public void accept(@NotNull AtomBatch batch) throws IOException {
+        if (is_finished) {
+            throw new IllegalStateException(
+                    "Builder has already been finalized!"
+            );
+        }
+        for (int n = 0; n < batch.size(); n++) {
+            Atom a = batch.atom(n);
+            this.writeRow(
+                    batch.id(n),
+                    a.getElement(),
+                    a.getFormalCharge(),
+                    batch.cartesianExact(n, 0).toString(),
+                    batch.cartesianExact(n, 1).toString(),
+                    batch.cartesianExact(n, 2).toString()
+            );
+        }
+    }
+
+    /**
+     * Appends the ligand anchors to the atom site loop, after the atoms of the particle.
+     * @param anchors the anchors, must not be null
+     * @throws IOException           If writing to the file fails.
+     * @throws IllegalStateException If the builder has already been finalized and closed.
+     */
+    @Override
+    public void acceptAnchors(@NotNull LigandAnchors anchors) throws IOException {
+        if (is_finished) {
+            throw new IllegalStateException(
+                    "Builder has already been finalized!"
+            );
+        }
+        for (int n = 0; n < anchors.size(); n++) {
+            this.writeRow(
+                    anchors.id(n),
+                    anchors.getElement(),
+                    "0",
+                    String.valueOf(anchors.cartesian(n, 0)),
+                    String.valueOf(anchors.cartesian(n, 1)),
+                    String.valueOf(anchors.cartesian(n, 2))
+            );
+        }
+    }
+
+    /**
+     * Writes one row of the atom site loop.
+     * @param id      the atom index
+     * @param element the element symbol (non-empty)
+     * @param charge  the formal charge
+     * @param x       Cartesian x coordinate
+     * @param y       Cartesian y coordinate
+     * @param z       Cartesian z coordinate
+     * @throws IOException If writing to the file fails.
+     */
+    private void writeRow(
+            int id,
+            @NotNull String element,
+            @NotNull String charge,
+            @NotNull String x,
+            @NotNull String y,
+            @NotNull String z
+    ) throws IOException {
+
         // Normalize element symbol
         element = element.substring(0, 1).toUpperCase() +
                 (element.length() > 1 ? element.substring(1).toLowerCase() : "");
-
-        Triad<String> coords = (Triad<String>) a.getCentroid();
-        String charge = a.getFormalCharge();
+        String index = String.valueOf(id);
 
         // Format atom entry as per mmCIF loop order
         String[] tokens = new String[] {
                 "HETATM",                           // group_PDB
-                String.valueOf(a.getIndex()),       // id
+                index,                              // id
                 element,                            // type_symbol
-                element + a.getIndex(),             // label_atom_id
+                element + index,                    // label_atom_id
                 ".",                                // label_alt_id
                 element,                            // label_comp_id
                 "A",                                // label_asym_id
                 "1",                                // label_entity_id
-                String.valueOf(a.getIndex()),       // label_seq_id
+                index,                              // label_seq_id
                 ".",                                // pdbx_PDB_ins_code
-                coords.fetch(0),                // Cartn_x
-                coords.fetch(1),                // Cartn_y
-                coords.fetch(2),                // Cartn_z
+                x,                                  // Cartn_x
+                y,                                  // Cartn_y
+                z,                                  // Cartn_z
                 "1.00",                             // occupancy
                 "1.00",                             // B_iso_or_equiv
                 charge,                             // formal_charge
-                String.valueOf(a.getIndex()),       // auth_seq_id
+                index,                              // auth_seq_id
                 element,                            // auth_comp_id
                 "A",                                // auth_asym_id
-                element + a.getIndex(),             // auth_atom_id
+                element + index,                    // auth_atom_id
                 "1"                                 // model_num
         };
 
@@ -0,0 +1,136 @@
+package io.github.noshou.npg.npwriter;
+
+import io.github.noshou.npg.atom.Atom;
+import io.github.noshou.npg.npreader.ParticleStore;
+import io.github.noshou.npg.shapes.Shape;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import java.io.IOException;
+
+/**
+ * Collects a build into an in-memory {@link ParticleStore} instead of a file.
+ * <p> Lets analyses run on a freshly generated particle without writing and re-reading a CIF. The store is
+ * available through {@link #getStore()} once the build has committed.
+ */
+public class ParticleStoreSink implements AtomSink {
+
+    /** Builder of the current build, or null before {@link #begin(Shape)} and after abort. */
+    private @Nullable ParticleStore.Builder builder = null;
+
+    /** The store built by {@link #prepare()}, not yet committed. */
+    private @Nullable ParticleStore pending = null;
+
+    /** The committed store. */
+    private @Nullable ParticleStore store = null;
+
+    /** Element index of the last basis atom seen, cached to skip the symbol lookup. */
+    private @Nullable Atom last_atom = null;
+    private int last_element = -1;
+
+    /**
+     * Starts collecting a build.
+     * @param shape the shape being built, must not be null
+     */
+    @Override
+    public void begin(@NotNull Shape shape) {
+        this.builder = new ParticleStore.Builder()
+                .structureIndex(shape.getStructureIndex())
+                .latticeConstant(shape.getLatticeConstant().doubleValue());
+        this.pending = null;
+        this.store = null;
+        this.last_atom = null;
+    }
+
+    /**
+     * Appends the atoms of a batch.
+     * @param batch the atoms, must not be null
+     */
+    @Override
+    public void accept(@NotNull AtomBatch batch) {
+        ParticleStore.Builder b = this.checkBuilder();
+        for (int n = 0; n < batch.size(); n++) {
+            Atom a = batch.atom(n);
+            if (a != last_atom) {
+                last_atom = a;
+                last_element = b.elementIndex(a.getElement());
+            }
+            b.add(batch.id(n), last_element, batch.cartesian(n, 0), batch.cartesian(n, 1), batch.cartesian(n, 2));
+        }
+    }
+
+    /**
+     * Appends the ligand anchors. The store then has no lattice sites (see {@link ParticleStore#hasSites()}).
+     * @param anchors the anchors, must not be null
+     */
+    @Override
+    public void acceptAnchors(@NotNull LigandAnchors anchors) {
+        ParticleStore.Builder b = this.checkBuilder();
+        int element = b.elementIndex(anchors.getElement());
+        for (int n = 0; n < anchors.size(); n++) {
+            b.add(anchors.id(n), element, anchors.cartesian(n, 0), anchors.cartesian(n, 1), anchors.cartesian(n, 2));
+        }
+    }
+
+    /**
+     * Builds the store.
+     * @throws IOException never by this implementation; declared for subclasses
+     */
+    @Override
+    public void prepare() throws IOException {
+        this.build();
+    }
+
+    /**
+     * Publishes the store built by {@link #prepare()}.
+     * @throws IOException never by this implementation; declared for subclasses
+     */
+    @Override
+    public void commit() throws IOException {
+        this.store = this.build();
+        this.pending = null;
+    }
+
+    /** Builds the store unless already built; not overridable, as subclasses may commit from their prepare. */
+    private @NotNull ParticleStore build() {
+        if (this.pending == null) {
+            this.pending = this.checkBuilder().build();
+            this.builder = null;
+        }
+        return this.pending;
+    }
+
+    /** Withdraws the committed store. */
+    @Override
+    public void rollback() {
+        this.store = null;
+    }
+
+    /** Discards the collected atoms. */
+    @Override
+    public void abort() {
+        this.builder = null;
+        this.pending = null;
+        this.store = null;
+    }
+
+    /**
+     * Returns the collected particle.
+     * @return the store
+     * @throws IllegalStateException if no build has been committed
+     */
+    @Contract(pure = true)
+    public @NotNull ParticleStore getStore() {
+        if (this.store == null) {
+            throw new IllegalStateException("No build has been committed!");
+        }
+        return this.store;
+    }
+
+    private @NotNull ParticleStore.Builder checkBuilder() {
+        if (this.builder == null) {
+            throw new IllegalStateException("Sink has not been started!");
+        }
+        return this.builder;
+    }
+}
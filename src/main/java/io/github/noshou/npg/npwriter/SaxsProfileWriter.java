@@ -0,0 +1,119 @@
+package io.github.noshou.npg.npwriter;
+
+import io.github.noshou.npg.npsaxs.SaxsData;
+import io.github.noshou.npg.npsaxs.SaxsFit;
+import io.github.noshou.npg.npsaxs.SaxsProfile;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Writes a computed SAXS profile as a `.dat` text file.
+ * <p> The layout follows the {@code *_saxs_intensity_file.dat} files shipped with the gold particles: a commented
+ * header with the number of points and the q-range, a commented column line, then one {@code q intensity} row
+ * per point (q in Å⁻¹). A {@link SaxsFit} is written like the externally fitted files: an extra header line with
+ * offset, scale and χ², and {@code q exp_intensity error model_intensity} rows on the q values of the data.
+ */
+public class SaxsProfileWriter extends FileWriter {
+
+    /**
+     * Constructs a writer for a `.dat` file.
+     * @param file_name The base name of the output file (without extension).
+     * @throws IOException If the underlying file cannot be created or opened for writing.
+     */
+    public SaxsProfileWriter(@NotNull String file_name) throws IOException {
+        super(file_name, ".dat");
+    }
+
+    /**
+     * Writes the whole profile or fit.
+     * @param initializer the {@link SaxsProfile} or {@link SaxsFit} to write
+     * @throws IOException              If writing fails.
+     * @throws IllegalArgumentException If {@code initializer} is neither a {@link SaxsProfile} nor a {@link SaxsFit}.
+     */
+    @Override
+    @Contract("null -> fail")
+    public void init(@Nullable Object initializer) throws IOException {
+        if (initializer instanceof SaxsFit fit) {
+            this.writeFit(fit);
+            return;
+        }
+        if (!(initializer instanceof SaxsProfile p)) {
+            throw new IllegalArgumentException("initializer must be of type SaxsProfile or SaxsFit!");
+        }
+        int n = p.size();
+        double q_min = p.q(0);
+        double q_max = p.q(n - 1);
+        writer.write(String.format(
+                Locale.ROOT,
+                "# SAXS profile: number of points = %d, q_min = %s, q_max = %s, delta_q = %s\n",
+                n, q_min, q_max, n > 1 ? (q_max - q_min) / (n - 1) : 0.0
+        ));
+        writer.write("#  q       model_intensity\n");
+        for (int k = 0; k < n; k++) {
+            writer.write(String.format(Locale.ROOT, "%.8f %.8f\n", p.q(k), p.intensity(k)));
+        }
+    }
+
+    /**
+     * Writes a profile to {@code file_name.dat}.
+     * @param file_name the base name of the output file, non-null
+     * @param profile   the profile, non-null
+     * @throws IOException If the file cannot be written (nothing is published in that case).
+     */
+    public static void write(@NotNull String file_name, @NotNull SaxsProfile profile) throws IOException {
+        writeObject(file_name, profile);
+    }
+
+    /**
+     * Writes a fit to {@code file_name.dat}.
+     * @param file_name the base name of the output file, non-null
+     * @param fit       the fit, non-null
+     * @throws IOException If the file cannot be written (nothing is published in that case).
+     */
+    public static void write(@NotNull String file_name, @NotNull SaxsFit fit) throws IOException {
+        writeObject(file_name, fit);
+    }
+
+    private void writeFit(@NotNull SaxsFit fit) throws IOException {
+        SaxsData data = fit.getData();
+        int n = data.size();
+        double q_min = data.q(0);
+        double q_max = data.q(n - 1);
+        writer.write(String.format(
+                Locale.ROOT,
+                "# SAXS profile: number of points = %d, q_min = %s, q_max = %s, delta_q = %s\n",
+                n, q_min, q_max, n > 1 ? (q_max - q_min) / (n - 1) : 0.0
+        ));
+        writer.write(String.format(
+                Locale.ROOT,
+                "# offset = %s, scaling c = %s, Chi^2 = %s\n",
+                fit.getOffset(), fit.getScale(), fit.getChiSquared()
+        ));
+        writer.write("#  q       exp_intensity   error model_intensity\n");
+        for (int k = 0; k < n; k++) {
+            writer.write(String.format(
+                    Locale.ROOT,
+                    "%.8f %.8f %.8f %.8f\n",
+                    data.q(k), data.intensity(k), data.sigma(k), fit.fitted(k)
+            ));
+        }
+    }
+
+    private static void writeObject(@NotNull String file_name, @NotNull Object content) throws IOException {
+        SaxsProfileWriter file = new SaxsProfileWriter(file_name);
+        try {
+            file.init(content);
+            file.writeFile();
+        } catch (IOException | RuntimeException e) {
+            try {
+                file.abort();
+            } catch (IOException ex2) {
+                e.addSuppressed(ex2);
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package io.github.noshou.npg.npwriter;
+
+import io.github.noshou.npg.npsaxs.SaxsScreen;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Writes the ranked results of a {@link SaxsScreen} as a `.csv` table.
+ * <p> One row per candidate, best first, with columns {@code rank, label, atoms, scale, offset, chi2}; χ² is
+ * defined as in {@link io.github.noshou.npg.npsaxs.SaxsFit}.
+ */
+public class SaxsScreenWriter extends FileWriter {
+
+    /**
+     * Constructs a writer for a `.csv` file.
+     * @param file_name The base name of the output file (without extension).
+     * @throws IOException If the underlying file cannot be created or opened for writing.
+     */
+    public SaxsScreenWriter(@NotNull String file_name) throws IOException {
+        super(file_name, ".csv");
+    }
+
+    /**
+     * Writes the whole table.
+     * @param initializer the ranked {@link List} of {@link SaxsScreen.Result}s to write
+     * @throws IOException              If writing fails.
+     * @throws IllegalArgumentException If {@code initializer} is not a list of screen results.
+     */
+    @Override
+    @Contract("null -> fail")
+    public void init(@Nullable Object initializer) throws IOException {
+        if (!(initializer instanceof List<?> results)) {
+            throw new IllegalArgumentException("initializer must be a List of SaxsScreen.Result!");
+        }
+        writer.write("\"rank\",\"label\",\"atoms\",\"scale\",\"offset\",\"chi2\"\n");
+        int rank = 1;
+        for (Object o : results) {
+            if (!(o instanceof SaxsScreen.Result r)) {
+                throw new IllegalArgumentException("initializer must be a List of SaxsScreen.Result!");
+            }
+            writer.write(String.format(
+                    Locale.ROOT,
+                    "%d,\"%s\",%d,%s,%s,%s\n",
+                    rank++, r.getLabel().replace("\"", "\"\""), r.getAtomCount(),
+                    r.getFit().getScale(), r.getFit().getOffset(), r.getFit().getChiSquared()
+            ));
+        }
+    }
+
+    /**
+     * Writes ranked results to {@code file_name.csv}.
+     * @param file_name the base name of the output file, non-null
+     * @param results   the results, best first, non-null
+     * @throws IOException If the file cannot be written (nothing is published in that case).
+     */
+    public static void write(@NotNull String file_name, @NotNull List<SaxsScreen.Result> results) throws IOException {
+        SaxsScreenWriter file = new SaxsScreenWriter(file_name);
+        try {
+            file.init(results);
+            file.writeFile();
+        } catch (IOException | RuntimeException e) {
+            try {
+                file.abort();
+            } catch (IOException ex2) {
+                e.addSuppressed(ex2);
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package io.github.noshou.npg.npwriter;
+
+import io.github.noshou.npg.atom.Atom;
+import io.github.noshou.npg.shapes.Shape;
+import org.apfloat.Apfloat;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Feeds the atoms of a single lattice enumeration to any number of {@link AtomSink}s.
+ * <p> Atoms are numbered in the order they are added (1-based) and buffered into an {@link AtomBatch};
+ * each full batch is handed to every sink in turn. Empty sites are only forwarded when at least one sink
+ * asks for them, in which case pending atoms are flushed first so that every sink sees the same interleaving
+ * as the enumeration.
+ * <p><b>All-or-nothing:</b> if any sink throws, every sink is aborted before the exception propagates.
+ * {@link #finish()} first prepares every sink and only then commits them. All fallible work (trailers, syncing,
+ * building results) happens while preparing, so a failure there publishes nothing, and a commit is only a
+ * rename or a reference swap. Should a commit fail nonetheless, the sinks already committed are rolled back
+ * (see {@link AtomSink#rollback()}) and the others aborted.
+ */
+public class SinkFanOut {
+
+    /** Default number of atoms per batch. */
+    public static final int DEFAULT_BATCH_SIZE = 4096;
+
+    /** Downstream sinks, in delivery order. */
+    private final @NotNull List<AtomSink> sinks;
+
+    /** Sinks interested in empty sites. */
+    private final @NotNull List<AtomSink> empty_sinks = new ArrayList<>();
+
+    /** Reused batch buffer. */
+    private final @NotNull AtomBatch batch;
+
+    /** Number of atoms added so far. */
+    private int count = 0;
+
+    /** Whether the fan-out has been finished or aborted. */
+    private boolean is_closed = false;
+
+    /**
+     * Constructs a fan-out over the given sinks.
+     * @param lattice_constant the lattice constant in Å, must not be null
+     * @param batch_size       number of atoms per batch, must be positive
+     * @param sinks            the downstream sinks, must not be null or empty
+     * @throws IllegalArgumentException if no sinks are given
+     */
+    public SinkFanOut(@NotNull Apfloat lattice_constant, int batch_size, @NotNull List<AtomSink> sinks) {
+        if (sinks.isEmpty()) {
+            throw new IllegalArgumentException("At least one sink is required!");
+        }
+        this.sinks = List.copyOf(sinks);
+        for (AtomSink s : this.sinks) {
+            if (s.wantsEmptySites()) {
+                this.empty_sinks.add(s);
+            }
+        }
+        this.batch = new AtomBatch(batch_size, lattice_constant);
+    }
+
+    /**
+     * Initializes every sink.
+     * @param shape the shape being built, must not be null
+     * @throws IOException if any sink fails (all sinks are aborted)
+     */
+    public void begin(@NotNull Shape shape) throws IOException {
+        try {
+            for (AtomSink s : sinks) {
+                s.begin(shape);
+            }
+        } catch (IOException | RuntimeException e) {
+            this.abort(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Adds an accepted atom, assigning it the next id.
+     * @param site the packed half-step site
+     * @param atom the basis atom occupying the site, must not be null
+     * @throws IOException           if delivering a full batch fails (all sinks are aborted)
+     * @throws IllegalStateException if the fan-out has already been finished or aborted
+     */
+    @Contract(mutates = "this")
+    public void addAtom(long site, @NotNull Atom atom) throws IOException {
+        this.checkOpen();
+        count++;
+        batch.add(count, site, atom);
+        if (batch.isFull()) {
+            this.flush();
+        }
+    }
+
+    /**
+     * Forwards an in-bounds, unoccupied site to the sinks that want it.
+     * @param site the packed half-step site
+     * @throws IOException if any sink fails (all sinks are aborted)
+     */
+    public void addEmpty(long site) throws IOException {
+        if (empty_sinks.isEmpty()) {
+            return;
+        }
+        this.checkOpen();
+        this.flush();
+        try {
+            for (AtomSink s : empty_sinks) {
+                s.acceptEmpty(site);
+            }
+        } catch (IOException | RuntimeException e) {
+            this.abort(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Delivers pending atoms, prepares every sink and then commits them.
+     * @throws IOException if any sink fails (committed sinks are rolled back, all others aborted)
+     */
+    public void finish() throws IOException {
+        this.checkOpen();
+        this.flush();
+        try {
+            for (AtomSink s : sinks) {
+                s.prepare();
+            }
+        } catch (IOException | RuntimeException e) {
+            this.abort(e);
+            throw e;
+        }
+        int committed = 0;
+        try {
+            for (AtomSink s : sinks) {
+                s.commit();
+                committed++;
+            }
+        } catch (IOException | RuntimeException e) {
+            is_closed = true;
+            for (AtomSink s : sinks.subList(0, committed)) {
+                try {
+                    s.rollback();
+                } catch (IOException | RuntimeException rollbackException) {
+                    e.addSuppressed(rollbackException);
+                }
+            }
+            for (AtomSink s : sinks.subList(committed, sinks.size())) {
+                try {
+                    s.abort();
+                } catch (IOException | RuntimeException abortException) {
+                    e.addSuppressed(abortException);
+                }
+            }
+            throw e;
+        }
+        is_closed = true;
+    }
+
+    /**
+     * Aborts every sink, recording abort failures as suppressed exceptions of {@code cause}.
+     * <p> Safe to call more than once; only the first call has an effect.
+     * @param cause the failure that triggered the abort, must not be null
+     * @param <E>   the type of the failure
+     * @return {@code cause}, for use in a {@code throw} statement
+     */
+    public <E extends Exception> @NotNull E abort(@NotNull E cause) {
+        if (!is_closed) {
+            is_closed = true;
+            for (AtomSink s : sinks) {
+                try {
+                    s.abort();
+                } catch (IOException | RuntimeException abortException) {
+                    cause.addSuppressed(abortException);
+                }
+            }
+        }
+        return cause;
+    }
+
+    /** @return number of atoms added so far */
+    @Contract(pure = true)
+    public int atomCount() {
+        return this.count;
+    }
+
+    /**
+     * Delivers the pending batch to every sink.
+     */
+    private void flush() throws IOException {
+        if (batch.size() == 0) {
+            return;
+        }
+        try {
+            for (AtomSink s : sinks) {
+                s.accept(batch);
+            }
+        } catch (IOException | RuntimeException e) {
+            this.abort(e);
+            throw e;
+        }
+        batch.clear();
+    }
+
+    private void checkOpen() {
+        if (is_closed) {
+            throw new IllegalStateException("Fan-out has already been finished or aborted!");
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package io.github.noshou.npg.npwriter;
+
+import io.github.noshou.npg.atom.Atom;
+import io.github.noshou.npg.shapes.Shape;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Accumulates summary statistics of a build and writes them as a short key/value text file.
+ * <p> Reported values: atom count per element, total atomic volume (from {@link Atom#getVolume()}),
+ * centroid, bounding box, radius of gyration and maximum distance from the origin. All lengths are in Å.
+ * The statistics are also available through getters once the build has completed.
+ */
+public class StatsWriter extends FileWriter implements AtomSink {
+
+    /** Atom count per element symbol. */
+    private final Map<String, Long> element_counts = new TreeMap<>();
+
+    /** Number of atoms. */
+    private long count = 0;
+
+    /** Sum of atomic volumes (Å³). */
+    private double volume = 0;
+
+    /** Coordinate sums. */
+    private double sum_x = 0, sum_y = 0, sum_z = 0;
+
+    /** Sum of squared distances from the origin. */
+    private double sum_r2 = 0;
+
+    /** Largest squared distance from the origin. */
+    private double max_r2 = 0;
+
+    /** Bounding box. */
+    private final double[] min = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY};
+    private final double[] max = {Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+
+    /** Volume of the last basis atom seen, cached to avoid re-parsing its volume string. */
+    private @Nullable Atom last_atom = null;
+    private double last_volume = 0;
+
+    /**
+     * Constructs a writer for a `.stats` file.
+     * @param file_name The base name of the output file (without extension).
+     * @throws IOException If the underlying file cannot be created or opened for writing.
+     */
+    public StatsWriter(@NotNull String file_name) throws IOException {
+        super(file_name, ".stats");
+    }
+
+    /**
+     * Writes the identification header of the statistics file.
+     * @param initializer the {@link Shape} being built
+     * @throws IOException              If writing fails.
+     * @throws IllegalArgumentException If {@code initializer} is not a {@link Shape}.
+     */
+    @Override
+    @Contract("null -> fail")
+    public void init(@Nullable Object initializer) throws IOException {
+        if (!(initializer instanceof Shape s)) {
+            throw new IllegalArgumentException("initializer must be of type Shapes.Shape!");
+        }
+        writer.write("structure_index\t" + s.getStructureIndex() + "\n");
+        writer.write("structure_name\t" + s.getStructureName() + "\n");
+        writer.write("lattice_constant\t" + s.getLatticeConstant() + "\n");
+        writer.write("radius\t" + s.getRadius() + "\n");
+    }
+
+    /**
+     * Writes the identification header for a build.
+     * @param shape the shape being built, must not be null
+     * @throws IOException If writing fails.
+     */
+    @Override
+    public void begin(@NotNull Shape shape) throws IOException {
+        this.init(shape);
+    }
+
+    /**
+     * Accumulates the statistics of a batch.
+     * @param batch the atoms, must not be null
+     */
+    @Override
+    public void accept(@NotNull AtomBatch batch) {
+        for (int n = 0; n < batch.size(); n++) {
+            Atom a = batch.atom(n);
+            if (a != last_atom) {
+                last_atom = a;
+                last_volume = Double.parseDouble(a.getVolume());
+            }
+            element_counts.merge(a.getElement(), 1L, Long::sum);
+            volume += last_volume;
+
+            double x = batch.cartesian(n, 0);
+            double y = batch.cartesian(n, 1);
+            double z = batch.cartesian(n, 2);
+            sum_x += x;
+            sum_y += y;
+            sum_z += z;
+            double r2 = x * x + y * y + z * z;
+            sum_r2 += r2;
+            max_r2 = Math.max(max_r2, r2);
+            min[0] = Math.min(min[0], x);
+            min[1] = Math.min(min[1], y);
+            min[2] = Math.min(min[2], z);
+            max[0] = Math.max(max[0], x);
+            max[1] = Math.max(max[1], y);
+            max[2] = Math.max(max[2], z);
+        }
+        count += batch.size();
+    }
+
+    /**
+     * Writes the accumulated statistics.
+     * @throws IOException If writing fails.
+     */
+    @Override
+    protected void writeTrailer() throws IOException {
+        writer.write("atom_count\t" + count + "\n");
+        for (Map.Entry<String, Long> e : element_counts.entrySet()) {
+            writer.write("atom_count_" + e.getKey() + "\t" + e.getValue() + "\n");
+        }
+        writer.write("atomic_volume\t" + volume + "\n");
+        if (count > 0) {
+            double[] c = this.getCentroid();
+            writer.write("centroid\t" + c[0] + " " + c[1] + " " + c[2] + "\n");
+            writer.write("bbox_min\t" + min[0] + " " + min[1] + " " + min[2] + "\n");
+            writer.write("bbox_max\t" + max[0] + " " + max[1] + " " + max[2] + "\n");
+            writer.write("radius_of_gyration\t" + this.getRadiusOfGyration() + "\n");
+            writer.write("max_radius\t" + Math.sqrt(max_r2) + "\n");
+        }
+    }
+
+    /** @return number of atoms seen */
+    @Contract(pure = true)
+    public long getCount() {
+        return this.count;
+    }
+
+    /** @return atom count per element symbol (read-only view) */
+    @Contract(pure = true)
+    public @NotNull Map<String, Long> getElementCounts() {
+        return Collections.unmodifiableMap(this.element_counts);
+    }
+
+    /** @return centroid (x, y, z) in Å */
+    @Contract(pure = true)
+    public double @NotNull [] getCentroid() {
+        return new double[] {sum_x / count, sum_y / count, sum_z / count};
+    }
+
+    /** @return radius of gyration about the centroid in Å (equal atomic weights) */
+    @Contract(pure = true)
+    public double getRadiusOfGyration() {
+        double[] c = this.getCentroid();
+        double rg2 = sum_r2 / count - (c[0] * c[0] + c[1] * c[1] + c[2] * c[2]);
+        return Math.sqrt(Math.max(0, rg2));
+    }
+}
@@ -0,0 +1,132 @@
+package io.github.noshou.npg.npwriter;
+
+import io.github.noshou.npg.npimage.ProjectedImage;
+import org.jetbrains.annotations.NotNull;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Writes a {@link ProjectedImage} as an uncompressed single-strip greyscale TIFF, readable by ImageJ/Fiji,
+ * DigitalMicrograph and common image libraries.
+ * <p> The top row of the file is the top row of the image ({@code v} largest), so the image shows the particle as
+ * seen down the zone axis. {@link Format#FLOAT32} stores the intensities as they are; {@link Format#UINT16} scales
+ * the largest intensity to 65535. The TIFF image description holds the zone axis, the image axes, the pixel size
+ * and the 16-bit scale, e.g. {@code zone=0.000000,0.000000,1.000000 ... pixel_size=0.200000 scale=1.000000}.
+ */
+public class TiffImageWriter extends ChannelFileWriter {
+
+    /** Pixel format. */
+    public enum Format {
+        /** Unsigned 16-bit integers, scaled to the image maximum. */
+        UINT16,
+        /** 32-bit IEEE floats. */
+        FLOAT32
+    }
+
+    /** Number of IFD entries. */
+    private static final int ENTRIES = 11;
+
+    /** Offset of the image description: header, entry count, entries and next-IFD offset. */
+    private static final int DESCRIPTION_OFFSET = 8 + 2 + 12 * ENTRIES + 4;
+
+    /**
+     * Constructs a writer for a `.tif` file.
+     * @param file_name The base name of the output file (without extension).
+     * @throws IOException If the underlying file cannot be created or opened for writing.
+     */
+    public TiffImageWriter(@NotNull String file_name) throws IOException {
+        super(file_name, ".tif");
+    }
+
+    /**
+     * Writes the whole image.
+     * @param image  the image, non-null
+     * @param format the pixel format, non-null
+     * @throws IOException If writing fails.
+     */
+    public void write(@NotNull ProjectedImage image, @NotNull Format format) throws IOException {
+        int pixels = image.getPixels();
+        int bytes = format == Format.UINT16 ? 2 : 4;
+        double max = image.max();
+        double scale = format == Format.UINT16 && max > 0 ? 65535 / max : 1;
+        double[] zone = image.getZoneAxis(), u = image.getAxisU(), v = image.getAxisV();
+        String text = String.format(
+                Locale.ROOT,
+                "zone=%.6f,%.6f,%.6f u=%.6f,%.6f,%.6f v=%.6f,%.6f,%.6f pixel_size=%.6f scale=%.6f",
+                zone[0], zone[1], zone[2], u[0], u[1], u[2], v[0], v[1], v[2], image.getPixelSize(), scale
+        );
+        byte[] description = (text + '\0').getBytes(StandardCharsets.US_ASCII);
+        int data_offset = DESCRIPTION_OFFSET + description.length + (description.length & 1);
+        long data_bytes = (long) pixels * pixels * bytes;
+        if (data_offset + data_bytes > 0xFFFFFFFFL) {
+            throw new IllegalArgumentException("Image is too large for a TIFF file!");
+        }
+
+        ByteBuffer b = reserve(DESCRIPTION_OFFSET);
+        b.put((byte) 'I').put((byte) 'I').putShort((short) 42).putInt(8);
+        b.putShort((short) ENTRIES);
+        entry(b, 256, 4, 1, pixels);                              // image width
+        entry(b, 257, 4, 1, pixels);                              // image length
+        entry(b, 258, 3, 1, 8 * bytes);                           // bits per sample
+        entry(b, 259, 3, 1, 1);                                   // no compression
+        entry(b, 262, 3, 1, 1);                                   // black is zero
+        entry(b, 270, 2, description.length, DESCRIPTION_OFFSET); // image description
+        entry(b, 273, 4, 1, data_offset);                         // strip offset
+        entry(b, 277, 3, 1, 1);                                   // samples per pixel
+        entry(b, 278, 4, 1, pixels);                              // rows per strip
+        entry(b, 279, 4, 1, (int) data_bytes);                    // strip byte count
+        entry(b, 339, 3, 1, format == Format.UINT16 ? 1 : 3);     // unsigned integer or float
+        b.putInt(0);
+        for (int c = 0; c < description.length + (description.length & 1); c++) {
+            reserve(1).put(c < description.length ? description[c] : 0);
+        }
+        for (int r = pixels - 1; r >= 0; r--) {
+            for (int c = 0; c < pixels; c++) {
+                double value = image.intensity(r, c);
+                if (format == Format.UINT16) {
+                    reserve(2).putShort((short) Math.min(65535, Math.round(value * scale)));
+                } else {
+                    reserve(4).putFloat((float) value);
+                }
+            }
+        }
+    }
+
+    /** Writes one IFD entry; values shorter than four bytes are left-justified. */
+    private static void entry(@NotNull ByteBuffer b, int tag, int type, int count, int value) {
+        b.putShort((short) tag).putShort((short) type).putInt(count);
+        if (type == 3) {
+            b.putShort((short) value).putShort((short) 0);
+        } else {
+            b.putInt(value);
+        }
+    }
+
+    /**
+     * Writes an image to {@code file_name.tif}.
+     * @param file_name the base name of the output file, non-null
+     * @param image     the image, non-null
+     * @param format    the pixel format, non-null
+     * @throws IOException If the file cannot be written (nothing is published in that case).
+     */
+    public static void write(
+            @NotNull String file_name,
+            @NotNull ProjectedImage image,
+            @NotNull Format format
+    ) throws IOException {
+        TiffImageWriter file = new TiffImageWriter(file_name);
+        try {
+            file.write(image, format);
+            file.writeFile();
+        } catch (IOException | RuntimeException e) {
+            try {
+                file.abort();
+            } catch (IOException ex2) {
+                e.addSuppressed(ex2);
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package io.github.noshou.npg.npwriter;
+
+import io.github.noshou.npg.shapes.Shape;
+import org.jetbrains.annotations.NotNull;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes a build in the plain-text XYZ format: an atom count line, a comment line, then
+ * {@code element x y z} per atom (Å).
+ * <p> The count is only known once the build is complete, so the first line is reserved as a
+ * fixed-width, space-padded field and patched by {@link #prepare()}.
+ */
+public class XyzWriter extends ChannelFileWriter implements AtomSink {
+
+    /** Width of the reserved count field (excluding the newline). */
+    private static final int COUNT_WIDTH = 20;
+
+    /** Number of atoms written. */
+    private long count = 0;
+
+    /** Reused line builder. */
+    private final StringBuilder line = new StringBuilder(64);
+
+    /**
+     * Constructs a writer for an `.xyz` file.
+     * @param file_name The base name of the output file (without extension).
+     * @throws IOException If the underlying file cannot be created or opened for writing.
+     */
+    public XyzWriter(@NotNull String file_name) throws IOException {
+        super(file_name, ".xyz");
+    }
+
+    /**
+     * Writes the reserved count line and the comment line.
+     * @param shape the shape being built, must not be null
+     * @throws IOException If writing fails.
+     */
+    @Override
+    public void begin(@NotNull Shape shape) throws IOException {
+        writeAscii(" ".repeat(COUNT_WIDTH) + "\n");
+        writeAscii(
+                shape.getStructureIndex()
+                        + " " + shape.getStructureName()
+                        + " lattice_constant=" + shape.getLatticeConstant()
+                        + "\n"
+        );
+    }
+
+    /**
+     * Appends one line per atom.
+     * @param batch the atoms, must not be null
+     * @throws IOException If writing fails.
+     */
+    @Override
+    public void accept(@NotNull AtomBatch batch) throws IOException {
+        for (int n = 0; n < batch.size(); n++) {
+            line.setLength(0);
+            line.append(batch.atom(n).getElement())
+                    .append(' ').append(batch.cartesian(n, 0))
+                    .append(' ').append(batch.cartesian(n, 1))
+                    .append(' ').append(batch.cartesian(n, 2))
+                    .append('\n');
+            writeAscii(line);
+        }
+        count += batch.size();
+    }
+
+    /**
+     * Appends one line per ligand anchor.
+     * @param anchors the anchors, must not be null
+     * @throws IOException If writing fails.
+     */
+    @Override
+    public void acceptAnchors(@NotNull LigandAnchors anchors) throws IOException {
+        for (int n = 0; n < anchors.size(); n++) {
+            line.setLength(0);
+            line.append(anchors.getElement())
+                    .append(' ').append(anchors.cartesian(n, 0))
+                    .append(' ').append(anchors.cartesian(n, 1))
+                    .append(' ').append(anchors.cartesian(n, 2))
+                    .append('\n');
+            writeAscii(line);
+        }
+        count += anchors.size();
+    }
+
+    /**
+     * Patches the atom count into the reserved first line.
+     * @throws IOException If writing fails.
+     */
+    @Override
+    protected void writeTrailer() throws IOException {
+        String c = Long.toString(count);
+        writeAt(0, ByteBuffer.wrap(c.getBytes(StandardCharsets.US_ASCII)));
+    }
+}
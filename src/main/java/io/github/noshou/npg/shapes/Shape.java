@@ -1,5 +1,6 @@
 package io.github.noshou.npg.shapes;
 
+import io.github.noshou.npg.nporder.*;
 import io.github.noshou.npg.npwriter.*;
 import org.apfloat.Apfloat;
 import io.github.noshou.npg.atom.Atom;
@@ -7,6 +8,7 @@ import io.github.noshou.npg.lattice.*;
 import io.github.noshou.tuple.*;
 import org.jetbrains.annotations.*;
 import java.io.IOException;
+import java.util.List;
 
 /**
  * Abstract class representing a 3D nanostructure based on a lattice arrangement of atoms.
@@ -71,6 +73,11 @@ public abstract class Shape {
      */
     protected final @NotNull Apfloat c;
 
+    /**
+     * Face planes used by {@link #gauge(double, double, double)}, fetched on first use
+     */
+    private volatile @Nullable List<double @NotNull []> gauge_planes = null;
+
 
     /**
      * Constructs a new shape instance, resolving units and initializing the lattice.
@@ -255,6 +262,101 @@ public abstract class Shape {
     @Contract(pure = true)
     protected abstract boolean inBounds(@NotNull Triad<Apfloat> point_cart);
 
+    /**
+     * Returns the gauge (Minkowski functional) of the shape at a Cartesian point: the factor by which the
+     * shape would have to be scaled about the origin for the point to lie on its boundary. Points with a
+     * gauge of at most 1 are inside the shape.
+     * <p> The default implementation uses the face planes (see {@link #getFacePlanes()}): the gauge is the largest
+     * {@code n·r / d} over all faces, so level sets follow the polyhedron. Shapes without face planes are treated
+     * as a sphere of radius {@link #getRadius()}. Subclasses may override it with a cheaper closed form.
+     * @param x Cartesian x coordinate (Å)
+     * @param y Cartesian y coordinate (Å)
+     * @param z Cartesian z coordinate (Å)
+     * @return the non-negative gauge value
+     */
+    @Contract(pure = true)
+    public double gauge(double x, double y, double z) {
+        List<double[]> planes = this.gauge_planes;
+        if (planes == null) {
+            planes = this.getFacePlanes();
+            this.gauge_planes = planes;
+        }
+        if (planes.isEmpty()) {
+            return Math.sqrt(x * x + y * y + z * z) / this.radius_angstroms.doubleValue();
+        }
+        double g = 0;
+        for (double[] p : planes) {
+            g = Math.max(g, (p[0] * x + p[1] * y + p[2] * z) / p[3]);
+        }
+        return g;
+    }
+
+    /**
+     * Returns the bounding planes of the shape, one per face, as {@code {n_x, n_y, n_z, d}} with the unit outward
+     * normal {@code n} and the distance {@code d} of the face plane from the origin in Å; the shape is the set of
+     * points with {@code n·r <= d} for every plane. Used for continuum form factors that need no atoms.
+     * <p> The default implementation returns an empty list (curved shapes); polyhedra override it.
+     * @return the face planes, possibly empty
+     */
+    @Contract(pure = true)
+    public @NotNull List<double @NotNull []> getFacePlanes() {
+        return List.of();
+    }
+
+    /**
+     * Appends the planes of a face family held in a fixed-size tuple (e.g. the {@code Octad} of an octahedron)
+     * to {@code planes}, one per element of {@code faces}, in tuple order.
+     * @param planes     the output list, non-null
+     * @param faces      a tuple whose elements are the faces, each a {@link Tuple} of vertex {@link Triad}s, non-null
+     * @param face_norms a tuple of the same size holding the normal {@link Triad} of every face, non-null
+     */
+    protected static void addFacePlanes(
+            @NotNull List<double @NotNull []> planes,
+            @NotNull Tuple<?> faces,
+            @NotNull Tuple<?> face_norms
+    ) {
+        for (int i = 0; i < faces.fetchSize(); i++) {
+            planes.add(facePlane((Tuple<?>) faces.fetch(i), (Tuple<?>) face_norms.fetch(i)));
+        }
+    }
+
+    /**
+     * Appends the planes of a face family collected into lists while the shape was built (e.g. the deltoids of an
+     * icositetrahedron) to {@code planes}, in list order.
+     * @param planes     the output list, non-null
+     * @param faces      the faces, each a {@link Tuple} of vertex {@link Triad}s, non-null
+     * @param face_norms the normal {@link Triad} of every face, index for index with {@code faces}, non-null
+     */
+    protected static void addFacePlanes(
+            @NotNull List<double @NotNull []> planes,
+            @NotNull List<? extends Tuple<?>> faces,
+            @NotNull List<? extends Tuple<?>> face_norms
+    ) {
+        for (int i = 0; i < faces.size(); i++) {
+            planes.add(facePlane(faces.get(i), face_norms.get(i)));
+        }
+    }
+
+    /**
+     * Converts a face and its normal into {@code {n_x, n_y, n_z, d}}, normalising the normal and orienting it
+     * away from the origin.
+     */
+    @Contract(pure = true)
+    private static double @NotNull [] facePlane(@NotNull Tuple<?> face, @NotNull Tuple<?> norm) {
+        Tuple<?> vertex = (Tuple<?>) face.fetch(0);
+        double nx = ((Apfloat) norm.fetch(0)).doubleValue();
+        double ny = ((Apfloat) norm.fetch(1)).doubleValue();
+        double nz = ((Apfloat) norm.fetch(2)).doubleValue();
+        double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+        double d = (
+                    nx * ((Apfloat) vertex.fetch(0)).doubleValue()
+                +   ny * ((Apfloat) vertex.fetch(1)).doubleValue()
+                +   nz * ((Apfloat) vertex.fetch(2)).doubleValue()
+        ) / length;
+        double sign = d < 0 ? -1 : 1;
+        return new double[]{sign * nx / length, sign * ny / length, sign * nz / length, sign * d};
+    }
+
     /**
      * Builds the atomic structure and writes it to a CIF file.
      * <p> Coordinates are iterated and filtered through {@code inBounds(Apfloat, Apfloat, Apfloat)}.
@@ -271,97 +373,11 @@ public abstract class Shape {
         MmCifWriter file;
         try {
             file = new MmCifWriter(this.file_name);
-            file.init(this.getThis());
         }
         catch (IOException e) {
             throw new RuntimeException(e);
         }
-
-        // write atoms
-        int index = 0;
-        Triad<Apfloat> curr = this.coordinates.getPosition();
-
-        // loop through coordinates, check if point is in bounds
-        while (curr != null) {
-
-            // convert fractional coordinates to cartesian
-            // NOTE: this is "pseudo-fractional" meaning it is not
-            //       real fractional coordinates. this space is simply
-            //       used to simplify checking if a point is valid in the lattice
-            //       we must "convert" to real fractional lattice later on
-            Apfloat x_frac = curr.fetch(0);
-            Apfloat y_frac = curr.fetch(1);
-            Apfloat z_frac = curr.fetch(2);
-            Apfloat x_cart = x_frac.multiply(this.lattice_constant);
-            Apfloat y_cart = y_frac.multiply(this.lattice_constant);
-            Apfloat z_cart = z_frac.multiply(this.lattice_constant);
-            Triad<Apfloat> point_cart = new Triad<>(x_cart, y_cart, z_cart);
-
-
-
-            // check if point is in the unit lattice
-            if (inBounds(point_cart)) {
-
-                // if atom is null -> not in unit cell
-                // else, write atom to file
-                Atom curr_atom = this.getUnitCell().getLatticePoint(
-                        x_frac,
-                        y_frac,
-                        z_frac
-                );
-
-                if (curr_atom != null) {
-
-                    // set index
-                    int idx = index + 1;
-
-                    // set cartesian coordinates
-                    Triad<String> cart = new Triad<>(
-                            x_cart.toString(),
-                            y_cart.toString(),
-                            z_cart.toString()
-                    );
-
-                    // convert to "real" fractional coordinates
-                    // by dividing each fractional coordinate by
-                    // bounding box cell lengths
-                    Triad<String> frac = new Triad<>(
-                            x_cart.divide(this.a).toString(),
-                            y_cart.divide(this.b).toString(),
-                            z_cart.divide(this.c).toString()
-                    );
-
-                    // set data
-                    curr_atom.latticePoint(idx, cart, frac);
-
-                    try {
-                        file.addAtom(curr_atom);
-                    } catch (IOException e2) {
-                        try {
-                            file.abort();
-                        } catch (IOException abortException) {
-                            e2.addSuppressed(abortException);
-                        }
-                        throw new RuntimeException(e2);
-                    }
-                    index++;
-                }
-            }
-
-            curr = this.getCoordinates().getPosition();
-        }
-
-        // write files
-        try {
-            file.writeFile();
-        } catch (IOException e2) {
-            try {
-                file.abort();
-            } catch (IOException abortException) {
-                e2.addSuppressed(abortException);
-            }
-            throw new RuntimeException(e2);
-        }
+        this.build(AtomOrdering.SWEEP, 0, file);
     }
 
     /**
@@ -375,45 +391,122 @@ public abstract class Shape {
      */
     @Contract("_ -> fail")  // method may throw at runtime
     public void build(boolean debug) {
+        if (!debug) {
+            this.build();
+            return;
+        }
 
-        // initialize debug log (if indicated)
-        CoordsDebugWriter dlog = null;
-        if (debug) {
+        // initialize debug log
+        CoordsDebugWriter dlog;
+        try {
+            dlog = new CoordsDebugWriter("build_debug_"+this.file_name);
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        // get file instance, initialize shape
+        MmCifWriter file;
+        try {
+            file = new MmCifWriter(this.file_name);
+        }
+        catch (IOException e) {
             try {
-                dlog = new CoordsDebugWriter("build_debug_"+this.file_name);
-                dlog.init(null);
-            }
-            catch (IOException e) {
-                throw new RuntimeException(e);
+                dlog.abort();
+            } catch (IOException ex2) {
+                e.addSuppressed(ex2);
             }
+            throw new RuntimeException(e);
         }
+        this.build(AtomOrdering.SWEEP, 0, file, dlog);
+    }
 
-        // get file instance, initialize shape
-        // RADIUS IS IN NANOMETERS !!!
+    /**
+     * Builds the atomic structure and writes it to a CIF file, emitting atoms in the requested order.
+     * <p> Equivalent to {@link #build(AtomOrdering, long, AtomSink...)} with a single {@link MmCifWriter}.
+     * <p><b>Contract:</b> This method must be called only once per instance. If writing fails at any point,
+     * the temporary output is aborted.
+     * @param ordering      the order in which atoms are emitted, non-null
+     * @param memory_budget the number of bytes the sorter may hold in memory
+     * @throws RuntimeException if an I/O error occurs during sorting, file writing or abortion
+     */
+    @Contract("_, _ -> fail")  // method may throw at runtime
+    public void build(@NotNull AtomOrdering ordering, long memory_budget) {
         MmCifWriter file;
         try {
             file = new MmCifWriter(this.file_name);
-            file.init(this.getThis());
         }
         catch (IOException e) {
-            if (dlog != null) {
-                try {
-                    dlog.abort();
-                } catch (IOException ex2) {
-                    e.addSuppressed(ex2);  // Optional: add extra context
+            throw new RuntimeException(e);
+        }
+        this.build(ordering, memory_budget, file);
+    }
+
+    /**
+     * Builds the atomic structure once and feeds it to every given sink.
+     * <p> The lattice is classified in a single pass; accepted atoms are numbered (1-based) in emission order and
+     * delivered to the sinks in batches through a {@link SinkFanOut}. Sinks that ask for them also receive the
+     * in-bounds sites left empty.
+     * <p> With {@link AtomOrdering#SWEEP} atoms are emitted in raw lattice iteration order. Any other ordering
+     * collects the accepted sites as packed half-step indices (see {@link LatticeSite}) and sorts them with an
+     * {@link ExternalSiteSorter}, which keeps at most {@code memory_budget} bytes of records in memory and spills
+     * sorted runs to temporary files otherwise; empty sites are then delivered before any atom.
+     * <p><b>Contract:</b> This method must be called only once per instance. If any sink fails at any point,
+     * every sink is aborted and nothing is published.
+     * @param ordering      the order in which atoms are emitted, non-null
+     * @param memory_budget the number of bytes the sorter may hold in memory (ignored for {@link AtomOrdering#SWEEP})
+     * @param sinks         the outputs to feed, non-null and non-empty
+     * @throws RuntimeException if an I/O error occurs during sorting, writing or abortion
+     */
+    @Contract("_, _, _ -> fail")  // method may throw at runtime
+    public void build(@NotNull AtomOrdering ordering, long memory_budget, @NotNull AtomSink @NotNull ... sinks) {
+        SinkFanOut fan_out = new SinkFanOut(
+                this.lattice_constant,
+                SinkFanOut.DEFAULT_BATCH_SIZE,
+                List.of(sinks)
+        );
+        try {
+            fan_out.begin(this.getThis());
+            if (ordering == AtomOrdering.SWEEP) {
+                this.classify(fan_out, null, ordering);
+            } else {
+                try (ExternalSiteSorter sorter = new ExternalSiteSorter(memory_budget)) {
+                    this.classify(fan_out, sorter, ordering);
+                    sorter.drain(site -> fan_out.addAtom(site, this.siteAtom(site)));
                 }
             }
-            throw new RuntimeException(e);
+            fan_out.finish();
+        } catch (IOException e) {
+            throw new RuntimeException(fan_out.abort(e));
+        } catch (RuntimeException e) {
+            throw fan_out.abort(e);
         }
+    }
 
-        // write atoms
-        int index = 0;
+    /**
+     * Runs the classification sweep over all lattice coordinates.
+     * <p> Each in-bounds coordinate occupied by a lattice atom is either handed to the fan-out directly
+     * ({@code sorter == null}) or recorded in the sorter under the key of {@code ordering}. In-bounds coordinates
+     * without an atom are reported to the fan-out as empty sites.
+     * @param fan_out  the fan-out receiving atoms and empty sites, non-null
+     * @param sorter   the sorter collecting accepted sites, or {@code null} to emit in sweep order
+     * @param ordering the ordering the sort keys are computed for, non-null
+     * @throws IOException if a sink or the sorter fails
+     */
+    private void classify(
+            @NotNull SinkFanOut fan_out,
+            @Nullable ExternalSiteSorter sorter,
+            @NotNull AtomOrdering ordering
+    ) throws IOException {
         Triad<Apfloat> curr = this.coordinates.getPosition();
 
         // loop through coordinates, check if point is in bounds
         while (curr != null) {
 
-            // convert fractional co-ordinates to cartesian
+            // convert fractional coordinates to cartesian
+            // NOTE: this is "pseudo-fractional" meaning it is not
+            //       real fractional coordinates. this space is simply
+            //       used to simplify checking if a point is valid in the lattice
             Apfloat x_frac = curr.fetch(0);
             Apfloat y_frac = curr.fetch(1);
             Apfloat z_frac = curr.fetch(2);
@@ -426,101 +519,68 @@ public abstract class Shape {
             if (inBounds(point_cart)) {
 
                 // if atom is null -> not in unit cell
-                // else, write atom to file
                 Atom curr_atom = this.getUnitCell().getLatticePoint(
                         x_frac,
                         y_frac,
                         z_frac
                 );
-
-                if (curr_atom != null) {
-                    // set index
-                    int idx = index + 1;
-
-                    // set cartesian coordinates
-                    Triad<String> cart = new Triad<>(
-                            x_cart.toString(),
-                            y_cart.toString(),
-                            z_cart.toString()
-                    );
-
-                    // convert to "real" fractional coordinates
-                    // by dividing each fractional coordinate by
-                    // bounding box cell lengths
-                    Triad<String> frac = new Triad<>(
-                            x_cart.divide(this.a).toString(),
-                            y_cart.divide(this.b).toString(),
-                            z_cart.divide(this.c).toString()
-                    );
-
-                    // set data
-                    curr_atom.latticePoint(idx, cart, frac);
-
-                    index++;
-                    try {
-                        file.addAtom(curr_atom);
-                        if (dlog != null) {
-                            dlog.addCoordinate(
-                                    x_frac,
-                                    y_frac,
-                                    z_frac,
-                                    x_cart,
-                                    y_cart,
-                                    z_cart,
-                                    true);
-                        }
-                    } catch (IOException e2) {
-                        try {
-                            file.abort();
-                            if (dlog != null) {
-                                dlog.abort();
-                            }
-                        } catch (IOException abortException) {
-                            e2.addSuppressed(abortException);
-                        }
-                        throw new RuntimeException(e2);
-                    }
-                } else if (dlog != null) {
-                    try {
-                        dlog.addCoordinate(
-                                x_frac,
-                                y_frac,
-                                z_frac,
-                                x_cart,
-                                y_cart,
-                                z_cart,
-                                false);
-                    } catch (IOException e2) {
-                        try {
-                            file.abort();
-                            dlog.abort();
-                        } catch (IOException abortException) {
-                            e2.addSuppressed(abortException);
-                        }
-                        throw new RuntimeException(e2);
-                    }
+                long site = LatticeSite.pack(x_frac, y_frac, z_frac);
+                if (curr_atom == null) {
+                    fan_out.addEmpty(site);
+                } else if (sorter == null) {
+                    fan_out.addAtom(site, curr_atom);
+                } else {
+                    long morton = SpaceFillingCurve.morton(site);
+                    sorter.add(this.orderingKey(ordering, site, morton), morton);
                 }
             }
             curr = this.getCoordinates().getPosition();
         }
+    }
 
-        // write files
-        try {
-            file.writeFile();
-            if (dlog != null) {
-                dlog.writeFile();
-            }
-        } catch (IOException e2) {
-            try {
-                file.abort();
-                if (dlog != null) {
-                    dlog.abort();
-                }
-            } catch (IOException abortException) {
-                e2.addSuppressed(abortException);
+    /**
+     * Computes the primary sort key of a site for a non-sweep ordering.
+     * @param ordering the ordering, non-null and not {@link AtomOrdering#SWEEP}
+     * @param site     the packed half-step site
+     * @param morton   the site's Morton key
+     * @return the primary sort key
+     */
+    @Contract(pure = true)
+    private long orderingKey(@NotNull AtomOrdering ordering, long site, long morton) {
+        return switch (ordering) {
+            case MORTON -> morton;
+            case HILBERT -> SpaceFillingCurve.hilbert(site);
+            case RADIAL_SHELL -> LatticeSite.radiusSquared(site);
+            case GAUGE_SHELL -> {
+
+                // shells are one half-step (a/2) thick
+                double half_step = this.lattice_constant.doubleValue() / 2;
+                yield (long) Math.floor(this.radius_angstroms.doubleValue() / half_step * this.gauge(
+                        LatticeSite.i(site) * half_step,
+                        LatticeSite.j(site) * half_step,
+                        LatticeSite.k(site) * half_step
+                ));
             }
-            throw new RuntimeException(e2);
-        }
+            case SWEEP -> throw new IllegalArgumentException("SWEEP ordering has no sort key!");
+        };
     }
 
+    /**
+     * Returns the basis atom occupying a packed site.
+     * @param site the packed half-step site
+     * @return the basis atom, never null
+     * @throws IllegalStateException if the site is not a lattice point of the unit cell
+     */
+    @Contract(pure = true)
+    private @NotNull Atom siteAtom(long site) {
+        Atom atom = this.getUnitCell().getLatticePoint(
+                LatticeSite.toFractional(LatticeSite.i(site)),
+                LatticeSite.toFractional(LatticeSite.j(site)),
+                LatticeSite.toFractional(LatticeSite.k(site))
+        );
+        if (atom == null) {
+            throw new IllegalStateException("Site is not a lattice point: " + site);
+        }
+        return atom;
+    }
 }
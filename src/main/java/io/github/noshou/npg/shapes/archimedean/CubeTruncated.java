@@ -8,6 +8,8 @@ import org.apfloat.Apfloat;
 import org.apfloat.ApfloatMath;
 import org.jetbrains.annotations.*;
 import static io.github.noshou.npg.nputil.VectorMath.*;
+import java.util.List;
+import java.util.ArrayList;
 
 /**
  * Represents a <b>Truncated Cube</b>
@@ -150,6 +152,15 @@ public class CubeTruncated extends Shape {
         face_norms_tri = new Octad<>(tri0_norm, tri1_norm, tri2_norm, tri3_norm, tri4_norm, tri5_norm, tri6_norm, tri7_norm);
     }
 
+    @Override
+    @Contract(pure = true)
+    public @NotNull List<double @NotNull []> getFacePlanes() {
+        List<double[]> planes = new ArrayList<>();
+        addFacePlanes(planes, faces_oct, face_norms_oct);
+        addFacePlanes(planes, faces_tri, face_norms_tri);
+        return planes;
+    }
+
     @Override
     protected boolean inBounds(@NotNull Triad<Apfloat> point_cart) {
 
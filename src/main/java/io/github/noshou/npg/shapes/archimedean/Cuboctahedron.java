@@ -10,6 +10,8 @@ import org.apfloat.Apfloat;
 import org.apfloat.ApfloatMath;
 import org.jetbrains.annotations.*;
 import static io.github.noshou.npg.nputil.VectorMath.*;
+import java.util.List;
+import java.util.ArrayList;
 
 /**
  * Represents a <b>Cuboctahedron</b>
@@ -222,6 +224,15 @@ public class Cuboctahedron extends Shape {
         );
     }
 
+    @Override
+    @Contract(pure = true)
+    public @NotNull List<double @NotNull []> getFacePlanes() {
+        List<double[]> planes = new ArrayList<>();
+        addFacePlanes(planes, faces_sqr, face_norms_sqr);
+        addFacePlanes(planes, faces_tri, face_norms_tri);
+        return planes;
+    }
+
     /**
      * Tests whether the given Cartesian point lies inside or on the boundary
      * of the Cuboctahedron.
@@ -10,6 +10,7 @@ import org.jetbrains.annotations.*;
 import static io.github.noshou.npg.nputil.VectorMath.*;
 import java.util.ArrayList;
 import io.github.noshou.npg.shapes.catalan.*;
+import java.util.List;
 
 
 /**
@@ -163,6 +164,15 @@ public abstract class CuboctahedronSnub extends Shape {
         }
     }
 
+    @Override
+    @Contract(pure = true)
+    public @NotNull List<double @NotNull []> getFacePlanes() {
+        List<double[]> planes = new ArrayList<>();
+        addFacePlanes(planes, faces_tri, face_norms_tri);
+        addFacePlanes(planes, faces_sqr, face_norms_sqr);
+        return planes;
+    }
+
     /**
      * Tests whether the given Cartesian point lies inside or on the boundary
      * of the Cuboctahedron.
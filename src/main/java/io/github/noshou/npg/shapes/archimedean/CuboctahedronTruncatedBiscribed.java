@@ -8,6 +8,8 @@ import org.apfloat.Apfloat;
 import org.apfloat.ApfloatMath;
 import org.jetbrains.annotations.*;
 import static io.github.noshou.npg.nputil.VectorMath.*;
+import java.util.List;
+import java.util.ArrayList;
 
 /**
  * Represents a <b>Biscribed Truncated Cuboctahedron</b>
@@ -246,6 +248,16 @@ public class CuboctahedronTruncatedBiscribed extends Shape {
     }
 
 
+    @Override
+    @Contract(pure = true)
+    public @NotNull List<double @NotNull []> getFacePlanes() {
+        List<double[]> planes = new ArrayList<>();
+        addFacePlanes(planes, faces_sqr, face_norms_sqr);
+        addFacePlanes(planes, faces_hex, face_norms_hex);
+        addFacePlanes(planes, faces_oct, face_norms_oct);
+        return planes;
+    }
+
     protected boolean inBounds(@NotNull Triad<Apfloat> point_cart) {
 
         for (int i = 0; i < faces_sqr.fetchSize(); i++){
@@ -14,6 +14,7 @@ import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import java.util.ArrayList;
 import static io.github.noshou.npg.nputil.VectorMath.*;
+import java.util.List;
 
 /**
  * Represents a <b>Snub Dodecahedron</b>
@@ -348,6 +349,15 @@ public abstract class DodecahedronSnub extends Shape {
     }
 
 
+    @Override
+    @Contract(pure = true)
+    public @NotNull List<double @NotNull []> getFacePlanes() {
+        List<double[]> planes = new ArrayList<>();
+        addFacePlanes(planes, faces_pnt, face_norms_pnt);
+        addFacePlanes(planes, faces_tri, face_norms_tri);
+        return planes;
+    }
+
     /**
      * Tests whether the given Cartesian point lies inside or on the boundary
      * of the snub dodecahedron.
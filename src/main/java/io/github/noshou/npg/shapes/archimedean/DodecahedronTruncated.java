@@ -6,8 +6,11 @@ import io.github.noshou.npg.shapes.Shape;
 import io.github.noshou.tuple.*;
 import org.apfloat.Apfloat;
 import org.apfloat.ApfloatMath;
+import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import static io.github.noshou.npg.nputil.VectorMath.*;
+import java.util.List;
+import java.util.ArrayList;
 
 /**
  * Represents a <b>Truncated Dodecahedron</b>.
@@ -299,6 +302,15 @@ public class DodecahedronTruncated extends Shape {
         );
     }
 
+    @Override
+    @Contract(pure = true)
+    public @NotNull List<double @NotNull []> getFacePlanes() {
+        List<double[]> planes = new ArrayList<>();
+        addFacePlanes(planes, faces_tri, face_norms_tri);
+        addFacePlanes(planes, faces_dec, face_norms_dec);
+        return planes;
+    }
+
     @Override
     protected boolean inBounds(@NotNull Triad<Apfloat> point_cart) {
         for (int i = 0; i < 20; i++) {
@@ -7,8 +7,11 @@ import io.github.noshou.npg.shapes.platonic.Icosahedron;
 import io.github.noshou.tuple.*;
 import org.apfloat.Apfloat;
 import org.apfloat.ApfloatMath;
+import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import static io.github.noshou.npg.nputil.VectorMath.*;
+import java.util.List;
+import java.util.ArrayList;
 
 /**
  * Represents a <b>Truncated Icosahedron</b>.
@@ -301,6 +304,15 @@ public class IcosahedronTruncated extends Shape {
         );
     }
 
+    @Override
+    @Contract(pure = true)
+    public @NotNull List<double @NotNull []> getFacePlanes() {
+        List<double[]> planes = new ArrayList<>();
+        addFacePlanes(planes, faces_hex, face_norms_hex);
+        addFacePlanes(planes, faces_pnt, face_norms_pnt);
+        return planes;
+    }
+
     @Override
     protected boolean inBounds(@NotNull Triad<Apfloat> point_cart) {
 
@@ -6,8 +6,11 @@ import io.github.noshou.npg.shapes.Shape;
 import io.github.noshou.tuple.*;
 import org.apfloat.Apfloat;
 import org.apfloat.ApfloatMath;
+import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import static io.github.noshou.npg.nputil.VectorMath.*;
+import java.util.List;
+import java.util.ArrayList;
 
 /**
  * Represents a <b>Biscribed Truncated Icosahedron</b>.
@@ -308,6 +311,15 @@ public class IcosahedronTruncatedBiscribed extends Shape {
         );
     }
 
+    @Override
+    @Contract(pure = true)
+    public @NotNull List<double @NotNull []> getFacePlanes() {
+        List<double[]> planes = new ArrayList<>();
+        addFacePlanes(planes, faces_hex, face_norms_hex);
+        addFacePlanes(planes, faces_pnt, face_norms_pnt);
+        return planes;
+    }
+
     @Override
     protected boolean inBounds(@NotNull Triad<Apfloat> point_cart) {
 
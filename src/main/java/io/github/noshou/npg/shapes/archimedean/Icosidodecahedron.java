@@ -8,8 +8,11 @@ import io.github.noshou.npg.shapes.Shape;
 import io.github.noshou.tuple.*;
 import org.apfloat.Apfloat;
 import org.apfloat.ApfloatMath;
+import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import static io.github.noshou.npg.nputil.VectorMath.*;
+import java.util.List;
+import java.util.ArrayList;
 
 /**
  * Represents an <b>Icosidodecahedron</b>.
@@ -235,6 +238,15 @@ public class Icosidodecahedron extends Shape {
         );
     }
 
+    @Override
+    @Contract(pure = true)
+    public @NotNull List<double @NotNull []> getFacePlanes() {
+        List<double[]> planes = new ArrayList<>();
+        addFacePlanes(planes, faces_tri, face_norms_tri);
+        addFacePlanes(planes, faces_pnt, face_norms_pnt);
+        return planes;
+    }
+
     protected boolean inBounds(@NotNull Triad<Apfloat> point_cart) {
         for (int i = 0; i < faces_tri.fetchSize(); i++){
             // === Check pentagonal faces ===
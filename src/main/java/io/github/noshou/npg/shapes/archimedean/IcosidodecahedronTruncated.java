@@ -6,9 +6,11 @@ import io.github.noshou.npg.shapes.catalan.TriacontahedronDisdyakis;
 import io.github.noshou.tuple.*;
 import org.apfloat.Apfloat;
 import org.apfloat.ApfloatMath;
+import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import java.util.ArrayList;
 import static io.github.noshou.npg.nputil.VectorMath.*;
+import java.util.List;
 
 /**
  * Represents a <b>Truncated Icosidodecahedron</b>.
@@ -479,6 +481,16 @@ public abstract class IcosidodecahedronTruncated extends Shape {
         );
 }
 
+    @Override
+    @Contract(pure = true)
+    public @NotNull List<double @NotNull []> getFacePlanes() {
+        List<double[]> planes = new ArrayList<>();
+        addFacePlanes(planes, faces_sqr, face_norms_sqr);
+        addFacePlanes(planes, faces_hex, face_norms_hex);
+        addFacePlanes(planes, faces_dec, face_norms_dec);
+        return planes;
+    }
+
     protected boolean inBounds(@NotNull Triad<Apfloat> point_cart) {
         for (int i = 0; i < faces_sqr.size(); i++){
 
@@ -7,10 +7,12 @@ import io.github.noshou.npg.shapes.platonic.Octahedron;
 import io.github.noshou.tuple.*;
 import org.apfloat.Apfloat;
 import org.apfloat.ApfloatMath;
+import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import java.util.ArrayList;
 import static io.github.noshou.npg.nputil.VectorMath.*;
 import io.github.noshou.npg.shapes.catalan.*;
+import java.util.List;
 
 /**
  * Represents a <b>Truncated Octahedron</b>.
@@ -164,6 +166,15 @@ public abstract class OctahedronTruncated extends Shape {
         );
     }
 
+    @Override
+    @Contract(pure = true)
+    public @NotNull List<double @NotNull []> getFacePlanes() {
+        List<double[]> planes = new ArrayList<>();
+        addFacePlanes(planes, faces_sqr, face_norms_sqr);
+        addFacePlanes(planes, faces_hex, face_norms_hex);
+        return planes;
+    }
+
     @Override
     protected boolean inBounds(@NotNull Triad<Apfloat> point_cart) {
 
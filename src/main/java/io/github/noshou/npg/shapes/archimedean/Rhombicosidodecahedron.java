@@ -6,10 +6,12 @@ import io.github.noshou.npg.shapes.Shape;
 import io.github.noshou.tuple.*;
 import org.apfloat.Apfloat;
 import org.apfloat.ApfloatMath;
+import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import java.util.ArrayList;
 import static io.github.noshou.npg.nputil.VectorMath.*;
 import io.github.noshou.npg.shapes.catalan.*;
+import java.util.List;
 
 /**
  * Represents a <b>Rhombicosidodecahedron</b>.
@@ -409,6 +411,16 @@ public class Rhombicosidodecahedron extends Shape {
         face_norms_pnt.add(normalPent(vC35, vC50, vC14, vC15, vC51, true));
     }
 
+    @Override
+    @Contract(pure = true)
+    public @NotNull List<double @NotNull []> getFacePlanes() {
+        List<double[]> planes = new ArrayList<>();
+        addFacePlanes(planes, faces_sqr, face_norms_sqr);
+        addFacePlanes(planes, faces_tri, face_norms_tri);
+        addFacePlanes(planes, faces_pnt, face_norms_pnt);
+        return planes;
+    }
+
     @Override
     protected boolean inBounds(@NotNull Triad<Apfloat> point_cart) {
 
@@ -6,9 +6,12 @@ import io.github.noshou.npg.shapes.catalan.IcositetrahedronDeltoidal;
 import io.github.noshou.tuple.*;
 import org.apfloat.Apfloat;
 import org.apfloat.ApfloatMath;
+import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 
 import static io.github.noshou.npg.nputil.VectorMath.*;
+import java.util.List;
+import java.util.ArrayList;
 
 /**
  * Represents a <b>Rhombicuboctahedron</b>.
@@ -189,6 +192,15 @@ public class Rhombicuboctahedron extends Shape {
         );
     }
 
+    @Override
+    @Contract(pure = true)
+    public @NotNull List<double @NotNull []> getFacePlanes() {
+        List<double[]> planes = new ArrayList<>();
+        addFacePlanes(planes, faces_sqr, face_norms_sqr);
+        addFacePlanes(planes, faces_tri, face_norms_tri);
+        return planes;
+    }
+
     protected boolean inBounds(@NotNull Triad<Apfloat> point_cart) {
         for (int i = 0; i < faces_sqr.fetchSize(); i++){
 
@@ -7,8 +7,11 @@ import io.github.noshou.npg.shapes.platonic.Tetrahedron;
 import io.github.noshou.tuple.*;
 import org.apfloat.Apfloat;
 import org.apfloat.ApfloatMath;
+import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import static io.github.noshou.npg.nputil.VectorMath.*;
+import java.util.List;
+import java.util.ArrayList;
 
 /**
  * Represents a <b>Truncated Tetrahedron</b>.
@@ -117,6 +120,15 @@ public class TetrahedronTruncated extends Shape {
         face_norms_tri = new Tetrad<>(tri0_norm, tri1_norm, tri2_norm, tri3_norm);
     }
 
+    @Override
+    @Contract(pure = true)
+    public @NotNull List<double @NotNull []> getFacePlanes() {
+        List<double[]> planes = new ArrayList<>();
+        addFacePlanes(planes, faces_hex, face_norms_hex);
+        addFacePlanes(planes, faces_tri, face_norms_tri);
+        return planes;
+    }
+
     @Override
     protected boolean inBounds(@NotNull Triad<Apfloat> point_cart) {
 
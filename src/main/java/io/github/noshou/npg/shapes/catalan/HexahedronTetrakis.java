@@ -7,10 +7,12 @@ import io.github.noshou.npg.shapes.platonic.Cube;
 import io.github.noshou.tuple.*;
 import org.apfloat.Apfloat;
 import org.apfloat.ApfloatMath;
+import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import java.util.ArrayList;
 import static io.github.noshou.npg.nputil.VectorMath.*;
 import io.github.noshou.npg.shapes.archimedean.*;
+import java.util.List;
 
 /**
  * Represents a <b>Tetrakis Hexahedron</b>.
@@ -182,6 +184,14 @@ public abstract class HexahedronTetrakis extends Shape {
         face_norms_tri.add(normalTriple(vertices.get(5), vertices.get(9), vertices.get(8), true));
     }
 
+    @Override
+    @Contract(pure = true)
+    public @NotNull List<double @NotNull []> getFacePlanes() {
+        List<double[]> planes = new ArrayList<>();
+        addFacePlanes(planes, faces_tri, face_norms_tri);
+        return planes;
+    }
+
     @Override
     protected boolean inBounds(@NotNull Triad<Apfloat> point_cart) {
 
@@ -6,10 +6,12 @@ import io.github.noshou.npg.shapes.Shape;
 import io.github.noshou.tuple.*;
 import org.apfloat.Apfloat;
 import org.apfloat.ApfloatMath;
+import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import java.util.ArrayList;
 import static io.github.noshou.npg.nputil.VectorMath.*;
 import io.github.noshou.npg.shapes.archimedean.*;
+import java.util.List;
 
 /**
  * Represents a <b>Deltoidal Hexecontahedron</b>.
@@ -405,6 +407,14 @@ public class HexecontahedronDeltoidal extends Shape {
         face_norms_kte.add(normalQuad(vC29, vC49, vC15, vC5, true));
     }
 
+    @Override
+    @Contract(pure = true)
+    public @NotNull List<double @NotNull []> getFacePlanes() {
+        List<double[]> planes = new ArrayList<>();
+        addFacePlanes(planes, faces_kte, face_norms_kte);
+        return planes;
+    }
+
     @Override
     protected boolean inBounds(@NotNull Triad<Apfloat> point_cart) {
 
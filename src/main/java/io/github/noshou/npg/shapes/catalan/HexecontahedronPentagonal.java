@@ -7,10 +7,11 @@ import io.github.noshou.npg.shapes.archimedean.*;
 import io.github.noshou.tuple.*;
 import org.apfloat.Apfloat;
 import org.apfloat.ApfloatMath;
+import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import static io.github.noshou.npg.nputil.VectorMath.*;
-import org.jetbrains.annotations.Contract;
 import java.util.ArrayList;
+import java.util.List;
 /**
  * Represents a <b>Pentagonal Hexecontahedron</b>
  * <p> A Catalan solid with 60 vertices, 92 faces
@@ -425,6 +426,14 @@ public abstract class HexecontahedronPentagonal extends Shape {
         }
     }
 
+    @Override
+    @Contract(pure = true)
+    public @NotNull List<double @NotNull []> getFacePlanes() {
+        List<double[]> planes = new ArrayList<>();
+        addFacePlanes(planes, faces_pnt, face_norms_pnt);
+        return planes;
+    }
+
     /**
      * Tests whether the given Cartesian point lies inside or on the boundary
      * <p>The test is performed by checking dot products against all
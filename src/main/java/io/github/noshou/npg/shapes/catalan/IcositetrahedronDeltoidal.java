@@ -7,9 +7,11 @@ import io.github.noshou.npg.shapes.archimedean.Rhombicuboctahedron;
 import io.github.noshou.tuple.*;
 import org.apfloat.Apfloat;
 import org.apfloat.ApfloatMath;
+import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import static io.github.noshou.npg.nputil.VectorMath.*;
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Represents a <b>Deltoidal Icositetrahedron</b>.
@@ -221,6 +223,14 @@ public class IcositetrahedronDeltoidal extends Shape {
         face_norms_kte.add(kte23_norm);
     }
 
+    @Override
+    @Contract(pure = true)
+    public @NotNull List<double @NotNull []> getFacePlanes() {
+        List<double[]> planes = new ArrayList<>();
+        addFacePlanes(planes, faces_kte, face_norms_kte);
+        return planes;
+    }
+
     protected boolean inBounds(@NotNull Triad<Apfloat> point_cart) {
         for (int i = 0; i < faces_kte.size(); i++){
             // === Check square faces ===
@@ -11,6 +11,7 @@ import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import java.util.ArrayList;
 import static io.github.noshou.npg.nputil.VectorMath.*;
+import java.util.List;
 
 /**
  * Represents a <b>Pentagonal Icositetrahedron</b>
@@ -308,6 +309,14 @@ public abstract class IcositetrahedronPentagonal extends Shape {
         );
     }
 
+    @Override
+    @Contract(pure = true)
+    public @NotNull List<double @NotNull []> getFacePlanes() {
+        List<double[]> planes = new ArrayList<>();
+        addFacePlanes(planes, faces_pnt, face_norms_pnt);
+        return planes;
+    }
+
     /**
      * Tests whether the given Cartesian point lies inside or on the boundary
      * <p>The test is performed by checking dot products against all
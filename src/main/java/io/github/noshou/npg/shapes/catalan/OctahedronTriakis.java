@@ -8,9 +8,11 @@ import io.github.noshou.npg.shapes.Shape;
 import io.github.noshou.tuple.*;
 import org.apfloat.Apfloat;
 import org.apfloat.ApfloatMath;
+import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import static io.github.noshou.npg.nputil.VectorMath.*;
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Represents a <b>Triakis Octahedron</b>.
@@ -215,6 +217,14 @@ public class OctahedronTriakis extends Shape {
         face_norms_tri.add(tri23_norm);
     }
 
+    @Override
+    @Contract(pure = true)
+    public @NotNull List<double @NotNull []> getFacePlanes() {
+        List<double[]> planes = new ArrayList<>();
+        addFacePlanes(planes, faces_tri, face_norms_tri);
+        return planes;
+    }
+
     @Override
     protected boolean inBounds(@NotNull Triad<Apfloat> point_cart) {
         for (int i = 0; i < faces_tri.size(); i++) {
@@ -8,8 +8,11 @@ import io.github.noshou.npg.shapes.archimedean.TetrahedronTruncated;
 import io.github.noshou.tuple.*;
 import org.apfloat.Apfloat;
 import org.apfloat.ApfloatMath;
+import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import static io.github.noshou.npg.nputil.VectorMath.*;
+import java.util.List;
+import java.util.ArrayList;
 
 /**
  * Represents a <b>Triakis Tetrahedron</b>.
@@ -121,6 +124,14 @@ public class TetrahedronTriakis extends Shape {
                 tri8_norm, tri9_norm, tri10_norm, tri11_norm
         );
     }
+    @Override
+    @Contract(pure = true)
+    public @NotNull List<double @NotNull []> getFacePlanes() {
+        List<double[]> planes = new ArrayList<>();
+        addFacePlanes(planes, faces_tri, face_norms_tri);
+        return planes;
+    }
+
     @Override
     protected boolean inBounds(@NotNull Triad<Apfloat> point_cart) {
 
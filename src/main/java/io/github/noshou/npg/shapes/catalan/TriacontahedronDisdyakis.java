@@ -16,6 +16,7 @@ import org.jetbrains.annotations.NotNull;
 import java.util.ArrayList;
 
 import static io.github.noshou.npg.nputil.VectorMath.*;
+import java.util.List;
 
 
 /**
@@ -699,6 +700,14 @@ public abstract class TriacontahedronDisdyakis extends Shape {
         face_norms.add(tri119_norm);
     }
 
+    @Override
+    @Contract(pure = true)
+    public @NotNull List<double @NotNull []> getFacePlanes() {
+        List<double[]> planes = new ArrayList<>();
+        addFacePlanes(planes, faces, face_norms);
+        return planes;
+    }
+
     @Override
     @Contract(pure = true)
     protected boolean inBounds(@NotNull Triad<Apfloat> point_cart) {
@@ -7,9 +7,11 @@ import io.github.noshou.npg.shapes.Shape;
 import io.github.noshou.tuple.*;
 import org.apfloat.Apfloat;
 import org.apfloat.ApfloatMath;
+import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import static io.github.noshou.npg.nputil.VectorMath.*;
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Represents a <b>Rhombic Triacontahedron</b>.
@@ -289,6 +291,14 @@ public class TriacontahedronRhombic extends Shape {
         face_norms_rho.add(rho29_norm);
     }
 
+    @Override
+    @Contract(pure = true)
+    public @NotNull List<double @NotNull []> getFacePlanes() {
+        List<double[]> planes = new ArrayList<>();
+        addFacePlanes(planes, faces_rho, face_norms_rho);
+        return planes;
+    }
+
     protected boolean inBounds(@NotNull Triad<Apfloat> point_cart) {
         for (int i = 0; i < faces_rho.size(); i++){
             // === Check square faces ===
@@ -8,6 +8,8 @@ import org.apfloat.Apfloat;
 import org.apfloat.ApfloatMath;
 import org.jetbrains.annotations.*;
 import static io.github.noshou.npg.nputil.VectorMath.*;
+import java.util.List;
+import java.util.ArrayList;
 
 /**
  * Represents an <b>Elongated Pentagonal Dipyramid</b>.
@@ -154,6 +156,15 @@ public class DipyramidPentagonalElongated extends Shape {
         face_norms_sqr = new Pentad<>(sqr0_norm, sqr1_norm,sqr2_norm,sqr3_norm,sqr4_norm);
     }
 
+    @Override
+    @Contract(pure = true)
+    public @NotNull List<double @NotNull []> getFacePlanes() {
+        List<double[]> planes = new ArrayList<>();
+        addFacePlanes(planes, faces_sqr, face_norms_sqr);
+        addFacePlanes(planes, faces_tri, face_norms_tri);
+        return planes;
+    }
+
     @Override
     protected boolean inBounds(@NotNull Triad<Apfloat> point_cart) {
 
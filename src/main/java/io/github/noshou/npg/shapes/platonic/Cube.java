@@ -7,6 +7,7 @@ import io.github.noshou.tuple.*;
 import org.apfloat.Apfloat;
 import org.apfloat.ApfloatMath;
 import org.jetbrains.annotations.*;
+import java.util.List;
 
 /**
  * Represents a cubic shape constructed on a specified lattice.
@@ -71,4 +72,32 @@ public class Cube extends Shape {
                 &&  ApfloatMath.abs(y_cart).compareTo(super.getRadius()) <= 0
                 &&  ApfloatMath.abs(z_cart).compareTo(super.getRadius()) <= 0;
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns the cube's gauge: the largest absolute coordinate divided by the half edge length.
+     * @param x Cartesian x coordinate (Å)
+     * @param y Cartesian y coordinate (Å)
+     * @param z Cartesian z coordinate (Å)
+     * @return the non-negative gauge value
+     */
+    @Override
+    @Contract(pure = true)
+    public double gauge(double x, double y, double z) {
+        return Math.max(Math.abs(x), Math.max(Math.abs(y), Math.abs(z))) / super.getRadius().doubleValue();
+    }
+
+    /**
+     * Returns the six face planes {@code ±x, ±y, ±z = half edge length}.
+     * @return the face planes
+     */
+    @Override
+    @Contract(pure = true)
+    public @NotNull List<double @NotNull []> getFacePlanes() {
+        double d = super.getRadius().doubleValue();
+        return List.of(
+                new double[]{1, 0, 0, d}, new double[]{-1, 0, 0, d},
+                new double[]{0, 1, 0, d}, new double[]{0, -1, 0, d},
+                new double[]{0, 0, 1, d}, new double[]{0, 0, -1, d}
+        );
+    }
+}
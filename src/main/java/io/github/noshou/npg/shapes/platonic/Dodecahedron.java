@@ -8,6 +8,8 @@ import org.apfloat.Apfloat;
 import org.apfloat.ApfloatMath;
 import org.jetbrains.annotations.*;
 import static io.github.noshou.npg.nputil.VectorMath.*;
+import java.util.List;
+import java.util.ArrayList;
 
 /**
  * Represents a <b>Dodecahedron</b>.
@@ -147,6 +149,14 @@ public class Dodecahedron extends Shape {
         );
     }
 
+    @Override
+    @Contract(pure = true)
+    public @NotNull List<double @NotNull []> getFacePlanes() {
+        List<double[]> planes = new ArrayList<>();
+        addFacePlanes(planes, faces, face_norms);
+        return planes;
+    }
+
     @Override
     @Contract(pure = true)
     protected boolean inBounds(@NotNull Triad<Apfloat> point_cart) {
@@ -9,6 +9,7 @@ import org.apfloat.ApfloatMath;
 import org.jetbrains.annotations.*;
 import static io.github.noshou.npg.nputil.VectorMath.*;
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Represents an <b>Icosahedron</b>.
@@ -224,6 +225,14 @@ public class Icosahedron extends Shape {
     }
 
 
+    @Override
+    @Contract(pure = true)
+    public @NotNull List<double @NotNull []> getFacePlanes() {
+        List<double[]> planes = new ArrayList<>();
+        addFacePlanes(planes, faces, face_norms);
+        return planes;
+    }
+
     /**
      * Determines whether the given Cartesian coordinates are inside the icosahedral boundary.
      *
@@ -5,6 +5,7 @@ import io.github.noshou.npg.lattice.LatticeType;
 import io.github.noshou.npg.shapes.Shape;
 import io.github.noshou.tuple.*;
 import org.apfloat.Apfloat;
+import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import static io.github.noshou.npg.nputil.VectorMath.*;
 import java.util.ArrayList;
@@ -70,6 +71,14 @@ public class Octahedron extends Shape {
                 trn.get(4), trn.get(5), trn.get(6), trn.get(7));
     }
 
+    @Override
+    @Contract(pure = true)
+    public @NotNull List<double @NotNull []> getFacePlanes() {
+        List<double[]> planes = new ArrayList<>();
+        addFacePlanes(planes, faces_tri, face_norms_tri);
+        return planes;
+    }
+
     @Override
     protected boolean inBounds(@NotNull Triad<Apfloat> point_cart) {
         Apfloat N0 = new Apfloat("0", super.precision);